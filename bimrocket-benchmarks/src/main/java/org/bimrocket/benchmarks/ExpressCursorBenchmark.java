@@ -0,0 +1,173 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+
+package org.bimrocket.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.bimrocket.express.ExpressConstant;
+import org.bimrocket.express.ExpressEntity;
+import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.data.ExpressCursor;
+import static org.bimrocket.express.data.ExpressCursor.CONTAINER;
+import org.bimrocket.express.data.GenericData;
+import org.bimrocket.express.io.ExpressLoader;
+import org.bimrocket.step.io.StepLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the ExpressCursor operations over all the entities of a model.
+ *
+ * @author realor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExpressCursorBenchmark
+{
+  @Param({ SyntheticModel.SAMPLE, "10000", "100000" })
+  String model;
+
+  GenericData data;
+
+  @Setup
+  public void setup() throws IOException
+  {
+    ExpressSchema schema = new ExpressLoader().load("schema:IFC4");
+    data = new GenericData(schema);
+    StepLoader loader = new StepLoader(data);
+    loader.load(new StringReader(SyntheticModel.getStepText(model)));
+  }
+
+  @Benchmark
+  public void getByIndex(Blackhole blackhole)
+  {
+    ExpressCursor cursor = data.getRoot();
+    int count = cursor.size();
+    for (int i = 0; i < count; i++)
+    {
+      cursor.enter(i);
+      int size = cursor.size();
+      for (int j = 0; j < size; j++)
+      {
+        blackhole.consume((Object)cursor.get(j));
+      }
+      cursor.exit();
+    }
+  }
+
+  @Benchmark
+  public void getByName(Blackhole blackhole)
+  {
+    ExpressCursor cursor = data.getRoot();
+    int count = cursor.size();
+    for (int i = 0; i < count; i++)
+    {
+      cursor.enter(i);
+      ExpressEntity entity = (ExpressEntity)cursor.getType();
+      var attributes = entity.getAllAttributes();
+      int size = attributes.size();
+      for (int j = 0; j < size; j++)
+      {
+        blackhole.consume((Object)cursor.get(attributes.get(j).getName()));
+      }
+      cursor.exit();
+    }
+  }
+
+  @Benchmark
+  public void set()
+  {
+    ExpressCursor cursor = data.getRoot();
+    int count = cursor.size();
+    for (int i = 0; i < count; i++)
+    {
+      cursor.enter(i);
+      int size = cursor.size();
+      for (int j = 0; j < size; j++)
+      {
+        Object value = cursor.get(j);
+        if (value instanceof String text)
+        {
+          cursor.set(j, text);
+        }
+        else if (value instanceof Number number)
+        {
+          cursor.set(j, number);
+        }
+        else if (value instanceof ExpressConstant constant)
+        {
+          cursor.set(j, constant);
+        }
+      }
+      cursor.exit();
+    }
+  }
+
+  @Benchmark
+  public int enterExit()
+  {
+    ExpressCursor cursor = data.getRoot();
+    int entered = 0;
+    int count = cursor.size();
+    for (int i = 0; i < count; i++)
+    {
+      cursor.enter(i);
+      int size = cursor.size();
+      for (int j = 0; j < size; j++)
+      {
+        if (CONTAINER.equals(cursor.get(j)))
+        {
+          cursor.enter(j);
+          entered += cursor.size();
+          cursor.exit();
+        }
+      }
+      cursor.exit();
+    }
+    return entered;
+  }
+}
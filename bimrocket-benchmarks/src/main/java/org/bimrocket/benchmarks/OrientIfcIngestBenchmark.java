@@ -0,0 +1,139 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+
+package org.bimrocket.benchmarks;
+
+import com.orientechnologies.orient.core.db.ODatabaseSession;
+import com.orientechnologies.orient.core.db.OrientDB;
+import com.orientechnologies.orient.core.db.OrientDBConfig;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.bimrocket.api.ifcdb.IfcdbModel;
+import org.bimrocket.api.ifcdb.IfcdbVersion;
+import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.io.ExpressLoader;
+import org.bimrocket.service.ifcdb.store.IfcData;
+import org.bimrocket.service.ifcdb.store.orient.OrientIfcConnection;
+import org.bimrocket.step.io.StepLoader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the ingestion of a model version into an embedded plocal
+ * OrientDB database with OrientIfcConnection.saveData.
+ *
+ * @author realor
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OrientIfcIngestBenchmark
+{
+  @Param({ SyntheticModel.SAMPLE, "10000", "100000" })
+  String model;
+
+  String stepText;
+  Path databasePath;
+  OrientDB orientDB;
+  ODatabaseSession db;
+  OrientIfcConnection conn;
+  String modelId;
+  int version;
+  IfcData data;
+  int modelCount;
+
+  @Setup
+  public void setup() throws IOException
+  {
+    stepText = SyntheticModel.getStepText(model);
+    ExpressSchema schema = new ExpressLoader().load("schema:IFC4");
+
+    databasePath = Files.createTempDirectory("orient-ingest");
+    orientDB = new OrientDB("embedded:" + databasePath,
+      OrientDBConfig.defaultConfig());
+    orientDB.execute("create database ingest plocal users " +
+      "(admin identified by 'admin' role admin)").close();
+    db = orientDB.open("ingest", "admin", "admin");
+    conn = new OrientIfcConnection(db, schema);
+    conn.createSchema();
+  }
+
+  @Setup(Level.Invocation)
+  public void loadData() throws IOException
+  {
+    db.activateOnCurrentThread();
+
+    modelId = "model" + (++modelCount);
+    IfcdbModel ifcdbModel = new IfcdbModel();
+    ifcdbModel.setId(modelId);
+    ifcdbModel.setName(modelId);
+    conn.createModel(ifcdbModel);
+    version = conn.createModelVersion(modelId, new IfcdbVersion())
+      .getVersion();
+
+    data = conn.createData();
+    new StepLoader(data).load(new StringReader(stepText));
+  }
+
+  @Benchmark
+  public IfcData ingest()
+  {
+    conn.saveData(modelId, version, data);
+    return data;
+  }
+
+  @TearDown
+  public void tearDown() throws IOException
+  {
+    db.activateOnCurrentThread();
+    db.close();
+    orientDB.close();
+    FileUtils.deleteDirectory(databasePath.toFile());
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+
+package org.bimrocket.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.io.ExpressLoader;
+import org.bimrocket.generators.IfcModelGenerator;
+
+/**
+ * Produces the STEP text of the models used by the benchmarks.
+ * The model name "sample" refers to the Sample.ifc resource of
+ * bimrocket-common, any other value is taken as the approximate number of
+ * instances of a synthetic IFC4 model built by IfcModelGenerator.
+ *
+ * @author realor
+ */
+public class SyntheticModel
+{
+  public static final String SAMPLE = "sample";
+  static final String SAMPLE_RESOURCE = "/org/bimrocket/ifc/models/Sample.ifc";
+
+  private SyntheticModel()
+  {
+  }
+
+  public static String getStepText(String model) throws IOException
+  {
+    if (SAMPLE.equals(model))
+    {
+      try (InputStream is =
+           SyntheticModel.class.getResourceAsStream(SAMPLE_RESOURCE))
+      {
+        if (is == null)
+          throw new IOException("Resource not found: " + SAMPLE_RESOURCE);
+
+        return new String(is.readAllBytes(), StandardCharsets.UTF_8);
+      }
+    }
+    else
+    {
+      ExpressLoader loader = new ExpressLoader();
+      ExpressSchema schema = loader.load("schema:IFC4");
+
+      IfcModelGenerator generator = new IfcModelGenerator();
+      generator.setInstanceCount(Long.parseLong(model));
+
+      StringWriter writer = new StringWriter();
+      generator.generateModel(schema, writer);
+      return writer.toString();
+    }
+  }
+}
@@ -36,6 +36,7 @@ import java.util.Stack;
 import org.bimrocket.express.ExpressAttribute;
 import org.bimrocket.express.ExpressCollection;
 import org.bimrocket.express.ExpressEntity;
+import org.bimrocket.express.ExpressNamedType;
 import org.bimrocket.express.ExpressSchema;
 import static org.bimrocket.express.ExpressCollection.*;
 import org.bimrocket.express.ExpressConstant;
@@ -87,6 +88,11 @@ public abstract class AbstractData<E, C> implements ExpressData
 
   protected abstract String getElementTypeName(E element);
 
+  protected ExpressNamedType getElementType(E element)
+  {
+    return schema.getNamedType(getElementTypeName(element));
+  }
+
   protected abstract String getElementId(E element);
 
   protected abstract Object getElementValue(E element, String name, ExpressType type);
@@ -119,7 +125,7 @@ public abstract class AbstractData<E, C> implements ExpressData
       E element = getElement(container);
       if (element != null)
       {
-        type = schema.getNamedType(getElementTypeName(element));
+        type = getElementType(element);
       }
       else // collection
       {
@@ -553,7 +559,7 @@ public abstract class AbstractData<E, C> implements ExpressData
       E element = getElement(aContainer);
       if (element != null)
       {
-        return schema.getNamedType(getElementTypeName(element));
+        return getElementType(element);
       }
 
       C collection = getCollection(aContainer);
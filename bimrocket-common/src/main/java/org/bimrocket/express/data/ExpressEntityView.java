@@ -0,0 +1,222 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.express.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import org.bimrocket.express.ExpressConstant;
+import static org.bimrocket.express.data.ExpressCursor.CONTAINER;
+
+/**
+ * Base class of the typed entity views generated by IfcJavaClassesGenerator.
+ *
+ * A view wraps an ExpressCursor positioned on an entity and reads its
+ * attributes by slot index. The slot indices are resolved from the schema
+ * when the view classes are generated, so the views do not search the
+ * attribute list of the entity at runtime. The cursor still maps the slot
+ * index to the attribute name to read the value from the underlying data,
+ * because the data adapters store the attributes by name. Numeric
+ * collections are read into primitive arrays that can be reused between
+ * calls.
+ *
+ * @author realor
+ */
+public class ExpressEntityView
+{
+  protected final ExpressCursor cursor;
+
+  public ExpressEntityView(ExpressCursor cursor)
+  {
+    this.cursor = cursor;
+  }
+
+  public ExpressCursor getCursor()
+  {
+    return cursor;
+  }
+
+  protected boolean isSet(int slot)
+  {
+    return cursor.get(slot) != null;
+  }
+
+  protected String getString(int slot)
+  {
+    Object value = cursor.get(slot);
+    return value instanceof String text ? text : null;
+  }
+
+  protected int getInt(int slot)
+  {
+    Object value = cursor.get(slot);
+    return value instanceof Number number ? number.intValue() : 0;
+  }
+
+  protected double getDouble(int slot)
+  {
+    Object value = cursor.get(slot);
+    return value instanceof Number number ? number.doubleValue() : 0.0;
+  }
+
+  protected ExpressConstant getConstant(int slot)
+  {
+    Object value = cursor.get(slot);
+    return value instanceof ExpressConstant constant ? constant : null;
+  }
+
+  protected <T extends Enum<T>> T getEnum(int slot, Class<T> enumClass)
+  {
+    ExpressConstant constant = getConstant(slot);
+    return constant == null ? null : Enum.valueOf(enumClass, constant.toString());
+  }
+
+  /**
+   * Returns a new cursor positioned on the container (entity, defined type
+   * or collection) referenced by the given slot.
+   *
+   * @param slot the attribute index.
+   * @return the new cursor or null if the slot is not a container.
+   */
+  protected ExpressCursor getContainer(int slot)
+  {
+    if (!CONTAINER.equals(cursor.get(slot))) return null;
+
+    return cursor.copy().enter(slot);
+  }
+
+  protected <V extends ExpressEntityView> V getEntity(int slot,
+    Function<ExpressCursor, V> factory)
+  {
+    ExpressCursor entityCursor = getContainer(slot);
+    return entityCursor == null ? null : factory.apply(entityCursor);
+  }
+
+  protected <V extends ExpressEntityView> List<V> getEntities(int slot,
+    Function<ExpressCursor, V> factory)
+  {
+    if (!CONTAINER.equals(cursor.get(slot))) return Collections.emptyList();
+
+    cursor.enter(slot);
+    try
+    {
+      int size = cursor.size();
+      List<V> views = new ArrayList<>(size);
+      for (int i = 0; i < size; i++)
+      {
+        if (CONTAINER.equals(cursor.get(i)))
+        {
+          views.add(factory.apply(cursor.copy().enter(i)));
+        }
+      }
+      return views;
+    }
+    finally
+    {
+      cursor.exit();
+    }
+  }
+
+  /**
+   * Reads a collection of numbers into a double array.
+   *
+   * @param slot the attribute index.
+   * @param values the array where the values are read. It is reused when
+   * its length matches the collection size, otherwise a new array is
+   * returned.
+   * @return the array with the values or null if the slot is not set.
+   */
+  protected double[] getDoubles(int slot, double[] values)
+  {
+    if (!CONTAINER.equals(cursor.get(slot))) return null;
+
+    cursor.enter(slot);
+    try
+    {
+      int size = cursor.size();
+      if (values == null || values.length != size)
+      {
+        values = new double[size];
+      }
+      for (int i = 0; i < size; i++)
+      {
+        Object value = cursor.get(i);
+        values[i] = value instanceof Number number ? number.doubleValue() : 0.0;
+      }
+      return values;
+    }
+    finally
+    {
+      cursor.exit();
+    }
+  }
+
+  /**
+   * Reads a collection of numbers into an int array.
+   *
+   * @param slot the attribute index.
+   * @param values the array where the values are read. It is reused when
+   * its length matches the collection size, otherwise a new array is
+   * returned.
+   * @return the array with the values or null if the slot is not set.
+   */
+  protected int[] getInts(int slot, int[] values)
+  {
+    if (!CONTAINER.equals(cursor.get(slot))) return null;
+
+    cursor.enter(slot);
+    try
+    {
+      int size = cursor.size();
+      if (values == null || values.length != size)
+      {
+        values = new int[size];
+      }
+      for (int i = 0; i < size; i++)
+      {
+        Object value = cursor.get(i);
+        values[i] = value instanceof Number number ? number.intValue() : 0;
+      }
+      return values;
+    }
+    finally
+    {
+      cursor.exit();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return cursor.getType() + "[" + cursor.getId() + "]";
+  }
+}
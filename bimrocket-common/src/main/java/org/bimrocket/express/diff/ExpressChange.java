@@ -0,0 +1,121 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+
+package org.bimrocket.express.diff;
+
+import org.bimrocket.express.data.ExpressCursor;
+
+/**
+ * A change between two versions of a model.
+ *
+ * @author realor
+ */
+public class ExpressChange
+{
+  public static final String ADD = "ADD";
+  public static final String MODIFY = "MODIFY";
+  public static final String DELETE = "DELETE";
+  public static final String UNCHANGED = "UNCHANGED";
+
+  private final String type;
+  private final String key;
+  private final ExpressCursor oldCursor;
+  private final ExpressCursor newCursor;
+
+  public ExpressChange(String type, String key,
+    ExpressCursor oldCursor, ExpressCursor newCursor)
+  {
+    this.type = type;
+    this.key = key;
+    this.oldCursor = oldCursor;
+    this.newCursor = newCursor;
+  }
+
+  /**
+   * @return the change type: ADD, MODIFY, DELETE or UNCHANGED.
+   */
+  public String getType()
+  {
+    return type;
+  }
+
+  /**
+   * @return the key that identifies the entity in both versions: the
+   * GlobalId for IfcRoot entities or the type name and content hash for the
+   * other entities.
+   */
+  public String getKey()
+  {
+    return key;
+  }
+
+  /**
+   * @return a cursor on the entity in the old version, null for ADD.
+   */
+  public ExpressCursor getOldCursor()
+  {
+    return oldCursor;
+  }
+
+  /**
+   * @return a cursor on the entity in the new version, null for DELETE.
+   */
+  public ExpressCursor getNewCursor()
+  {
+    return newCursor;
+  }
+
+  public boolean isAdd()
+  {
+    return ADD.equals(type);
+  }
+
+  public boolean isModify()
+  {
+    return MODIFY.equals(type);
+  }
+
+  public boolean isDelete()
+  {
+    return DELETE.equals(type);
+  }
+
+  public boolean isUnchanged()
+  {
+    return UNCHANGED.equals(type);
+  }
+
+  @Override
+  public String toString()
+  {
+    return type + " " + key;
+  }
+}
@@ -0,0 +1,583 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+
+package org.bimrocket.express.diff;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.bimrocket.express.ExpressConstant;
+import org.bimrocket.express.ExpressEntity;
+import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.ExpressType;
+import org.bimrocket.express.data.ExpressCursor;
+import static org.bimrocket.express.data.ExpressCursor.CONTAINER;
+import org.bimrocket.express.data.ExpressData;
+import static org.bimrocket.express.diff.ExpressChange.*;
+
+/**
+ * Computes the changes between two versions of a model.
+ *
+ * Entities derived from IfcRoot are matched by GlobalId and reported as
+ * modified when their content differs. The other entities are identified
+ * by their type and a hash of their content, so they can only be added or
+ * deleted. References to IfcRoot entities contribute their GlobalId to the
+ * hash of the referencing entity, while references to other entities
+ * contribute the hash of the referenced entity.
+ *
+ * When hashRootReferences is enabled, references to IfcRoot entities
+ * contribute the hash of the referenced entity instead of its GlobalId.
+ * Then a change in an entity is propagated to all the entities that
+ * reference it, directly or indirectly, and the unchanged entities only
+ * reference unchanged entities. This is what the stores need to share the
+ * unchanged entities between versions.
+ *
+ * Two entities with the same key are only taken as the same entity, or as
+ * unchanged, when their contents are also equal, so a hash collision is
+ * never taken as an unchanged entity. The references of the compared
+ * entities are compared in the same way as they are hashed.
+ *
+ * The hash of an entity in a reference cycle does not depend on the order
+ * the entities are visited: a reference to an entity that is being hashed
+ * contributes its distance in the reference path. These hashes are not kept,
+ * so the entities of a cycle are hashed again each time they are reached.
+ *
+ * Only an index of the old version is kept in memory. The new version is
+ * traversed once and the additions and modifications are notified to the
+ * listener as they are found, followed by the deletions.
+ *
+ * @author realor
+ */
+public class ExpressDiff
+{
+  public static final String ROOT_ENTITY = "IfcRoot";
+  public static final String GLOBAL_ID = "GlobalId";
+
+  static final long FNV_OFFSET = 0xcbf29ce484222325L;
+  static final long FNV_PRIME = 0x100000001b3L;
+
+  private final ExpressData oldData;
+  private final ExpressData newData;
+  private final Map<ExpressEntity, Boolean> rootEntities = new HashMap<>();
+  private boolean hashRootReferences;
+  private boolean reportUnchanged;
+  private int addCount;
+  private int modifyCount;
+  private int deleteCount;
+
+  public ExpressDiff(ExpressData oldData, ExpressData newData)
+  {
+    ExpressSchema oldSchema = oldData.getSchema();
+    ExpressSchema newSchema = newData.getSchema();
+    if (!oldSchema.getName().equals(newSchema.getName()))
+      throw new IllegalArgumentException("Schemas do not match: " +
+        oldSchema.getName() + " vs " + newSchema.getName());
+
+    this.oldData = oldData;
+    this.newData = newData;
+  }
+
+  public ExpressData getOldData()
+  {
+    return oldData;
+  }
+
+  public ExpressData getNewData()
+  {
+    return newData;
+  }
+
+  public boolean isHashRootReferences()
+  {
+    return hashRootReferences;
+  }
+
+  public void setHashRootReferences(boolean hashRootReferences)
+  {
+    this.hashRootReferences = hashRootReferences;
+  }
+
+  public boolean isReportUnchanged()
+  {
+    return reportUnchanged;
+  }
+
+  /**
+   * When reportUnchanged is true, the listener is also notified of the
+   * entities that did not change (UNCHANGED), with cursors on both versions.
+   *
+   * @param reportUnchanged true to notify the unchanged entities.
+   */
+  public void setReportUnchanged(boolean reportUnchanged)
+  {
+    this.reportUnchanged = reportUnchanged;
+  }
+
+  public int getAddCount()
+  {
+    return addCount;
+  }
+
+  public int getModifyCount()
+  {
+    return modifyCount;
+  }
+
+  public int getDeleteCount()
+  {
+    return deleteCount;
+  }
+
+  public int getChangeCount()
+  {
+    return addCount + modifyCount + deleteCount;
+  }
+
+  public void compare(ExpressChangeListener listener)
+  {
+    addCount = 0;
+    modifyCount = 0;
+    deleteCount = 0;
+
+    // index the old version
+
+    Hashes oldHashes = new Hashes();
+    Map<String, Entry> oldEntries = new HashMap<>();
+
+    ExpressCursor oldRoot = oldData.getRoot();
+    int oldSize = oldRoot.size();
+    for (int index = 0; index < oldSize; index++)
+    {
+      if (!CONTAINER.equals(oldRoot.get(index))) continue;
+
+      ExpressCursor cursor = oldRoot.copy().enter(index);
+      if (!(cursor.getType() instanceof ExpressEntity)) continue;
+
+      long hash = getEntityHash(cursor, oldHashes);
+      String key = getEntityKey(cursor, hash);
+      oldEntries.put(key, new Entry(index, hash, oldEntries.get(key)));
+    }
+
+    // traverse the new version
+
+    Hashes newHashes = new Hashes();
+    Set<String> sameEntities = new HashSet<>();
+
+    ExpressCursor newRoot = newData.getRoot();
+    int newSize = newRoot.size();
+    for (int index = 0; index < newSize; index++)
+    {
+      if (!CONTAINER.equals(newRoot.get(index))) continue;
+
+      ExpressCursor cursor = newRoot.copy().enter(index);
+      if (!(cursor.getType() instanceof ExpressEntity)) continue;
+
+      long hash = getEntityHash(cursor, newHashes);
+      String key = getEntityKey(cursor, hash);
+
+      boolean rooted = isRootEntity((ExpressEntity)cursor.getType()) &&
+        cursor.get(GLOBAL_ID) instanceof String;
+
+      // a GlobalId identifies an entity, a content key needs equal content
+      Entry previous = null;
+      Entry entry = oldEntries.get(key);
+      ExpressCursor oldCursor = null;
+      boolean unchanged = false;
+      while (entry != null)
+      {
+        oldCursor = oldRoot.copy().enter(entry.index);
+        unchanged = entry.hash == hash &&
+          isSameEntity(oldCursor, cursor, sameEntities);
+        if (unchanged || rooted) break;
+
+        previous = entry;
+        entry = entry.next;
+      }
+
+      if (entry == null)
+      {
+        addCount++;
+        listener.change(new ExpressChange(ADD, key, null, cursor));
+      }
+      else
+      {
+        if (previous != null)
+        {
+          previous.next = entry.next;
+        }
+        else if (entry.next == null)
+        {
+          oldEntries.remove(key);
+        }
+        else
+        {
+          oldEntries.put(key, entry.next);
+        }
+
+        if (!unchanged)
+        {
+          modifyCount++;
+          listener.change(new ExpressChange(MODIFY, key, oldCursor, cursor));
+        }
+        else if (reportUnchanged)
+        {
+          listener.change(
+            new ExpressChange(UNCHANGED, key, oldCursor, cursor));
+        }
+      }
+    }
+
+    // the entries not found in the new version were deleted
+
+    for (var mapEntry : oldEntries.entrySet())
+    {
+      Entry entry = mapEntry.getValue();
+      while (entry != null)
+      {
+        deleteCount++;
+        ExpressCursor oldCursor = oldRoot.copy().enter(entry.index);
+        listener.change(
+          new ExpressChange(DELETE, mapEntry.getKey(), oldCursor, null));
+        entry = entry.next;
+      }
+    }
+  }
+
+  protected String getEntityKey(ExpressCursor cursor, long hash)
+  {
+    ExpressEntity entity = (ExpressEntity)cursor.getType();
+    if (isRootEntity(entity))
+    {
+      Object globalId = cursor.get(GLOBAL_ID);
+      if (globalId instanceof String)
+      {
+        return (String)globalId;
+      }
+    }
+    return entity.getTypeName() + "#" + Long.toHexString(hash);
+  }
+
+  protected boolean isRootEntity(ExpressEntity entity)
+  {
+    Boolean root = rootEntities.get(entity);
+    if (root == null)
+    {
+      root = false;
+      ExpressEntity current = entity;
+      while (current != null && !root)
+      {
+        root = current.getTypeName().equalsIgnoreCase(ROOT_ENTITY);
+        current = current.getSuperEntity();
+      }
+      rootEntities.put(entity, root);
+    }
+    return root;
+  }
+
+  /**
+   * Gets the content hash of the entity where the cursor is positioned.
+   *
+   * @param cursor the cursor positioned on an entity.
+   * @param hashes the hashes already computed and the entities being hashed.
+   * @return the content hash.
+   */
+  protected long getEntityHash(ExpressCursor cursor, Hashes hashes)
+  {
+    String id = cursor.getId();
+    if (id != null)
+    {
+      Long hash = hashes.values.get(id);
+      if (hash != null) return hash;
+
+      Integer depth = hashes.pending.get(id);
+      if (depth != null) // reference cycle
+      {
+        hashes.lowDepth = Math.min(hashes.lowDepth, depth);
+        return hashLong(hash(FNV_OFFSET, '^'), hashes.pending.size() - depth);
+      }
+    }
+
+    int depth = hashes.pending.size();
+    int lowDepth = hashes.lowDepth;
+    hashes.lowDepth = Integer.MAX_VALUE;
+    if (id != null) hashes.pending.put(id, depth);
+
+    long value = hash(FNV_OFFSET, cursor.getType().getTypeName());
+    int size = cursor.size();
+    for (int index = 0; index < size; index++)
+    {
+      value = hashItem(value, cursor, index, hashes);
+    }
+
+    if (id != null)
+    {
+      hashes.pending.remove(id);
+      // the hashes of the entities of a cycle depend on the entry point
+      if (hashes.lowDepth > depth) hashes.values.put(id, value);
+    }
+    hashes.lowDepth = Math.min(lowDepth, hashes.lowDepth);
+
+    return value;
+  }
+
+  protected long hashItem(long value, ExpressCursor cursor, int index,
+    Hashes hashes)
+  {
+    value = hash(value, ',');
+
+    Object item = cursor.get(index);
+    if (CONTAINER.equals(item))
+    {
+      cursor.enter(index);
+      try
+      {
+        ExpressType type = cursor.getType();
+        if (type instanceof ExpressEntity entity)
+        {
+          value = hash(value, '#');
+          Object globalId = isRootEntity(entity) && !hashRootReferences ?
+            cursor.get(GLOBAL_ID) : null;
+          if (globalId instanceof String)
+          {
+            value = hash(value, (String)globalId);
+          }
+          else
+          {
+            value = hashLong(value, getEntityHash(cursor, hashes));
+          }
+        }
+        else // defined type or collection
+        {
+          value = hash(value, type.getTypeName());
+          value = hash(value, '(');
+          int size = cursor.size();
+          for (int i = 0; i < size; i++)
+          {
+            value = hashItem(value, cursor, i, hashes);
+          }
+          value = hash(value, ')');
+        }
+      }
+      finally
+      {
+        cursor.exit();
+      }
+    }
+    else if (item == null)
+    {
+      value = hash(value, '$');
+    }
+    else if (item instanceof String text)
+    {
+      value = hash(value, '\'');
+      value = hash(value, text);
+    }
+    else if (item instanceof Number number)
+    {
+      value = hash(value, 'N');
+      value = hashLong(value, Double.doubleToLongBits(number.doubleValue()));
+    }
+    else if (item instanceof ExpressConstant constant)
+    {
+      value = hash(value, '.');
+      value = hash(value, constant.toString());
+    }
+    else
+    {
+      value = hash(value, String.valueOf(item));
+    }
+    return value;
+  }
+
+  /**
+   * Checks that two entities have the same content. The pairs of entities
+   * found equal are kept in sameEntities, and a pair being compared is
+   * taken as equal to end the comparison of reference cycles. When the
+   * entities differ, the pairs added by this comparison are removed.
+   *
+   * @param oldCursor the cursor positioned on an entity of the old version.
+   * @param newCursor the cursor positioned on an entity of the new version.
+   * @param sameEntities the pairs of entities found equal.
+   * @return true if the entities have the same content.
+   */
+  protected boolean isSameEntity(ExpressCursor oldCursor,
+    ExpressCursor newCursor, Set<String> sameEntities)
+  {
+    List<String> addedPairs = new ArrayList<>();
+    boolean same = isSameEntity(oldCursor, newCursor, sameEntities, addedPairs);
+    if (!same) sameEntities.removeAll(addedPairs);
+    return same;
+  }
+
+  private boolean isSameEntity(ExpressCursor oldCursor,
+    ExpressCursor newCursor, Set<String> sameEntities, List<String> addedPairs)
+  {
+    if (!oldCursor.getType().getTypeName().equals(
+        newCursor.getType().getTypeName())) return false;
+
+    String oldId = oldCursor.getId();
+    String newId = newCursor.getId();
+    if (oldId != null && newId != null)
+    {
+      String pair = newId + " " + oldId;
+      if (!sameEntities.add(pair)) return true;
+      addedPairs.add(pair);
+    }
+    return isSameContent(oldCursor, newCursor, sameEntities, addedPairs);
+  }
+
+  private boolean isSameContent(ExpressCursor oldCursor,
+    ExpressCursor newCursor, Set<String> sameEntities, List<String> addedPairs)
+  {
+    int size = newCursor.size();
+    if (oldCursor.size() != size) return false;
+
+    for (int index = 0; index < size; index++)
+    {
+      Object oldItem = oldCursor.get(index);
+      Object newItem = newCursor.get(index);
+      if (CONTAINER.equals(newItem))
+      {
+        if (!CONTAINER.equals(oldItem)) return false;
+
+        oldCursor.enter(index);
+        newCursor.enter(index);
+        try
+        {
+          if (!isSameContainer(oldCursor, newCursor, sameEntities,
+              addedPairs)) return false;
+        }
+        finally
+        {
+          oldCursor.exit();
+          newCursor.exit();
+        }
+      }
+      else if (!isSameValue(oldItem, newItem)) return false;
+    }
+    return true;
+  }
+
+  private boolean isSameContainer(ExpressCursor oldCursor,
+    ExpressCursor newCursor, Set<String> sameEntities, List<String> addedPairs)
+  {
+    ExpressType type = newCursor.getType();
+    if (type instanceof ExpressEntity entity)
+    {
+      if (!(oldCursor.getType() instanceof ExpressEntity)) return false;
+
+      Object globalId = isRootEntity(entity) && !hashRootReferences ?
+        newCursor.get(GLOBAL_ID) : null;
+      if (globalId instanceof String)
+      {
+        return oldCursor.getType().getTypeName().equals(
+          type.getTypeName()) && globalId.equals(oldCursor.get(GLOBAL_ID));
+      }
+      return isSameEntity(oldCursor, newCursor, sameEntities, addedPairs);
+    }
+    // defined type or collection
+    return type.getTypeName().equals(oldCursor.getType().getTypeName()) &&
+      isSameContent(oldCursor, newCursor, sameEntities, addedPairs);
+  }
+
+  private boolean isSameValue(Object oldItem, Object newItem)
+  {
+    if (oldItem == null || newItem == null) return oldItem == newItem;
+
+    if (newItem instanceof Number || oldItem instanceof Number)
+    {
+      return oldItem instanceof Number oldNumber &&
+        newItem instanceof Number newNumber &&
+        Double.doubleToLongBits(oldNumber.doubleValue()) ==
+        Double.doubleToLongBits(newNumber.doubleValue());
+    }
+    if (newItem instanceof String || oldItem instanceof String)
+    {
+      return newItem.equals(oldItem);
+    }
+    return String.valueOf(oldItem).equals(String.valueOf(newItem));
+  }
+
+  static long hash(long value, String text)
+  {
+    for (int i = 0; i < text.length(); i++)
+    {
+      value = hash(value, text.charAt(i));
+    }
+    return value;
+  }
+
+  static long hash(long value, char ch)
+  {
+    value ^= ch;
+    return value * FNV_PRIME;
+  }
+
+  static long hashLong(long value, long number)
+  {
+    for (int i = 0; i < 8; i++)
+    {
+      value ^= number & 0xff;
+      value *= FNV_PRIME;
+      number >>>= 8;
+    }
+    return value;
+  }
+
+  /**
+   * The content hashes of the entities of a version, by entity id, and the
+   * depth in the reference path of the entities being hashed.
+   */
+  static class Hashes
+  {
+    final Map<String, Long> values = new HashMap<>();
+    final Map<String, Integer> pending = new HashMap<>();
+    // lowest depth of the entities being hashed that have been referenced
+    int lowDepth = Integer.MAX_VALUE;
+  }
+
+  static class Entry
+  {
+    final int index;
+    final long hash;
+    Entry next;
+
+    Entry(int index, long hash, Entry next)
+    {
+      this.index = index;
+      this.hash = hash;
+      this.next = next;
+    }
+  }
+}
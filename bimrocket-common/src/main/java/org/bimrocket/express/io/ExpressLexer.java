@@ -36,12 +36,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Stack;
 import static org.bimrocket.express.io.ExpressToken.*;
 import static org.bimrocket.step.io.StepToken.TEXT;
 
 /**
+ * Lexer for EXPRESS schemas.
+ *
+ * The whole input is read into a char array when the first token is
+ * requested and the tokens are scanned by index, without per character
+ * pushback or intermediate buffers. Symbol tokens are shared instances.
  *
  * @author realor
  */
@@ -49,11 +55,14 @@ public class ExpressLexer
 {
   private static final LookupTable KEYWORDS = new LookupTable();
   private static final String OPERATORS = "+-*/=<>|:";
+  private static final ExpressToken EOF_TOKEN = new ExpressToken(EOF);
+  private static final ExpressToken[] SYMBOL_TOKENS = new ExpressToken[128];
 
   private final Reader reader;
-  private final Stack<ExpressToken> tokenStack = new Stack<>();
-  private final Stack<Integer> charStack = new Stack<>();
-  private final StringBuilder buffer = new StringBuilder();
+  private final ArrayDeque<ExpressToken> tokenStack = new ArrayDeque<>();
+  private char[] chars;
+  private int length;
+  private int position;
 
   static
   {
@@ -114,6 +123,11 @@ public class ExpressLexer
     KEYWORDS.add("INVERSE");
     KEYWORDS.add("DERIVE");
     KEYWORDS.add("UNIQUE");
+
+    for (int ch = 0; ch < SYMBOL_TOKENS.length; ch++)
+    {
+      SYMBOL_TOKENS[ch] = new ExpressToken(SYMBOL, String.valueOf((char)ch));
+    }
   }
 
   public ExpressLexer(Reader reader)
@@ -121,62 +135,62 @@ public class ExpressLexer
     this.reader = reader;
   }
 
+  public ExpressLexer(char[] chars, int length)
+  {
+    this.reader = null;
+    this.chars = chars;
+    this.length = length;
+  }
+
   public ExpressToken readToken() throws IOException
   {
-    ExpressToken token;
-    buffer.setLength(0);
+    if (!tokenStack.isEmpty()) return tokenStack.pop();
 
-    if (tokenStack.isEmpty())
+    if (chars == null) readChars();
+
+    int ch = read();
+    while (ch == ' ' || ch == '\t' || ch == '\r' || ch == '\n')
     {
-      int ch = read();
-      while (ch == ' ' || ch == '\t' || ch == '\r' || ch == '\n')
-      {
-        ch = read();
-      }
+      ch = read();
+    }
 
-      if (ch == -1)
-      {
-        token = new ExpressToken(EOF);
-      }
-      else if (ch == '\'')
-      {
-        token = readText();
-      }
-      else if (Character.isDigit((char)ch))
-      {
-        token = readNumber(ch);
-      }
-      else if (Character.isLetter((char)ch) || ch == '_')
-      {
-        token = readKeywordOrIdentifier(ch);
-      }
-      else if (ch == '(')
-      {
-        int ch2 = read();
-        if (ch2 == '*')
-        {
-          token = readComment();
-        }
-        else
-        {
-          unread(ch2);
-          token = new ExpressToken(SYMBOL, "(");
-        }
-      }
-      else if (OPERATORS.indexOf((char)ch) != -1)
-      {
-        token = readOperator(ch);
-      }
-      else
+    if (ch == -1)
+    {
+      return EOF_TOKEN;
+    }
+    else if (ch == '\'')
+    {
+      return readText();
+    }
+    else if (Character.isDigit((char)ch))
+    {
+      return readNumber();
+    }
+    else if (Character.isLetter((char)ch) || ch == '_')
+    {
+      return readKeywordOrIdentifier();
+    }
+    else if (ch == '(')
+    {
+      if (position < length && chars[position] == '*')
       {
-        token = new ExpressToken(SYMBOL, String.valueOf((char)ch));
+        position++;
+        return readComment();
       }
+      return SYMBOL_TOKENS['('];
+    }
+    else if (OPERATORS.indexOf((char)ch) != -1)
+    {
+      return readOperator();
+    }
+    else if (ch < SYMBOL_TOKENS.length)
+    {
+      return SYMBOL_TOKENS[ch];
     }
     else
     {
-      token = tokenStack.pop();
+      return new ExpressToken(SYMBOL, String.valueOf((char)ch));
     }
-    return token;
   }
 
   public void unreadToken(ExpressToken token)
@@ -184,28 +198,27 @@ public class ExpressLexer
     tokenStack.push(token);
   }
 
-  protected ExpressToken readText() throws IOException
+  protected ExpressToken readText()
   {
-    int ch = read();
-    while (ch != '\'' && ch != -1)
+    int start = position;
+    while (position < length && chars[position] != '\'')
     {
-      buffer.append((char)ch);
-      ch = read();
+      position++;
     }
-    return new ExpressToken(TEXT, buffer.toString());    
+    String value = new String(chars, start, position - start);
+    if (position < length) position++; // skip final quote
+    return new ExpressToken(TEXT, value);
   }
-  
-  protected ExpressToken readNumber(int ch) throws IOException
+
+  protected ExpressToken readNumber()
   {
-    buffer.append((char)ch);
-    ch = read();
-    while (Character.isDigit((char)ch) || ch == '.')
+    int start = position - 1;
+    while (position < length &&
+           (Character.isDigit(chars[position]) || chars[position] == '.'))
     {
-      buffer.append((char)ch);
-      ch = read();
+      position++;
     }
-    unread(ch);
-    String value = buffer.toString();
+    String value = new String(chars, start, position - start);
     try
     {
       double number = Double.parseDouble(value);
@@ -216,87 +229,98 @@ public class ExpressLexer
       return new ExpressToken(INVALID, value);
     }
   }
-  
-  protected ExpressToken readKeywordOrIdentifier(int ch) throws IOException
+
+  protected ExpressToken readKeywordOrIdentifier()
   {
-    buffer.append((char)ch);
-    ch = read();
-    while (Character.isLetterOrDigit((char)ch) || ch == '_')
+    int start = position - 1;
+    while (position < length &&
+           (Character.isLetterOrDigit(chars[position]) ||
+            chars[position] == '_'))
     {
-      buffer.append((char)ch);
-      ch = read();
+      position++;
     }
-    unread(ch);
-    String value = buffer.toString();
+    String value = new String(chars, start, position - start);
     String keyword = KEYWORDS.get(value);
     if (keyword == null)
     {
       return new ExpressToken(IDENTIFIER, value);
     }
     else
-    {      
+    {
       return new ExpressToken(KEYWORD, keyword);
     }
   }
-  
-  protected ExpressToken readComment() throws IOException
+
+  protected ExpressToken readComment()
   {
     // inside comment (* ...
-    int ch = read();
-    int ch2 = read();
-    while ((ch != '*' || ch2 != ')') && ch2 != -1)
+    int start = position;
+    int end = position;
+    while (end + 1 < length && (chars[end] != '*' || chars[end + 1] != ')'))
     {
-      buffer.append((char)ch);
-      ch = ch2;
-      ch2 = read();
+      end++;
     }
-    return new ExpressToken(COMMENT, buffer.toString());
-  }
-  
-  protected ExpressToken readOperator(int ch) throws IOException
-  {
-    buffer.append((char)ch);
-    ch = read();
-    while (OPERATORS.indexOf(ch) != -1)
+    String value;
+    if (end + 1 < length)
     {
-      buffer.append((char)ch);
-      ch = read();
+      value = new String(chars, start, end - start);
+      position = end + 2;
     }
-    unread(ch);
-    return new ExpressToken(OPERATOR, buffer.toString());    
-  }
-  
-  protected int read() throws IOException
-  {
-    int ch;
-    if (charStack.isEmpty())
+    else // unterminated comment
     {
-      ch = reader.read();
+      value = new String(chars, start, Math.max(0, length - start - 1));
+      position = length;
     }
-    else
+    return new ExpressToken(COMMENT, value);
+  }
+
+  protected ExpressToken readOperator()
+  {
+    int start = position - 1;
+    while (position < length && OPERATORS.indexOf(chars[position]) != -1)
     {
-      ch = charStack.pop();
+      position++;
     }
-    return ch;
+    return new ExpressToken(OPERATOR,
+      new String(chars, start, position - start));
+  }
+
+  protected int read()
+  {
+    return position < length ? chars[position++] : -1;
   }
 
-  protected void unread(int ch)
+  protected void readChars() throws IOException
   {
-    charStack.push(ch);
+    char[] buffer = new char[65536];
+    int count = 0;
+    int read = reader.read(buffer, count, buffer.length - count);
+    while (read != -1)
+    {
+      count += read;
+      if (count == buffer.length)
+      {
+        buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+      }
+      read = reader.read(buffer, count, buffer.length - count);
+    }
+    chars = buffer;
+    length = count;
+    position = 0;
   }
-  
+
   static class LookupTable extends HashMap<String, String>
   {
     public void add(String value)
     {
       put(value, value);
-    }    
+    }
   }
 
   public static void main(String[] args) throws IOException
   {
     InputStream is = ExpressLexer.class.getResourceAsStream(
-      "/org/ifcserver/schema/IFC4.exp");
+      "/org/bimrocket/ifc/schema/IFC4.exp");
     BufferedReader reader = new BufferedReader(new InputStreamReader(is));
     try
     {
@@ -60,6 +60,7 @@ public class IfcJavaClassesGenerator
   private String packageName = "org.ifcserver.schema";
   private String baseEntityClassName = "IfcBaseEntity";
   private String baseTypeClassName = "IfcBaseType";
+  private boolean entityViews;
 
   public String getPackageName()
   {
@@ -91,32 +92,60 @@ public class IfcJavaClassesGenerator
     this.baseTypeClassName = baseTypeClassName;
   }
 
+  public boolean isEntityViews()
+  {
+    return entityViews;
+  }
+
+  /**
+   * When entityViews is true, the entity classes are generated as typed
+   * views (subclasses of ExpressEntityView) that read the attributes of an
+   * ExpressCursor by slot index instead of holding their own fields.
+   *
+   * @param entityViews true to generate entity views.
+   */
+  public void setEntityViews(boolean entityViews)
+  {
+    this.entityViews = entityViews;
+  }
+
   public void generateClasses(String schemaFileName, File outputDir)
     throws IOException
   {
     ExpressLoader loader = new ExpressLoader();
     ExpressSchema schema = loader.load(schemaFileName);
 
-    prepareSchema(schema);
-
     String classPath = packageName.replaceAll("\\.", "/");
     File classDir = new File(outputDir, classPath);
     classDir.mkdirs();
 
-    generateBaseClass(baseEntityClassName, classDir);
-    generateBaseClass(baseTypeClassName, classDir);
-
-    List<ExpressEntity> entities = schema.getNamedTypes(ExpressEntity.class);
-    for (ExpressEntity entity : entities)
+    if (entityViews)
     {
-      generateEntityClass(entity, classDir);
+      List<ExpressEntity> entities = schema.getNamedTypes(ExpressEntity.class);
+      for (ExpressEntity entity : entities)
+      {
+        generateEntityViewClass(entity, classDir);
+      }
     }
-
-    List<ExpressDefinedType> definedTypes =
-      schema.getNamedTypes(ExpressDefinedType.class);
-    for (ExpressDefinedType definedType : definedTypes)
+    else
     {
-      generateDefinedTypeClass(definedType, classDir);
+      generateBaseClass(baseEntityClassName, classDir);
+      generateBaseClass(baseTypeClassName, classDir);
+
+      prepareSchema(schema);
+
+      List<ExpressEntity> entities = schema.getNamedTypes(ExpressEntity.class);
+      for (ExpressEntity entity : entities)
+      {
+        generateEntityClass(entity, classDir);
+      }
+
+      List<ExpressDefinedType> definedTypes =
+        schema.getNamedTypes(ExpressDefinedType.class);
+      for (ExpressDefinedType definedType : definedTypes)
+      {
+        generateDefinedTypeClass(definedType, classDir);
+      }
     }
 
     List<ExpressEnumeration> enumTypes =
@@ -263,6 +292,160 @@ public class IfcJavaClassesGenerator
     }
   }
 
+  protected void generateEntityViewClass(ExpressEntity entity, File classDir)
+    throws IOException
+  {
+    File file = new File(classDir, entity.getTypeName() + ".java");
+    PrintWriter writer = new PrintWriter(file);
+    try
+    {
+      ExpressEntity superEntity = entity.getSuperEntity();
+      String className = entity.getTypeName();
+
+      writer.println("package " + packageName + ";");
+      writer.println();
+      writer.println("import java.util.*;");
+      writer.println("import org.bimrocket.express.ExpressConstant;");
+      writer.println("import org.bimrocket.express.data.ExpressCursor;");
+      writer.println("import org.bimrocket.express.data.ExpressEntityView;");
+      writer.println();
+
+      String superClassName = superEntity == null ?
+        "ExpressEntityView" : superEntity.getTypeName();
+      writer.println("public class " + className + " extends " +
+        superClassName);
+      writer.println("{");
+
+      // slot indices are the positions in the full attribute list
+      List<ExpressAttribute> allAttributes = entity.getAllAttributes();
+      List<ExpressAttribute> attributes = entity.getAttributes();
+      for (ExpressAttribute attribute : attributes)
+      {
+        writer.println("  public static final int " +
+          getSlotName(attribute) + " = " +
+          allAttributes.indexOf(attribute) + ";");
+      }
+      if (!attributes.isEmpty()) writer.println();
+
+      writer.println("  public " + className + "(ExpressCursor cursor)");
+      writer.println("  {");
+      writer.println("    super(cursor);");
+      writer.println("  }");
+
+      for (ExpressAttribute attribute : attributes)
+      {
+        generateViewGetter(attribute, writer);
+      }
+      writer.println("}");
+    }
+    finally
+    {
+      writer.close();
+    }
+  }
+
+  protected void generateViewGetter(ExpressAttribute attribute,
+    PrintWriter writer)
+  {
+    String name = attribute.getName();
+    String slot = getSlotName(attribute);
+    ExpressType type = getRootType(attribute.getType());
+
+    writer.println();
+    if (type instanceof ExpressPrimitive primitive)
+    {
+      switch (primitive.getTypeName())
+      {
+        case INTEGER:
+          writer.println("  public int get" + name + "()");
+          writer.println("  {");
+          writer.println("    return getInt(" + slot + ");");
+          break;
+        case NUMBER:
+        case REAL:
+          writer.println("  public double get" + name + "()");
+          writer.println("  {");
+          writer.println("    return getDouble(" + slot + ");");
+          break;
+        case BOOLEAN:
+        case LOGICAL:
+          writer.println("  public ExpressConstant get" + name + "()");
+          writer.println("  {");
+          writer.println("    return getConstant(" + slot + ");");
+          break;
+        default:
+          writer.println("  public String get" + name + "()");
+          writer.println("  {");
+          writer.println("    return getString(" + slot + ");");
+          break;
+      }
+    }
+    else if (type instanceof ExpressEnumeration enumType)
+    {
+      String enumClassName = enumType.getTypeName();
+      writer.println("  public " + enumClassName + " get" + name + "()");
+      writer.println("  {");
+      writer.println("    return getEnum(" + slot + ", " +
+        enumClassName + ".class);");
+    }
+    else if (type instanceof ExpressEntity entityType)
+    {
+      String viewClassName = entityType.getTypeName();
+      writer.println("  public " + viewClassName + " get" + name + "()");
+      writer.println("  {");
+      writer.println("    return getEntity(" + slot + ", " +
+        viewClassName + "::new);");
+    }
+    else if (type instanceof ExpressCollection collection &&
+             getRootType(collection.getItemType()) instanceof
+             ExpressPrimitive itemType &&
+             !itemType.getTypeName().equals(STRING) &&
+             !itemType.getTypeName().equals(BINARY) &&
+             !itemType.getTypeName().equals(BOOLEAN) &&
+             !itemType.getTypeName().equals(LOGICAL))
+    {
+      String arrayType =
+        itemType.getTypeName().equals(INTEGER) ? "int" : "double";
+      String method =
+        itemType.getTypeName().equals(INTEGER) ? "getInts" : "getDoubles";
+      writer.println("  public " + arrayType + "[] get" + name + "(" +
+        arrayType + "[] values)");
+      writer.println("  {");
+      writer.println("    return " + method + "(" + slot + ", values);");
+    }
+    else if (type instanceof ExpressCollection collection &&
+             collection.getItemType() instanceof ExpressEntity itemType)
+    {
+      String viewClassName = itemType.getTypeName();
+      writer.println("  public List<" + viewClassName + "> get" + name +
+        "()");
+      writer.println("  {");
+      writer.println("    return getEntities(" + slot + ", " +
+        viewClassName + "::new);");
+    }
+    else // select, nested collections, collections of selects...
+    {
+      writer.println("  public ExpressCursor get" + name + "()");
+      writer.println("  {");
+      writer.println("    return getContainer(" + slot + ");");
+    }
+    writer.println("  }");
+
+    if (attribute.isOptional())
+    {
+      writer.println();
+      writer.println("  public boolean has" + name + "()");
+      writer.println("  {");
+      writer.println("    return isSet(" + slot + ");");
+      writer.println("  }");
+    }
+  }
+
+  protected String getSlotName(ExpressAttribute attribute)
+  {
+    return attribute.getName().toUpperCase();
+  }
+
   protected void generateDefinedTypeClass(ExpressDefinedType definedType,
     File classDir) throws IOException
   {
@@ -455,14 +638,13 @@ public class IfcJavaClassesGenerator
     }
   }
 
-  protected ExpressType getRootType(ExpressDefinedType definedType)
+  protected ExpressType getRootType(ExpressType type)
   {
-    ExpressType definition = definedType.getDefinition();
-    while (definition instanceof ExpressDefinedType)
+    while (type instanceof ExpressDefinedType definedType)
     {
-      definition = ((ExpressDefinedType)definition).getDefinition();
+      type = definedType.getDefinition();
     }
-    return definition;
+    return type;
   }
 
   /*
@@ -479,7 +661,7 @@ public class IfcJavaClassesGenerator
     if (args.length < 2)
     {
       System.out.println("Arguments: schemaFile outputDir " +
-        "[-p:packageName]");
+        "[-p:packageName] [-v]");
     }
     else
     {
@@ -495,6 +677,10 @@ public class IfcJavaClassesGenerator
         {
           generator.setPackageName(arg.substring(3));
         }
+        else if (arg.equals("-v"))
+        {
+          generator.setEntityViews(true);
+        }
         else if (schemaFileName == null)
         {
           schemaFileName = arg;
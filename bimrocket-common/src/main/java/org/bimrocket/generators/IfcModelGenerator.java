@@ -0,0 +1,685 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+
+package org.bimrocket.generators;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.bimrocket.express.ExpressAttribute;
+import org.bimrocket.express.ExpressConstant;
+import org.bimrocket.express.ExpressEntity;
+import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.io.ExpressLoader;
+
+/**
+ * Generates synthetic IFC models in STEP format for scale and load testing.
+ *
+ * The instances are written as they are created, so the memory used by the
+ * generator does not depend on the size of the model. Every instance is
+ * checked against the given ExpressSchema: the attributes are written in
+ * schema order and all the mandatory attributes must have a value.
+ *
+ * The model is a spatial structure (project, site, building and storeys)
+ * whose elements have a local placement, a polyline representation and a
+ * property set. The placement of every element is relative to the placement
+ * of the previous one, building reference chains of configurable length.
+ *
+ * @author realor
+ */
+public class IfcModelGenerator
+{
+  public static final Object DERIVED = new Object()
+  {
+    @Override
+    public String toString() { return "DERIVED"; }
+  };
+
+  static final String GLOBAL_ID_CHARS =
+    "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz_$";
+
+  private long instanceCount = 100000;
+  private int pointsPerPolyline = 4;
+  private int propertiesPerSet = 4;
+  private int elementsPerStorey = 1000;
+  private int placementChainLength = 10;
+  private long seed = 0;
+
+  private ExpressSchema schema;
+  private PrintWriter printer;
+  private Random random;
+  private int tagCount;
+  private int globalIdCount;
+
+  public long getInstanceCount()
+  {
+    return instanceCount;
+  }
+
+  public void setInstanceCount(long instanceCount)
+  {
+    this.instanceCount = instanceCount;
+  }
+
+  public int getPointsPerPolyline()
+  {
+    return pointsPerPolyline;
+  }
+
+  public void setPointsPerPolyline(int pointsPerPolyline)
+  {
+    this.pointsPerPolyline = Math.max(2, pointsPerPolyline);
+  }
+
+  public int getPropertiesPerSet()
+  {
+    return propertiesPerSet;
+  }
+
+  public void setPropertiesPerSet(int propertiesPerSet)
+  {
+    this.propertiesPerSet = Math.max(1, propertiesPerSet);
+  }
+
+  public int getElementsPerStorey()
+  {
+    return elementsPerStorey;
+  }
+
+  public void setElementsPerStorey(int elementsPerStorey)
+  {
+    this.elementsPerStorey = Math.max(1, elementsPerStorey);
+  }
+
+  public int getPlacementChainLength()
+  {
+    return placementChainLength;
+  }
+
+  public void setPlacementChainLength(int placementChainLength)
+  {
+    this.placementChainLength = Math.max(1, placementChainLength);
+  }
+
+  public long getSeed()
+  {
+    return seed;
+  }
+
+  public void setSeed(long seed)
+  {
+    this.seed = seed;
+  }
+
+  public void generateModel(String schemaFileName, File outputFile)
+    throws IOException
+  {
+    ExpressLoader loader = new ExpressLoader();
+    ExpressSchema aSchema = loader.load(schemaFileName);
+
+    try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+         new FileOutputStream(outputFile), StandardCharsets.UTF_8)))
+    {
+      generateModel(aSchema, writer);
+    }
+  }
+
+  /**
+   * Writes a model of approximately instanceCount instances.
+   *
+   * @param schema the schema of the model.
+   * @param writer the writer where the STEP file is written. It is flushed
+   * but not closed by this method.
+   */
+  public void generateModel(ExpressSchema schema, Writer writer)
+  {
+    this.schema = schema;
+    this.printer = new PrintWriter(writer);
+    this.random = new Random(seed);
+    this.tagCount = 0;
+    this.globalIdCount = 0;
+
+    printHeader();
+
+    int ownerHistory = writeOwnerHistory();
+    int context = writeContext();
+    int units = writeUnits();
+
+    int project = new Instance("IfcProject")
+      .set("GlobalId", nextGlobalId())
+      .set("OwnerHistory", ref(ownerHistory))
+      .set("Name", "Synthetic model")
+      .set("RepresentationContexts", List.of(ref(context)))
+      .set("UnitsInContext", ref(units))
+      .write();
+
+    int sitePlacement = writePlacement(null, 0, 0, 0);
+    int site = writeSpatialElement("IfcSite", "Site", sitePlacement,
+      ownerHistory);
+    writeAggregation(project, site, ownerHistory);
+
+    int buildingPlacement = writePlacement(sitePlacement, 0, 0, 0);
+    int building = writeSpatialElement("IfcBuilding", "Building",
+      buildingPlacement, ownerHistory);
+    writeAggregation(site, building, ownerHistory);
+
+    List<Object> storeyElements = new ArrayList<>(elementsPerStorey);
+    int storeyCount = 0;
+    int storey = 0;
+    int storeyPlacement = 0;
+    int previousPlacement = 0;
+    int elementIndex = 0;
+
+    while (tagCount < instanceCount)
+    {
+      if (storeyElements.isEmpty())
+      {
+        double elevation = 3.0 * storeyCount;
+        storeyPlacement =
+          writePlacement(buildingPlacement, 0, 0, elevation);
+        storey = writeSpatialElement("IfcBuildingStorey",
+          "Storey " + storeyCount, storeyPlacement, ownerHistory);
+        writeAggregation(building, storey, ownerHistory);
+        storeyCount++;
+      }
+
+      // element placements are chained in groups of placementChainLength
+      int relativeTo = elementIndex % placementChainLength == 0 ?
+        storeyPlacement : previousPlacement;
+
+      previousPlacement = writePlacement(relativeTo,
+        random.nextInt(100), random.nextInt(100), 0);
+
+      int element = writeElement(elementIndex, previousPlacement, context,
+        ownerHistory);
+      storeyElements.add(ref(element));
+      elementIndex++;
+
+      if (storeyElements.size() == elementsPerStorey ||
+          tagCount >= instanceCount)
+      {
+        new Instance("IfcRelContainedInSpatialStructure")
+          .set("GlobalId", nextGlobalId())
+          .set("OwnerHistory", ref(ownerHistory))
+          .set("RelatedElements", storeyElements)
+          .set("RelatingStructure", ref(storey))
+          .write();
+        storeyElements.clear();
+      }
+    }
+    printFooter();
+    printer.flush();
+  }
+
+  protected void printHeader()
+  {
+    printer.println("ISO-10303-21;");
+    printer.println("HEADER;");
+    printer.println("FILE_DESCRIPTION(('ViewDefinition [CoordinationView]')," +
+      "'2;1');");
+    printer.println("FILE_NAME('synthetic.ifc','',(''),(''),'" +
+      "BIMROCKET IfcModelGenerator','','');");
+    printer.println("FILE_SCHEMA(('" + schema.getName() + "'));");
+    printer.println("ENDSEC;");
+    printer.println();
+    printer.println("DATA;");
+  }
+
+  protected void printFooter()
+  {
+    printer.println("ENDSEC;");
+    printer.println("END-ISO-10303-21;");
+  }
+
+  protected int writeOwnerHistory()
+  {
+    int person = new Instance("IfcPerson")
+      .set("FamilyName", "Generator")
+      .write();
+
+    int organization = new Instance("IfcOrganization")
+      .set("Name", "BIMROCKET")
+      .write();
+
+    int personAndOrganization = new Instance("IfcPersonAndOrganization")
+      .set("ThePerson", ref(person))
+      .set("TheOrganization", ref(organization))
+      .write();
+
+    int application = new Instance("IfcApplication")
+      .set("ApplicationDeveloper", ref(organization))
+      .set("Version", "1.0")
+      .set("ApplicationFullName", "BIMROCKET IfcModelGenerator")
+      .set("ApplicationIdentifier", "IfcModelGenerator")
+      .write();
+
+    return new Instance("IfcOwnerHistory")
+      .set("OwningUser", ref(personAndOrganization))
+      .set("OwningApplication", ref(application))
+      .set("ChangeAction", new ExpressConstant("NOCHANGE"))
+      .set("CreationDate", 0)
+      .write();
+  }
+
+  protected int writeContext()
+  {
+    int origin = writeAxisPlacement(0, 0, 0);
+
+    return new Instance("IfcGeometricRepresentationContext")
+      .set("ContextType", "Model")
+      .set("CoordinateSpaceDimension", 3)
+      .set("Precision", 0.00001)
+      .set("WorldCoordinateSystem", ref(origin))
+      .write();
+  }
+
+  protected int writeUnits()
+  {
+    int lengthUnit = new Instance("IfcSIUnit")
+      .set("Dimensions", DERIVED)
+      .set("UnitType", new ExpressConstant("LENGTHUNIT"))
+      .set("Name", new ExpressConstant("METRE"))
+      .write();
+
+    return new Instance("IfcUnitAssignment")
+      .set("Units", List.of(ref(lengthUnit)))
+      .write();
+  }
+
+  protected int writeSpatialElement(String typeName, String name,
+    int placement, int ownerHistory)
+  {
+    return new Instance(typeName)
+      .set("GlobalId", nextGlobalId())
+      .set("OwnerHistory", ref(ownerHistory))
+      .set("Name", name)
+      .set("ObjectPlacement", ref(placement))
+      .set("CompositionType", new ExpressConstant("ELEMENT"))
+      .write();
+  }
+
+  protected void writeAggregation(int relating, int related,
+    int ownerHistory)
+  {
+    new Instance("IfcRelAggregates")
+      .set("GlobalId", nextGlobalId())
+      .set("OwnerHistory", ref(ownerHistory))
+      .set("RelatingObject", ref(relating))
+      .set("RelatedObjects", List.of(ref(related)))
+      .write();
+  }
+
+  /**
+   * Writes an element with its representation and property set.
+   *
+   * @param index the element index.
+   * @param placement the tag of the local placement of the element.
+   * @param context the tag of the representation context.
+   * @param ownerHistory the tag of the owner history.
+   * @return the tag of the element.
+   */
+  protected int writeElement(int index, int placement, int context,
+    int ownerHistory)
+  {
+    List<Object> points = new ArrayList<>(pointsPerPolyline);
+    for (int i = 0; i < pointsPerPolyline; i++)
+    {
+      points.add(ref(writePoint(
+        random.nextInt(1000) / 100.0,
+        random.nextInt(1000) / 100.0,
+        0)));
+    }
+
+    int polyline = new Instance("IfcPolyline")
+      .set("Points", points)
+      .write();
+
+    int shapeRepresentation = new Instance("IfcShapeRepresentation")
+      .set("ContextOfItems", ref(context))
+      .set("RepresentationIdentifier", "Axis")
+      .set("RepresentationType", "Curve3D")
+      .set("Items", List.of(ref(polyline)))
+      .write();
+
+    int productShape = new Instance("IfcProductDefinitionShape")
+      .set("Representations", List.of(ref(shapeRepresentation)))
+      .write();
+
+    int element = new Instance("IfcBuildingElementProxy")
+      .set("GlobalId", nextGlobalId())
+      .set("OwnerHistory", ref(ownerHistory))
+      .set("Name", "Element " + index)
+      .set("ObjectPlacement", ref(placement))
+      .set("Representation", ref(productShape))
+      .write();
+
+    List<Object> properties = new ArrayList<>(propertiesPerSet);
+    for (int i = 0; i < propertiesPerSet; i++)
+    {
+      Object value = i % 2 == 0 ?
+        new TypedValue("IfcLabel", "Value " + random.nextInt(1000)) :
+        new TypedValue("IfcReal", random.nextInt(100000) / 100.0);
+
+      properties.add(ref(new Instance("IfcPropertySingleValue")
+        .set("Name", "Property" + i)
+        .set("NominalValue", value)
+        .write()));
+    }
+
+    int propertySet = new Instance("IfcPropertySet")
+      .set("GlobalId", nextGlobalId())
+      .set("OwnerHistory", ref(ownerHistory))
+      .set("Name", "Pset_Synthetic")
+      .set("HasProperties", properties)
+      .write();
+
+    new Instance("IfcRelDefinesByProperties")
+      .set("GlobalId", nextGlobalId())
+      .set("OwnerHistory", ref(ownerHistory))
+      .set("RelatedObjects", List.of(ref(element)))
+      .set("RelatingPropertyDefinition", ref(propertySet))
+      .write();
+
+    return element;
+  }
+
+  protected int writePlacement(Integer relativeTo, double x, double y,
+    double z)
+  {
+    int axisPlacement = writeAxisPlacement(x, y, z);
+
+    return new Instance("IfcLocalPlacement")
+      .set("PlacementRelTo", relativeTo == null ? null : ref(relativeTo))
+      .set("RelativePlacement", ref(axisPlacement))
+      .write();
+  }
+
+  protected int writeAxisPlacement(double x, double y, double z)
+  {
+    return new Instance("IfcAxis2Placement3D")
+      .set("Location", ref(writePoint(x, y, z)))
+      .write();
+  }
+
+  protected int writePoint(double x, double y, double z)
+  {
+    return new Instance("IfcCartesianPoint")
+      .set("Coordinates", List.of(x, y, z))
+      .write();
+  }
+
+  protected String nextGlobalId()
+  {
+    char[] chars = new char[22];
+    long number = ++globalIdCount;
+    for (int i = chars.length - 1; i >= 0; i--)
+    {
+      chars[i] = GLOBAL_ID_CHARS.charAt((int)(number & 63));
+      number >>>= 6;
+    }
+    return new String(chars);
+  }
+
+  protected static Reference ref(int tag)
+  {
+    return new Reference(tag);
+  }
+
+  protected void printValue(Object value)
+  {
+    if (value == null)
+    {
+      printer.print("$");
+    }
+    else if (value == DERIVED)
+    {
+      printer.print("*");
+    }
+    else if (value instanceof Reference reference)
+    {
+      printer.print("#");
+      printer.print(reference.tag);
+    }
+    else if (value instanceof String text)
+    {
+      printer.print("'");
+      printer.print(encodeString(text));
+      printer.print("'");
+    }
+    else if (value instanceof Double number)
+    {
+      printer.print(number.doubleValue());
+    }
+    else if (value instanceof Number number)
+    {
+      printer.print(number.longValue());
+    }
+    else if (value instanceof ExpressConstant constant)
+    {
+      printer.print(".");
+      printer.print(constant);
+      printer.print(".");
+    }
+    else if (value instanceof TypedValue typedValue)
+    {
+      printer.print(typedValue.typeName.toUpperCase());
+      printer.print("(");
+      printValue(typedValue.value);
+      printer.print(")");
+    }
+    else if (value instanceof List<?> list)
+    {
+      printer.print("(");
+      for (int i = 0; i < list.size(); i++)
+      {
+        if (i > 0) printer.print(",");
+        printValue(list.get(i));
+      }
+      printer.print(")");
+    }
+    else throw new RuntimeException("Unsupported value: " + value);
+  }
+
+  protected String encodeString(String text)
+  {
+    StringBuilder buffer = new StringBuilder();
+    for (int i = 0; i < text.length(); i++)
+    {
+      char ch = text.charAt(i);
+      if (ch == '\'')
+      {
+        buffer.append("''");
+      }
+      else if (ch == '\\')
+      {
+        buffer.append("\\\\");
+      }
+      else if (ch < 32 || ch >= 128)
+      {
+        buffer.append("\\X2\\").
+          append(String.format("%04X", (int)ch)).
+          append("\\X0\\");
+      }
+      else
+      {
+        buffer.append(ch);
+      }
+    }
+    return buffer.toString();
+  }
+
+  /**
+   * An instance being written. The attributes are validated against the
+   * entity definition of the schema.
+   */
+  protected class Instance
+  {
+    final ExpressEntity entity;
+    final List<ExpressAttribute> attributes;
+    final Object[] values;
+
+    Instance(String typeName)
+    {
+      if (!(schema.getNamedType(typeName) instanceof ExpressEntity anEntity))
+        throw new RuntimeException("Entity " + typeName +
+          " not found in schema " + schema.getName());
+
+      entity = anEntity;
+      attributes = entity.getAllAttributes();
+      values = new Object[attributes.size()];
+    }
+
+    /**
+     * Sets the value of an attribute. Attributes that are not defined for
+     * this entity in the schema (because they were introduced or removed
+     * in another IFC version) are ignored.
+     *
+     * @param name the attribute name.
+     * @param value the attribute value.
+     * @return this instance.
+     */
+    Instance set(String name, Object value)
+    {
+      int index = entity.getAttributeIndex(name);
+      if (index != -1)
+      {
+        if (value instanceof TypedValue typedValue &&
+            !schema.isDefinedType(typedValue.typeName))
+          throw new RuntimeException("Defined type " + typedValue.typeName +
+            " not found in schema " + schema.getName());
+
+        values[index] = value;
+      }
+      return this;
+    }
+
+    int write()
+    {
+      for (int i = 0; i < values.length; i++)
+      {
+        ExpressAttribute attribute = attributes.get(i);
+        if (values[i] == null && !attribute.isOptional())
+          throw new RuntimeException("Mandatory attribute " +
+            entity.getTypeName() + "." + attribute.getName() +
+            " has no value");
+      }
+
+      int tag = ++tagCount;
+      printer.print("#");
+      printer.print(tag);
+      printer.print("= ");
+      printer.print(entity.getTypeName().toUpperCase());
+      printer.print("(");
+      for (int i = 0; i < values.length; i++)
+      {
+        if (i > 0) printer.print(",");
+        printValue(values[i]);
+      }
+      printer.println(");");
+      return tag;
+    }
+  }
+
+  protected record Reference(int tag)
+  {
+  }
+
+  protected record TypedValue(String typeName, Object value)
+  {
+  }
+
+  public static void main(String[] args) throws IOException
+  {
+    if (args.length < 2)
+    {
+      System.out.println("Arguments: schemaFile outputFile " +
+        "[-n:instanceCount] [-points:pointsPerPolyline] " +
+        "[-properties:propertiesPerSet] [-storey:elementsPerStorey] " +
+        "[-chain:placementChainLength] [-seed:seed]");
+    }
+    else
+    {
+      IfcModelGenerator generator = new IfcModelGenerator();
+
+      String schemaFileName = null;
+      File outputFile = null;
+
+      for (String arg : args)
+      {
+        if (arg.startsWith("-n:"))
+        {
+          generator.setInstanceCount(Long.parseLong(arg.substring(3)));
+        }
+        else if (arg.startsWith("-points:"))
+        {
+          generator.setPointsPerPolyline(Integer.parseInt(arg.substring(8)));
+        }
+        else if (arg.startsWith("-properties:"))
+        {
+          generator.setPropertiesPerSet(Integer.parseInt(arg.substring(12)));
+        }
+        else if (arg.startsWith("-storey:"))
+        {
+          generator.setElementsPerStorey(Integer.parseInt(arg.substring(8)));
+        }
+        else if (arg.startsWith("-chain:"))
+        {
+          generator.setPlacementChainLength(
+            Integer.parseInt(arg.substring(7)));
+        }
+        else if (arg.startsWith("-seed:"))
+        {
+          generator.setSeed(Long.parseLong(arg.substring(6)));
+        }
+        else if (schemaFileName == null)
+        {
+          schemaFileName = arg;
+        }
+        else if (outputFile == null)
+        {
+          outputFile = new File(arg);
+        }
+      }
+      if (schemaFileName != null && outputFile != null)
+      {
+        generator.generateModel(schemaFileName, outputFile);
+      }
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+
+package org.bimrocket.step.io;
+
+import java.io.IOException;
+import org.bimrocket.express.data.ExpressCursor;
+
+/**
+ * Receives the entities of a STEP file as soon as they are completely
+ * loaded, that is, when the entity and all the entities it references,
+ * directly or indirectly, have been read and all their references are
+ * resolved. The entities are notified in dependency order: an entity is
+ * always notified after the entities it references, except for the
+ * entities that form reference cycles, that are notified at the end.
+ *
+ * @author realor
+ */
+@FunctionalInterface
+public interface StepEntityListener
+{
+  /**
+   * Called when an entity is completely loaded.
+   *
+   * @param index the position of the entity in the root of the data.
+   * @param cursor a cursor positioned on the entity, only valid during
+   * this call.
+   * @throws IOException to stop the load.
+   */
+  void entityLoaded(int index, ExpressCursor cursor) throws IOException;
+}
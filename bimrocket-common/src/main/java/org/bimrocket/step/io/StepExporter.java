@@ -39,9 +39,11 @@ import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Predicate;
 import org.bimrocket.express.ExpressAttribute;
 import org.bimrocket.express.ExpressCollection;
 import org.bimrocket.express.ExpressConstant;
@@ -74,6 +76,7 @@ public class StepExporter
   protected int tagCount;
   protected PrintWriter printer;
   protected boolean backwardReferences;
+  protected Predicate<String> referenceFilter;
 
   public StepExporter(ExpressData data)
   {
@@ -106,6 +109,24 @@ public class StepExporter
     this.backwardReferences = backwardReferences;
   }
 
+  public Predicate<String> getReferenceFilter()
+  {
+    return referenceFilter;
+  }
+
+  /**
+   * Sets the filter of the entities referenced from collections. The
+   * references to the entities whose id is rejected by the filter are
+   * removed from the collections, so a subset of the entities can be
+   * exported with export(Writer, Iterator) without dangling references.
+   *
+   * @param referenceFilter the filter or null to export all the references.
+   */
+  public void setReferenceFilter(Predicate<String> referenceFilter)
+  {
+    this.referenceFilter = referenceFilter;
+  }
+
   public void export(String filename) throws IOException
   {
     export(new File(filename));
@@ -122,23 +143,48 @@ public class StepExporter
 
   public void export(Writer writer)
   {
-    tagCount = 0;
-    entityTags.clear();
-    entityList.clear();
+    prepareExport();
 
-    StepFileSchema fileSchema = headerData.getFileSchema();
-    if (!fileSchema.getSchemas().contains(schema.getName()))
+    registerEntities(data.getRoot());
+
+    printer = new PrintWriter(writer);
+    try
     {
-      fileSchema.getSchemas().add(schema.getName());
+      printHeader();
+      printData();
+      printFooter();
+    }
+    finally
+    {
+      printer.close();
     }
+  }
 
-    registerEntities(data.getRoot());
+  /**
+   * Exports the entities in the order they are returned by the given
+   * iterator, without registering them first, so they do not need to be
+   * kept in memory. Tags are assigned the first time an entity is printed
+   * or referenced, so the entities referenced by the exported ones must
+   * also be returned by the iterator, before or after them.
+   *
+   * @param writer the writer to export to.
+   * @param entities the cursors of the entities to export.
+   */
+  public void export(Writer writer, Iterator<ExpressCursor> entities)
+  {
+    prepareExport();
 
     printer = new PrintWriter(writer);
     try
     {
       printHeader();
-      printData();
+      while (entities.hasNext())
+      {
+        ExpressCursor entityCursor = entities.next();
+        printer.print("#" + getEntityTag(entityCursor.getId()) + "= ");
+        exportEntity(entityCursor);
+        printer.println(";");
+      }
       printFooter();
     }
     finally
@@ -147,6 +193,32 @@ public class StepExporter
     }
   }
 
+  protected void prepareExport()
+  {
+    tagCount = 0;
+    entityTags.clear();
+    entityList.clear();
+
+    StepFileSchema fileSchema = headerData.getFileSchema();
+    if (!fileSchema.getSchemas().contains(schema.getName()))
+    {
+      fileSchema.getSchemas().add(schema.getName());
+    }
+  }
+
+  protected int getEntityTag(String id)
+  {
+    if (id == null) throw new RuntimeException("Entity id is null");
+
+    Integer tag = entityTags.get(id);
+    if (tag == null)
+    {
+      tag = ++tagCount;
+      entityTags.put(id, tag);
+    }
+    return tag;
+  }
+
   protected void printHeader()
   {
     printer.println("ISO-10303-21;");
@@ -273,20 +345,47 @@ public class StepExporter
     {
       printer.print("(");
       ExpressType expectedType = colType.getItemType();
+      int count = 0;
       for (int index = 0; index < cursor.size(); index++)
       {
-        exportItem(cursor, index, expectedType);
+        if (!isReferenceAccepted(cursor, index)) continue;
+
+        if (count++ > 0) printer.print(",");
+        exportValue(cursor, index, expectedType);
       }
       printer.print(")");
     }
     else throw new RuntimeException("Not a collection");
   }
 
+  protected boolean isReferenceAccepted(ExpressCursor cursor, int index)
+  {
+    if (referenceFilter == null || !CONTAINER.equals(cursor.get(index)))
+      return true;
+
+    cursor.enter(index);
+    try
+    {
+      return !(cursor.getType() instanceof ExpressEntity) ||
+        referenceFilter.test(cursor.getId());
+    }
+    finally
+    {
+      cursor.exit();
+    }
+  }
+
   protected void exportItem(ExpressCursor cursor, int index,
     ExpressType expectedType)
   {
     if (index > 0) printer.print(",");
 
+    exportValue(cursor, index, expectedType);
+  }
+
+  protected void exportValue(ExpressCursor cursor, int index,
+    ExpressType expectedType)
+  {
     Object value = cursor.get(index);
 
     if (CONTAINER.equals(value))
@@ -296,9 +395,7 @@ public class StepExporter
 
       if (type instanceof ExpressEntity)
       {
-        String id = cursor.getId();
-        Integer tag = entityTags.get(id);
-        printer.print("#" + tag);
+        printer.print("#" + getEntityTag(cursor.getId()));
       }
       else if (type instanceof ExpressDefinedType)
       {
@@ -37,6 +37,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -62,6 +63,8 @@ public class StepLoader
   protected ExpressData data;
   protected StepFileHeaderData headerData = new StepFileHeaderData();
   protected ExpressData currentData;
+  protected StepEntityListener entityListener;
+  protected Map<String, PendingEntity> pendingEntities;
 
   public StepLoader()
   {
@@ -82,6 +85,23 @@ public class StepLoader
     return headerData;
   }
 
+  public StepEntityListener getEntityListener()
+  {
+    return entityListener;
+  }
+
+  /**
+   * Sets a listener that receives the entities as soon as they are
+   * completely loaded, to process them while the rest of the file is
+   * still being read.
+   *
+   * @param entityListener the listener or null.
+   */
+  public void setEntityListener(StepEntityListener entityListener)
+  {
+    this.entityListener = entityListener;
+  }
+
   public void load(String filename) throws IOException
   {
     load(new File(filename));
@@ -107,6 +127,8 @@ public class StepLoader
     Map<String, ArrayList<Reference>> forwardRefMap = new HashMap<>();
     Stack<Integer> indexStack = new Stack<>();
     int index = 0;
+    PendingEntity currentEntity = null;
+    pendingEntities = entityListener == null ? null : new HashMap<>();
 
     try (reader)
     {
@@ -165,9 +187,17 @@ public class StepLoader
           if (indexStack.isEmpty()) // start line
           {
             currentTag = tag;
+            if (pendingEntities != null)
+            {
+              currentEntity = getPendingEntity(tag);
+            }
           }
           else if (cursor != null)
           {
+            if (currentEntity != null)
+            {
+              addDependency(currentEntity, tag, backwardRefMap);
+            }
             Integer tagIndex = backwardRefMap.get(tag);
             if (tagIndex == null) // forward reference
             {
@@ -204,6 +234,15 @@ public class StepLoader
               }
               rootCursor.exit();
             }
+            if (currentEntity != null)
+            {
+              currentEntity.index = rootCursor.size() - 1;
+              if (currentEntity.dependencies == 0)
+              {
+                notifyLoaded(currentEntity);
+              }
+              currentEntity = null;
+            }
           }
         }
         else if (cursor != null)
@@ -227,6 +266,14 @@ public class StepLoader
         }
         token = lexer.readToken();
       }
+      if (pendingEntities != null)
+      {
+        notifyPendingEntities();
+      }
+    }
+    finally
+    {
+      pendingEntities = null;
     }
   }
 
@@ -258,6 +305,97 @@ public class StepLoader
     return new GenericData(schema);
   }
 
+  protected PendingEntity getPendingEntity(String tag)
+  {
+    PendingEntity entity = pendingEntities.get(tag);
+    if (entity == null)
+    {
+      entity = new PendingEntity(tag);
+      pendingEntities.put(tag, entity);
+    }
+    return entity;
+  }
+
+  protected void addDependency(PendingEntity entity, String tag,
+    Map<String, Integer> backwardRefMap)
+  {
+    PendingEntity dependency = pendingEntities.get(tag);
+    if (dependency == null && !backwardRefMap.containsKey(tag))
+    {
+      // forward reference
+      dependency = getPendingEntity(tag);
+    }
+
+    if (dependency != null) // not completely loaded yet
+    {
+      entity.dependencies++;
+      if (dependency.dependents == null)
+      {
+        dependency.dependents = new ArrayList<>();
+      }
+      dependency.dependents.add(entity);
+    }
+  }
+
+  protected void notifyLoaded(PendingEntity entity) throws IOException
+  {
+    ExpressCursor rootCursor = data.getRoot();
+    ArrayDeque<PendingEntity> loaded = new ArrayDeque<>();
+    loaded.push(entity);
+    while (!loaded.isEmpty())
+    {
+      entity = loaded.pop();
+      pendingEntities.remove(entity.tag);
+
+      rootCursor.enter(entity.index);
+      entityListener.entityLoaded(entity.index, rootCursor);
+      rootCursor.exit();
+
+      if (entity.dependents != null)
+      {
+        for (PendingEntity dependent : entity.dependents)
+        {
+          if (--dependent.dependencies == 0 && dependent.index != -1)
+          {
+            loaded.push(dependent);
+          }
+        }
+      }
+    }
+  }
+
+  protected void notifyPendingEntities() throws IOException
+  {
+    // entities in reference cycles or with references to undefined tags
+    ExpressCursor rootCursor = data.getRoot();
+    int[] indices = pendingEntities.values().stream()
+      .filter(entity -> entity.index != -1)
+      .mapToInt(entity -> entity.index)
+      .sorted()
+      .toArray();
+    pendingEntities.clear();
+
+    for (int index : indices)
+    {
+      rootCursor.enter(index);
+      entityListener.entityLoaded(index, rootCursor);
+      rootCursor.exit();
+    }
+  }
+
+  protected static class PendingEntity
+  {
+    final String tag;
+    int index = -1; // index in root, -1 while not read
+    int dependencies; // number of references to entities not loaded yet
+    List<PendingEntity> dependents;
+
+    PendingEntity(String tag)
+    {
+      this.tag = tag;
+    }
+  }
+
   static class Reference
   {
     ExpressCursor cursor;
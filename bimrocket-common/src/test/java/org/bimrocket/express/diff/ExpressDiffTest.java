@@ -0,0 +1,239 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.express.diff;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.data.ExpressCursor;
+import static org.bimrocket.express.data.ExpressCursor.CONTAINER;
+import org.bimrocket.express.data.GenericData;
+import org.bimrocket.express.io.ExpressLoader;
+import org.bimrocket.generators.IfcModelGenerator;
+import org.bimrocket.step.io.StepLoader;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ *
+ * @author realor
+ */
+public class ExpressDiffTest
+{
+  static ExpressSchema schema;
+  static String model;
+
+  @BeforeAll
+  static void generateModel() throws Exception
+  {
+    schema = new ExpressLoader().load("schema:IFC4");
+
+    IfcModelGenerator generator = new IfcModelGenerator();
+    generator.setInstanceCount(1000);
+    StringWriter writer = new StringWriter();
+    generator.generateModel(schema, writer);
+    model = writer.toString();
+  }
+
+  GenericData load() throws Exception
+  {
+    GenericData data = new GenericData(schema);
+    new StepLoader(data).load(new StringReader(model));
+    return data;
+  }
+
+  ExpressCursor find(GenericData data, String typeName, int skip)
+  {
+    ExpressCursor root = data.getRoot();
+    for (int i = 0; i < root.size(); i++)
+    {
+      if (CONTAINER.equals(root.get(i)))
+      {
+        ExpressCursor cursor = root.copy().enter(i);
+        if (cursor.getType().getTypeName().equalsIgnoreCase(typeName) &&
+            skip-- == 0) return cursor;
+      }
+    }
+    return null;
+  }
+
+  List<ExpressChange> compare(GenericData oldData, GenericData newData)
+  {
+    List<ExpressChange> changes = new ArrayList<>();
+    new ExpressDiff(oldData, newData).compare(changes::add);
+    return changes;
+  }
+
+  @Test
+  void sameModel() throws Exception
+  {
+    List<ExpressChange> changes = compare(load(), load());
+    assertTrue(changes.isEmpty(), () -> "Unexpected changes: " + changes);
+  }
+
+  @Test
+  void modifiedRootEntity() throws Exception
+  {
+    GenericData oldData = load();
+    GenericData newData = load();
+    ExpressCursor element = find(newData, "IfcBuildingElementProxy", 3);
+    element.set("Name", "Renamed");
+
+    List<ExpressChange> changes = compare(oldData, newData);
+    assertEquals(1, changes.size());
+    assertTrue(changes.get(0).isModify());
+    assertEquals(element.get("GlobalId"), changes.get(0).getKey());
+  }
+
+  @Test
+  void addedAndDeletedEntities() throws Exception
+  {
+    GenericData oldData = load();
+    GenericData newData = load();
+
+    // the modified point is deleted and added, the entities that
+    // reference it are modified (rooted) or deleted and added.
+    ExpressCursor point = find(newData, "IfcCartesianPoint", 10);
+    point.enter("Coordinates").set(0, 1234.5).exit();
+
+    newData.getRoot().create("IfcPerson").set("FamilyName", "New").exit();
+
+    ExpressDiff diff = new ExpressDiff(oldData, newData);
+    List<ExpressChange> changes = new ArrayList<>();
+    diff.compare(changes::add);
+
+    assertTrue(diff.getAddCount() >= 2);
+    assertTrue(diff.getDeleteCount() >= 1);
+    assertEquals(diff.getAddCount() - 1, diff.getDeleteCount());
+    assertTrue(changes.stream().anyMatch(change -> change.isAdd() &&
+      change.getKey().startsWith("IfcPerson#")));
+  }
+
+  @Test
+  void unchangedEntities() throws Exception
+  {
+    GenericData oldData = load();
+    GenericData newData = load();
+    ExpressCursor point = find(newData, "IfcCartesianPoint", 10);
+    point.enter("Coordinates").set(0, 1234.5).exit();
+
+    ExpressDiff diff = new ExpressDiff(oldData, newData);
+    diff.setHashRootReferences(true);
+    diff.setReportUnchanged(true);
+    List<ExpressChange> changes = new ArrayList<>();
+    diff.compare(changes::add);
+
+    long unchangedCount = changes.stream()
+      .filter(ExpressChange::isUnchanged).count();
+    assertTrue(unchangedCount > 0);
+    assertEquals(diff.getChangeCount() + unchangedCount, changes.size());
+    assertEquals(newData.getRoot().size(),
+      unchangedCount + diff.getAddCount() + diff.getModifyCount());
+  }
+
+  @Test
+  void hashCollision() throws Exception
+  {
+    GenericData oldData = load();
+    GenericData newData = load();
+    ExpressCursor point = find(newData, "IfcCartesianPoint", 10);
+    point.enter("Coordinates").set(0, 1234.5).exit();
+
+    // all the points get the same hash
+    ExpressDiff diff = new ExpressDiff(oldData, newData)
+    {
+      @Override
+      protected long getEntityHash(ExpressCursor cursor, Hashes hashes)
+      {
+        return "IfcCartesianPoint".equals(cursor.getType().getTypeName()) ?
+          0 : super.getEntityHash(cursor, hashes);
+      }
+    };
+    diff.setHashRootReferences(true);
+    diff.setReportUnchanged(true);
+    List<ExpressChange> changes = new ArrayList<>();
+    diff.compare(changes::add);
+
+    // the modified point is not taken as unchanged
+    assertTrue(changes.stream().anyMatch(change -> change.isAdd() &&
+      change.getNewCursor().get("Coordinates") != null &&
+      change.getNewCursor().copy().enter("Coordinates").get(0)
+        .equals(1234.5)));
+    assertTrue(changes.stream().noneMatch(change -> change.isUnchanged() &&
+      change.getNewCursor().getId().equals(point.getId())));
+  }
+
+  @Test
+  void referenceCycle() throws Exception
+  {
+    GenericData oldData = loadData(
+      "#1=IFCCARTESIANPOINT((0.,0.,0.));",
+      "#2=IFCAXIS2PLACEMENT3D(#1,$,$);",
+      "#3=IFCREPRESENTATIONMAP(#2,#4);",
+      "#4=IFCSHAPEREPRESENTATION($,'Body','MappedRepresentation',(#5));",
+      "#5=IFCMAPPEDITEM(#3,#6);",
+      "#6=IFCCARTESIANTRANSFORMATIONOPERATOR3D($,$,#1,$,$);");
+
+    // the same entities, visited in other order
+    GenericData newData = loadData(
+      "#10=IFCMAPPEDITEM(#12,#13);",
+      "#11=IFCSHAPEREPRESENTATION($,'Body','MappedRepresentation',(#10));",
+      "#12=IFCREPRESENTATIONMAP(#14,#11);",
+      "#13=IFCCARTESIANTRANSFORMATIONOPERATOR3D($,$,#15,$,$);",
+      "#14=IFCAXIS2PLACEMENT3D(#15,$,$);",
+      "#15=IFCCARTESIANPOINT((0.,0.,0.));");
+
+    List<ExpressChange> changes = compare(oldData, newData);
+    assertTrue(changes.isEmpty(), () -> "Unexpected changes: " + changes);
+
+    // a change in the cycle is found
+    find(newData, "IfcShapeRepresentation", 0).set("RepresentationIdentifier",
+      "Axis");
+    assertEquals(3, compare(oldData, newData).stream()
+      .filter(ExpressChange::isAdd).count());
+  }
+
+  GenericData loadData(String... lines) throws Exception
+  {
+    String step = "ISO-10303-21;\nHEADER;\n" +
+      "FILE_DESCRIPTION((''),'2;1');\n" +
+      "FILE_NAME('','',(''),(''),'','','');\n" +
+      "FILE_SCHEMA(('IFC4'));\nENDSEC;\nDATA;\n" +
+      String.join("\n", lines) + "\nENDSEC;\nEND-ISO-10303-21;\n";
+    GenericData data = new GenericData(schema);
+    new StepLoader(data).load(new StringReader(step));
+    return data;
+  }
+}
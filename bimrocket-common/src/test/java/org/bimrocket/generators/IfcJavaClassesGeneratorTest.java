@@ -0,0 +1,132 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.generators;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.data.ExpressCursor;
+import static org.bimrocket.express.data.ExpressCursor.CONTAINER;
+import org.bimrocket.express.data.GenericData;
+import org.bimrocket.express.io.ExpressLoader;
+import org.bimrocket.step.io.StepLoader;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author realor
+ */
+public class IfcJavaClassesGeneratorTest
+{
+  @TempDir
+  Path outputDir;
+
+  @Test
+  void generateEntityViews() throws Exception
+  {
+    IfcJavaClassesGenerator generator = new IfcJavaClassesGenerator();
+    generator.setPackageName("test.ifc4");
+    generator.setEntityViews(true);
+    generator.generateClasses("schema:IFC4", outputDir.toFile());
+
+    List<String> sources = new ArrayList<>();
+    try (Stream<Path> paths = Files.walk(outputDir))
+    {
+      paths.filter(path -> path.toString().endsWith(".java"))
+        .forEach(path -> sources.add(path.toString()));
+    }
+
+    List<String> options = new ArrayList<>(List.of(
+      "-classpath", System.getProperty("java.class.path"),
+      "-d", outputDir.toString(), "-nowarn", "-proc:none"));
+    options.addAll(sources);
+
+    JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    int result = compiler.run(null, null, null, options.toArray(String[]::new));
+    assertEquals(0, result);
+
+    // read a point of a generated model through its view class
+
+    ExpressSchema schema = new ExpressLoader().load("schema:IFC4");
+    IfcModelGenerator modelGenerator = new IfcModelGenerator();
+    modelGenerator.setInstanceCount(100);
+    StringWriter writer = new StringWriter();
+    modelGenerator.generateModel(schema, writer);
+
+    GenericData data = new GenericData(schema);
+    new StepLoader(data).load(new StringReader(writer.toString()));
+
+    ExpressCursor cursor = findEntity(data, "IfcCartesianPoint");
+    assertNotNull(cursor);
+
+    try (URLClassLoader classLoader = new URLClassLoader(
+         new URL[]{ outputDir.toUri().toURL() }, getClass().getClassLoader()))
+    {
+      Class<?> viewClass = classLoader.loadClass("test.ifc4.IfcCartesianPoint");
+      Constructor<?> constructor = viewClass.getConstructor(ExpressCursor.class);
+      Object point = constructor.newInstance(cursor);
+      Method method = viewClass.getMethod("getCoordinates", double[].class);
+      double[] coordinates = (double[])method.invoke(point, (Object)null);
+      assertArrayEquals(new double[]{ 0, 0, 0 }, coordinates);
+      assertEquals(0, viewClass.getField("COORDINATES").getInt(null));
+    }
+  }
+
+  private ExpressCursor findEntity(GenericData data, String typeName)
+  {
+    ExpressCursor root = data.getRoot();
+    for (int i = 0; i < root.size(); i++)
+    {
+      if (CONTAINER.equals(root.get(i)))
+      {
+        ExpressCursor cursor = root.copy().enter(i);
+        if (cursor.getType().getTypeName().equalsIgnoreCase(typeName))
+          return cursor;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.generators;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.data.GenericData;
+import org.bimrocket.express.io.ExpressLoader;
+import org.bimrocket.step.io.StepLoader;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ *
+ * @author realor
+ */
+public class IfcModelGeneratorTest
+{
+  @ParameterizedTest
+  @ValueSource(strings = {"IFC2X3", "IFC4", "IFC4X3_ADD2"})
+  void generateAndLoad(String schemaName) throws Exception
+  {
+    ExpressLoader schemaLoader = new ExpressLoader();
+    ExpressSchema schema = schemaLoader.load("schema:" + schemaName);
+
+    IfcModelGenerator generator = new IfcModelGenerator();
+    generator.setInstanceCount(2000);
+    generator.setElementsPerStorey(20);
+    generator.setPlacementChainLength(5);
+
+    StringWriter writer = new StringWriter();
+    generator.generateModel(schema, writer);
+
+    GenericData data = new GenericData(schema);
+    StepLoader loader = new StepLoader(data);
+    loader.load(new StringReader(writer.toString()));
+
+    assertTrue(data.getRoot().size() >= 2000);
+  }
+}
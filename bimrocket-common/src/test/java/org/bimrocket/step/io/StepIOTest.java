@@ -33,16 +33,26 @@ package org.bimrocket.step.io;
 import java.io.File;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import org.bimrocket.express.ExpressEntity;
 import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.data.ExpressCursor;
+import static org.bimrocket.express.data.ExpressCursor.CONTAINER;
 import org.bimrocket.express.data.GenericData;
 import org.bimrocket.express.io.ExpressLoader;
 import org.bimrocket.util.Chronometer;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -89,6 +99,94 @@ public class StepIOTest
     });
   }
 
+  @Test
+  void entityListener() throws Exception
+  {
+    ExpressSchema schema = new ExpressLoader().load("schema:IFC4");
+    GenericData data = new GenericData(schema);
+
+    Set<Integer> loadedIndices = new HashSet<>();
+    Set<String> loadedIds = new HashSet<>();
+    Set<String> unloadedReferences = new HashSet<>();
+
+    var loader = new StepLoader(data);
+    loader.setEntityListener((index, cursor) ->
+    {
+      assertTrue(loadedIndices.add(index), "Entity notified twice");
+      loadedIds.add(cursor.getId());
+      collectUnloadedReferences(cursor, loadedIds, unloadedReferences);
+    });
+
+    URL url = getClass().getResource("/org/bimrocket/ifc/models/Sample.ifc");
+    try (Reader reader = Files.newBufferedReader(Paths.get(url.toURI()),
+         StandardCharsets.UTF_8))
+    {
+      loader.load(reader);
+    }
+
+    assertEquals(data.getRoot().size(), loadedIndices.size());
+    assertTrue(unloadedReferences.isEmpty(),
+      "Entities notified before their references: " + unloadedReferences);
+  }
+
+  @Test
+  void streamingExport() throws Exception
+  {
+    GenericData data = load("/org/bimrocket/ifc/models/Sample.ifc");
+
+    // export the entities in reverse order to produce forward references
+    ExpressCursor root = data.getRoot();
+    List<ExpressCursor> entities = new ArrayList<>();
+    for (int i = root.size() - 1; i >= 0; i--)
+    {
+      entities.add(root.copy().enter(i));
+    }
+
+    StringWriter writer = new StringWriter();
+    new StepExporter(data).export(writer, entities.iterator());
+
+    GenericData reloaded = new GenericData(data.getSchema());
+    new StepLoader(reloaded).load(new StringReader(writer.toString()));
+
+    assertEquals(root.size(), reloaded.getRoot().size());
+
+    StringWriter expected = new StringWriter();
+    new StepExporter(data).export(expected);
+    StringWriter actual = new StringWriter();
+    new StepExporter(reloaded).export(actual);
+    assertEquals(normalize(expected.toString()), normalize(actual.toString()));
+  }
+
+  List<String> normalize(String step)
+  {
+    // tags depend on the export order
+    return step.lines().map(line -> line.replaceAll("#[0-9]+", "#"))
+      .sorted().toList();
+  }
+
+  void collectUnloadedReferences(ExpressCursor cursor, Set<String> loadedIds,
+    Set<String> unloadedReferences)
+  {
+    for (int i = 0; i < cursor.size(); i++)
+    {
+      if (CONTAINER.equals(cursor.get(i)))
+      {
+        ExpressCursor child = cursor.copy().enter(i);
+        if (child.getType() instanceof ExpressEntity)
+        {
+          if (!loadedIds.contains(child.getId()))
+          {
+            unloadedReferences.add(child.getId());
+          }
+        }
+        else
+        {
+          collectUnloadedReferences(child, loadedIds, unloadedReferences);
+        }
+      }
+    }
+  }
+
   public static void main(String[] args)
   {
     try
@@ -37,6 +37,7 @@ import jakarta.inject.Inject;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
 import jakarta.ws.rs.GET;
+import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.POST;
 import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
@@ -50,13 +51,24 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 import org.apache.commons.io.IOUtils;
+import org.bimrocket.service.ifcdb.IfcdbFileCache;
 import org.bimrocket.service.ifcdb.IfcdbService;
 import static jakarta.ws.rs.core.MediaType.APPLICATION_JSON;
 import static jakarta.ws.rs.core.MediaType.TEXT_PLAIN;
+import static java.nio.file.StandardOpenOption.READ;
 import org.bimrocket.api.ApiResult;
 import org.bimrocket.dao.expression.Expression;
 import org.bimrocket.dao.expression.OrderByExpression;
@@ -118,20 +130,119 @@ public class IfcDatabaseEndpoint
     }
   }
 
+  @GET
+  @Path("/models/{schema}/{modelId}/elements")
+  @Produces(APPLICATION_JSON)
+  @Operation(summary = "Find the IFC model elements in a bounding box")
+  public List<IfcdbElement> findElements(
+    @PathParam("schema") String schemaName,
+    @PathParam("modelId") String modelId, @QueryParam("version") int version,
+    @QueryParam("bbox") String bbox)
+  {
+    try
+    {
+      return ifcDatabaseService.findElements(schemaName, modelId, version,
+        bbox);
+    }
+    catch (Exception ex)
+    {
+      throw createException(ex);
+    }
+  }
+
+  @GET
+  @Path("/models/{schema}/{modelId}/region")
+  @Produces({ APPLICATION_JSON, TEXT_PLAIN })
+  @Operation(summary = "Download the IFC model elements in a bounding box")
+  public Response downloadRegion(@PathParam("schema") String schemaName,
+    @PathParam("modelId") String modelId, @QueryParam("version") int version,
+    @QueryParam("bbox") String bbox)
+  {
+    try
+    {
+      File file = File.createTempFile("region", ".ifc");
+      try
+      {
+        ifcDatabaseService.exportElements(schemaName, modelId, version, bbox,
+          file);
+      }
+      catch (Exception ex)
+      {
+        file.delete();
+        throw ex;
+      }
+      return sendFile(file, "application/x-step");
+    }
+    catch (Exception ex)
+    {
+      throw createException(ex);
+    }
+  }
+
+  @GET
+  @Path("/models/{schema}/{modelId}/extract")
+  @Produces({ APPLICATION_JSON, TEXT_PLAIN })
+  @Operation(summary = "Download a part of an IFC model")
+  public Response extractModel(@PathParam("schema") String schemaName,
+    @PathParam("modelId") String modelId, @QueryParam("version") int version,
+    @QueryParam("globalIds") String globalIds,
+    @QueryParam("types") String types,
+    @QueryParam("storeys") String storeys)
+  {
+    try
+    {
+      File file = File.createTempFile("extract", ".ifc");
+      try
+      {
+        ifcDatabaseService.extractModel(schemaName, modelId, version,
+          splitList(globalIds), splitList(types), splitList(storeys), file);
+      }
+      catch (Exception ex)
+      {
+        file.delete();
+        throw ex;
+      }
+      return sendFile(file, "application/x-step");
+    }
+    catch (Exception ex)
+    {
+      throw createException(ex);
+    }
+  }
+
   @GET
   @Path("/models/{schema}/{modelId}")
   @Produces({ APPLICATION_JSON, TEXT_PLAIN })
   @Operation(summary = "Download IFC model")
   public Response downloadModel(@PathParam("schema") String schemaName,
-    @PathParam("modelId") String modelId, @QueryParam("version") int version)
+    @PathParam("modelId") String modelId, @QueryParam("version") int version,
+    @HeaderParam("If-None-Match") String ifNoneMatch,
+    @HeaderParam("Range") String range,
+    @HeaderParam("If-Range") String ifRange,
+    @HeaderParam("Accept-Encoding") String acceptEncoding)
   {
     try
     {
-      File ifcFile = File.createTempFile("file", ".ifc");
+      boolean gzip = ifcDatabaseService.isCompressedFiles() &&
+        acceptsGzip(acceptEncoding);
+
+      IfcdbFileCache.Entry entry =
+        ifcDatabaseService.getModelFile(schemaName, modelId, version);
 
-      ifcDatabaseService.downloadModel(schemaName, modelId, version, ifcFile);
+      String etag = "\"" + entry.getEtag() +
+        (gzip && entry.isCompressed() ? "-gz" : "") + "\"";
 
-      return sendFile(ifcFile, "application/x-step");
+      if (matchesEtag(ifNoneMatch, etag))
+      {
+        if (entry.isTemporary()) entry.getFile().delete();
+        return Response.notModified()
+          .header("ETag", etag)
+          .header("Cache-Control", "no-cache")
+          .header("Vary", "Accept-Encoding")
+          .build();
+      }
+
+      return sendModelFile(entry, etag, gzip, range, ifRange);
     }
     catch (Exception ex)
     {
@@ -162,6 +273,54 @@ public class IfcDatabaseEndpoint
     }
   }
 
+  @POST
+  @Path("/models/{schema}/uploads")
+  @Produces(APPLICATION_JSON)
+  @Operation(summary = "Upload IFC model in background")
+  public IfcdbUploadJob uploadModelAsync(@PathParam("schema") String schemaName,
+    InputStream input)
+  {
+    try
+    {
+      File ifcFile = File.createTempFile("file", ".ifc");
+      try (FileOutputStream output = new FileOutputStream(ifcFile))
+      {
+        IOUtils.copy(input, output);
+      }
+
+      try
+      {
+        return ifcDatabaseService.uploadModelAsync(schemaName, ifcFile);
+      }
+      catch (RuntimeException ex)
+      {
+        ifcFile.delete();
+        throw ex;
+      }
+    }
+    catch (Exception ex)
+    {
+      throw createException(ex);
+    }
+  }
+
+  @GET
+  @Path("/models/{schema}/uploads/{jobId}")
+  @Produces(APPLICATION_JSON)
+  @Operation(summary = "Get the status of a background upload")
+  public IfcdbUploadJob getUploadJob(@PathParam("schema") String schemaName,
+    @PathParam("jobId") String jobId)
+  {
+    try
+    {
+      return ifcDatabaseService.getUploadJob(jobId);
+    }
+    catch (Exception ex)
+    {
+      throw createException(ex);
+    }
+  }
+
   @PUT
   @Path("/models/{schema}")
   @Consumes(APPLICATION_JSON)
@@ -205,11 +364,32 @@ public class IfcDatabaseEndpoint
     {
       if ("json".equals(command.getOutputFormat()))
       {
-        File file = File.createTempFile("file", ".json");
+        // the results are written to the response while they are read
+        String token =
+          ifcDatabaseService.getContinuationToken(schemaName, command);
 
-        ifcDatabaseService.execute(schemaName, command, file);
+        // the errors found before the response is committed are mapped
+        // like the errors of the other endpoints
+        StreamingOutput stream = (OutputStream output) ->
+        {
+          try
+          {
+            ifcDatabaseService.execute(schemaName, command, output);
+          }
+          catch (RuntimeException ex)
+          {
+            throw createException(ex);
+          }
+        };
 
-        return sendFile(file, "application/json");
+        ResponseBuilder builder = Response.ok(stream)
+          .header("Content-Type", "application/json")
+          .header("Cache-Control", "no-store");
+        if (token != null)
+        {
+          builder.header("X-Continuation-Token", token);
+        }
+        return builder.build();
       }
       else
       {
@@ -230,21 +410,239 @@ public class IfcDatabaseEndpoint
 
   private Response sendFile(File file, String contentType)
   {
+    // the file is a temporary result, deleted once sent
     StreamingOutput stream = (OutputStream output) ->
     {
-      try (FileInputStream input = new FileInputStream(file))
+      try
       {
-        IOUtils.copy(input, output);
+        transferFile(file, 0, file.length(), output);
+      }
+      finally
+      {
+        file.delete();
       }
     };
     ResponseBuilder builder = Response.ok(stream);
 
     return builder.header("Content-Type", contentType)
       .header("Content-Length", file.length())
-      .lastModified(new Date())
+      .header("Cache-Control", "no-store")
+      .build();
+  }
+
+  private Response sendModelFile(IfcdbFileCache.Entry entry, String etag,
+    boolean gzip, String range, String ifRange)
+  {
+    File file = entry.getFile();
+    boolean temporary = entry.isTemporary();
+
+    if (entry.isCompressed() && !gzip)
+    {
+      // the client can not decode the stored file, send it uncompressed
+      StreamingOutput stream = (OutputStream output) ->
+      {
+        try (InputStream input =
+             new GZIPInputStream(new FileInputStream(file), 65536))
+        {
+          IOUtils.copy(input, output);
+        }
+        finally
+        {
+          if (temporary) file.delete();
+        }
+      };
+      return Response.ok(stream)
+        .header("Content-Type", "application/x-step")
+        .header("Accept-Ranges", "none")
+        .header("ETag", etag)
+        .header("Cache-Control", "no-cache")
+        .header("Vary", "Accept-Encoding")
+        .lastModified(new Date(entry.getLastModified()))
+        .build();
+    }
+
+    long length = entry.getLength();
+    long[] bounds = null;
+    if (isRangeValid(ifRange, etag, entry.getLastModified()))
+    {
+      bounds = parseRange(range, length);
+      if (bounds != null && bounds.length == 0)
+      {
+        if (temporary) file.delete();
+        return Response.status(416)
+          .header("Content-Range", "bytes */" + length)
+          .header("ETag", etag)
+          .build();
+      }
+    }
+
+    long start = bounds == null ? 0 : bounds[0];
+    long count = bounds == null ? length : bounds[1] - bounds[0] + 1;
+
+    StreamingOutput stream = (OutputStream output) ->
+    {
+      try
+      {
+        transferFile(file, start, count, output);
+      }
+      finally
+      {
+        if (temporary) file.delete();
+      }
+    };
+
+    ResponseBuilder builder = bounds == null ?
+      Response.ok(stream) : Response.status(206).entity(stream)
+        .header("Content-Range",
+          "bytes " + bounds[0] + "-" + bounds[1] + "/" + length);
+
+    if (entry.isCompressed())
+    {
+      builder.header("Content-Encoding", "gzip");
+    }
+
+    return builder.header("Content-Type", "application/x-step")
+      .header("Content-Length", count)
+      .header("Accept-Ranges", "bytes")
+      .header("ETag", etag)
+      .header("Cache-Control", "no-cache")
+      .header("Vary", "Accept-Encoding")
+      .lastModified(new Date(entry.getLastModified()))
       .build();
   }
 
+  /**
+   * Copies a part of a file with FileChannel.transferTo, that lets the
+   * operating system send the file without copying it to user buffers when
+   * the container output supports it.
+   */
+  private void transferFile(File file, long start, long count,
+    OutputStream output) throws IOException
+  {
+    try (FileChannel channel = FileChannel.open(file.toPath(), READ))
+    {
+      WritableByteChannel target = Channels.newChannel(output);
+      long position = start;
+      long remaining = count;
+      while (remaining > 0)
+      {
+        long transferred = channel.transferTo(position, remaining, target);
+        if (transferred <= 0) break; // end of file
+        position += transferred;
+        remaining -= transferred;
+      }
+    }
+  }
+
+  /**
+   * Checks the If-Range condition: the range is sent only if the client
+   * copy is still current. Weak tags never match.
+   */
+  private boolean isRangeValid(String ifRange, String etag, long lastModified)
+  {
+    if (ifRange == null) return true;
+
+    ifRange = ifRange.trim();
+    if (ifRange.startsWith("\"")) return ifRange.equals(etag);
+    if (ifRange.startsWith("W/")) return false;
+
+    try
+    {
+      long date = ZonedDateTime.parse(ifRange,
+        DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+      return date == lastModified / 1000;
+    }
+    catch (DateTimeParseException ex)
+    {
+      return false;
+    }
+  }
+
+  private boolean acceptsGzip(String acceptEncoding)
+  {
+    if (acceptEncoding == null) return false;
+
+    for (String coding : acceptEncoding.split(","))
+    {
+      String[] parts = coding.trim().split(";");
+      if (parts[0].trim().equalsIgnoreCase("gzip"))
+      {
+        return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+      }
+    }
+    return false;
+  }
+
+  private boolean matchesEtag(String ifNoneMatch, String etag)
+  {
+    if (ifNoneMatch == null) return false;
+
+    for (String tag : ifNoneMatch.split(","))
+    {
+      tag = tag.trim();
+      if (tag.startsWith("W/")) tag = tag.substring(2); // weak comparison
+      if (tag.equals("*") || tag.equals(etag)) return true;
+    }
+    return false;
+  }
+
+  /**
+   * Parses a single byte range.
+   *
+   * @param range the Range header.
+   * @param length the length of the file.
+   * @return the first and last positions of the range, null to send the
+   * whole file or an empty array if the range can not be satisfied.
+   */
+  private long[] parseRange(String range, long length)
+  {
+    if (range == null || !range.startsWith("bytes=")) return null;
+
+    String spec = range.substring(6).trim();
+    if (spec.contains(",")) return null; // multiple ranges are not supported
+
+    int index = spec.indexOf('-');
+    if (index == -1) return null;
+
+    try
+    {
+      String first = spec.substring(0, index).trim();
+      String last = spec.substring(index + 1).trim();
+      long start;
+      long end;
+      if (first.isEmpty()) // suffix range
+      {
+        if (last.isEmpty()) return null;
+        long suffix = Long.parseLong(last);
+        if (suffix == 0) return new long[0];
+        start = Math.max(0, length - suffix);
+        end = length - 1;
+      }
+      else
+      {
+        start = Long.parseLong(first);
+        end = last.isEmpty() ? length - 1 : Long.parseLong(last);
+        if (end < start) return null; // invalid range
+        end = Math.min(end, length - 1);
+      }
+      if (start >= length) return new long[0];
+
+      return new long[]{ start, end };
+    }
+    catch (NumberFormatException ex)
+    {
+      return null;
+    }
+  }
+
+  private List<String> splitList(String values)
+  {
+    if (values == null) return List.of();
+
+    return Arrays.stream(values.split(","))
+      .map(String::trim).filter(value -> !value.isEmpty()).toList();
+  }
+
   private RuntimeException createException(Exception ex)
   {
     String message = ex.getMessage();
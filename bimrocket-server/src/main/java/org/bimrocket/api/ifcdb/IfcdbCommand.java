@@ -30,6 +30,8 @@
  */
 package org.bimrocket.api.ifcdb;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 /**
  *
  * @author realor
@@ -39,6 +41,10 @@ public class IfcdbCommand
   String language;
   String query;
   String outputFormat;
+  int skip;
+  int limit;
+  @JsonProperty("continuation_token")
+  String continuationToken;
 
   public String getLanguage()
   {
@@ -69,4 +75,38 @@ public class IfcdbCommand
   {
     this.outputFormat = outputFormat;
   }
+
+  public int getSkip()
+  {
+    return skip;
+  }
+
+  public void setSkip(int skip)
+  {
+    this.skip = skip;
+  }
+
+  public int getLimit()
+  {
+    return limit;
+  }
+
+  public void setLimit(int limit)
+  {
+    this.limit = limit;
+  }
+
+  /**
+   * @return the token returned by the previous page of the same command,
+   * that replaces skip.
+   */
+  public String getContinuationToken()
+  {
+    return continuationToken;
+  }
+
+  public void setContinuationToken(String continuationToken)
+  {
+    this.continuationToken = continuationToken;
+  }
 }
@@ -0,0 +1,81 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.api.ifcdb;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ *
+ * @author realor
+ */
+public class IfcdbElement
+{
+  @JsonProperty("global_id")
+  private String globalId;
+
+  private String type;
+
+  private double[] bounds;
+
+  public String getGlobalId()
+  {
+    return globalId;
+  }
+
+  public void setGlobalId(String globalId)
+  {
+    this.globalId = globalId;
+  }
+
+  public String getType()
+  {
+    return type;
+  }
+
+  public void setType(String type)
+  {
+    this.type = type;
+  }
+
+  /**
+   * @return the axis-aligned bounds of the element in the model coordinate
+   * system: minX, minY, minZ, maxX, maxY, maxZ.
+   */
+  public double[] getBounds()
+  {
+    return bounds;
+  }
+
+  public void setBounds(double[] bounds)
+  {
+    this.bounds = bounds;
+  }
+}
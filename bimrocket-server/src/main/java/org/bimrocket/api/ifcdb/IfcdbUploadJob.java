@@ -0,0 +1,200 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.api.ifcdb;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * The state of an asynchronous model upload.
+ *
+ * @author realor
+ */
+@JsonInclude(Include.NON_NULL)
+public class IfcdbUploadJob
+{
+  public static final String QUEUED_STATUS = "queued";
+  public static final String RUNNING_STATUS = "running";
+  public static final String COMPLETED_STATUS = "completed";
+  public static final String FAILED_STATUS = "failed";
+
+  public static final String PARSE_PHASE = "parse";
+  public static final String VERSION_PHASE = "version";
+  public static final String SAVE_PHASE = "save";
+
+  private String id;
+  private String schema;
+  private volatile String status;
+  private volatile String phase;
+  private volatile int progress;
+  @JsonProperty("model_id")
+  private volatile String modelId;
+  private volatile int version;
+  private volatile String error;
+  @JsonProperty("creation_time")
+  private Long creationTime;
+  @JsonProperty("start_time")
+  private volatile Long startTime;
+  @JsonProperty("end_time")
+  private volatile Long endTime;
+  @JsonProperty("invoker")
+  private String invokerUserId;
+
+  public String getId()
+  {
+    return id;
+  }
+
+  public void setId(String id)
+  {
+    this.id = id;
+  }
+
+  public String getSchema()
+  {
+    return schema;
+  }
+
+  public void setSchema(String schema)
+  {
+    this.schema = schema;
+  }
+
+  public String getStatus()
+  {
+    return status;
+  }
+
+  public void setStatus(String status)
+  {
+    this.status = status;
+  }
+
+  public String getPhase()
+  {
+    return phase;
+  }
+
+  public void setPhase(String phase)
+  {
+    this.phase = phase;
+  }
+
+  /**
+   * @return the estimated percentage of the upload completed (0-100).
+   */
+  public int getProgress()
+  {
+    return progress;
+  }
+
+  public void setProgress(int progress)
+  {
+    this.progress = progress;
+  }
+
+  public String getModelId()
+  {
+    return modelId;
+  }
+
+  public void setModelId(String modelId)
+  {
+    this.modelId = modelId;
+  }
+
+  public int getVersion()
+  {
+    return version;
+  }
+
+  public void setVersion(int version)
+  {
+    this.version = version;
+  }
+
+  public String getError()
+  {
+    return error;
+  }
+
+  public void setError(String error)
+  {
+    this.error = error;
+  }
+
+  public Long getCreationTime()
+  {
+    return creationTime;
+  }
+
+  public void setCreationTime(Long creationTime)
+  {
+    this.creationTime = creationTime;
+  }
+
+  public Long getStartTime()
+  {
+    return startTime;
+  }
+
+  public void setStartTime(Long startTime)
+  {
+    this.startTime = startTime;
+  }
+
+  public Long getEndTime()
+  {
+    return endTime;
+  }
+
+  public void setEndTime(Long endTime)
+  {
+    this.endTime = endTime;
+  }
+
+  public String getInvokerUserId()
+  {
+    return invokerUserId;
+  }
+
+  public void setInvokerUserId(String invokerUserId)
+  {
+    this.invokerUserId = invokerUserId;
+  }
+
+  @Override
+  public String toString()
+  {
+    return id + " " + schema + " " + status;
+  }
+}
@@ -49,6 +49,9 @@ public class IfcdbVersion
   @JsonProperty("element_count")
   int elementCount;
 
+  @JsonProperty("base_version")
+  int baseVersion;
+
   public int getVersion()
   {
     return version;
@@ -88,4 +91,18 @@ public class IfcdbVersion
   {
     this.elementCount = elementCount;
   }
+
+  /**
+   * @return the version this version was stored as a delta of, or 0 when
+   * the version is stored completely.
+   */
+  public int getBaseVersion()
+  {
+    return baseVersion;
+  }
+
+  public void setBaseVersion(int baseVersion)
+  {
+    this.baseVersion = baseVersion;
+  }
 }
@@ -32,13 +32,16 @@ package org.bimrocket.dao.mongo;
 
 import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
+import com.mongodb.MongoCompressor;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.internal.connection.PowerOfTwoBufferPool;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -81,9 +84,27 @@ public class MongoClientManager
     Cleaner.shutdownExecutor(PowerOfTwoBufferPool.DEFAULT, "pruner");
   }
 
-  public synchronized MongoClient getMongoClient(String url)
+  public MongoClient getMongoClient(String url)
   {
-    MongoClient mongoClient = clientCache.get(url);
+    return getMongoClient(url, List.of());
+  }
+
+  /**
+   * Returns the client for the given url that compresses the messages
+   * exchanged with the server with the first of the given compressors
+   * (zstd or zlib) that the server also supports.
+   *
+   * @param url the connection string.
+   * @param compressors the compressor names in order of preference.
+   * @return the client.
+   */
+  public synchronized MongoClient getMongoClient(String url,
+    List<String> compressors)
+  {
+    String key = compressors.isEmpty() ? url :
+      url + "#" + String.join(",", compressors);
+
+    MongoClient mongoClient = clientCache.get(key);
     if (mongoClient == null)
     {
       ConnectionString connectionString = new ConnectionString(url);
@@ -97,13 +118,33 @@ public class MongoClientManager
         MongoClientSettings.getDefaultCodecRegistry(), pojoCodecRegistry,
         fromCodecs(new ObjectCodec(pojoCodecRegistry)));
 
-      MongoClientSettings clientSettings = MongoClientSettings.builder()
+      MongoClientSettings.Builder builder = MongoClientSettings.builder()
         .applyConnectionString(connectionString)
-        .codecRegistry(codecRegistry)
-        .build();
-      mongoClient = MongoClients.create(clientSettings);
-      clientCache.put(url, mongoClient);
+        .codecRegistry(codecRegistry);
+
+      if (!compressors.isEmpty())
+      {
+        builder.compressorList(createCompressors(compressors));
+      }
+      mongoClient = MongoClients.create(builder.build());
+      clientCache.put(key, mongoClient);
     }
     return mongoClient;
   }
+
+  protected List<MongoCompressor> createCompressors(List<String> names)
+  {
+    List<MongoCompressor> compressors = new ArrayList<>();
+    for (String name : names)
+    {
+      switch (name.trim().toLowerCase())
+      {
+        case "zstd" -> compressors.add(MongoCompressor.createZstdCompressor());
+        case "zlib" -> compressors.add(MongoCompressor.createZlibCompressor());
+        default -> throw new IllegalArgumentException(
+          "Unsupported compressor: " + name);
+      }
+    }
+    return compressors;
+  }
 }
@@ -31,6 +31,7 @@
 package org.bimrocket.dao.orient;
 
 import com.orientechnologies.orient.core.Orient;
+import com.orientechnologies.orient.core.config.OGlobalConfiguration;
 import com.orientechnologies.orient.core.db.ODatabasePool;
 import com.orientechnologies.orient.core.db.OrientDB;
 import com.orientechnologies.orient.core.db.OrientDBConfig;
@@ -42,10 +43,14 @@ import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.inject.Inject;
+import java.lang.management.ManagementFactory;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import static org.bimrocket.util.Cleaner.shutdownStaticExecutor;
 import org.eclipse.microprofile.config.Config;
 
@@ -62,7 +67,8 @@ public class OrientPoolManager
   @Inject
   Config config;
 
-  Map<String, ODatabasePool> poolCache = new HashMap<>();
+  final Map<String, ODatabasePool> poolCache = new ConcurrentHashMap<>();
+  final Map<String, OrientPoolMetrics> poolMetrics = new ConcurrentHashMap<>();
 
   @PostConstruct
   public void init()
@@ -78,51 +84,117 @@ public class OrientPoolManager
 
     poolCache.forEach((dbAlias, db) ->
     {
-      LOGGER.log(Level.INFO, "Closing pool {0}", dbAlias);
+      LOGGER.log(Level.INFO, "Closing pool {0}: {1}",
+        new Object[]{ dbAlias, poolMetrics.get(dbAlias) });
       db.close();
+      unregisterMetrics(dbAlias);
     });
 
     poolCache.clear();
+    poolMetrics.clear();
 
     Orient.instance().shutdown();
 
     shutdownExecutors();
   }
 
-  public synchronized ODatabaseDocument getDocumentConnection(String dbAlias)
+  public ODatabaseDocument getDocumentConnection(String dbAlias)
   {
-    ODatabasePool pool = getPool(dbAlias);
-    return pool.acquire();
-  }
+    ODatabasePool pool = poolCache.computeIfAbsent(dbAlias, this::createPool);
+    OrientPoolMetrics metrics = poolMetrics.get(dbAlias);
 
-  private ODatabasePool getPool(String dbAlias)
-  {
-    ODatabasePool pool = poolCache.get(dbAlias);
-    if (pool == null)
+    long startTime = System.nanoTime();
+    try
     {
-      pool = createPool(dbAlias);
-      poolCache.put(dbAlias, pool);
+      ODatabaseDocument db = pool.acquire();
+      metrics.acquired(db, System.nanoTime() - startTime);
+      return db;
     }
-    return pool;
+    catch (RuntimeException ex)
+    {
+      metrics.failed(System.nanoTime() - startTime);
+      throw ex;
+    }
+  }
+
+  public OrientPoolMetrics getPoolMetrics(String dbAlias)
+  {
+    return poolMetrics.get(dbAlias);
   }
 
-  private synchronized ODatabasePool createPool(String dbAlias)
+  private ODatabasePool createPool(String dbAlias)
   {
-    String url = config.getOptionalValue(BASE + dbAlias + ".url", String.class).orElse(null);
+    String prefix = BASE + dbAlias;
+    String url = config.getOptionalValue(prefix + ".url", String.class).orElse(null);
     if (url == null) throw new RuntimeException("Missing database url for " + dbAlias);
 
     String username =
-      config.getOptionalValue(BASE + dbAlias + ".username", String.class).orElse(null);
+      config.getOptionalValue(prefix + ".username", String.class).orElse(null);
     String password =
-      config.getOptionalValue(BASE + dbAlias + ".password", String.class).orElse(null);
+      config.getOptionalValue(prefix + ".password", String.class).orElse(null);
 
     createDatabaseIfNotExists(url, username, password);
 
-    ODatabasePool pool = new ODatabasePool(url, username, password);
+    var builder = OrientDBConfig.builder();
+    config.getOptionalValue(prefix + ".pool.min", Integer.class)
+      .ifPresent(min -> builder.addConfig(OGlobalConfiguration.DB_POOL_MIN, min));
+    config.getOptionalValue(prefix + ".pool.max", Integer.class)
+      .ifPresent(max -> builder.addConfig(OGlobalConfiguration.DB_POOL_MAX, max));
+    config.getOptionalValue(prefix + ".pool.acquireTimeout", Integer.class)
+      .ifPresent(timeout ->
+        builder.addConfig(OGlobalConfiguration.DB_POOL_ACQUIRE_TIMEOUT, timeout));
+
+    ODatabasePool pool =
+      new ODatabasePool(url, username, password, builder.build());
+
+    OrientPoolMetrics metrics = new OrientPoolMetrics(dbAlias);
+    poolMetrics.put(dbAlias, metrics);
+    registerMetrics(metrics);
 
     return pool;
   }
 
+  private void registerMetrics(OrientPoolMetrics metrics)
+  {
+    try
+    {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = getMetricsName(metrics.getAlias());
+      if (server.isRegistered(name))
+      {
+        server.unregisterMBean(name); // left by a previous deployment
+      }
+      server.registerMBean(metrics, name);
+    }
+    catch (JMException ex)
+    {
+      LOGGER.log(Level.WARNING, "Can not register pool metrics: {0}", ex);
+    }
+  }
+
+  private void unregisterMetrics(String dbAlias)
+  {
+    try
+    {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = getMetricsName(dbAlias);
+      if (server.isRegistered(name))
+      {
+        server.unregisterMBean(name);
+      }
+    }
+    catch (JMException ex)
+    {
+      LOGGER.log(Level.WARNING, "Can not unregister pool metrics: {0}", ex);
+    }
+  }
+
+  private ObjectName getMetricsName(String dbAlias) throws JMException
+  {
+    return new ObjectName("org.bimrocket:type=OrientPool,name=" +
+      ObjectName.quote(dbAlias));
+  }
+
   private void createDatabaseIfNotExists(String url,
     String username, String password)
   {
@@ -0,0 +1,210 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.dao.orient;
+
+import com.orientechnologies.orient.core.command.OCommandExecutor;
+import com.orientechnologies.orient.core.command.OCommandRequestText;
+import com.orientechnologies.orient.core.db.ODatabase;
+import com.orientechnologies.orient.core.db.ODatabaseListener;
+import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of an OrientDB database pool.
+ *
+ * The pool does not publish its state, so the sessions are counted when
+ * they are acquired and, through a session listener, when they are closed and
+ * returned to the pool. The idle sessions are the sessions created by the
+ * pool that are not in use.
+ *
+ * @author realor
+ */
+public class OrientPoolMetrics implements OrientPoolMetricsMXBean
+{
+  final String alias;
+  final AtomicInteger createdSessions = new AtomicInteger();
+  final AtomicInteger activeSessions = new AtomicInteger();
+  final SessionListener sessionListener = new SessionListener();
+  final LongAdder acquisitions = new LongAdder();
+  final LongAdder acquisitionFailures = new LongAdder();
+  final LongAdder waitNanos = new LongAdder();
+  final AtomicLong maxWaitNanos = new AtomicLong();
+
+  public OrientPoolMetrics(String alias)
+  {
+    this.alias = alias;
+  }
+
+  @Override
+  public String getAlias()
+  {
+    return alias;
+  }
+
+  @Override
+  public int getActiveSessions()
+  {
+    return activeSessions.get();
+  }
+
+  @Override
+  public int getIdleSessions()
+  {
+    return Math.max(0, createdSessions.get() - activeSessions.get());
+  }
+
+  @Override
+  public long getAcquisitions()
+  {
+    return acquisitions.sum();
+  }
+
+  @Override
+  public long getAcquisitionFailures()
+  {
+    return acquisitionFailures.sum();
+  }
+
+  @Override
+  public double getAverageWaitMillis()
+  {
+    long count = acquisitions.sum();
+    return count == 0 ? 0 : waitNanos.sum() / (count * 1e6);
+  }
+
+  @Override
+  public double getMaxWaitMillis()
+  {
+    return maxWaitNanos.get() / 1e6;
+  }
+
+  void acquired(ODatabaseDocument db, long nanos)
+  {
+    acquisitions.increment();
+    waitNanos.add(nanos);
+    maxWaitNanos.accumulateAndGet(nanos, Math::max);
+    activeSessions.incrementAndGet();
+
+    for (ODatabaseListener listener : db.getListeners())
+    {
+      if (listener == sessionListener) return;
+    }
+    // first time this session is returned by the pool
+    createdSessions.incrementAndGet();
+    db.registerListener(sessionListener);
+  }
+
+  void failed(long nanos)
+  {
+    acquisitionFailures.increment();
+    maxWaitNanos.accumulateAndGet(nanos, Math::max);
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("active: %d, idle: %d, acquisitions: %d, " +
+      "failures: %d, average wait: %.2f ms, max wait: %.2f ms",
+      getActiveSessions(), getIdleSessions(), getAcquisitions(),
+      getAcquisitionFailures(), getAverageWaitMillis(), getMaxWaitMillis());
+  }
+
+  /**
+   * Counts the sessions returned to the pool.
+   *
+   * ODatabaseListener declares all its callbacks abstract, including the
+   * deprecated ones and their raw ODatabase parameters, so they are
+   * implemented here and kept out of the metrics class.
+   */
+  @SuppressWarnings({"rawtypes", "deprecation"})
+  class SessionListener implements ODatabaseListener
+  {
+    @Override
+    public void onClose(ODatabase db)
+    {
+      activeSessions.decrementAndGet();
+    }
+
+    @Override
+    public void onCreate(ODatabase db)
+    {
+    }
+
+    @Override
+    public void onDelete(ODatabase db)
+    {
+    }
+
+    @Override
+    public void onOpen(ODatabase db)
+    {
+    }
+
+    @Override
+    public void onBeforeTxBegin(ODatabase db)
+    {
+    }
+
+    @Override
+    public void onBeforeTxRollback(ODatabase db)
+    {
+    }
+
+    @Override
+    public void onAfterTxRollback(ODatabase db)
+    {
+    }
+
+    @Override
+    public void onBeforeTxCommit(ODatabase db)
+    {
+    }
+
+    @Override
+    public void onAfterTxCommit(ODatabase db)
+    {
+    }
+
+    @Override
+    public void onBeforeCommand(OCommandRequestText command,
+      OCommandExecutor executor)
+    {
+    }
+
+    @Override
+    public void onAfterCommand(OCommandRequestText command,
+      OCommandExecutor executor, Object result)
+    {
+    }
+  }
+}
@@ -52,7 +52,9 @@ public class CORSFilter implements ContainerResponseFilter
     headers.add("Access-Control-Allow-Origin", "*");
     headers.add("Access-Control-Allow-Credentials", "true");
     headers.add("Access-Control-Allow-Headers",
-     "origin,content-type,accept,authorization,depth,if-modified-since,if-none-match");
+     "origin,content-type,accept,authorization,depth,if-modified-since,if-none-match,range,if-range");
+    headers.add("Access-Control-Expose-Headers",
+      "etag,content-range,accept-ranges,x-continuation-token");
     headers.add("Access-Control-Allow-Methods",
       "HEAD,GET,POST,PUT,DELETE,OPTIONS,PROPFIND,MKCOL");
   }
@@ -0,0 +1,473 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.service.ifcdb;
+
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import org.bimrocket.express.ExpressAttribute;
+import org.bimrocket.express.ExpressEntity;
+import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.ExpressType;
+import org.bimrocket.express.data.ExpressCursor;
+import static org.bimrocket.express.data.ExpressCursor.CONTAINER;
+import org.bimrocket.step.io.StepExporter;
+
+/**
+ * Extracts a reference-closed subset of the entities of a model.
+ *
+ * The extraction starts from a seed set of objects, selected by GlobalId,
+ * by entity type (including subtypes) or by IfcBuildingStorey (GlobalId or
+ * name). The seeds are expanded with the objects they contain or
+ * decompose into (IfcRelContainedInSpatialStructure, IfcRelAggregates,
+ * IfcRelNests, IfcRelVoidsElement and IfcRelFillsElement), and completed
+ * with the objects that contain or aggregate them up to the IfcProject,
+ * so the spatial structure of the selection is kept. The relationships
+ * with some selected related object are added, so the property sets,
+ * types and materials of the selected objects are kept, and they are
+ * exported with the selected related objects only. Finally, the entities
+ * referenced by the selection and by the IfcProject, which holds the
+ * contexts and units, are added.
+ *
+ * The entities are read twice, in the same order, from iterators that may
+ * read them from the store as they are requested: scan registers the
+ * references between the entities by id and export writes the selected
+ * ones. Only the ids and the reference graph are kept in memory.
+ *
+ * @author realor
+ */
+public class IfcdbExtractor
+{
+  static final Map<String, String[]> DECOMPOSITIONS = Map.of(
+    "IfcRelContainedInSpatialStructure",
+      new String[]{ "RelatingStructure", "RelatedElements" },
+    "IfcRelAggregates", new String[]{ "RelatingObject", "RelatedObjects" },
+    "IfcRelNests", new String[]{ "RelatingObject", "RelatedObjects" },
+    "IfcRelVoidsElement",
+      new String[]{ "RelatingBuildingElement", "RelatedOpeningElement" },
+    "IfcRelFillsElement",
+      new String[]{ "RelatingOpeningElement", "RelatedBuildingElement" });
+
+  final ExpressSchema schema;
+  final Set<String> globalIds = new HashSet<>();
+  final Set<ExpressEntity> types = new HashSet<>();
+  final Set<String> storeys = new HashSet<>();
+
+  final Map<String, Integer> indices = new HashMap<>();
+  final List<int[]> references = new ArrayList<>();
+  final Map<Integer, List<Integer>> children = new HashMap<>();
+  final Map<Integer, List<Integer>> parents = new HashMap<>();
+  final List<int[]> relationships = new ArrayList<>(); // rel, related...
+  final BitSet seeds = new BitSet();
+  final BitSet scanned = new BitSet();
+  final Map<ExpressType, Integer> typeKinds = new HashMap<>();
+  int projectIndex = -1;
+  BitSet selection;
+
+  // type kinds
+  static final int SEED_TYPE = 1;
+  static final int RELATIONSHIP = 2;
+  static final int STOREY = 4;
+  static final int PROJECT = 8;
+
+  public IfcdbExtractor(ExpressSchema schema)
+  {
+    this.schema = schema;
+  }
+
+  public Set<String> getGlobalIds()
+  {
+    return globalIds;
+  }
+
+  /**
+   * Adds an entity type to extract.
+   *
+   * @param typeName the name of the entity type, case insensitive.
+   * @return false if typeName is not an entity of the schema.
+   */
+  public boolean addType(String typeName)
+  {
+    ExpressType type = schema.getNamedType(typeName);
+    if (type instanceof ExpressEntity entity)
+    {
+      types.add(entity);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return the GlobalIds or names of the storeys to extract.
+   */
+  public Set<String> getStoreys()
+  {
+    return storeys;
+  }
+
+  public boolean hasSeeds()
+  {
+    return !globalIds.isEmpty() || !types.isEmpty() || !storeys.isEmpty();
+  }
+
+  /**
+   * Registers the entities and their references.
+   *
+   * @param entities all the entities of the model.
+   */
+  public void scan(Iterator<ExpressCursor> entities)
+  {
+    while (entities.hasNext())
+    {
+      scanEntity(entities.next());
+    }
+    selection = null;
+  }
+
+  /**
+   * Exports the extracted entities.
+   *
+   * @param exporter the exporter.
+   * @param writer the writer to export to.
+   * @param entities all the entities of the model, in the order given to
+   * scan.
+   */
+  public void export(StepExporter exporter, Writer writer,
+    Iterator<ExpressCursor> entities)
+  {
+    BitSet selected = getSelection();
+
+    // the related objects that are not selected are removed
+    exporter.setReferenceFilter(id ->
+    {
+      Integer index = indices.get(id);
+      return index != null && selected.get(index);
+    });
+
+    exporter.export(writer, new Iterator<ExpressCursor>()
+    {
+      ExpressCursor nextEntity = findNext();
+
+      @Override
+      public boolean hasNext()
+      {
+        return nextEntity != null;
+      }
+
+      @Override
+      public ExpressCursor next()
+      {
+        if (nextEntity == null) throw new NoSuchElementException();
+        ExpressCursor entity = nextEntity;
+        nextEntity = findNext();
+        return entity;
+      }
+
+      ExpressCursor findNext()
+      {
+        while (entities.hasNext())
+        {
+          ExpressCursor entity = entities.next();
+          Integer index = indices.get(entity.getId());
+          if (index != null && selected.get(index)) return entity;
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * @return the number of entities selected for export.
+   */
+  public int getSelectedCount()
+  {
+    return getSelection().cardinality();
+  }
+
+  /**
+   * @return the number of seed objects found.
+   */
+  public int getSeedCount()
+  {
+    return seeds.cardinality();
+  }
+
+  protected BitSet getSelection()
+  {
+    if (selection != null) return selection;
+
+    // the seeds and the objects they contain
+    BitSet objects = new BitSet();
+    ArrayDeque<Integer> pending = new ArrayDeque<>();
+    seeds.stream().forEach(pending::push);
+    while (!pending.isEmpty())
+    {
+      int index = pending.pop();
+      if (objects.get(index)) continue;
+
+      objects.set(index);
+      List<Integer> contained = children.get(index);
+      if (contained != null) contained.forEach(pending::push);
+    }
+
+    // the objects that contain or aggregate them, up to the project
+    BitSet related = (BitSet)objects.clone();
+    objects.stream().forEach(pending::push);
+    while (!pending.isEmpty())
+    {
+      List<Integer> containers = parents.get(pending.pop());
+      if (containers == null) continue;
+
+      for (int container : containers)
+      {
+        if (related.get(container)) continue;
+
+        related.set(container);
+        pending.push(container);
+      }
+    }
+
+    // the relationships of the selected objects
+    BitSet roots = (BitSet)related.clone();
+    for (int[] relationship : relationships)
+    {
+      for (int i = 1; i < relationship.length; i++)
+      {
+        if (related.get(relationship[i]))
+        {
+          roots.set(relationship[0]);
+          break;
+        }
+      }
+    }
+    if (projectIndex != -1 && !objects.isEmpty()) roots.set(projectIndex);
+
+    // the referenced entities
+    selection = new BitSet();
+    roots.stream().forEach(pending::push);
+    while (!pending.isEmpty())
+    {
+      int index = pending.pop();
+      if (selection.get(index)) continue;
+
+      selection.set(index);
+      int[] referenced =
+        index < references.size() ? references.get(index) : null;
+      if (referenced != null)
+      {
+        for (int reference : referenced)
+        {
+          if (!selection.get(reference)) pending.push(reference);
+        }
+      }
+    }
+    return selection;
+  }
+
+  protected void scanEntity(ExpressCursor cursor)
+  {
+    if (!(cursor.getType() instanceof ExpressEntity entity)) return;
+
+    int index = getIndex(cursor.getId());
+    if (scanned.get(index)) return;
+    scanned.set(index);
+
+    int kind = getTypeKind(entity);
+    String[] decomposition = DECOMPOSITIONS.get(entity.getTypeName());
+    int relatingIndex = -1;
+    List<Integer> relatedIndices = null;
+    List<Integer> relationship = null;
+    if ((kind & RELATIONSHIP) != 0)
+    {
+      relationship = new ArrayList<>();
+      relationship.add(index);
+    }
+
+    List<Integer> referenced = new ArrayList<>();
+    List<ExpressAttribute> attributes = entity.getAllAttributes();
+    int size = cursor.size();
+    for (int i = 0; i < size; i++)
+    {
+      if (!CONTAINER.equals(cursor.get(i))) continue;
+
+      List<Integer> attributeReferences = new ArrayList<>();
+      cursor.enter(i);
+      boolean collection = !(cursor.getType() instanceof ExpressEntity);
+      collectReferences(cursor, attributeReferences);
+      cursor.exit();
+
+      String name = attributes.get(i).getName();
+      if (decomposition != null)
+      {
+        if (name.equals(decomposition[0]) && !attributeReferences.isEmpty())
+        {
+          relatingIndex = attributeReferences.get(0);
+        }
+        else if (name.equals(decomposition[1]))
+        {
+          relatedIndices = attributeReferences;
+        }
+      }
+      if (relationship != null && name.startsWith("Related"))
+      {
+        relationship.addAll(attributeReferences);
+        // only the selected related objects of a collection are exported
+        if (collection) continue;
+      }
+      referenced.addAll(attributeReferences);
+    }
+
+    if (!referenced.isEmpty())
+    {
+      while (references.size() <= index) references.add(null);
+      references.set(index,
+        referenced.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    if (relatingIndex != -1 && relatedIndices != null)
+    {
+      children.computeIfAbsent(relatingIndex, key -> new ArrayList<>())
+        .addAll(relatedIndices);
+      for (int relatedIndex : relatedIndices)
+      {
+        parents.computeIfAbsent(relatedIndex, key -> new ArrayList<>())
+          .add(relatingIndex);
+      }
+    }
+
+    if (relationship != null)
+    {
+      relationships.add(
+        relationship.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    if ((kind & PROJECT) != 0 && projectIndex == -1)
+    {
+      projectIndex = index;
+    }
+
+    if ((kind & SEED_TYPE) != 0 || isSeed(cursor, entity, kind))
+    {
+      seeds.set(index);
+    }
+  }
+
+  protected boolean isSeed(ExpressCursor cursor, ExpressEntity entity,
+    int kind)
+  {
+    if (globalIds.isEmpty() && storeys.isEmpty()) return false;
+    if (entity.getAttribute("GlobalId") == null) return false;
+
+    Object globalId = cursor.get("GlobalId");
+    if (globalId != null && globalIds.contains(globalId.toString()))
+      return true;
+
+    if ((kind & STOREY) != 0 && !storeys.isEmpty())
+    {
+      if (globalId != null && storeys.contains(globalId.toString()))
+        return true;
+
+      Object name = cursor.get("Name");
+      if (CONTAINER.equals(name)) // defined type
+      {
+        cursor.enter("Name");
+        name = cursor.get(0);
+        cursor.exit();
+      }
+      return name != null && storeys.contains(name.toString());
+    }
+    return false;
+  }
+
+  protected void collectReferences(ExpressCursor cursor,
+    List<Integer> referenced)
+  {
+    if (cursor.getType() instanceof ExpressEntity)
+    {
+      referenced.add(getIndex(cursor.getId()));
+      return;
+    }
+
+    // defined type or collection
+    int size = cursor.size();
+    for (int i = 0; i < size; i++)
+    {
+      if (CONTAINER.equals(cursor.get(i)))
+      {
+        cursor.enter(i);
+        collectReferences(cursor, referenced);
+        cursor.exit();
+      }
+    }
+  }
+
+  protected int getIndex(String id)
+  {
+    Integer index = indices.get(id);
+    if (index == null)
+    {
+      index = indices.size();
+      indices.put(id, index);
+    }
+    return index;
+  }
+
+  protected int getTypeKind(ExpressEntity entity)
+  {
+    Integer kind = typeKinds.get(entity);
+    if (kind == null)
+    {
+      kind = 0;
+      ExpressEntity superEntity = entity;
+      while (superEntity != null)
+      {
+        if (types.contains(superEntity)) kind |= SEED_TYPE;
+        switch (superEntity.getTypeName())
+        {
+          case "IfcRelationship": kind |= RELATIONSHIP; break;
+          case "IfcBuildingStorey": kind |= STOREY; break;
+          case "IfcProject": kind |= PROJECT; break;
+        }
+        superEntity = superEntity.getSuperEntity();
+      }
+      typeKinds.put(entity, kind);
+    }
+    return kind;
+  }
+}
@@ -0,0 +1,431 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.service.ifcdb;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Disk cache of the IFC files exported from the versions of the models.
+ * A stored version does not change, so its file can be sent again until
+ * the version is deleted or the model metadata (that goes to the file
+ * header) is updated.
+ *
+ * Files are evicted in least recently used order when the total size
+ * exceeds maxSize bytes. Files larger than maxSize are not cached. The
+ * cache directory is emptied on startup, since the database may have
+ * changed while the server was stopped.
+ *
+ * The entity tag of a file is the hash of its uncompressed content, since
+ * the exports of the same version are not guaranteed to be identical.
+ *
+ * @author realor
+ */
+public class IfcdbFileCache
+{
+  static final Logger LOGGER =
+    Logger.getLogger(IfcdbFileCache.class.getName());
+
+  static final String PART_PREFIX = "part-";
+
+  final File directory;
+  final long maxSize;
+  final boolean compressed;
+  final LinkedHashMap<String, Entry> entries =
+    new LinkedHashMap<>(16, 0.75f, true);
+  final ConcurrentHashMap<String, FutureTask<Entry>> exports =
+    new ConcurrentHashMap<>();
+  long totalSize;
+  long generation;
+
+  public IfcdbFileCache(File directory, long maxSize, boolean compressed)
+  {
+    this.directory = directory;
+    this.maxSize = maxSize;
+    this.compressed = compressed;
+  }
+
+  public File getDirectory()
+  {
+    return directory;
+  }
+
+  public long getMaxSize()
+  {
+    return maxSize;
+  }
+
+  public boolean isCompressed()
+  {
+    return compressed;
+  }
+
+  public void init() throws IOException
+  {
+    if (!directory.exists() && !directory.mkdirs())
+      throw new IOException("Can not create directory " + directory);
+
+    File[] files = directory.listFiles();
+    if (files != null)
+    {
+      for (File file : files)
+      {
+        if (file.isFile()) file.delete();
+      }
+    }
+  }
+
+  /**
+   * Returns the cached file of a model version, exporting it when it is
+   * not in the cache. Concurrent requests of the same version wait for a
+   * single export.
+   *
+   * @param schemaName the schema of the model.
+   * @param modelId the model id.
+   * @param version the version number (greater than 0).
+   * @param exporter the exporter that writes the IFC file.
+   * @return the file entry. If the entry is temporary, the caller must
+   * delete its file after use.
+   * @throws IOException if the export fails.
+   */
+  public Entry get(String schemaName, String modelId, int version,
+    Exporter exporter) throws IOException
+  {
+    String key = getKey(schemaName, modelId, version);
+
+    synchronized (this)
+    {
+      Entry entry = entries.get(key);
+      if (entry != null) return entry;
+    }
+
+    FutureTask<Entry> task = new FutureTask<>(() -> export(key, exporter));
+    FutureTask<Entry> current = exports.putIfAbsent(key, task);
+    if (current == null)
+    {
+      current = task;
+      try
+      {
+        task.run();
+      }
+      finally
+      {
+        exports.remove(key, task);
+      }
+    }
+
+    try
+    {
+      return current.get();
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      throw new IOException(ex);
+    }
+    catch (ExecutionException ex)
+    {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException ioException) throw ioException;
+      if (cause instanceof RuntimeException runtimeException)
+        throw runtimeException;
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Removes the cached files of a model.
+   *
+   * @param schemaName the schema of the model.
+   * @param modelId the model id or null to remove all the schema files.
+   * @param version the version to remove or 0 for all versions.
+   */
+  public synchronized void invalidate(String schemaName, String modelId,
+    int version)
+  {
+    generation++;
+
+    String prefix = modelId == null ?
+      schemaName + "_" : getModelPrefix(schemaName, modelId);
+    String key = modelId == null || version == 0 ?
+      null : prefix + version;
+
+    Iterator<Entry> iter = entries.values().iterator();
+    while (iter.hasNext())
+    {
+      Entry entry = iter.next();
+      if (key == null ? entry.key.startsWith(prefix) : entry.key.equals(key))
+      {
+        iter.remove();
+        remove(entry);
+      }
+    }
+  }
+
+  public synchronized void clear()
+  {
+    generation++;
+    for (Entry entry : entries.values())
+    {
+      remove(entry);
+    }
+    entries.clear();
+  }
+
+  public synchronized int size()
+  {
+    return entries.size();
+  }
+
+  public synchronized long getTotalSize()
+  {
+    return totalSize;
+  }
+
+  public static String getKey(String schemaName, String modelId,
+    int version)
+  {
+    return getModelPrefix(schemaName, modelId) + version;
+  }
+
+  public static String getModelPrefix(String schemaName, String modelId)
+  {
+    // hex encoded, GlobalIds are case sensitive but some file systems not
+    StringBuilder buffer = new StringBuilder();
+    buffer.append(schemaName).append("_");
+    for (byte b : modelId.getBytes(StandardCharsets.UTF_8))
+    {
+      buffer.append(String.format("%02x", b));
+    }
+    return buffer.append("_").toString();
+  }
+
+  /**
+   * @param file an uncompressed IFC file.
+   * @return the entity tag of the file, without quotes.
+   * @throws IOException if the file can not be read.
+   */
+  public static String getEtag(File file) throws IOException
+  {
+    try (InputStream input = new FileInputStream(file))
+    {
+      return DigestUtils.sha1Hex(input);
+    }
+  }
+
+  Entry export(String key, Exporter exporter) throws IOException
+  {
+    long loadGeneration;
+    synchronized (this)
+    {
+      loadGeneration = generation;
+    }
+
+    File partFile = new File(directory, PART_PREFIX + UUID.randomUUID());
+    File file = null;
+    try
+    {
+      exporter.export(partFile);
+
+      String etag;
+      MessageDigest digest = DigestUtils.getSha1Digest();
+      if (compressed)
+      {
+        File gzipFile = new File(directory, partFile.getName() + ".gz");
+        try (InputStream input = new DigestInputStream(
+               new FileInputStream(partFile), digest);
+             OutputStream output =
+               new GZIPOutputStream(new FileOutputStream(gzipFile), 65536))
+        {
+          input.transferTo(output);
+        }
+        gzipFile.setLastModified(partFile.lastModified());
+        partFile.delete();
+        partFile = gzipFile;
+        etag = Hex.encodeHexString(digest.digest());
+      }
+      else
+      {
+        etag = getEtag(partFile);
+      }
+
+      long length = partFile.length();
+      if (length > maxSize)
+      {
+        Entry entry = new Entry(key, partFile, compressed, true, etag);
+        partFile = null;
+        return entry;
+      }
+
+      file = new File(directory, key + (compressed ? ".ifc.gz" : ".ifc"));
+      synchronized (this)
+      {
+        if (loadGeneration != generation)
+        {
+          // the model changed during the export, do not cache it
+          Entry entry = new Entry(key, partFile, compressed, true, etag);
+          partFile = null;
+          return entry;
+        }
+        Files.move(partFile.toPath(), file.toPath(),
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+        partFile = null;
+
+        Entry entry = new Entry(key, file, compressed, false, etag);
+        entries.put(key, entry);
+        totalSize += entry.length;
+        evict();
+        return entry;
+      }
+    }
+    finally
+    {
+      if (partFile != null) partFile.delete();
+    }
+  }
+
+  // must be called holding the lock
+  void evict()
+  {
+    Iterator<Entry> iter = entries.values().iterator();
+    while (totalSize > maxSize && iter.hasNext())
+    {
+      Entry entry = iter.next();
+      iter.remove();
+      remove(entry);
+    }
+  }
+
+  // must be called holding the lock
+  void remove(Entry entry)
+  {
+    totalSize -= entry.length;
+    // on unix, a file that is being sent is removed when it is closed
+    if (!entry.file.delete())
+    {
+      LOGGER.log(Level.WARNING, "Can not delete cached file {0}",
+        entry.file);
+      entry.file.deleteOnExit();
+    }
+  }
+
+  /**
+   * Writes the IFC file of a model version.
+   */
+  @FunctionalInterface
+  public interface Exporter
+  {
+    void export(File file) throws IOException;
+  }
+
+  public static class Entry
+  {
+    final String key;
+    final File file;
+    final long length;
+    final long lastModified;
+    final boolean compressed;
+    final boolean temporary;
+    final String etag;
+
+    Entry(String key, File file, boolean compressed, boolean temporary,
+      String etag)
+    {
+      this.key = key;
+      this.file = file;
+      this.length = file.length();
+      this.lastModified = file.lastModified();
+      this.compressed = compressed;
+      this.temporary = temporary;
+      this.etag = etag;
+    }
+
+    public File getFile()
+    {
+      return file;
+    }
+
+    public long getLength()
+    {
+      return length;
+    }
+
+    public long getLastModified()
+    {
+      return lastModified;
+    }
+
+    /**
+     * @return the hash of the uncompressed file content, without quotes.
+     */
+    public String getEtag()
+    {
+      return etag;
+    }
+
+    /**
+     * @return true if the file is gzip compressed.
+     */
+    public boolean isCompressed()
+    {
+      return compressed;
+    }
+
+    /**
+     * @return true if the file is not cached and must be deleted after use.
+     */
+    public boolean isTemporary()
+    {
+      return temporary;
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.service.ifcdb;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-process cache of the metadata of the models (models, model lists and
+ * versions) of all schemas. The least recently used entries are evicted
+ * when maxSize is reached and entries expire after timeout milliseconds,
+ * to bound staleness when other nodes change the database.
+ *
+ * Entries are invalidated by model. Values loaded before an invalidation
+ * are not stored, so a read that overlaps a change can not cache stale
+ * data.
+ *
+ * @author realor
+ */
+public class IfcdbMetadataCache
+{
+  static final String MODEL = "model";
+  static final String MODELS = "models";
+  static final String VERSIONS = "versions";
+
+  final int maxSize;
+  final long timeout;
+  final LinkedHashMap<String, Slot> map;
+  long generation;
+
+  public IfcdbMetadataCache(int maxSize, long timeout)
+  {
+    this.maxSize = maxSize;
+    this.timeout = timeout;
+    this.map = new LinkedHashMap<>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Slot> eldest)
+      {
+        return size() > IfcdbMetadataCache.this.maxSize;
+      }
+    };
+  }
+
+  public static String getKey(String schemaName, String type, String id)
+  {
+    return schemaName + "/" + type + "/" + id;
+  }
+
+  public synchronized long getGeneration()
+  {
+    return generation;
+  }
+
+  @SuppressWarnings("unchecked")
+  public synchronized <T> T get(String key)
+  {
+    Slot slot = map.get(key);
+    if (slot == null) return null;
+
+    if (System.currentTimeMillis() - slot.created > timeout)
+    {
+      map.remove(key);
+      return null;
+    }
+    return (T)slot.value;
+  }
+
+  /**
+   * Stores a value if there were no invalidations since the given
+   * generation, read before the value was loaded.
+   *
+   * @param key the key of the value.
+   * @param value the value.
+   * @param loadGeneration the generation when the value was loaded.
+   */
+  public synchronized void put(String key, Object value, long loadGeneration)
+  {
+    if (maxSize <= 0 || loadGeneration != generation) return;
+
+    map.put(key, new Slot(value));
+  }
+
+  /**
+   * Removes the entries of a model and the model lists of its schema.
+   *
+   * @param schemaName the schema of the model.
+   * @param modelId the model id or null to remove all the schema entries.
+   */
+  public synchronized void invalidate(String schemaName, String modelId)
+  {
+    generation++;
+
+    String schemaPrefix = schemaName + "/";
+    String modelsPrefix = schemaPrefix + MODELS + "/";
+    Iterator<String> iter = map.keySet().iterator();
+    while (iter.hasNext())
+    {
+      String key = iter.next();
+      if (key.startsWith(schemaPrefix) &&
+          (modelId == null || key.startsWith(modelsPrefix)))
+      {
+        iter.remove();
+      }
+    }
+
+    if (modelId != null)
+    {
+      map.remove(getKey(schemaName, MODEL, modelId));
+      map.remove(getKey(schemaName, VERSIONS, modelId));
+    }
+  }
+
+  public synchronized void clear()
+  {
+    generation++;
+    map.clear();
+  }
+
+  public synchronized int size()
+  {
+    return map.size();
+  }
+
+  static class Slot
+  {
+    final Object value;
+    final long created;
+
+    Slot(Object value)
+    {
+      this.value = value;
+      this.created = System.currentTimeMillis();
+    }
+  }
+}
@@ -31,39 +31,87 @@
 package org.bimrocket.service.ifcdb;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.inject.spi.CDI;
 import jakarta.inject.Inject;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import org.apache.commons.codec.digest.DigestUtils;
 import static org.apache.commons.lang3.StringUtils.isBlank;
 import org.bimrocket.api.ifcdb.IfcdbCommand;
+import org.bimrocket.api.ifcdb.IfcdbElement;
 import org.bimrocket.api.ifcdb.IfcdbModel;
+import org.bimrocket.api.ifcdb.IfcdbUploadJob;
 import org.bimrocket.api.ifcdb.IfcdbVersion;
+import static org.bimrocket.api.ifcdb.IfcdbUploadJob.COMPLETED_STATUS;
+import static org.bimrocket.api.ifcdb.IfcdbUploadJob.FAILED_STATUS;
+import static org.bimrocket.api.ifcdb.IfcdbUploadJob.PARSE_PHASE;
+import static org.bimrocket.api.ifcdb.IfcdbUploadJob.QUEUED_STATUS;
+import static org.bimrocket.api.ifcdb.IfcdbUploadJob.RUNNING_STATUS;
+import static org.bimrocket.api.ifcdb.IfcdbUploadJob.SAVE_PHASE;
+import static org.bimrocket.api.ifcdb.IfcdbUploadJob.VERSION_PHASE;
 import org.bimrocket.dao.expression.Expression;
 import org.bimrocket.dao.expression.OrderByExpression;
 import org.bimrocket.dao.expression.io.log.LogExpressionPrinter;
 import org.bimrocket.exception.InvalidRequestException;
+import org.bimrocket.exception.NotFoundException;
 import org.bimrocket.express.ExpressSchema;
 import org.bimrocket.express.data.ExpressCursor;
 import org.bimrocket.express.io.ExpressLoader;
+import org.bimrocket.service.ifcdb.spatial.IfcBoundsCalculator;
+import org.bimrocket.service.ifcdb.spatial.IfcBoundsCalculator.ElementBounds;
+import org.bimrocket.service.ifcdb.spatial.IfcSpatialIndex;
+import org.bimrocket.service.ifcdb.spatial.IfcSpatialIndexCache;
 import org.bimrocket.service.ifcdb.store.IfcData;
+import org.bimrocket.service.ifcdb.store.IfcDataStream;
+import org.bimrocket.service.ifcdb.store.IfcDataWriter;
 import org.bimrocket.service.ifcdb.store.IfcdbConnection;
 import org.bimrocket.service.ifcdb.store.empty.EmptyIfcStore;
 import org.bimrocket.service.security.SecurityService;
 import org.bimrocket.util.EntityDefinition;
 import org.eclipse.microprofile.config.Config;
+import org.bimrocket.step.io.StepEntityListener;
 import org.bimrocket.step.io.StepExporter;
 import org.bimrocket.step.io.StepLoader;
 import org.bimrocket.service.ifcdb.store.IfcdbStore;
 import org.bimrocket.util.Chronometer;
+import org.bimrocket.util.ExpiringCache;
 import static org.bimrocket.util.TextUtils.getISODate;
 
 /**
@@ -78,11 +126,42 @@ public class IfcdbService
 
   static final String BASE = "services.ifcdb.";
 
+  // percentage of the upload progress assigned to the parse phase
+  static final int PARSE_PROGRESS = 60;
+
   public static final Map<String, Field> modelFieldMap =
     EntityDefinition.getInstance(IfcdbModel.class).getFieldMap();
 
   Map<String, ExpressSchema> schemas = new HashMap<>();
 
+  ExecutorService uploadExecutor;
+
+  ExecutorService writerExecutor;
+
+  final Map<String, UploadQueue> uploadQueues = new HashMap<>();
+
+  // queued and running jobs, guarded by the uploadQueues lock
+  final Map<String, IfcdbUploadJob> activeUploadJobs = new HashMap<>();
+
+  // finished jobs, kept uploadJobTimeout minutes after they end
+  ExpiringCache<IfcdbUploadJob> uploadJobs;
+
+  int uploadsPerSchema;
+
+  int maxQueuedUploads;
+
+  IfcdbMetadataCache metadataCache;
+
+  IfcdbInvalidationHook invalidationHook;
+
+  IfcdbFileCache fileCache;
+
+  ExecutorService warmUpExecutor;
+
+  IfcSpatialIndexCache spatialIndexCache;
+
+  ExecutorService spatialIndexExecutor;
+
   // Exceptions
 
   public static final String MODEL_NOT_FOUND =
@@ -99,6 +178,28 @@ public class IfcdbService
     "IFC005: Insufficient privileges.";
   public static final String MODEL_TOO_LARGE =
     "IFC006: Model too large.";
+  public static final String VERSION_HAS_DEPENDENTS =
+    "IFC007: Other versions are stored as changes of this version.";
+  public static final String TOO_MANY_UPLOADS =
+    "IFC008: Too many uploads in progress, try again later.";
+  public static final String UPLOAD_JOB_NOT_FOUND =
+    "IFC009: Upload job not found.";
+  public static final String QUERY_MODEL_REQUIRED =
+    "IFC010: The query must select a model.";
+  public static final String VERSION_NOT_FOUND =
+    "IFC011: Version not found.";
+  public static final String INVALID_CONTINUATION_TOKEN =
+    "IFC012: Invalid continuation token.";
+  public static final String INVALID_BOUNDING_BOX =
+    "IFC013: Invalid bounding box.";
+  public static final String INVALID_ENTITY_TYPE =
+    "IFC014: Invalid entity type.";
+  public static final String EXTRACTION_SEEDS_REQUIRED =
+    "IFC015: GlobalIds, types or storeys are required.";
+  public static final String UNSUPPORTED_REGION_QUERY =
+    "IFC016: The store does not support region queries.";
+  public static final String EXTRACTION_SEEDS_NOT_FOUND =
+    "IFC017: No objects match the GlobalIds, types or storeys.";
 
   @Inject
   Config config;
@@ -137,29 +238,162 @@ public class IfcdbService
       config.getOptionalValues(BASE + "schemas", String.class)
         .orElse(List.of("IFC4"));
 
-    for (String schemaName : schemaNames)
+    // schemas are loaded in parallel, init time is bounded by the slowest
+    int threads = Math.max(1, Math.min(schemaNames.size(),
+      Runtime.getRuntime().availableProcessors()));
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try
     {
-      try
+      Map<String, Future<ExpressSchema>> futures = new LinkedHashMap<>();
+      for (String schemaName : schemaNames)
       {
-        ExpressLoader expressParser = new ExpressLoader();
-        ExpressSchema schema = expressParser.load("schema:" + schemaName);
-        LOGGER.log(Level.INFO, "{0} schema loaded: {1} named types",
-          new Object[]{ schema.getName(), schema.getNamedTypes().size()});
+        futures.put(schemaName, executor.submit(() -> initSchema(schemaName)));
+      }
 
-        try (IfcdbConnection conn = store.getConnection(schema))
+      for (var entry : futures.entrySet())
+      {
+        String schemaName = entry.getKey();
+        try
+        {
+          schemas.put(schemaName, entry.getValue().get());
+        }
+        catch (ExecutionException ex)
         {
-          conn.createSchema();
-          schemas.put(schemaName, schema);
+          LOGGER.log(Level.SEVERE, "Error initializing schema : {0}: {1}",
+            new Object[]{schemaName, ex.getCause()});
         }
+        catch (InterruptedException ex)
+        {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+    finally
+    {
+      executor.shutdownNow();
+    }
+
+    int uploadThreads =
+      config.getOptionalValue(BASE + "uploadThreads", Integer.class).orElse(2);
+    uploadsPerSchema =
+      config.getOptionalValue(BASE + "uploadsPerSchema", Integer.class).orElse(1);
+    maxQueuedUploads =
+      config.getOptionalValue(BASE + "maxQueuedUploads", Integer.class).orElse(20);
+    long uploadJobTimeout =
+      config.getOptionalValue(BASE + "uploadJobTimeout", Long.class).orElse(60L);
+
+    uploadExecutor = Executors.newFixedThreadPool(uploadThreads);
+    writerExecutor = Executors.newCachedThreadPool();
+    uploadJobs = new ExpiringCache<>(uploadJobTimeout * 60000L);
+
+    int metadataCacheSize = config.getOptionalValue(
+      BASE + "metadataCache.size", Integer.class).orElse(1000);
+    long metadataCacheTimeout = config.getOptionalValue(
+      BASE + "metadataCache.timeout", Long.class).orElse(30L);
+    metadataCache = new IfcdbMetadataCache(metadataCacheSize,
+      metadataCacheTimeout * 1000L);
+
+    var hookClass = config.getOptionalValue(
+      BASE + "metadataCache.invalidationHook", Class.class);
+    if (hookClass.isPresent())
+    {
+      try
+      {
+        @SuppressWarnings("unchecked")
+        Class<IfcdbInvalidationHook> cls = hookClass.get();
+        invalidationHook = cdi.select(cls).get();
       }
       catch (Exception ex)
       {
-        LOGGER.log(Level.SEVERE, "Error initializing schema : {0}: {1}",
-          new Object[]{schemaName, ex});
+        LOGGER.log(Level.SEVERE, "Error initializing invalidation hook: {0}",
+          ex.toString());
+      }
+    }
+
+    long fileCacheSizeMb = config.getOptionalValue(
+      BASE + "fileCache.maxSizeMb", Long.class).orElse(0L);
+    if (fileCacheSizeMb > 0)
+    {
+      String fileCacheDirectory = config.getOptionalValue(
+        BASE + "fileCache.directory", String.class).orElse("ifcdb_cache");
+      boolean compressed = config.getOptionalValue(
+        BASE + "fileCache.compressed", Boolean.class).orElse(false);
+      try
+      {
+        fileCache = new IfcdbFileCache(new File(fileCacheDirectory),
+          fileCacheSizeMb * 1048576L, compressed);
+        fileCache.init();
+        LOGGER.log(Level.INFO, "IFC file cache: {0}", fileCacheDirectory);
+
+        if (config.getOptionalValue(BASE + "fileCache.warmUp",
+            Boolean.class).orElse(false))
+        {
+          warmUpExecutor = Executors.newSingleThreadExecutor();
+        }
+      }
+      catch (IOException ex)
+      {
+        LOGGER.log(Level.SEVERE, "Error initializing IFC file cache: {0}",
+          ex.toString());
+        fileCache = null;
+      }
+    }
+
+    if (config.getOptionalValue(BASE + "spatialIndex.enabled",
+        Boolean.class).orElse(false))
+    {
+      String indexDirectory = config.getOptionalValue(
+        BASE + "spatialIndex.directory", String.class).orElse("ifcdb_index");
+      int cachedIndexes = config.getOptionalValue(
+        BASE + "spatialIndex.cachedIndexes", Integer.class).orElse(20);
+      try
+      {
+        spatialIndexCache = new IfcSpatialIndexCache(
+          new File(indexDirectory), cachedIndexes);
+        spatialIndexCache.init();
+        LOGGER.log(Level.INFO, "Spatial index directory: {0}",
+          indexDirectory);
+
+        if (config.getOptionalValue(BASE + "spatialIndex.buildOnUpload",
+            Boolean.class).orElse(false))
+        {
+          spatialIndexExecutor = Executors.newSingleThreadExecutor();
+        }
+      }
+      catch (IOException ex)
+      {
+        LOGGER.log(Level.SEVERE, "Error initializing spatial index: {0}",
+          ex.toString());
+        spatialIndexCache = null;
       }
     }
   }
 
+  @PreDestroy
+  public void destroy()
+  {
+    if (uploadExecutor != null) uploadExecutor.shutdownNow();
+    if (writerExecutor != null) writerExecutor.shutdownNow();
+    if (warmUpExecutor != null) warmUpExecutor.shutdownNow();
+    if (spatialIndexExecutor != null) spatialIndexExecutor.shutdownNow();
+    if (store != null) store.close();
+  }
+
+  ExpressSchema initSchema(String schemaName) throws Exception
+  {
+    ExpressLoader expressParser = new ExpressLoader();
+    ExpressSchema schema = expressParser.load("schema:" + schemaName);
+    LOGGER.log(Level.INFO, "{0} schema loaded: {1} named types",
+      new Object[]{ schema.getName(), schema.getNamedTypes().size()});
+
+    try (IfcdbConnection conn = store.getConnection(schema))
+    {
+      conn.createSchema();
+    }
+    return schema;
+  }
+
   public List<IfcdbModel> getModels(String schemaName,
     Expression filter, List<OrderByExpression> orderByList)
   {
@@ -171,10 +405,19 @@ public class IfcdbService
     ExpressSchema schema = schemas.get(schemaName);
     if (schema == null) throw new InvalidRequestException(UNSUPPORTED_SCHEMA);
 
-    try (var conn = store.getConnection(schema))
+    String key = IfcdbMetadataCache.getKey(schemaName,
+      IfcdbMetadataCache.MODELS, getModelsKey(filter, orderByList, roleIds));
+    List<IfcdbModel> models = metadataCache.get(key);
+    if (models == null)
     {
-      return conn.findModels(filter, orderByList, roleIds);
+      long generation = metadataCache.getGeneration();
+      try (var conn = store.getConnection(schema))
+      {
+        models = List.copyOf(conn.findModels(filter, orderByList, roleIds));
+      }
+      metadataCache.put(key, models, generation);
     }
+    return models;
   }
 
   public List<IfcdbVersion> getModelVersions(String schemaName, String modelId)
@@ -188,12 +431,25 @@ public class IfcdbService
 
     try (var conn = store.getConnection(schema))
     {
-      return conn.getModelVersions(modelId);
+      return getVersions(conn, modelId);
     }
   }
 
   public void downloadModel(String schemaName, String modelId, int version,
     File ifcFile) throws IOException
+  {
+    downloadModel(schemaName, modelId, version, ifcFile, null);
+  }
+
+  /**
+   * Exports a model version to a file.
+   *
+   * @param dataConsumer if not null, receives the data of the version after
+   * the export when it has been completely loaded, that is, when the
+   * download is not streamed.
+   */
+  void downloadModel(String schemaName, String modelId, int version,
+    File ifcFile, Consumer<IfcData> dataConsumer) throws IOException
   {
     LOGGER.log(Level.FINE, "schema: {0}, modelId: {1}",
       new Object[] { schemaName, modelId });
@@ -205,44 +461,308 @@ public class IfcdbService
     {
       var chrono = new Chronometer();
 
-      IfcdbModel ifcdbModel = conn.getModel(modelId);
+      IfcdbModel ifcdbModel = getModel(conn, modelId);
+      if (ifcdbModel == null) throw new NotFoundException(MODEL_NOT_FOUND);
+
       if (version == 0)
       {
         version = ifcdbModel.getLastVersion();
       }
 
-      IfcData data = conn.loadData(modelId, version);
+      // the version creation date is the file timestamp
+      IfcdbVersion ifcdbVersion = getVersion(conn, modelId, version);
+      long timestamp = getTimestamp(ifcdbVersion);
+
+      boolean streamed = config.getOptionalValue(BASE + "streamedDownload",
+        Boolean.class).orElse(false);
+
+      // the stream reads the objects while they are exported
+      IfcDataStream stream = streamed ? conn.streamData(modelId, version) : null;
+      IfcData data = null;
+
+      try (stream)
+      {
+        StepExporter exporter;
+        if (stream == null)
+        {
+          data = conn.loadData(modelId, version);
+
+          LOGGER.log(Level.INFO,
+            "IFC objects loaded in {0} seconds.", chrono.seconds());
+          chrono.mark();
+
+          exporter = new StepExporter(data);
+        }
+        else
+        {
+          exporter = new StepExporter(stream.getData());
+        }
+        if (timestamp > 0)
+        {
+          exporter.getHeaderData().getFileName()
+            .setTimestamp(ifcdbVersion.getCreationDate());
+        }
+        exportModel(exporter, stream, ifcdbModel, version, ifcFile);
+      }
+      if (timestamp > 0) ifcFile.setLastModified(timestamp);
+
+      LOGGER.log(Level.INFO,
+        "IFC file created in {0} seconds.", chrono.seconds());
+
+      if (data != null && dataConsumer != null) dataConsumer.accept(data);
 
       LOGGER.log(Level.INFO,
-        "IFC objects loaded in {0} seconds.", chrono.seconds());
-      chrono.mark();
+        "Total time: {0} seconds.", chrono.totalSeconds());
+    }
+  }
 
-      var exporter = new StepExporter(data);
+  /**
+   * @return true if the files of the file cache are gzip compressed.
+   */
+  public boolean isCompressedFiles()
+  {
+    return fileCache != null && fileCache.isCompressed();
+  }
+
+  /**
+   * Returns the IFC file of a model version. The file is taken from the
+   * file cache when it is enabled, otherwise it is exported to a temporary
+   * file.
+   *
+   * @param schemaName the schema of the model.
+   * @param modelId the model id.
+   * @param version the version number or 0 for the last version.
+   * @return the file entry. If the entry is temporary, the caller must
+   * delete its file after use.
+   * @throws IOException if the export fails.
+   */
+  public IfcdbFileCache.Entry getModelFile(String schemaName, String modelId,
+    int version) throws IOException
+  {
+    LOGGER.log(Level.FINE, "schema: {0}, modelId: {1}, version: {2}",
+      new Object[] { schemaName, modelId, version });
+
+    ExpressSchema schema = schemas.get(schemaName);
+    if (schema == null) throw new InvalidRequestException(UNSUPPORTED_SCHEMA);
+
+    if (version == 0)
+    {
+      try (var conn = store.getConnection(schema))
+      {
+        IfcdbModel ifcdbModel = getModel(conn, modelId);
+        if (ifcdbModel == null) throw new NotFoundException(MODEL_NOT_FOUND);
+        version = ifcdbModel.getLastVersion();
+      }
+    }
+    final int modelVersion = version;
+
+    if (fileCache == null)
+    {
+      File ifcFile = File.createTempFile("file", ".ifc");
+      try
+      {
+        downloadModel(schemaName, modelId, modelVersion, ifcFile);
+      }
+      catch (IOException | RuntimeException ex)
+      {
+        ifcFile.delete();
+        throw ex;
+      }
+      return new IfcdbFileCache.Entry(null, ifcFile, false, true,
+        IfcdbFileCache.getEtag(ifcFile));
+    }
+
+    return fileCache.get(schemaName, modelId, modelVersion,
+      file -> downloadModel(schemaName, modelId, modelVersion, file));
+  }
+
+  /**
+   * Finds the elements of a model version whose bounds intersect a
+   * bounding box, using the spatial index of the version. The index is
+   * built when the version is saved or on the first request.
+   *
+   * @param schemaName the schema of the model.
+   * @param modelId the model id.
+   * @param version the version number or 0 for the last version.
+   * @param bbox the bounding box as "minX,minY,minZ,maxX,maxY,maxZ" or
+   * "minX,minY,maxX,maxY", in model units. null for all the elements.
+   * @return the elements found.
+   * @throws IOException if the spatial index can not be built.
+   */
+  public List<IfcdbElement> findElements(String schemaName, String modelId,
+    int version, String bbox) throws IOException
+  {
+    LOGGER.log(Level.FINE, "schema: {0}, modelId: {1}, bbox: {2}",
+      new Object[] { schemaName, modelId, bbox });
+
+    double[] box = parseBoundingBox(bbox);
 
-      var headerData = exporter.getHeaderData();
+    ExpressSchema schema = schemas.get(schemaName);
+    if (schema == null) throw new InvalidRequestException(UNSUPPORTED_SCHEMA);
 
-      String fileName = ifcdbModel.getName();
-      if (fileName != null && fileName.trim().length() > 0)
+    try (var conn = store.getConnection(schema))
+    {
+      List<IfcdbElement> elements = new ArrayList<>();
+      for (ElementBounds bounds : findElementBounds(conn, modelId, version, box))
       {
-        fileName = fileName.trim().replace(" ", "_");
-        if (version > 0) fileName += "-v" + version;
-        fileName += ".ifc";
-        headerData.getFileName().setName(fileName);
+        IfcdbElement element = new IfcdbElement();
+        element.setGlobalId(bounds.getGlobalId());
+        element.setType(bounds.getTypeName());
+        element.setBounds(bounds.getBounds());
+        elements.add(element);
       }
+      return elements;
+    }
+  }
+
+  /**
+   * Exports to an IFC file the elements of a model version whose bounds
+   * intersect a bounding box, with the objects they reference.
+   *
+   * @param schemaName the schema of the model.
+   * @param modelId the model id.
+   * @param version the version number or 0 for the last version.
+   * @param bbox the bounding box, see findElements.
+   * @param ifcFile the file to export to.
+   * @throws IOException if the file can not be exported.
+   */
+  public void exportElements(String schemaName, String modelId, int version,
+    String bbox, File ifcFile) throws IOException
+  {
+    LOGGER.log(Level.FINE, "schema: {0}, modelId: {1}, bbox: {2}",
+      new Object[] { schemaName, modelId, bbox });
+
+    double[] box = parseBoundingBox(bbox);
+
+    ExpressSchema schema = schemas.get(schemaName);
+    if (schema == null) throw new InvalidRequestException(UNSUPPORTED_SCHEMA);
 
-      String description = ifcdbModel.getDescription();
-      if (description != null)
+    try (var conn = store.getConnection(schema))
+    {
+      var chrono = new Chronometer();
+
+      List<String> elementIds = findElementBounds(conn, modelId, version, box)
+        .stream().map(ElementBounds::getElementId).toList();
+
+      if (version == 0)
       {
-        headerData.getFileDescription().setDescription(List.of(description));
+        version = getModel(conn, modelId).getLastVersion();
       }
 
+      IfcData data = conn.queryData(modelId, version, elementIds);
+      if (data == null)
+        throw new InvalidRequestException(UNSUPPORTED_REGION_QUERY);
+
+      LOGGER.log(Level.INFO, "{0} IFC elements loaded in {1} seconds.",
+        new Object[]{ elementIds.size(), chrono.seconds() });
+      chrono.mark();
+
+      var exporter = new StepExporter(data);
+      exporter.getHeaderData().getFileName().setName("region.ifc");
       exporter.export(ifcFile);
 
       LOGGER.log(Level.INFO,
         "IFC file created in {0} seconds.", chrono.seconds());
+    }
+  }
+
+  /**
+   * Exports a part of a model version: the objects selected by GlobalId,
+   * by entity type or by storey, the objects they contain, the objects that
+   * contain them up to the IfcProject, their relationships and all the
+   * entities they reference. See IfcdbExtractor. When no object matches
+   * the selection, NotFoundException is thrown.
+   *
+   * The version is read twice from the store as a stream, so it is never
+   * loaded completely in memory when the store supports streaming.
+   *
+   * @param schemaName the schema of the model.
+   * @param modelId the model id.
+   * @param version the version number or 0 for the last version.
+   * @param globalIds the GlobalIds of the objects to extract.
+   * @param typeNames the entity types of the objects to extract.
+   * @param storeys the GlobalIds or names of the storeys to extract.
+   * @param ifcFile the file to export to.
+   * @throws IOException if the file can not be exported.
+   */
+  public void extractModel(String schemaName, String modelId, int version,
+    Collection<String> globalIds, Collection<String> typeNames,
+    Collection<String> storeys, File ifcFile) throws IOException
+  {
+    LOGGER.log(Level.FINE, "schema: {0}, modelId: {1}, version: {2}",
+      new Object[] { schemaName, modelId, version });
+
+    ExpressSchema schema = schemas.get(schemaName);
+    if (schema == null) throw new InvalidRequestException(UNSUPPORTED_SCHEMA);
+
+    IfcdbExtractor extractor = new IfcdbExtractor(schema);
+    extractor.getGlobalIds().addAll(globalIds);
+    extractor.getStoreys().addAll(storeys);
+    for (String typeName : typeNames)
+    {
+      if (!extractor.addType(typeName))
+        throw new InvalidRequestException(INVALID_ENTITY_TYPE);
+    }
+    if (!extractor.hasSeeds())
+      throw new InvalidRequestException(EXTRACTION_SEEDS_REQUIRED);
+
+    try (var conn = store.getConnection(schema))
+    {
+      var chrono = new Chronometer();
+
+      IfcdbModel ifcdbModel = getModel(conn, modelId);
+      if (ifcdbModel == null) throw new NotFoundException(MODEL_NOT_FOUND);
+
+      if (version == 0)
+      {
+        version = ifcdbModel.getLastVersion();
+      }
+
+      if (getVersion(conn, modelId, version) == null)
+        throw new NotFoundException(VERSION_NOT_FOUND);
+
+      IfcData data = null;
+      try (IfcDataStream stream = conn.streamData(modelId, version))
+      {
+        if (stream == null) // not supported by the store
+        {
+          data = conn.loadData(modelId, version);
+          extractor.scan(getEntities(data));
+        }
+        else
+        {
+          extractor.scan(stream);
+        }
+      }
 
       LOGGER.log(Level.INFO,
-        "Total time: {0} seconds.", chrono.totalSeconds());
+        "Extraction: {0} seeds, {1} entities selected in {2} seconds.",
+        new Object[]{ extractor.getSeedCount(), extractor.getSelectedCount(),
+        chrono.seconds() });
+      chrono.mark();
+
+      if (extractor.getSeedCount() == 0)
+        throw new NotFoundException(EXTRACTION_SEEDS_NOT_FOUND);
+
+      try (IfcDataStream stream =
+           data == null ? conn.streamData(modelId, version) : null;
+           Writer writer = new BufferedWriter(new OutputStreamWriter(
+           new FileOutputStream(ifcFile), StandardCharsets.UTF_8)))
+      {
+        var exporter = new StepExporter(data == null ? stream.getData() : data);
+        String fileName = ifcdbModel.getName();
+        if (!isBlank(fileName))
+        {
+          fileName = fileName.trim().replace(" ", "_") + "-v" + version +
+            "-extract.ifc";
+          exporter.getHeaderData().getFileName().setName(fileName);
+        }
+        extractor.export(exporter, writer,
+          data == null ? stream : getEntities(data));
+      }
+
+      LOGGER.log(Level.INFO,
+        "IFC file created in {0} seconds.", chrono.seconds());
     }
   }
 
@@ -251,20 +771,67 @@ public class IfcdbService
   {
     LOGGER.log(Level.FINE, "schema: {0}", schemaName);
 
-    ExpressSchema schema = schemas.get(schemaName);
-    if (schema == null) throw new InvalidRequestException(UNSUPPORTED_SCHEMA);
+    ExpressSchema schema = getUploadSchema(schemaName, ifcFile);
 
-    long maxFileSizeMb =
-      config.getOptionalValue(BASE + "maxFileSizeMb", Long.class).orElse(0L);
+    return uploadModel(schema, ifcFile, null);
+  }
 
-    if (maxFileSizeMb > 0)
+  /**
+   * Queues the upload of an IFC file. The file is processed in background
+   * and deleted when the upload finishes.
+   *
+   * @param schemaName the schema of the model.
+   * @param ifcFile the IFC file to upload.
+   * @return the upload job, to query its status with getUploadJob.
+   */
+  public IfcdbUploadJob uploadModelAsync(String schemaName, File ifcFile)
+  {
+    LOGGER.log(Level.FINE, "schema: {0}", schemaName);
+
+    ExpressSchema schema = getUploadSchema(schemaName, ifcFile);
+
+    IfcdbUploadJob job = new IfcdbUploadJob();
+    job.setId(UUID.randomUUID().toString());
+    job.setSchema(schemaName);
+    job.setStatus(QUEUED_STATUS);
+    job.setCreationTime(System.currentTimeMillis());
+    job.setInvokerUserId(getCurrentUserId());
+
+    synchronized (uploadQueues)
     {
-      long fileSizeMb = ifcFile.length() / 1048576L;
+      int queuedUploads = 0;
+      for (UploadQueue queue : uploadQueues.values())
+      {
+        queuedUploads += queue.pending.size();
+      }
+      if (queuedUploads >= maxQueuedUploads)
+        throw new InvalidRequestException(TOO_MANY_UPLOADS);
+
+      UploadQueue queue = uploadQueues.computeIfAbsent(schemaName,
+        name -> new UploadQueue());
+      queue.pending.add(new UploadTask(queue, schema, ifcFile, job));
+      activeUploadJobs.put(job.getId(), job);
+      queue.dispatch();
+    }
+    return job;
+  }
 
-      if (fileSizeMb > maxFileSizeMb)
-        throw new InvalidRequestException(MODEL_TOO_LARGE);
+  public IfcdbUploadJob getUploadJob(String jobId)
+  {
+    IfcdbUploadJob job;
+    synchronized (uploadQueues)
+    {
+      job = activeUploadJobs.get(jobId);
     }
+    if (job == null) job = uploadJobs.get(jobId);
+    if (job == null) throw new NotFoundException(UPLOAD_JOB_NOT_FOUND);
+
+    return job;
+  }
 
+  IfcdbModel uploadModel(ExpressSchema schema, File ifcFile,
+    IfcdbUploadJob job) throws IOException
+  {
     try (var conn = store.getConnection(schema))
     {
       var chrono = new Chronometer();
@@ -273,11 +840,58 @@ public class IfcdbService
 
       var loader = new StepLoader(data);
 
-      loader.load(ifcFile);
+      UploadPipeline pipeline = null;
+      if (config.getOptionalValue(BASE + "pipelinedUpload", Boolean.class)
+          .orElse(false))
+      {
+        pipeline = new UploadPipeline(conn, data, job);
+        loader.setEntityListener(pipeline);
+      }
 
-      LOGGER.log(Level.INFO,
-        "IFC file loaded in {0} seconds.", chrono.seconds());
-      chrono.mark();
+      try
+      {
+        if (job == null)
+        {
+          loader.load(ifcFile);
+        }
+        else
+        {
+          setUploadPhase(job, PARSE_PHASE, 0);
+          try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+            new ProgressInputStream(new FileInputStream(ifcFile),
+              ifcFile.length(), job))))
+          {
+            loader.load(reader);
+          }
+        }
+
+        LOGGER.log(Level.INFO,
+          "IFC file loaded in {0} seconds.", chrono.seconds());
+        chrono.mark();
+
+        if (pipeline != null && pipeline.writer != null)
+        {
+          setUploadPhase(job, SAVE_PHASE, PARSE_PROGRESS + 5);
+
+          pipeline.finish();
+
+          LOGGER.log(Level.INFO,
+            "Remaining IFC objects saved in {0} seconds.", chrono.seconds());
+
+          LOGGER.log(Level.INFO,
+            "Total time: {0} seconds.", chrono.totalSeconds());
+
+          modelChanged(schema.getName(), pipeline.ifcdbModel.getId());
+          versionSaved(schema.getName(), pipeline.ifcdbModel.getId(),
+            pipeline.writer.getVersion());
+
+          return pipeline.ifcdbModel;
+        }
+      }
+      finally
+      {
+        if (pipeline != null) pipeline.close();
+      }
 
       ExpressCursor project = data.getIfcProject();
       if (project == null) throw new IOException(INVALID_IFC);
@@ -286,33 +900,34 @@ public class IfcdbService
       if (modelId == null) throw new IOException(INVALID_IFC);
 
       int version;
+      int baseVersion = 0;
       IfcdbModel ifcdbModel = conn.getModel(modelId);
       if (ifcdbModel == null)
       {
-        String modelName = project.get("Name");
-        if (modelName == null || modelName.trim().length() == 0)
-        {
-          modelName = "New model";
-        }
-        ifcdbModel = new IfcdbModel();
-        ifcdbModel.setId(modelId);
-        ifcdbModel.setName(modelName);
-        ifcdbModel.setDescription(project.get("Description"));
-        ifcdbModel.setReadRoleIds(Set.of(getCurrentUserId()));
-        ifcdbModel.setUploadRoleIds(Set.of(getCurrentUserId()));
-        ifcdbModel = conn.createModel(ifcdbModel);
-      }
-      IfcdbVersion ifcdbVersion = new IfcdbVersion();
-      ifcdbVersion.setCreationDate(getISODate());
-      ifcdbVersion.setCreationAuthor(getCurrentUserId());
-      ifcdbVersion = conn.createModelVersion(modelId, ifcdbVersion);
-      version = ifcdbVersion.getVersion();
+        ifcdbModel = createModel(conn, project);
+      }
+      else if (isDeltaVersions())
+      {
+        baseVersion = ifcdbModel.getLastVersion();
+      }
+      setUploadPhase(job, VERSION_PHASE, PARSE_PROGRESS);
+
+      version = createVersion(conn, modelId, baseVersion, job);
 
       LOGGER.log(Level.INFO,
         "Version created in {0} seconds.", chrono.seconds());
       chrono.mark();
 
-      conn.saveData(modelId, version, data);
+      setUploadPhase(job, SAVE_PHASE, PARSE_PROGRESS + 5);
+
+      if (baseVersion > 0)
+      {
+        conn.saveDeltaData(modelId, version, baseVersion, data);
+      }
+      else
+      {
+        conn.saveData(modelId, version, data);
+      }
 
       LOGGER.log(Level.INFO,
         "IFC objects saved in {0} seconds.", chrono.seconds());
@@ -320,10 +935,57 @@ public class IfcdbService
       LOGGER.log(Level.INFO,
         "Total time: {0} seconds.", chrono.totalSeconds());
 
+      modelChanged(schema.getName(), modelId);
+      versionSaved(schema.getName(), modelId, version);
+
       return ifcdbModel;
     }
   }
 
+  private IfcdbModel createModel(IfcdbConnection conn, ExpressCursor project)
+  {
+    String modelId = project.get("GlobalId");
+    String modelName = project.get("Name");
+    if (modelName == null || modelName.trim().length() == 0)
+    {
+      modelName = "New model";
+    }
+    IfcdbModel ifcdbModel = new IfcdbModel();
+    ifcdbModel.setId(modelId);
+    ifcdbModel.setName(modelName);
+    ifcdbModel.setDescription(project.get("Description"));
+    ifcdbModel.setReadRoleIds(Set.of(getCurrentUserId()));
+    ifcdbModel.setUploadRoleIds(Set.of(getCurrentUserId()));
+    ifcdbModel = conn.createModel(ifcdbModel);
+    modelChanged(conn.getSchema().getName(), modelId);
+    return ifcdbModel;
+  }
+
+  private int createVersion(IfcdbConnection conn, String modelId,
+    int baseVersion, IfcdbUploadJob job)
+  {
+    IfcdbVersion ifcdbVersion = new IfcdbVersion();
+    ifcdbVersion.setCreationDate(getISODate());
+    ifcdbVersion.setCreationAuthor(getCurrentUserId());
+    ifcdbVersion.setBaseVersion(baseVersion);
+    ifcdbVersion = conn.createModelVersion(modelId, ifcdbVersion);
+    int version = ifcdbVersion.getVersion();
+    modelChanged(conn.getSchema().getName(), modelId);
+
+    if (job != null)
+    {
+      job.setModelId(modelId);
+      job.setVersion(version);
+    }
+    return version;
+  }
+
+  private boolean isDeltaVersions()
+  {
+    return config.getOptionalValue(BASE + "deltaVersions", Boolean.class)
+      .orElse(false);
+  }
+
   public IfcdbModel updateModel(String schemaName, IfcdbModel model)
   {
     LOGGER.log(Level.FINE, "schema: {0}, modelName: {1}",
@@ -342,6 +1004,12 @@ public class IfcdbService
     {
       return conn.updateModel(model);
     }
+    finally
+    {
+      modelChanged(schemaName, model.getId());
+      // the model name and description are exported in the file header
+      invalidateFiles(schemaName, model.getId(), 0);
+    }
   }
 
   public boolean deleteModel(String schemaName, String modelId, int version)
@@ -363,12 +1031,352 @@ public class IfcdbService
 
       return deleted;
     }
+    finally
+    {
+      modelChanged(schemaName, modelId);
+      invalidateFiles(schemaName, modelId, version);
+      invalidateIndexes(schemaName, modelId, version);
+    }
   }
 
-  public void execute(String schemaName, IfcdbCommand command, File file)
-    throws IOException
+  /**
+   * Removes the cached metadata of a model. Called by the invalidation hook
+   * when the model has changed in other node.
+   *
+   * @param schemaName the schema of the model.
+   * @param modelId the model id or null for all the models of the schema.
+   */
+  public void invalidateMetadata(String schemaName, String modelId)
   {
-    LOGGER.log(Level.FINE, "command: {0}", command.getQuery());
+    metadataCache.invalidate(schemaName, modelId);
+    invalidateFiles(schemaName, modelId, 0);
+    invalidateIndexes(schemaName, modelId, 0);
+  }
+
+  void modelChanged(String schemaName, String modelId)
+  {
+    metadataCache.invalidate(schemaName, modelId);
+
+    if (invalidationHook != null)
+    {
+      try
+      {
+        invalidationHook.modelChanged(schemaName, modelId);
+      }
+      catch (RuntimeException ex)
+      {
+        LOGGER.log(Level.WARNING, "Invalidation hook failed: {0}",
+          ex.toString());
+      }
+    }
+  }
+
+  void invalidateFiles(String schemaName, String modelId, int version)
+  {
+    if (fileCache != null)
+    {
+      fileCache.invalidate(schemaName, modelId, version);
+    }
+  }
+
+  void invalidateIndexes(String schemaName, String modelId, int version)
+  {
+    if (spatialIndexCache != null)
+    {
+      spatialIndexCache.invalidate(schemaName, modelId, version);
+    }
+  }
+
+  /**
+   * Called when the data of a version has been completely saved. Removes
+   * the file and the spatial index that a request could have built while
+   * the data was being saved, and exports the version if warm up is
+   * enabled. The spatial index is built in background from the data loaded
+   * by the warm up export or, if there is none, loading the version.
+   */
+  void versionSaved(String schemaName, String modelId, int version)
+  {
+    invalidateFiles(schemaName, modelId, version);
+    invalidateIndexes(schemaName, modelId, version);
+
+    if (warmUpExecutor != null)
+    {
+      try
+      {
+        warmUpExecutor.execute(() ->
+        {
+          boolean indexed = false;
+          try
+          {
+            indexed = warmUp(schemaName, modelId, version);
+          }
+          catch (Exception ex)
+          {
+            LOGGER.log(Level.WARNING, "Warm up of model {0} failed: {1}",
+              new Object[]{ modelId, ex.toString() });
+          }
+          if (!indexed) buildSpatialIndex(schemaName, modelId, version);
+        });
+      }
+      catch (RejectedExecutionException ex)
+      {
+        // shutting down
+      }
+    }
+    else
+    {
+      buildSpatialIndex(schemaName, modelId, version);
+    }
+  }
+
+  /**
+   * Exports a model version to the file cache and, if the index is built
+   * on upload, builds its spatial index from the data loaded for the
+   * export.
+   *
+   * @return true if the spatial index was built.
+   */
+  private boolean warmUp(String schemaName, String modelId, int version)
+    throws IOException
+  {
+    ExpressSchema schema = schemas.get(schemaName);
+    boolean[] indexed = new boolean[1];
+    Consumer<IfcData> indexer = spatialIndexExecutor == null ? null :
+      data -> indexed[0] = indexData(schemaName, modelId, version, data);
+
+    IfcdbFileCache.Entry entry = fileCache.get(schemaName, modelId, version,
+      file -> downloadModel(schemaName, modelId, version, file, indexer));
+    if (entry.isTemporary()) entry.getFile().delete();
+
+    // the file was cached or streamed, the index is built apart
+    return indexer == null || indexed[0];
+  }
+
+  private boolean indexData(String schemaName, String modelId, int version,
+    IfcData data)
+  {
+    try
+    {
+      spatialIndexCache.get(schemaName, modelId, version,
+        () -> createSpatialIndex(modelId, version, data));
+      return true;
+    }
+    catch (Exception ex)
+    {
+      LOGGER.log(Level.WARNING, "Spatial index of model {0} failed: {1}",
+        new Object[]{ modelId, ex.toString() });
+      return false;
+    }
+  }
+
+  private void buildSpatialIndex(String schemaName, String modelId,
+    int version)
+  {
+    if (spatialIndexExecutor == null) return;
+
+    try
+    {
+      spatialIndexExecutor.execute(() ->
+      {
+        try
+        {
+          findElements(schemaName, modelId, version, null);
+        }
+        catch (Exception ex)
+        {
+          LOGGER.log(Level.WARNING,
+            "Spatial index of model {0} failed: {1}",
+            new Object[]{ modelId, ex.toString() });
+        }
+      });
+    }
+    catch (RejectedExecutionException ex)
+    {
+      // shutting down
+    }
+  }
+
+  private List<ElementBounds> findElementBounds(IfcdbConnection conn,
+    String modelId, int version, double[] box) throws IOException
+  {
+    IfcdbModel ifcdbModel = getModel(conn, modelId);
+    if (ifcdbModel == null) throw new NotFoundException(MODEL_NOT_FOUND);
+
+    if (version == 0)
+    {
+      version = ifcdbModel.getLastVersion();
+    }
+
+    if (getVersion(conn, modelId, version) == null)
+      throw new NotFoundException(VERSION_NOT_FOUND);
+
+    final int modelVersion = version;
+    IfcSpatialIndex index;
+    if (spatialIndexCache == null)
+    {
+      index = createSpatialIndex(conn, modelId, modelVersion);
+    }
+    else
+    {
+      index = spatialIndexCache.get(conn.getSchema().getName(), modelId,
+        modelVersion, () -> createSpatialIndex(conn, modelId, modelVersion));
+    }
+    return index.query(box);
+  }
+
+  private IfcSpatialIndex createSpatialIndex(IfcdbConnection conn,
+    String modelId, int version)
+  {
+    return createSpatialIndex(modelId, version,
+      conn.loadData(modelId, version));
+  }
+
+  private IfcSpatialIndex createSpatialIndex(String modelId, int version,
+    IfcData data)
+  {
+    var chrono = new Chronometer();
+
+    List<ElementBounds> elements = new IfcBoundsCalculator(data).calculate();
+    IfcSpatialIndex index = IfcSpatialIndex.create(elements);
+
+    LOGGER.log(Level.INFO,
+      "Spatial index of model {0}, version {1}: {2} elements, {3} seconds.",
+      new Object[]{ modelId, version, index.size(), chrono.seconds() });
+
+    return index;
+  }
+
+  private Iterator<ExpressCursor> getEntities(IfcData data)
+  {
+    ExpressCursor root = data.getRoot();
+    List<ExpressCursor> entities = new ArrayList<>(root.size());
+    for (int i = 0; i < root.size(); i++)
+    {
+      root.enter(i);
+      entities.add(root.copy());
+      root.exit();
+    }
+    return entities.iterator();
+  }
+
+  /**
+   * Parses a bounding box with 6 or 4 comma separated numbers. A box with
+   * 4 numbers has no limits in the z axis.
+   */
+  static double[] parseBoundingBox(String bbox)
+  {
+    double inf = Double.POSITIVE_INFINITY;
+    if (isBlank(bbox)) return new double[]{ -inf, -inf, -inf, inf, inf, inf };
+
+    String[] parts = bbox.split(",");
+    double[] values = new double[parts.length];
+    try
+    {
+      for (int i = 0; i < parts.length; i++)
+      {
+        values[i] = Double.parseDouble(parts[i].trim());
+        if (Double.isNaN(values[i]))
+          throw new InvalidRequestException(INVALID_BOUNDING_BOX);
+      }
+    }
+    catch (NumberFormatException ex)
+    {
+      throw new InvalidRequestException(INVALID_BOUNDING_BOX);
+    }
+
+    double[] box;
+    if (values.length == 6)
+    {
+      box = values;
+    }
+    else if (values.length == 4)
+    {
+      box = new double[]{ values[0], values[1], -inf, values[2], values[3], inf };
+    }
+    else throw new InvalidRequestException(INVALID_BOUNDING_BOX);
+
+    if (box[0] > box[3] || box[1] > box[4] || box[2] > box[5])
+      throw new InvalidRequestException(INVALID_BOUNDING_BOX);
+
+    return box;
+  }
+
+  private List<IfcdbVersion> getVersions(IfcdbConnection conn,
+    String modelId)
+  {
+    String key = IfcdbMetadataCache.getKey(conn.getSchema().getName(),
+      IfcdbMetadataCache.VERSIONS, modelId);
+    List<IfcdbVersion> versions = metadataCache.get(key);
+    if (versions == null)
+    {
+      long generation = metadataCache.getGeneration();
+      versions = List.copyOf(conn.getModelVersions(modelId));
+      metadataCache.put(key, versions, generation);
+    }
+    return versions;
+  }
+
+  private IfcdbVersion getVersion(IfcdbConnection conn, String modelId,
+    int version)
+  {
+    for (IfcdbVersion ifcdbVersion : getVersions(conn, modelId))
+    {
+      if (ifcdbVersion.getVersion() == version) return ifcdbVersion;
+    }
+    return null;
+  }
+
+  private long getTimestamp(IfcdbVersion ifcdbVersion)
+  {
+    if (ifcdbVersion == null || ifcdbVersion.getCreationDate() == null)
+      return 0;
+
+    // read as UTC, so all the nodes give the same time to a version
+    try
+    {
+      return LocalDateTime.parse(ifcdbVersion.getCreationDate())
+        .toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+    catch (DateTimeParseException ex)
+    {
+      return 0;
+    }
+  }
+
+  private IfcdbModel getModel(IfcdbConnection conn, String modelId)
+  {
+    String key = IfcdbMetadataCache.getKey(conn.getSchema().getName(),
+      IfcdbMetadataCache.MODEL, modelId);
+    IfcdbModel ifcdbModel = metadataCache.get(key);
+    if (ifcdbModel == null)
+    {
+      long generation = metadataCache.getGeneration();
+      ifcdbModel = conn.getModel(modelId);
+      if (ifcdbModel != null) metadataCache.put(key, ifcdbModel, generation);
+    }
+    return ifcdbModel;
+  }
+
+  private String getModelsKey(Expression filter,
+    List<OrderByExpression> orderByList, Set<String> roleIds)
+  {
+    StringBuilder buffer = new StringBuilder();
+    buffer.append(new TreeSet<>(roleIds));
+    if (filter != null)
+    {
+      buffer.append("|").append(LogExpressionPrinter.toString(filter));
+    }
+    if (orderByList != null && !orderByList.isEmpty())
+    {
+      buffer.append("|").append(LogExpressionPrinter.toString(orderByList));
+    }
+    return buffer.toString();
+  }
+
+  public void execute(String schemaName, IfcdbCommand command, File file)
+    throws IOException
+  {
+    LOGGER.log(Level.FINE, "command: {0}", command.getQuery());
 
     ExpressSchema schema = schemas.get(schemaName);
     if (schema == null) throw new InvalidRequestException(UNSUPPORTED_SCHEMA);
@@ -383,7 +1391,12 @@ public class IfcdbService
 
       if (outputFormat.equals("json"))
       {
-        conn.execute(query, language, file);
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+             new FileOutputStream(file), StandardCharsets.UTF_8)))
+        {
+          conn.execute(query, language, getSkip(schemaName, command),
+            command.getLimit(), writer);
+        }
       }
       else // ifc
       {
@@ -408,8 +1421,402 @@ public class IfcdbService
     }
   }
 
+  /**
+   * Executes a command with json output, writing the results to the
+   * given output while they are read from the database. The results are
+   * paged with the skip and limit of the command or with the continuation
+   * token returned by getContinuationToken for the previous page.
+   *
+   * @param schemaName the schema to query.
+   * @param command the command to execute.
+   * @param output the output stream to write the results to.
+   * @throws IOException if the results can not be written.
+   */
+  public void execute(String schemaName, IfcdbCommand command,
+    OutputStream output) throws IOException
+  {
+    LOGGER.log(Level.FINE, "command: {0}", command.getQuery());
+
+    ExpressSchema schema = schemas.get(schemaName);
+    if (schema == null) throw new InvalidRequestException(UNSUPPORTED_SCHEMA);
+
+    int skip = getSkip(schemaName, command);
+
+    Writer writer = new BufferedWriter(
+      new OutputStreamWriter(output, StandardCharsets.UTF_8), 65536);
+
+    try (var conn = store.getConnection(schema))
+    {
+      var chrono = new Chronometer();
+
+      conn.execute(command.getQuery(), command.getLanguage(), skip,
+        command.getLimit(), writer);
+
+      LOGGER.log(Level.INFO,
+        "Total time: {0} seconds.", chrono.totalSeconds());
+    }
+    writer.flush();
+  }
+
+  /**
+   * Returns the token to request the page that follows the page returned
+   * by a json command. The results have ended when a page has less than
+   * limit results.
+   *
+   * @param schemaName the schema to query.
+   * @param command the command.
+   * @return the continuation token or null if the command is not paged.
+   */
+  public String getContinuationToken(String schemaName, IfcdbCommand command)
+  {
+    int limit = command.getLimit();
+    if (limit <= 0 || !"json".equals(command.getOutputFormat())) return null;
+
+    int skip = getSkip(schemaName, command);
+    String token = (skip + limit) + ":" + getCommandHash(schemaName, command);
+
+    return Base64.getUrlEncoder().withoutPadding()
+      .encodeToString(token.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private int getSkip(String schemaName, IfcdbCommand command)
+  {
+    String token = command.getContinuationToken();
+    if (isBlank(token)) return Math.max(0, command.getSkip());
+
+    try
+    {
+      String text =
+        new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+      int index = text.indexOf(':');
+      int skip = Integer.parseInt(text.substring(0, index));
+      // the token is only valid for the same command
+      if (skip >= 0 &&
+          text.substring(index + 1).equals(getCommandHash(schemaName, command)))
+      {
+        return skip;
+      }
+    }
+    catch (IllegalArgumentException | IndexOutOfBoundsException ex)
+    {
+      // invalid token
+    }
+    throw new InvalidRequestException(INVALID_CONTINUATION_TOKEN);
+  }
+
+  private String getCommandHash(String schemaName, IfcdbCommand command)
+  {
+    return DigestUtils.sha1Hex(String.join("\n", schemaName,
+      String.valueOf(command.getLanguage()),
+      String.valueOf(command.getQuery()))).substring(0, 16);
+  }
+
+  private void exportModel(StepExporter exporter, IfcDataStream stream,
+    IfcdbModel ifcdbModel, int version, File ifcFile) throws IOException
+  {
+    var headerData = exporter.getHeaderData();
+
+    String fileName = ifcdbModel.getName();
+    if (fileName != null && fileName.trim().length() > 0)
+    {
+      fileName = fileName.trim().replace(" ", "_");
+      if (version > 0) fileName += "-v" + version;
+      fileName += ".ifc";
+      headerData.getFileName().setName(fileName);
+    }
+
+    String description = ifcdbModel.getDescription();
+    if (description != null)
+    {
+      headerData.getFileDescription().setDescription(List.of(description));
+    }
+
+    if (stream == null)
+    {
+      exporter.export(ifcFile);
+    }
+    else
+    {
+      try (BufferedWriter writer = new BufferedWriter(
+           new OutputStreamWriter(new FileOutputStream(ifcFile))))
+      {
+        exporter.export(writer, stream);
+      }
+    }
+  }
+
   private String getCurrentUserId()
   {
     return securityService.getCurrentUserId();
   }
+
+  private ExpressSchema getUploadSchema(String schemaName, File ifcFile)
+  {
+    ExpressSchema schema = schemas.get(schemaName);
+    if (schema == null) throw new InvalidRequestException(UNSUPPORTED_SCHEMA);
+
+    long maxFileSizeMb =
+      config.getOptionalValue(BASE + "maxFileSizeMb", Long.class).orElse(0L);
+
+    if (maxFileSizeMb > 0)
+    {
+      long fileSizeMb = ifcFile.length() / 1048576L;
+
+      if (fileSizeMb > maxFileSizeMb)
+        throw new InvalidRequestException(MODEL_TOO_LARGE);
+    }
+    return schema;
+  }
+
+  private void setUploadPhase(IfcdbUploadJob job, String phase, int progress)
+  {
+    if (job != null)
+    {
+      job.setPhase(phase);
+      job.setProgress(progress);
+    }
+  }
+
+  /**
+   * Saves the entities of a model while the IFC file is being loaded.
+   * The entities loaded before the IfcProject wait until it is loaded, then
+   * the model version is created and all of them are passed to the data
+   * writer of the store. The pipeline is not used when the store does not
+   * provide a writer or when the version must be stored as changes of the
+   * previous version, that requires the complete data.
+   */
+  class UploadPipeline implements StepEntityListener, AutoCloseable
+  {
+    final IfcdbConnection conn;
+    final IfcData data;
+    final IfcdbUploadJob job;
+    List<Integer> pendingIndices = new ArrayList<>();
+    IfcDataWriter<?> writer;
+    IfcdbModel ifcdbModel;
+    boolean modelCreated;
+    boolean disabled;
+    boolean finished;
+
+    UploadPipeline(IfcdbConnection conn, IfcData data, IfcdbUploadJob job)
+    {
+      this.conn = conn;
+      this.data = data;
+      this.job = job;
+    }
+
+    @Override
+    public void entityLoaded(int index, ExpressCursor cursor)
+      throws IOException
+    {
+      if (disabled) return;
+
+      if (writer != null)
+      {
+        writer.add(index);
+      }
+      else
+      {
+        pendingIndices.add(index);
+        if (cursor.getType().getTypeName().equals("IfcProject"))
+        {
+          start(cursor);
+        }
+      }
+    }
+
+    void start(ExpressCursor project) throws IOException
+    {
+      String modelId = project.get("GlobalId");
+      if (modelId == null) throw new IOException(INVALID_IFC);
+
+      ifcdbModel = conn.getModel(modelId);
+      if (ifcdbModel != null && isDeltaVersions())
+      {
+        disabled = true;
+        pendingIndices = null;
+        return;
+      }
+
+      if (ifcdbModel == null)
+      {
+        ifcdbModel = createModel(conn, project);
+        modelCreated = true;
+      }
+      int version = createVersion(conn, modelId, 0, job);
+
+      int batchSize = config.getOptionalValue(BASE + "writeBatchSize",
+        Integer.class).orElse(2000);
+      int queueSize = config.getOptionalValue(BASE + "writeQueueSize",
+        Integer.class).orElse(4);
+
+      writer = conn.createDataWriter(modelId, version, data,
+        batchSize, queueSize);
+      if (writer == null) // not supported by the store
+      {
+        deleteVersion(modelId, version);
+        disabled = true;
+        pendingIndices = null;
+        return;
+      }
+      writer.start(writerExecutor);
+
+      LOGGER.log(Level.INFO, "Pipelined upload of model {0}, version {1}",
+        new Object[]{ modelId, version });
+
+      for (int pendingIndex : pendingIndices)
+      {
+        writer.add(pendingIndex);
+      }
+      pendingIndices = null;
+    }
+
+    void finish() throws IOException
+    {
+      writer.finish();
+      finished = true;
+    }
+
+    @Override
+    public void close()
+    {
+      if (writer != null && !finished)
+      {
+        writer.close();
+        try
+        {
+          // remove the incomplete version
+          deleteVersion(writer.getModelId(), writer.getVersion());
+        }
+        catch (Exception ex)
+        {
+          LOGGER.log(Level.WARNING, "Can not delete incomplete version: {0}",
+            ex.toString());
+        }
+      }
+    }
+
+    /**
+     * Deletes a version created by this pipeline, and the model too when
+     * it was also created by this pipeline.
+     */
+    void deleteVersion(String modelId, int version)
+    {
+      int deletedVersion = modelCreated ? 0 : version;
+      conn.deleteModel(modelId, deletedVersion);
+      modelChanged(conn.getSchema().getName(), modelId);
+      invalidateFiles(conn.getSchema().getName(), modelId, deletedVersion);
+      invalidateIndexes(conn.getSchema().getName(), modelId, deletedVersion);
+    }
+  }
+
+  /**
+   * The pending uploads of a schema. At most uploadsPerSchema uploads of
+   * the same schema run at the same time, the rest wait here without
+   * holding an executor thread.
+   */
+  class UploadQueue
+  {
+    final ArrayDeque<UploadTask> pending = new ArrayDeque<>();
+    int running;
+
+    // must be called holding the uploadQueues lock
+    void dispatch()
+    {
+      while (running < uploadsPerSchema && !pending.isEmpty())
+      {
+        running++;
+        uploadExecutor.execute(pending.poll());
+      }
+    }
+  }
+
+  class UploadTask implements Runnable
+  {
+    final UploadQueue queue;
+    final ExpressSchema schema;
+    final File ifcFile;
+    final IfcdbUploadJob job;
+
+    UploadTask(UploadQueue queue, ExpressSchema schema, File ifcFile,
+      IfcdbUploadJob job)
+    {
+      this.queue = queue;
+      this.schema = schema;
+      this.ifcFile = ifcFile;
+      this.job = job;
+    }
+
+    @Override
+    public void run()
+    {
+      try
+      {
+        securityService.setCurrentUserId(job.getInvokerUserId());
+        job.setStartTime(System.currentTimeMillis());
+        job.setStatus(RUNNING_STATUS);
+        uploadModel(schema, ifcFile, job);
+        job.setProgress(100);
+        job.setStatus(COMPLETED_STATUS);
+      }
+      catch (Exception ex)
+      {
+        LOGGER.log(Level.SEVERE, "Upload {0} failed: {1}",
+          new Object[]{ job.getId(), ex.toString() });
+        String message = ex.getMessage();
+        job.setError(message == null ? ex.toString() : message);
+        job.setStatus(FAILED_STATUS);
+      }
+      finally
+      {
+        securityService.setCurrentUserId(null);
+        job.setEndTime(System.currentTimeMillis());
+        ifcFile.delete();
+
+        synchronized (uploadQueues)
+        {
+          // the expiration time counts from the end of the upload
+          uploadJobs.put(job.getId(), job);
+          activeUploadJobs.remove(job.getId());
+          queue.running--;
+          queue.dispatch();
+        }
+      }
+    }
+  }
+
+  static class ProgressInputStream extends FilterInputStream
+  {
+    final long length;
+    final IfcdbUploadJob job;
+    long count;
+
+    ProgressInputStream(InputStream is, long length, IfcdbUploadJob job)
+    {
+      super(is);
+      this.length = Math.max(1, length);
+      this.job = job;
+    }
+
+    @Override
+    public int read() throws IOException
+    {
+      int ch = super.read();
+      if (ch != -1) updateProgress(1);
+      return ch;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int size) throws IOException
+    {
+      int read = super.read(buffer, offset, size);
+      if (read > 0) updateProgress(read);
+      return read;
+    }
+
+    void updateProgress(int read)
+    {
+      count += read;
+      job.setProgress((int)(PARSE_PROGRESS * Math.min(count, length) / length));
+    }
+  }
 }
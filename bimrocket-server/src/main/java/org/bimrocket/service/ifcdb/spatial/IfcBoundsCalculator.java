@@ -0,0 +1,855 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.service.ifcdb.spatial;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.bimrocket.express.ExpressDefinedType;
+import org.bimrocket.express.ExpressEntity;
+import org.bimrocket.express.ExpressType;
+import org.bimrocket.express.data.ExpressCursor;
+import static org.bimrocket.express.data.ExpressCursor.CONTAINER;
+import org.bimrocket.express.data.ExpressData;
+
+/**
+ * Computes the axis-aligned bounds of the IfcProducts of an ExpressData,
+ * in the model coordinate system and length unit.
+ *
+ * The object placement is resolved following the IfcLocalPlacement chain.
+ * The bounds of the representation items are computed from the
+ * IfcCartesianPoints they reference, from the profiles of extruded solids
+ * and from the dimensions of the CSG primitives, and they are transformed
+ * by mapped item targets and item positions. Curves and surfaces are
+ * bounded by their control points, so the result is an approximation that
+ * is fit for spatial queries, not for clash detection.
+ *
+ * The bounds of the placements and of the items are cached by element id,
+ * since they are shared by many products.
+ *
+ * @author realor
+ */
+public class IfcBoundsCalculator
+{
+  static final int MAX_DEPTH = 64;
+  static final double[] IDENTITY =
+    { 1, 0, 0, 0,  0, 1, 0, 0,  0, 0, 1, 0 };
+
+  final ExpressData data;
+  final Map<String, double[]> placementMatrices = new HashMap<>();
+  final Map<String, double[]> itemBounds = new HashMap<>();
+  final Map<ExpressType, Boolean> productTypes = new HashMap<>();
+  int depth;
+
+  public IfcBoundsCalculator(ExpressData data)
+  {
+    this.data = data;
+  }
+
+  /**
+   * Computes the bounds of all the products of the data.
+   *
+   * @return the bounds of the products that have an object placement.
+   */
+  public List<ElementBounds> calculate()
+  {
+    List<ElementBounds> result = new ArrayList<>();
+    ExpressCursor cursor = data.getRoot();
+    int size = cursor.size();
+    for (int i = 0; i < size; i++)
+    {
+      cursor.enter(i);
+      try
+      {
+        if (isProduct(cursor.getType()))
+        {
+          double[] bounds = getProductBounds(cursor);
+          if (bounds != null)
+          {
+            result.add(new ElementBounds(cursor.getId(),
+              cursor.get("GlobalId"), cursor.getType().getTypeName(),
+              bounds));
+          }
+        }
+      }
+      finally
+      {
+        cursor.exit();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Computes the bounds of a product.
+   *
+   * @param cursor the cursor positioned on the product.
+   * @return the bounds (minX, minY, minZ, maxX, maxY, maxZ) or null if the
+   * product has no object placement.
+   */
+  public double[] getProductBounds(ExpressCursor cursor)
+  {
+    if (!isContainer(cursor, "ObjectPlacement")) return null;
+
+    cursor.enter("ObjectPlacement");
+    double[] matrix = getPlacementMatrix(cursor);
+    cursor.exit();
+
+    double[] localBounds = null;
+    if (isContainer(cursor, "Representation"))
+    {
+      cursor.enter("Representation"); // IfcProductRepresentation
+      localBounds = getRepresentationsBounds(cursor);
+      cursor.exit();
+    }
+
+    if (localBounds == null)
+    {
+      // no geometry: the placement origin
+      return new double[]{ matrix[3], matrix[7], matrix[11],
+        matrix[3], matrix[7], matrix[11] };
+    }
+    return transformBounds(matrix, localBounds);
+  }
+
+  protected boolean isProduct(ExpressType type)
+  {
+    return productTypes.computeIfAbsent(type, t ->
+    {
+      ExpressEntity entity = t instanceof ExpressEntity e ? e : null;
+      while (entity != null)
+      {
+        if (entity.getTypeName().equals("IfcProduct")) return true;
+        entity = entity.getSuperEntity();
+      }
+      return false;
+    });
+  }
+
+  /* placements */
+
+  protected double[] getPlacementMatrix(ExpressCursor cursor)
+  {
+    String id = cursor.getId();
+    double[] matrix = id == null ? null : placementMatrices.get(id);
+    if (matrix != null) return matrix;
+
+    matrix = IDENTITY;
+    if (isType(cursor, "IfcLocalPlacement") && depth < MAX_DEPTH)
+    {
+      depth++;
+      try
+      {
+        double[] relative = IDENTITY;
+        if (isContainer(cursor, "RelativePlacement"))
+        {
+          cursor.enter("RelativePlacement");
+          relative = getAxisPlacementMatrix(cursor);
+          cursor.exit();
+        }
+        if (isContainer(cursor, "PlacementRelTo"))
+        {
+          cursor.enter("PlacementRelTo");
+          double[] parent = getPlacementMatrix(cursor);
+          cursor.exit();
+          matrix = multiply(parent, relative);
+        }
+        else
+        {
+          matrix = relative;
+        }
+      }
+      finally
+      {
+        depth--;
+      }
+    }
+    if (id != null) placementMatrices.put(id, matrix);
+    return matrix;
+  }
+
+  /**
+   * Returns the matrix of an IfcAxis2Placement3D or IfcAxis2Placement2D.
+   */
+  protected double[] getAxisPlacementMatrix(ExpressCursor cursor)
+  {
+    double[] location = getPoint(cursor, "Location");
+    double[] z = getDirection(cursor, "Axis", new double[]{ 0, 0, 1 });
+    double[] x = getDirection(cursor, "RefDirection", new double[]{ 1, 0, 0 });
+
+    // orthogonalize x with respect to z
+    double dot = x[0] * z[0] + x[1] * z[1] + x[2] * z[2];
+    x = normalize(new double[]{
+      x[0] - dot * z[0], x[1] - dot * z[1], x[2] - dot * z[2] });
+    if (x == null) x = perpendicular(z);
+    double[] y = cross(z, x);
+
+    return new double[]{
+      x[0], y[0], z[0], location[0],
+      x[1], y[1], z[1], location[1],
+      x[2], y[2], z[2], location[2] };
+  }
+
+  /**
+   * Returns the matrix of an IfcCartesianTransformationOperator.
+   */
+  protected double[] getOperatorMatrix(ExpressCursor cursor)
+  {
+    double[] origin = getPoint(cursor, "LocalOrigin");
+    double[] x = getDirection(cursor, "Axis1", null);
+    double[] y = getDirection(cursor, "Axis2", null);
+    double[] z = getDirection(cursor, "Axis3", null);
+    double scale = getNumber(cursor, "Scale", 1);
+    double scaleY = getNumber(cursor, "Scale2", scale);
+    double scaleZ = getNumber(cursor, "Scale3", scale);
+
+    if (x == null) x = new double[]{ 1, 0, 0 };
+    if (z == null)
+    {
+      if (y == null) y = new double[]{ -x[1], x[0], 0 };
+      z = normalize(cross(x, y));
+      if (z == null) z = new double[]{ 0, 0, 1 };
+    }
+    if (y == null) y = cross(z, x);
+
+    return new double[]{
+      x[0] * scale, y[0] * scaleY, z[0] * scaleZ, origin[0],
+      x[1] * scale, y[1] * scaleY, z[1] * scaleZ, origin[1],
+      x[2] * scale, y[2] * scaleY, z[2] * scaleZ, origin[2] };
+  }
+
+  /* representation items */
+
+  protected double[] getRepresentationsBounds(ExpressCursor cursor)
+  {
+    double[] bounds = null;
+    if (isContainer(cursor, "Representations"))
+    {
+      cursor.enter("Representations");
+      for (int i = 0; i < cursor.size(); i++)
+      {
+        if (CONTAINER.equals(cursor.get(i)))
+        {
+          cursor.enter(i); // IfcRepresentation
+          bounds = union(bounds, getItemsBounds(cursor));
+          cursor.exit();
+        }
+      }
+      cursor.exit();
+    }
+    return bounds;
+  }
+
+  protected double[] getItemsBounds(ExpressCursor cursor)
+  {
+    double[] bounds = null;
+    if (isContainer(cursor, "Items"))
+    {
+      cursor.enter("Items");
+      for (int i = 0; i < cursor.size(); i++)
+      {
+        if (CONTAINER.equals(cursor.get(i)))
+        {
+          cursor.enter(i);
+          bounds = union(bounds, getItemBounds(cursor));
+          cursor.exit();
+        }
+      }
+      cursor.exit();
+    }
+    return bounds;
+  }
+
+  /**
+   * Returns the bounds of a representation item in its own coordinate
+   * system.
+   */
+  protected double[] getItemBounds(ExpressCursor cursor)
+  {
+    String id = cursor.getId();
+    if (id != null && itemBounds.containsKey(id)) return itemBounds.get(id);
+
+    double[] bounds = null;
+    if (depth < MAX_DEPTH)
+    {
+      depth++;
+      try
+      {
+        bounds = calculateItemBounds(cursor);
+      }
+      finally
+      {
+        depth--;
+      }
+    }
+    if (id != null) itemBounds.put(id, bounds);
+    return bounds;
+  }
+
+  protected double[] calculateItemBounds(ExpressCursor cursor)
+  {
+    String typeName = cursor.getType().getTypeName();
+
+    switch (typeName)
+    {
+      case "IfcCartesianPoint":
+        double[] point = getCoordinates(cursor);
+        return new double[]{ point[0], point[1], point[2],
+          point[0], point[1], point[2] };
+
+      case "IfcCartesianPointList2D":
+      case "IfcCartesianPointList3D":
+        return getPointListBounds(cursor);
+
+      case "IfcMappedItem":
+        return getMappedItemBounds(cursor);
+
+      case "IfcExtrudedAreaSolid":
+      case "IfcExtrudedAreaSolidTapered":
+        return getExtrudedAreaSolidBounds(cursor);
+
+      case "IfcBooleanResult":
+      case "IfcBooleanClippingResult":
+        return getBooleanResultBounds(cursor);
+
+      case "IfcBlock":
+        return getPrimitiveBounds(cursor,
+          0, 0, 0, getNumber(cursor, "XLength", 0),
+          getNumber(cursor, "YLength", 0), getNumber(cursor, "ZLength", 0));
+
+      case "IfcRightCircularCylinder":
+      {
+        double radius = getNumber(cursor, "Radius", 0);
+        return getPrimitiveBounds(cursor, -radius, -radius, 0,
+          radius, radius, getNumber(cursor, "Height", 0));
+      }
+
+      case "IfcRightCircularCone":
+      {
+        double radius = getNumber(cursor, "BottomRadius", 0);
+        return getPrimitiveBounds(cursor, -radius, -radius, 0,
+          radius, radius, getNumber(cursor, "Height", 0));
+      }
+
+      case "IfcSphere":
+      {
+        double radius = getNumber(cursor, "Radius", 0);
+        return getPrimitiveBounds(cursor, -radius, -radius, -radius,
+          radius, radius, radius);
+      }
+
+      case "IfcHalfSpaceSolid":
+      case "IfcPolygonalBoundedHalfSpace":
+      case "IfcBoxedHalfSpace":
+        return null; // unbounded
+
+      default:
+        return getReferencedPointsBounds(cursor);
+    }
+  }
+
+  protected double[] getMappedItemBounds(ExpressCursor cursor)
+  {
+    if (!isContainer(cursor, "MappingSource")) return null;
+
+    cursor.enter("MappingSource"); // IfcRepresentationMap
+    double[] origin = IDENTITY;
+    if (isContainer(cursor, "MappingOrigin"))
+    {
+      cursor.enter("MappingOrigin");
+      origin = getAxisPlacementMatrix(cursor);
+      cursor.exit();
+    }
+    double[] bounds = null;
+    if (isContainer(cursor, "MappedRepresentation"))
+    {
+      cursor.enter("MappedRepresentation");
+      bounds = getItemsBounds(cursor);
+      cursor.exit();
+    }
+    cursor.exit();
+
+    if (bounds == null) return null;
+
+    double[] target = IDENTITY;
+    if (isContainer(cursor, "MappingTarget"))
+    {
+      cursor.enter("MappingTarget");
+      target = getOperatorMatrix(cursor);
+      cursor.exit();
+    }
+    return transformBounds(multiply(target, origin), bounds);
+  }
+
+  protected double[] getExtrudedAreaSolidBounds(ExpressCursor cursor)
+  {
+    if (!isContainer(cursor, "SweptArea")) return null;
+
+    cursor.enter("SweptArea");
+    double[] profile = getProfileBounds(cursor);
+    cursor.exit();
+
+    if (profile == null) return null;
+
+    double[] direction =
+      getDirection(cursor, "ExtrudedDirection", new double[]{ 0, 0, 1 });
+    double depthValue = getNumber(cursor, "Depth", 0);
+    double dx = direction[0] * depthValue;
+    double dy = direction[1] * depthValue;
+    double dz = direction[2] * depthValue;
+
+    double[] bounds = union(profile, new double[]{
+      profile[0] + dx, profile[1] + dy, profile[2] + dz,
+      profile[3] + dx, profile[4] + dy, profile[5] + dz });
+
+    return transformBounds(getPositionMatrix(cursor), bounds);
+  }
+
+  protected double[] getBooleanResultBounds(ExpressCursor cursor)
+  {
+    double[] bounds = getOperandBounds(cursor, "FirstOperand");
+    Object operator = cursor.get("Operator");
+    if (operator != null && "UNION".equals(operator.toString()))
+    {
+      bounds = union(bounds, getOperandBounds(cursor, "SecondOperand"));
+    }
+    // the difference and the intersection are inside the first operand
+    return bounds;
+  }
+
+  protected double[] getOperandBounds(ExpressCursor cursor, String name)
+  {
+    if (!isContainer(cursor, name)) return null;
+
+    cursor.enter(name);
+    double[] bounds = getItemBounds(cursor);
+    cursor.exit();
+    return bounds;
+  }
+
+  protected double[] getPrimitiveBounds(ExpressCursor cursor,
+    double minX, double minY, double minZ,
+    double maxX, double maxY, double maxZ)
+  {
+    return transformBounds(getPositionMatrix(cursor),
+      new double[]{ minX, minY, minZ, maxX, maxY, maxZ });
+  }
+
+  /**
+   * Returns the bounds of a profile in the xy plane of the solid.
+   */
+  protected double[] getProfileBounds(ExpressCursor cursor)
+  {
+    ExpressEntity entity = (ExpressEntity)cursor.getType();
+    double[] bounds = null;
+
+    if (entity.getAttribute("OuterCurve") != null) // arbitrary profiles
+    {
+      bounds = getOperandBounds(cursor, "OuterCurve");
+    }
+    else if (entity.getAttribute("Profiles") != null) // composite profile
+    {
+      cursor.enter("Profiles");
+      for (int i = 0; i < cursor.size(); i++)
+      {
+        if (CONTAINER.equals(cursor.get(i)))
+        {
+          cursor.enter(i);
+          bounds = union(bounds, getProfileBounds(cursor));
+          cursor.exit();
+        }
+      }
+      cursor.exit();
+      return bounds;
+    }
+    else if (entity.getAttribute("ParentProfile") != null) // derived
+    {
+      double[] parent = null;
+      if (isContainer(cursor, "ParentProfile"))
+      {
+        cursor.enter("ParentProfile");
+        parent = getProfileBounds(cursor);
+        cursor.exit();
+      }
+      double[] operator = IDENTITY;
+      if (parent != null && isContainer(cursor, "Operator"))
+      {
+        cursor.enter("Operator");
+        operator = getOperatorMatrix(cursor);
+        cursor.exit();
+      }
+      return parent == null ? null : transformBounds(operator, parent);
+    }
+    else // parameterized profiles, centered on its position
+    {
+      double radius = getNumber(cursor, "Radius", 0);
+      double width = Math.max(2 * radius, Math.max(
+        getNumber(cursor, "SemiAxis1", 0) * 2,
+        getFirstNumber(cursor, "XDim", "OverallWidth", "Width",
+          "FlangeWidth", "BottomFlangeWidth")));
+      double height = Math.max(2 * radius, Math.max(
+        getNumber(cursor, "SemiAxis2", 0) * 2,
+        getFirstNumber(cursor, "YDim", "OverallDepth", "Depth")));
+
+      if (width == 0 && height == 0) return null;
+
+      bounds = new double[]{ -width / 2, -height / 2, 0,
+        width / 2, height / 2, 0 };
+    }
+
+    if (bounds != null && isContainer(cursor, "Position"))
+    {
+      bounds = transformBounds(getPositionMatrix(cursor), bounds);
+    }
+    return bounds;
+  }
+
+  /**
+   * Returns the bounds of the IfcCartesianPoints and point lists referenced
+   * directly or indirectly by an item (polylines, faces, shells...).
+   */
+  protected double[] getReferencedPointsBounds(ExpressCursor cursor)
+  {
+    Set<String> visited = new HashSet<>();
+    return getReferencedPointsBounds(cursor, visited);
+  }
+
+  private double[] getReferencedPointsBounds(ExpressCursor cursor,
+    Set<String> visited)
+  {
+    double[] bounds = null;
+    int size = cursor.size();
+    for (int i = 0; i < size; i++)
+    {
+      if (!CONTAINER.equals(cursor.get(i))) continue;
+
+      cursor.enter(i);
+      try
+      {
+        ExpressType type = cursor.getType();
+        if (type instanceof ExpressEntity)
+        {
+          String id = cursor.getId();
+          if (id == null || visited.add(id))
+          {
+            String typeName = type.getTypeName();
+            if (typeName.equals("IfcCartesianPoint") ||
+                typeName.startsWith("IfcCartesianPointList"))
+            {
+              bounds = union(bounds, getItemBounds(cursor));
+            }
+            else if (!typeName.startsWith("IfcAxis2Placement") &&
+                     !typeName.equals("IfcDirection") &&
+                     depth < MAX_DEPTH)
+            {
+              depth++;
+              bounds = union(bounds, getReferencedPointsBounds(cursor, visited));
+              depth--;
+            }
+          }
+        }
+        else if (!(cursor.getType() instanceof ExpressDefinedType))
+        {
+          // collection
+          bounds = union(bounds, getReferencedPointsBounds(cursor, visited));
+        }
+      }
+      finally
+      {
+        cursor.exit();
+      }
+    }
+    return bounds;
+  }
+
+  protected double[] getPointListBounds(ExpressCursor cursor)
+  {
+    double[] bounds = null;
+    if (isContainer(cursor, "CoordList"))
+    {
+      cursor.enter("CoordList");
+      for (int i = 0; i < cursor.size(); i++)
+      {
+        if (CONTAINER.equals(cursor.get(i)))
+        {
+          cursor.enter(i);
+          double[] point = getNumbers(cursor);
+          cursor.exit();
+          bounds = union(bounds, new double[]{ point[0], point[1], point[2],
+            point[0], point[1], point[2] });
+        }
+      }
+      cursor.exit();
+    }
+    return bounds;
+  }
+
+  /* attribute access */
+
+  protected double[] getPositionMatrix(ExpressCursor cursor)
+  {
+    if (!isContainer(cursor, "Position")) return IDENTITY;
+
+    cursor.enter("Position");
+    double[] matrix = getAxisPlacementMatrix(cursor);
+    cursor.exit();
+    return matrix;
+  }
+
+  protected double[] getPoint(ExpressCursor cursor, String name)
+  {
+    if (!isContainer(cursor, name))
+      return new double[3];
+
+    cursor.enter(name);
+    double[] point = getCoordinates(cursor);
+    cursor.exit();
+    return point;
+  }
+
+  protected double[] getCoordinates(ExpressCursor cursor)
+  {
+    if (!isContainer(cursor, "Coordinates")) return new double[3];
+
+    cursor.enter("Coordinates");
+    double[] coordinates = getNumbers(cursor);
+    cursor.exit();
+    return coordinates;
+  }
+
+  protected double[] getDirection(ExpressCursor cursor, String name,
+    double[] defaultDirection)
+  {
+    if (!isContainer(cursor, name))
+      return defaultDirection;
+
+    cursor.enter(name);
+    double[] ratios = new double[3];
+    if (isContainer(cursor, "DirectionRatios"))
+    {
+      cursor.enter("DirectionRatios");
+      ratios = getNumbers(cursor);
+      cursor.exit();
+    }
+    cursor.exit();
+    double[] direction = normalize(ratios);
+    return direction == null ? defaultDirection : direction;
+  }
+
+  /**
+   * Reads up to 3 numbers of the current collection, missing values are 0.
+   */
+  protected double[] getNumbers(ExpressCursor cursor)
+  {
+    double[] numbers = new double[3];
+    int size = Math.min(3, cursor.size());
+    for (int i = 0; i < size; i++)
+    {
+      Object value = cursor.get(i);
+      if (value instanceof Number number)
+      {
+        numbers[i] = number.doubleValue();
+      }
+      else if (CONTAINER.equals(value)) // defined type
+      {
+        cursor.enter(i);
+        Object inner = cursor.get(0);
+        cursor.exit();
+        if (inner instanceof Number number) numbers[i] = number.doubleValue();
+      }
+    }
+    return numbers;
+  }
+
+  protected double getNumber(ExpressCursor cursor, String name,
+    double defaultValue)
+  {
+    if (!hasAttribute(cursor, name)) return defaultValue;
+
+    Object value = cursor.get(name);
+    if (value instanceof Number number) return number.doubleValue();
+
+    if (CONTAINER.equals(value)) // defined type
+    {
+      cursor.enter(name);
+      Object inner = cursor.get(0);
+      cursor.exit();
+      if (inner instanceof Number number) return number.doubleValue();
+    }
+    return defaultValue;
+  }
+
+  protected double getFirstNumber(ExpressCursor cursor, String... names)
+  {
+    for (String name : names)
+    {
+      double value = getNumber(cursor, name, 0);
+      if (value != 0) return value;
+    }
+    return 0;
+  }
+
+  protected boolean isContainer(ExpressCursor cursor, String name)
+  {
+    return hasAttribute(cursor, name) && CONTAINER.equals(cursor.get(name));
+  }
+
+  protected boolean hasAttribute(ExpressCursor cursor, String name)
+  {
+    return cursor.getType() instanceof ExpressEntity entity &&
+      entity.getAttribute(name) != null;
+  }
+
+  protected boolean isType(ExpressCursor cursor, String typeName)
+  {
+    return cursor.getType().getTypeName().equals(typeName);
+  }
+
+  /* math */
+
+  static double[] multiply(double[] a, double[] b)
+  {
+    double[] m = new double[12];
+    for (int row = 0; row < 3; row++)
+    {
+      int r = row * 4;
+      for (int col = 0; col < 4; col++)
+      {
+        double value = a[r] * b[col] + a[r + 1] * b[4 + col] +
+          a[r + 2] * b[8 + col];
+        if (col == 3) value += a[r + 3];
+        m[r + col] = value;
+      }
+    }
+    return m;
+  }
+
+  static double[] transformBounds(double[] m, double[] bounds)
+  {
+    if (m == IDENTITY) return bounds;
+
+    double[] result = null;
+    for (int corner = 0; corner < 8; corner++)
+    {
+      double x = (corner & 1) == 0 ? bounds[0] : bounds[3];
+      double y = (corner & 2) == 0 ? bounds[1] : bounds[4];
+      double z = (corner & 4) == 0 ? bounds[2] : bounds[5];
+      double tx = m[0] * x + m[1] * y + m[2] * z + m[3];
+      double ty = m[4] * x + m[5] * y + m[6] * z + m[7];
+      double tz = m[8] * x + m[9] * y + m[10] * z + m[11];
+      result = union(result, new double[]{ tx, ty, tz, tx, ty, tz });
+    }
+    return result;
+  }
+
+  static double[] union(double[] a, double[] b)
+  {
+    if (a == null) return b;
+    if (b == null) return a;
+    return new double[]{
+      Math.min(a[0], b[0]), Math.min(a[1], b[1]), Math.min(a[2], b[2]),
+      Math.max(a[3], b[3]), Math.max(a[4], b[4]), Math.max(a[5], b[5]) };
+  }
+
+  static double[] cross(double[] a, double[] b)
+  {
+    return new double[]{
+      a[1] * b[2] - a[2] * b[1],
+      a[2] * b[0] - a[0] * b[2],
+      a[0] * b[1] - a[1] * b[0] };
+  }
+
+  static double[] normalize(double[] v)
+  {
+    if (v == null) return null;
+    double length = Math.sqrt(v[0] * v[0] + v[1] * v[1] + v[2] * v[2]);
+    if (length < 1e-12) return null;
+    return new double[]{ v[0] / length, v[1] / length, v[2] / length };
+  }
+
+  static double[] perpendicular(double[] z)
+  {
+    double[] axis = Math.abs(z[0]) < 0.9 ?
+      new double[]{ 1, 0, 0 } : new double[]{ 0, 1, 0 };
+    double[] y = normalize(cross(z, axis));
+    return cross(y, z);
+  }
+
+  /**
+   * The bounds of an element.
+   */
+  public static class ElementBounds
+  {
+    final String elementId;
+    final String globalId;
+    final String typeName;
+    final double[] bounds;
+
+    public ElementBounds(String elementId, String globalId, String typeName,
+      double[] bounds)
+    {
+      this.elementId = elementId;
+      this.globalId = globalId;
+      this.typeName = typeName;
+      this.bounds = bounds;
+    }
+
+    /**
+     * @return the element id in the store, as returned by
+     * ExpressCursor.getId.
+     */
+    public String getElementId()
+    {
+      return elementId;
+    }
+
+    public String getGlobalId()
+    {
+      return globalId;
+    }
+
+    public String getTypeName()
+    {
+      return typeName;
+    }
+
+    /**
+     * @return minX, minY, minZ, maxX, maxY, maxZ.
+     */
+    public double[] getBounds()
+    {
+      return bounds;
+    }
+  }
+}
@@ -0,0 +1,308 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.service.ifcdb.spatial;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.bimrocket.service.ifcdb.spatial.IfcBoundsCalculator.ElementBounds;
+
+/**
+ * A static R-tree of element bounds, packed with the Sort-Tile-Recursive
+ * algorithm.
+ *
+ * The elements are sorted so that each group of NODE_SIZE consecutive
+ * elements is a leaf node, and each group of NODE_SIZE consecutive nodes of
+ * a level is a node of the next level. Only the sorted elements are
+ * written to disk, the node bounds are computed again when the index is
+ * read.
+ *
+ * @author realor
+ */
+public class IfcSpatialIndex
+{
+  public static final int NODE_SIZE = 16;
+  static final int MAGIC = 0x49534931; // ISI1
+
+  final ElementBounds[] elements;
+  final List<double[]> levels = new ArrayList<>(); // node bounds per level
+
+  protected IfcSpatialIndex(ElementBounds[] elements)
+  {
+    this.elements = elements;
+    buildLevels();
+  }
+
+  /**
+   * Creates an index of the given elements.
+   *
+   * @param elements the elements to index.
+   * @return the index.
+   */
+  public static IfcSpatialIndex create(List<ElementBounds> elements)
+  {
+    ElementBounds[] array = elements.toArray(ElementBounds[]::new);
+    sortTiles(array, 0, array.length, 0);
+    return new IfcSpatialIndex(array);
+  }
+
+  /**
+   * Reads an index written with write.
+   *
+   * @param file the file to read.
+   * @return the index.
+   * @throws IOException if the file can not be read or is not an index.
+   */
+  public static IfcSpatialIndex read(File file) throws IOException
+  {
+    try (DataInputStream is = new DataInputStream(
+      new BufferedInputStream(new FileInputStream(file))))
+    {
+      if (is.readInt() != MAGIC)
+        throw new IOException("Invalid spatial index: " + file);
+
+      int count = is.readInt();
+      ElementBounds[] elements = new ElementBounds[count];
+      for (int i = 0; i < count; i++)
+      {
+        String elementId = is.readUTF();
+        String globalId = is.readBoolean() ? is.readUTF() : null;
+        String typeName = is.readUTF();
+        double[] bounds = new double[6];
+        for (int j = 0; j < 6; j++)
+        {
+          bounds[j] = is.readDouble();
+        }
+        elements[i] = new ElementBounds(elementId, globalId, typeName, bounds);
+      }
+      return new IfcSpatialIndex(elements);
+    }
+  }
+
+  /**
+   * Writes this index to a file.
+   *
+   * @param file the file to write.
+   * @throws IOException if the file can not be written.
+   */
+  public void write(File file) throws IOException
+  {
+    try (DataOutputStream os = new DataOutputStream(
+      new BufferedOutputStream(new FileOutputStream(file))))
+    {
+      os.writeInt(MAGIC);
+      os.writeInt(elements.length);
+      for (ElementBounds element : elements)
+      {
+        os.writeUTF(element.getElementId());
+        os.writeBoolean(element.getGlobalId() != null);
+        if (element.getGlobalId() != null)
+        {
+          os.writeUTF(element.getGlobalId());
+        }
+        os.writeUTF(element.getTypeName());
+        for (double value : element.getBounds())
+        {
+          os.writeDouble(value);
+        }
+      }
+    }
+  }
+
+  public int size()
+  {
+    return elements.length;
+  }
+
+  /**
+   * @return the bounds of all the elements or null if the index is empty.
+   */
+  public double[] getBounds()
+  {
+    if (levels.isEmpty()) return null;
+    double[] root = levels.get(levels.size() - 1);
+    return Arrays.copyOf(root, 6);
+  }
+
+  /**
+   * Finds the elements whose bounds intersect the given box.
+   *
+   * @param box minX, minY, minZ, maxX, maxY, maxZ.
+   * @return the elements found, in index order.
+   */
+  public List<ElementBounds> query(double[] box)
+  {
+    List<ElementBounds> result = new ArrayList<>();
+    if (!levels.isEmpty())
+    {
+      int top = levels.size() - 1;
+      int nodeCount = levels.get(top).length / 6;
+      for (int node = 0; node < nodeCount; node++)
+      {
+        query(box, top, node, result);
+      }
+    }
+    return result;
+  }
+
+  private void query(double[] box, int level, int node,
+    List<ElementBounds> result)
+  {
+    if (!intersects(levels.get(level), node * 6, box)) return;
+
+    int first = node * NODE_SIZE;
+    if (level == 0)
+    {
+      int last = Math.min(first + NODE_SIZE, elements.length);
+      for (int i = first; i < last; i++)
+      {
+        if (intersects(elements[i].getBounds(), 0, box))
+        {
+          result.add(elements[i]);
+        }
+      }
+    }
+    else
+    {
+      int last = Math.min(first + NODE_SIZE,
+        levels.get(level - 1).length / 6);
+      for (int child = first; child < last; child++)
+      {
+        query(box, level - 1, child, result);
+      }
+    }
+  }
+
+  private void buildLevels()
+  {
+    if (elements.length == 0) return;
+
+    int nodeCount = (elements.length + NODE_SIZE - 1) / NODE_SIZE;
+    double[] nodes = new double[nodeCount * 6];
+    for (int node = 0; node < nodeCount; node++)
+    {
+      int first = node * NODE_SIZE;
+      int last = Math.min(first + NODE_SIZE, elements.length);
+      initBounds(nodes, node);
+      for (int i = first; i < last; i++)
+      {
+        expand(nodes, node, elements[i].getBounds(), 0);
+      }
+    }
+    levels.add(nodes);
+
+    while (nodeCount > 1)
+    {
+      double[] children = nodes;
+      int childCount = nodeCount;
+      nodeCount = (childCount + NODE_SIZE - 1) / NODE_SIZE;
+      nodes = new double[nodeCount * 6];
+      for (int node = 0; node < nodeCount; node++)
+      {
+        int first = node * NODE_SIZE;
+        int last = Math.min(first + NODE_SIZE, childCount);
+        initBounds(nodes, node);
+        for (int child = first; child < last; child++)
+        {
+          expand(nodes, node, children, child * 6);
+        }
+      }
+      levels.add(nodes);
+    }
+  }
+
+  /**
+   * Sorts the elements in [start, end) by the center of their bounds in
+   * the given axis and sorts each slab by the next axis.
+   */
+  static void sortTiles(ElementBounds[] array, int start, int end, int axis)
+  {
+    int count = end - start;
+    if (count <= NODE_SIZE) return;
+
+    Arrays.sort(array, start, end,
+      Comparator.comparingDouble(element -> center(element, axis)));
+
+    if (axis == 2) return;
+
+    int leafCount = (count + NODE_SIZE - 1) / NODE_SIZE;
+    int slabCount = (int)Math.ceil(Math.pow(leafCount, 1.0 / (3 - axis)));
+    int slabSize = NODE_SIZE *
+      (int)Math.ceil((double)leafCount / slabCount);
+
+    for (int slabStart = start; slabStart < end; slabStart += slabSize)
+    {
+      sortTiles(array, slabStart, Math.min(slabStart + slabSize, end),
+        axis + 1);
+    }
+  }
+
+  static double center(ElementBounds element, int axis)
+  {
+    double[] bounds = element.getBounds();
+    return bounds[axis] + bounds[axis + 3];
+  }
+
+  static boolean intersects(double[] bounds, int offset, double[] box)
+  {
+    return bounds[offset] <= box[3] && bounds[offset + 3] >= box[0] &&
+      bounds[offset + 1] <= box[4] && bounds[offset + 4] >= box[1] &&
+      bounds[offset + 2] <= box[5] && bounds[offset + 5] >= box[2];
+  }
+
+  static void initBounds(double[] nodes, int node)
+  {
+    int offset = node * 6;
+    Arrays.fill(nodes, offset, offset + 3, Double.POSITIVE_INFINITY);
+    Arrays.fill(nodes, offset + 3, offset + 6, Double.NEGATIVE_INFINITY);
+  }
+
+  static void expand(double[] nodes, int node, double[] bounds, int offset)
+  {
+    int nodeOffset = node * 6;
+    for (int i = 0; i < 3; i++)
+    {
+      nodes[nodeOffset + i] =
+        Math.min(nodes[nodeOffset + i], bounds[offset + i]);
+      nodes[nodeOffset + i + 3] =
+        Math.max(nodes[nodeOffset + i + 3], bounds[offset + i + 3]);
+    }
+  }
+}
@@ -0,0 +1,274 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.service.ifcdb.spatial;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import static org.bimrocket.service.ifcdb.IfcdbFileCache.getKey;
+import static org.bimrocket.service.ifcdb.IfcdbFileCache.getModelPrefix;
+
+/**
+ * Cache of the spatial indexes of the model versions.
+ *
+ * The indexes are written to files of the cache directory and the most
+ * recently used are also kept in memory. A stored version does not change,
+ * so its index is valid until the version is deleted. The directory is
+ * emptied on startup, since the database may have changed while the server
+ * was stopped.
+ *
+ * @author realor
+ */
+public class IfcSpatialIndexCache
+{
+  static final Logger LOGGER =
+    Logger.getLogger(IfcSpatialIndexCache.class.getName());
+
+  static final String PART_PREFIX = "part-";
+  static final String EXTENSION = ".idx";
+
+  final File directory;
+  final int maxIndexes;
+  final LinkedHashMap<String, IfcSpatialIndex> indexes;
+  final ConcurrentHashMap<String, FutureTask<IfcSpatialIndex>> builds =
+    new ConcurrentHashMap<>();
+  long generation;
+
+  public IfcSpatialIndexCache(File directory, int maxIndexes)
+  {
+    this.directory = directory;
+    this.maxIndexes = maxIndexes;
+    this.indexes = new LinkedHashMap<>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(
+        Map.Entry<String, IfcSpatialIndex> eldest)
+      {
+        return size() > IfcSpatialIndexCache.this.maxIndexes;
+      }
+    };
+  }
+
+  public File getDirectory()
+  {
+    return directory;
+  }
+
+  public void init() throws IOException
+  {
+    if (!directory.exists() && !directory.mkdirs())
+      throw new IOException("Can not create directory " + directory);
+
+    File[] files = directory.listFiles();
+    if (files != null)
+    {
+      for (File file : files)
+      {
+        if (file.isFile()) file.delete();
+      }
+    }
+  }
+
+  /**
+   * Returns the spatial index of a model version, building it when it is
+   * neither in memory nor in the cache directory. Concurrent requests of
+   * the same version wait for a single build.
+   *
+   * @param schemaName the schema of the model.
+   * @param modelId the model id.
+   * @param version the version number (greater than 0).
+   * @param builder the builder that computes the index.
+   * @return the spatial index.
+   * @throws IOException if the index can not be built.
+   */
+  public IfcSpatialIndex get(String schemaName, String modelId, int version,
+    Builder builder) throws IOException
+  {
+    String key = getKey(schemaName, modelId, version);
+
+    synchronized (this)
+    {
+      IfcSpatialIndex index = indexes.get(key);
+      if (index != null) return index;
+    }
+
+    FutureTask<IfcSpatialIndex> task =
+      new FutureTask<>(() -> load(key, builder));
+    FutureTask<IfcSpatialIndex> current = builds.putIfAbsent(key, task);
+    if (current == null)
+    {
+      current = task;
+      try
+      {
+        task.run();
+      }
+      finally
+      {
+        builds.remove(key, task);
+      }
+    }
+
+    try
+    {
+      return current.get();
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      throw new IOException(ex);
+    }
+    catch (ExecutionException ex)
+    {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException ioException) throw ioException;
+      if (cause instanceof RuntimeException runtimeException)
+        throw runtimeException;
+      throw new IOException(cause);
+    }
+  }
+
+  /**
+   * Removes the indexes of a model.
+   *
+   * @param schemaName the schema of the model.
+   * @param modelId the model id or null to remove all the schema indexes.
+   * @param version the version to remove or 0 for all versions.
+   */
+  public synchronized void invalidate(String schemaName, String modelId,
+    int version)
+  {
+    generation++;
+
+    String prefix = modelId == null ?
+      schemaName + "_" : getModelPrefix(schemaName, modelId);
+    String key = modelId == null || version == 0 ?
+      null : prefix + version;
+
+    Iterator<String> iter = indexes.keySet().iterator();
+    while (iter.hasNext())
+    {
+      String indexKey = iter.next();
+      if (key == null ? indexKey.startsWith(prefix) : indexKey.equals(key))
+      {
+        iter.remove();
+      }
+    }
+
+    File[] files = directory.listFiles((dir, name) ->
+      name.endsWith(EXTENSION) && (key == null ?
+        name.startsWith(prefix) : name.equals(key + EXTENSION)));
+    if (files != null)
+    {
+      for (File file : files)
+      {
+        file.delete();
+      }
+    }
+  }
+
+  public synchronized int size()
+  {
+    return indexes.size();
+  }
+
+  IfcSpatialIndex load(String key, Builder builder) throws IOException
+  {
+    long loadGeneration;
+    synchronized (this)
+    {
+      loadGeneration = generation;
+    }
+
+    File file = new File(directory, key + EXTENSION);
+    if (file.isFile())
+    {
+      try
+      {
+        IfcSpatialIndex index = IfcSpatialIndex.read(file);
+        synchronized (this)
+        {
+          if (loadGeneration == generation) indexes.put(key, index);
+        }
+        return index;
+      }
+      catch (IOException ex)
+      {
+        LOGGER.log(Level.WARNING, "Invalid spatial index {0}: {1}",
+          new Object[]{ file, ex.toString() });
+        file.delete();
+      }
+    }
+
+    IfcSpatialIndex index = builder.build();
+
+    File partFile = new File(directory, PART_PREFIX + UUID.randomUUID());
+    try
+    {
+      index.write(partFile);
+      synchronized (this)
+      {
+        // do not cache the index if the model changed during the build
+        if (loadGeneration == generation)
+        {
+          Files.move(partFile.toPath(), file.toPath(),
+            StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+          partFile = null;
+          indexes.put(key, index);
+        }
+      }
+    }
+    finally
+    {
+      if (partFile != null) partFile.delete();
+    }
+    return index;
+  }
+
+  /**
+   * Computes the spatial index of a model version.
+   */
+  @FunctionalInterface
+  public interface Builder
+  {
+    IfcSpatialIndex build() throws IOException;
+  }
+}
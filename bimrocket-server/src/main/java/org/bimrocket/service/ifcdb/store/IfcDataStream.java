@@ -28,36 +28,22 @@
  * and
  * https://www.gnu.org/licenses/lgpl.txt
  */
-package org.bimrocket.service.ifcdb.store.orient;
+package org.bimrocket.service.ifcdb.store;
 
-import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
-import com.orientechnologies.orient.core.record.OElement;
+import java.util.Iterator;
+import org.bimrocket.express.data.ExpressCursor;
 
 /**
+ * Iterator over the objects of a model version that reads them from the
+ * store as they are requested. The cursors returned belong to getData(),
+ * whose root is not populated.
  *
  * @author realor
  */
-public class OrientIfcDeleter extends OrientIfcTraverser
+public interface IfcDataStream extends Iterator<ExpressCursor>, AutoCloseable
 {
-  public OrientIfcDeleter(ODatabaseDocument db)
-  {
-    super(db);
-  }
-
-  public int delete(OElement oelement)
-  {
-    return traverse(oelement);
-  }
-
-  @Override
-  protected boolean isProcessable(OElement olement)
-  {
-    return true;
-  }
+  IfcData getData();
 
   @Override
-  protected void process(OElement oelement)
-  {
-    db.delete(oelement);
-  }
+  void close();
 }
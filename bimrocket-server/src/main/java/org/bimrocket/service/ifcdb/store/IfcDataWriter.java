@@ -0,0 +1,326 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.service.ifcdb.store;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Saves the elements of an IfcData while it is being loaded.
+ *
+ * The loading thread adds the elements as soon as they are completely
+ * loaded and they are sent in batches, through a bounded queue, to a
+ * writer task that saves them into the store. Loading and saving overlap
+ * and, when the queue is full, the loading thread waits for the writer.
+ * When the queue size is 0, the batches are saved in the loading thread,
+ * for the stores whose elements can only be saved by the session that
+ * created them.
+ *
+ * @author realor
+ * @param <E> the element type
+ */
+public abstract class IfcDataWriter<E> implements AutoCloseable
+{
+  private final List<E> END_OF_DATA = new ArrayList<>(0);
+
+  // task states
+  private static final int PENDING = 0;
+  private static final int RUNNING = 1;
+  private static final int CANCELLED = 2;
+
+  protected final String modelId;
+  protected final int version;
+  private final int batchSize;
+  private final BlockingQueue<List<E>> queue; // null when synchronous
+  private List<E> batch;
+  private boolean started;
+  private boolean finished;
+  private Future<?> task;
+  private final AtomicInteger taskState = new AtomicInteger(PENDING);
+  private final CountDownLatch done = new CountDownLatch(1);
+  private volatile Throwable error;
+  private int elementCount;
+
+  public IfcDataWriter(String modelId, int version, int batchSize,
+    int queueSize)
+  {
+    this.modelId = modelId;
+    this.version = version;
+    this.batchSize = batchSize;
+    this.queue = queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : null;
+    this.batch = new ArrayList<>(batchSize);
+  }
+
+  public String getModelId()
+  {
+    return modelId;
+  }
+
+  public int getVersion()
+  {
+    return version;
+  }
+
+  /**
+   * @return the number of elements added.
+   */
+  public int getElementCount()
+  {
+    return elementCount;
+  }
+
+  /**
+   * @return true if the batches are saved in the loading thread.
+   */
+  public boolean isSynchronous()
+  {
+    return queue == null;
+  }
+
+  /**
+   * Starts the writer. Must be called before adding the elements.
+   *
+   * @param executor the executor that runs the writer task. It is not used
+   * when the writer is synchronous.
+   */
+  public void start(ExecutorService executor)
+  {
+    if (started) throw new IllegalStateException("Writer already started");
+    started = true;
+
+    if (queue == null)
+    {
+      open();
+    }
+    else
+    {
+      task = executor.submit(this::run);
+    }
+  }
+
+  /**
+   * Adds the root element at index of the data. Called from the loading
+   * thread when the element and all the elements it references have been
+   * loaded.
+   *
+   * @param index the index of the element in the root of the data.
+   * @throws IOException if the writer has failed.
+   */
+  public void add(int index) throws IOException
+  {
+    if (!started) throw new IllegalStateException("Writer not started");
+
+    batch.add(takeElement(index));
+    elementCount++;
+
+    if (batch.size() >= batchSize)
+    {
+      put(batch);
+      batch = new ArrayList<>(batchSize);
+    }
+  }
+
+  /**
+   * Sends the remaining elements and waits until all of them are saved.
+   *
+   * @throws IOException if the elements could not be saved.
+   */
+  public void finish() throws IOException
+  {
+    if (!started) throw new IllegalStateException("Writer not started");
+
+    if (!batch.isEmpty()) put(batch);
+    batch = null;
+
+    if (queue == null)
+    {
+      complete(elementCount);
+      finished = true;
+      release();
+      return;
+    }
+
+    put(END_OF_DATA);
+    try
+    {
+      done.await();
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while saving data");
+    }
+    checkError();
+  }
+
+  /**
+   * Stops the writer task if it is still running.
+   */
+  @Override
+  public void close()
+  {
+    if (queue == null)
+    {
+      if (started && !finished)
+      {
+        finished = true;
+        release();
+      }
+    }
+    else if (task != null &&
+      !taskState.compareAndSet(PENDING, CANCELLED)) // already running
+    {
+      task.cancel(true);
+      try
+      {
+        done.await();
+      }
+      catch (InterruptedException ex)
+      {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Returns the element to save at index of the data. Called from the
+   * loading thread, it may replace the element in data with a lighter one
+   * that is enough to reference it.
+   *
+   * @param index the index of the element in the root of the data.
+   * @return the element to save
+   */
+  protected abstract E takeElement(int index);
+
+  /**
+   * Called before saving the first batch.
+   */
+  protected void open()
+  {
+  }
+
+  /**
+   * Saves a batch of elements. Called from the writer task or, when the
+   * writer is synchronous, from the loading thread.
+   *
+   * @param elements the elements to save.
+   */
+  protected abstract void write(List<E> elements);
+
+  /**
+   * Called after saving all the elements.
+   *
+   * @param elementCount the number of elements saved.
+   */
+  protected void complete(int elementCount)
+  {
+  }
+
+  /**
+   * Called when the writer ends, even if it has failed.
+   */
+  protected void release()
+  {
+  }
+
+  private void run()
+  {
+    if (!taskState.compareAndSet(PENDING, RUNNING)) // closed before running
+    {
+      done.countDown();
+      return;
+    }
+
+    try
+    {
+      open();
+      List<E> elements = queue.take();
+      while (elements != END_OF_DATA)
+      {
+        write(elements);
+        elements = queue.take();
+      }
+      complete(elementCount);
+    }
+    catch (Throwable ex) // includes the interruption of close
+    {
+      error = ex;
+    }
+    finally
+    {
+      queue.clear();
+      release();
+      done.countDown();
+    }
+  }
+
+  private void put(List<E> elements) throws IOException
+  {
+    if (queue == null)
+    {
+      write(elements);
+      return;
+    }
+
+    try
+    {
+      while (!queue.offer(elements, 1, TimeUnit.SECONDS))
+      {
+        checkError();
+        if (done.getCount() == 0) throw new IOException("Writer not running");
+      }
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while saving data");
+    }
+    checkError();
+  }
+
+  private void checkError() throws IOException
+  {
+    if (error != null)
+    {
+      String message = error.getMessage();
+      throw new IOException(message == null ? error.toString() : message,
+        error);
+    }
+  }
+}
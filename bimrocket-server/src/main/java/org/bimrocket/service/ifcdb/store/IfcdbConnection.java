@@ -30,8 +30,9 @@
  */
 package org.bimrocket.service.ifcdb.store;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import org.bimrocket.api.ifcdb.IfcdbModel;
@@ -73,8 +74,76 @@ public interface IfcdbConnection extends DaoConnection
 
   void saveData(String modelId, int version, IfcData data);
 
+  /**
+   * Saves the data of a version as the changes from a previous version.
+   * The objects that did not change are shared with baseVersion and only
+   * the added and removed objects are stored, so the storage and the time
+   * required are proportional to the size of the changes. loadData returns
+   * the complete data of the version.
+   *
+   * @param modelId the model id.
+   * @param version the version to save.
+   * @param baseVersion the previous version to compare with.
+   * @param data the complete data of the version.
+   */
+  void saveDeltaData(String modelId, int version, int baseVersion,
+    IfcData data);
+
+  /**
+   * Creates a writer that saves the elements of data into the given model
+   * version while data is being loaded. The version must exist and be
+   * empty.
+   *
+   * @param modelId the model id.
+   * @param version the version to save.
+   * @param data the data being loaded, created with createData.
+   * @param batchSize the number of elements saved at once.
+   * @param queueSize the number of batches that may wait to be saved. A
+   * store may ignore it and save the batches in the loading thread.
+   * @return the writer or null if this store does not support it.
+   */
+  IfcDataWriter<?> createDataWriter(String modelId, int version,
+    IfcData data, int batchSize, int queueSize);
+
+  /**
+   * Opens a stream over the objects of a model version that reads them as
+   * they are requested, so a version can be exported without loading it
+   * completely in memory.
+   *
+   * @param modelId the model id.
+   * @param version the model version.
+   * @return the stream or null if this store does not support it.
+   */
+  IfcDataStream streamData(String modelId, int version);
+
   IfcData queryData(String query, String language);
 
-  void execute(String query, String language,
-    File outputFile) throws IOException;
+  /**
+   * Loads the given elements of a model version and the objects they
+   * reference, directly or indirectly.
+   *
+   * @param modelId the model id.
+   * @param version the model version.
+   * @param elementIds the element ids, as returned by ExpressCursor.getId
+   * for the data loaded with loadData. Unknown or malformed ids and the
+   * ids of elements that do not belong to the version are ignored.
+   * @return the data that contains the elements or null if this store does
+   * not support it.
+   */
+  IfcData queryData(String modelId, int version,
+    Collection<String> elementIds);
+
+  /**
+   * Executes a command and writes its results as a JSON array while they
+   * are read from the database, so the results are never held in memory.
+   *
+   * @param query the command to execute.
+   * @param language the command language.
+   * @param skip the number of results to skip.
+   * @param limit the maximum number of results to write, 0 for no limit.
+   * @param writer the writer to write the results to.
+   * @throws IOException if the results can not be written.
+   */
+  void execute(String query, String language, int skip, int limit,
+    Writer writer) throws IOException;
 }
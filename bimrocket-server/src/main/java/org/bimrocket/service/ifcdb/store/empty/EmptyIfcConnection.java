@@ -30,8 +30,9 @@
  */
 package org.bimrocket.service.ifcdb.store.empty;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import org.bimrocket.api.ifcdb.IfcdbModel;
@@ -40,6 +41,8 @@ import org.bimrocket.dao.expression.Expression;
 import org.bimrocket.dao.expression.OrderByExpression;
 import org.bimrocket.express.ExpressSchema;
 import org.bimrocket.service.ifcdb.store.IfcData;
+import org.bimrocket.service.ifcdb.store.IfcDataStream;
+import org.bimrocket.service.ifcdb.store.IfcDataWriter;
 import org.bimrocket.service.ifcdb.store.IfcdbConnection;
 
 /**
@@ -121,6 +124,26 @@ public class EmptyIfcConnection implements IfcdbConnection
     throw new UnsupportedOperationException("Not supported yet.");
   }
 
+  @Override
+  public void saveDeltaData(String modelId, int version, int baseVersion,
+    IfcData data)
+  {
+    throw new UnsupportedOperationException("Not supported yet.");
+  }
+
+  @Override
+  public IfcDataWriter<?> createDataWriter(String modelId, int version,
+    IfcData data, int batchSize, int queueSize)
+  {
+    return null;
+  }
+
+  @Override
+  public IfcDataStream streamData(String modelId, int version)
+  {
+    return null;
+  }
+
   @Override
   public IfcData queryData(String query, String language)
   {
@@ -128,8 +151,15 @@ public class EmptyIfcConnection implements IfcdbConnection
   }
 
   @Override
-  public void execute(String query, String language, File outputFile)
-    throws IOException
+  public IfcData queryData(String modelId, int version,
+    Collection<String> elementIds)
+  {
+    return null;
+  }
+
+  @Override
+  public void execute(String query, String language, int skip, int limit,
+    Writer writer) throws IOException
   {
     throw new UnsupportedOperationException("Not supported yet.");
   }
@@ -37,18 +37,32 @@ import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
+import static com.mongodb.client.model.Filters.nin;
+import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.InsertManyOptions;
 import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.Sorts;
+import static com.mongodb.client.model.Updates.set;
+import static com.mongodb.client.model.Updates.unset;
 import com.mongodb.client.result.DeleteResult;
 import static com.mongodb.connection.ClusterType.REPLICA_SET;
 import jakarta.enterprise.inject.spi.CDI;
-import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import org.bimrocket.api.ifcdb.IfcdbModel;
@@ -56,18 +70,29 @@ import org.bimrocket.api.ifcdb.IfcdbVersion;
 import org.bimrocket.dao.expression.Expression;
 import org.bimrocket.dao.expression.OrderByExpression;
 import org.bimrocket.dao.mongo.MongoExpressionGenerator;
+import org.bimrocket.exception.InvalidRequestException;
 import org.bimrocket.exception.NotFoundException;
 import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.data.ExpressCursor;
+import org.bimrocket.express.diff.ExpressDiff;
 import static org.bimrocket.service.ifcdb.IfcdbService.MODEL_NOT_FOUND;
+import static org.bimrocket.service.ifcdb.IfcdbService.QUERY_MODEL_REQUIRED;
+import static org.bimrocket.service.ifcdb.IfcdbService.VERSION_HAS_DEPENDENTS;
 import org.bimrocket.service.ifcdb.store.IfcData;
+import org.bimrocket.service.ifcdb.store.IfcDataStream;
+import org.bimrocket.service.ifcdb.store.IfcDataWriter;
 import org.bimrocket.service.ifcdb.store.IfcdbConnection;
 import static org.bimrocket.service.ifcdb.store.mongo.MongoIfcStore.LOGGER;
 import static org.bimrocket.service.security.SecurityConstants.ADMIN_ROLE;
 import org.bimrocket.service.security.SecurityService;
 import org.bimrocket.util.Chronometer;
 import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonNumber;
+import org.bson.BsonString;
 import org.bson.Document;
 import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
 
 /**
  *
@@ -79,10 +104,22 @@ public class MongoIfcConnection implements IfcdbConnection
   static final String VERSION_COL = "IfcdbVersion";
   static final String OBJECT_COL = "IfcdbObject";
 
+  // storage layouts of the model objects
+  static final String SHARED_LAYOUT = "shared"; // all in OBJECT_COL
+  static final String MODEL_LAYOUT = "model"; // OBJECT_COL_<modelId>
+  static final String VERSION_LAYOUT = "version"; // OBJECT_COL_<modelId>_<ver>
+
   protected final ClientSession session;
   protected final boolean transactionEnabled;
   protected final MongoDatabase db;
   protected final ExpressSchema schema;
+  protected int updateBlockSize = 10000;
+  protected int insertBatchSize = 5000;
+  protected int insertThreads = 1;
+  protected ExecutorService insertExecutor;
+  protected int prefetchBatchSize = 1000;
+  protected int loadBatchSize = 5000;
+  protected String layout = SHARED_LAYOUT;
 
   public MongoIfcConnection(MongoClient mongoClient, MongoDatabase db,
     ExpressSchema schema)
@@ -103,14 +140,10 @@ public class MongoIfcConnection implements IfcdbConnection
   @Override
   public void createSchema()
   {
-    IndexOptions options = new IndexOptions().unique(false);
-
-    db.getCollection(OBJECT_COL)
-      .createIndex(Indexes.ascending("_modelId", "_version"), options);
-    db.getCollection(OBJECT_COL)
-      .createIndex(Indexes.ascending("_class"), options);
-    db.getCollection(OBJECT_COL)
-      .createIndex(Indexes.ascending("GlobalId"), options);
+    if (SHARED_LAYOUT.equals(layout))
+    {
+      createObjectIndexes(db.getCollection(OBJECT_COL));
+    }
   }
 
   @Override
@@ -168,6 +201,7 @@ public class MongoIfcConnection implements IfcdbConnection
       ifcdbVersion.setCreationAuthor(document.getString("creationAuthor"));
       ifcdbVersion.setCreationDate(document.getString("creationDate"));
       ifcdbVersion.setElementCount(document.getInteger("elementCount"));
+      ifcdbVersion.setBaseVersion(document.getInteger("baseVersion", 0));
       versions.add(ifcdbVersion);
     }
     return versions;
@@ -182,6 +216,11 @@ public class MongoIfcConnection implements IfcdbConnection
     model.setLastVersion(0);
     modelCol.insertOne(model);
 
+    if (MODEL_LAYOUT.equals(layout))
+    {
+      createObjectIndexes(getObjectCollection(model.getId(), 0));
+    }
+
     return model;
   }
 
@@ -196,6 +235,12 @@ public class MongoIfcConnection implements IfcdbConnection
 
     ifcdbVersion.setVersion(ifcdbModel.getLastVersion() + 1);
 
+    if (VERSION_LAYOUT.equals(layout))
+    {
+      createObjectIndexes(getObjectCollection(modelId,
+        ifcdbVersion.getVersion()));
+    }
+
     ifcdbModel.setLastVersion(ifcdbVersion.getVersion());
     modelCol.findOneAndReplace(eq("_id", modelId), ifcdbModel);
 
@@ -207,6 +252,7 @@ public class MongoIfcConnection implements IfcdbConnection
     version.put("creationDate", ifcdbVersion.getCreationDate());
     version.put("creationAuthor", ifcdbVersion.getCreationAuthor());
     version.put("elementCount", 0);
+    version.put("baseVersion", ifcdbVersion.getBaseVersion());
     versionCol.insertOne(version);
 
     return ifcdbVersion;
@@ -254,19 +300,50 @@ public class MongoIfcConnection implements IfcdbConnection
     MongoCollection<IfcdbVersion> versionCol =
       db.getCollection(VERSION_COL, IfcdbVersion.class);
 
-    MongoCollection<Document> objectCol = db.getCollection(OBJECT_COL);
-
     DeleteResult deleteResult;
 
     if (version == 0) // remove all versions
     {
-      objectCol.deleteMany(eq("_modelId", modelId));
+      if (SHARED_LAYOUT.equals(layout))
+      {
+        getObjectCollection(modelId, 0).deleteMany(eq("_modelId", modelId));
+      }
+      else
+      {
+        List<Integer> versions = new ArrayList<>();
+        versionCol.find(eq("modelId", modelId))
+          .forEach(modelVersion -> versions.add(modelVersion.getVersion()));
+        versions.add(0);
+        getObjectCollections(modelId, versions).forEach(col -> col.drop());
+      }
       versionCol.deleteMany(eq("modelId", modelId));
       deleteResult = modelCol.deleteOne(eq("_id", modelId));
     }
     else // remove specific version
     {
-      objectCol.deleteMany(and(eq("_modelId", modelId), eq("_version", version)));
+      if (versionCol.countDocuments(
+          and(eq("modelId", modelId), eq("baseVersion", version))) > 0)
+        throw new InvalidRequestException(VERSION_HAS_DEPENDENTS);
+
+      List<Integer> versionChain = getVersionChain(modelId, version);
+
+      if (VERSION_LAYOUT.equals(layout))
+      {
+        getObjectCollection(modelId, version).drop();
+      }
+      else
+      {
+        getObjectCollection(modelId, version).deleteMany(
+          and(eq("_modelId", modelId), eq("_version", version)));
+      }
+
+      // restore the objects of the base versions removed by this version
+      for (var objectCol : getObjectCollections(modelId, versionChain))
+      {
+        objectCol.updateMany(
+          and(eq("_modelId", modelId), eq("_removedVersion", version)),
+          unset("_removedVersion"));
+      }
 
       deleteResult =
         versionCol.deleteOne(and(eq("modelId", modelId), eq("version", version)));
@@ -302,14 +379,14 @@ public class MongoIfcConnection implements IfcdbConnection
   {
     var chrono = new Chronometer();
 
-    MongoCollection<Document> objectCol = db.getCollection(OBJECT_COL);
+    MongoCollection<Document> objectCol = getObjectCollection(modelId, version);
 
     MongoIfcData data = new MongoIfcData(schema, objectCol);
 
-    MongoCursor<Document> cursor = objectCol.find(
-      and(eq("_modelId", modelId), eq("_version", version))).cursor();
-
-    cursor.forEachRemaining(object -> data.getElements().add(object));
+    try (MongoCursor<Document> cursor = findObjects(modelId, version))
+    {
+      cursor.forEachRemaining(object -> data.getElements().add(object));
+    }
 
     data.updateCache();
 
@@ -326,14 +403,86 @@ public class MongoIfcConnection implements IfcdbConnection
 
     MongoIfcData mongoData = (MongoIfcData)data;
 
-    for (Document element : mongoData.getElements())
+    insertObjects(mongoData.getElements(), modelId, version);
+
+    MongoCollection<Document> versionCol = db.getCollection(VERSION_COL);
+    Bson filter = and(eq("modelId", modelId), eq("version", version));
+    Document ifcdbVersion = versionCol.find(filter).first();
+    if (ifcdbVersion == null) throw new NotFoundException("Invalid version");
+    ifcdbVersion.put("elementCount", mongoData.getElements().size());
+    versionCol.replaceOne(filter, ifcdbVersion);
+
+    LOGGER.log(Level.INFO, "Model loaded in {0} seconds", chrono.totalSeconds());
+  }
+
+  @Override
+  public void saveDeltaData(String modelId, int version, int baseVersion,
+    IfcData data)
+  {
+    var chrono = new Chronometer();
+
+    MongoIfcData baseData = (MongoIfcData)loadData(modelId, baseVersion);
+    MongoIfcData mongoData = (MongoIfcData)data;
+
+    // unchanged objects are replaced by the objects of baseVersion
+
+    Map<ObjectId, ObjectId> sharedIds = new HashMap<>();
+    List<Document> newObjects = new ArrayList<>();
+    List<ObjectId> removedIds = new ArrayList<>();
+
+    ExpressDiff diff = new ExpressDiff(baseData, mongoData);
+    diff.setHashRootReferences(true);
+    diff.setReportUnchanged(true);
+    diff.compare(change ->
+    {
+      ExpressCursor oldCursor = change.getOldCursor();
+      ExpressCursor newCursor = change.getNewCursor();
+      if (change.isUnchanged())
+      {
+        sharedIds.put(new ObjectId(newCursor.getId()),
+          new ObjectId(oldCursor.getId()));
+      }
+      else
+      {
+        if (newCursor != null) // added or modified
+        {
+          newObjects.add(mongoData.cache.get(new ObjectId(newCursor.getId())));
+        }
+        if (oldCursor != null) // modified or deleted
+        {
+          removedIds.add(new ObjectId(oldCursor.getId()));
+        }
+      }
+    });
+
+    LOGGER.log(Level.INFO, "Changes from version {0}: " +
+      "{1} added, {2} modified, {3} deleted, {4} unchanged.",
+      new Object[]{ baseVersion, diff.getAddCount(), diff.getModifyCount(),
+        diff.getDeleteCount(), sharedIds.size() });
+
+    for (Document object : newObjects)
     {
-      element.put("_modelId", modelId);
-      element.put("_version", version);
+      for (Map.Entry<String, Object> entry : object.entrySet())
+      {
+        entry.setValue(replaceSharedIds(entry.getValue(), sharedIds));
+      }
     }
 
-    MongoCollection<Document> ifcObjects = db.getCollection(OBJECT_COL);
-    ifcObjects.insertMany(mongoData.getElements());
+    insertObjects(newObjects, modelId, version);
+
+    List<MongoCollection<Document>> baseCols =
+      getObjectCollections(modelId, getVersionChain(modelId, baseVersion));
+
+    for (int i = 0; i < removedIds.size(); i += updateBlockSize)
+    {
+      List<ObjectId> blockIds = removedIds.subList(i,
+        Math.min(i + updateBlockSize, removedIds.size()));
+      for (MongoCollection<Document> ifcObjects : baseCols)
+      {
+        ifcObjects.updateMany(in("_id", blockIds),
+          set("_removedVersion", version));
+      }
+    }
 
     MongoCollection<Document> versionCol = db.getCollection(VERSION_COL);
     Bson filter = and(eq("modelId", modelId), eq("version", version));
@@ -342,7 +491,52 @@ public class MongoIfcConnection implements IfcdbConnection
     ifcdbVersion.put("elementCount", mongoData.getElements().size());
     versionCol.replaceOne(filter, ifcdbVersion);
 
-    LOGGER.log(Level.INFO, "Model loaded in {0} seconds", chrono.totalSeconds());
+    LOGGER.log(Level.INFO, "Model saved in {0} seconds", chrono.totalSeconds());
+  }
+
+  @Override
+  public IfcDataWriter<?> createDataWriter(String modelId, int version,
+    IfcData data, int batchSize, int queueSize)
+  {
+    return new MongoIfcDataWriter(this, modelId, version, (MongoIfcData)data,
+      batchSize, queueSize);
+  }
+
+  @Override
+  public IfcDataStream streamData(String modelId, int version)
+  {
+    MongoIfcData data =
+      new MongoIfcData(schema, getObjectCollection(modelId, version));
+    data.streaming = true;
+
+    MongoCursor<Document> cursor = findObjects(modelId, version);
+
+    return new IfcDataStream()
+    {
+      @Override
+      public IfcData getData()
+      {
+        return data;
+      }
+
+      @Override
+      public boolean hasNext()
+      {
+        return cursor.hasNext();
+      }
+
+      @Override
+      public ExpressCursor next()
+      {
+        return data.getCursor(cursor.next());
+      }
+
+      @Override
+      public void close()
+      {
+        cursor.close();
+      }
+    };
   }
 
   @Override
@@ -352,14 +546,14 @@ public class MongoIfcConnection implements IfcdbConnection
 
     BsonArray bsonArray = BsonArray.parse(query);
 
-    MongoCollection<Document> objectCol = db.getCollection(OBJECT_COL);
-
-    MongoIfcData data = new MongoIfcData(schema, objectCol);
-
     List<Bson> aggregate = bsonArray.stream()
       .map(bson -> bson.asDocument())
       .collect(Collectors.toList());
 
+    MongoCollection<Document> objectCol = getQueryCollection(aggregate);
+
+    MongoIfcData data = new MongoIfcData(schema, objectCol);
+
     MongoCursor<Document> cursor = objectCol.aggregate(aggregate).cursor();
 
     LOGGER.log(Level.INFO, "Query execution: {0} seconds", chrono.seconds());
@@ -367,14 +561,66 @@ public class MongoIfcConnection implements IfcdbConnection
 
     cursor.forEachRemaining(document -> data.getElements().add(document));
 
+    chrono.mark();
+    data.prefetchBatchSize = prefetchBatchSize;
+    data.prefetchReferences();
+
+    LOGGER.log(Level.INFO, "Reference prefetch: {0} objects, {1} seconds",
+      new Object[]{ data.cache.size(), chrono.seconds() });
+
     LOGGER.log(Level.INFO,"Total time: {0} seconds", chrono.totalSeconds());
 
     return data;
   }
 
   @Override
-  public void execute(String query, String language, File outputFile)
-    throws IOException
+  public IfcData queryData(String modelId, int version,
+    Collection<String> elementIds)
+  {
+    MongoIfcData data =
+      new MongoIfcData(schema, getObjectCollection(modelId, version));
+
+    List<ObjectId> objectIds = elementIds.stream()
+      .filter(ObjectId::isValid).map(ObjectId::new).toList();
+
+    Bson projection = Projections.exclude("_modelId", "_version",
+      "_removedVersion");
+
+    // the objects of the base versions may be in other collections
+    List<Integer> versionChain = getVersionChain(modelId, version);
+    List<MongoCollection<Document>> objectCols =
+      getObjectCollections(modelId, versionChain);
+
+    // the objects that do not belong to the version are ignored
+    Bson versionFilter = VERSION_LAYOUT.equals(layout) ?
+      nin("_removedVersion", versionChain) :
+      and(eq("_modelId", modelId), in("_version", versionChain),
+        nin("_removedVersion", versionChain));
+
+    for (int i = 0; i < objectIds.size(); i += prefetchBatchSize)
+    {
+      List<ObjectId> batch = objectIds.subList(i,
+        Math.min(i + prefetchBatchSize, objectIds.size()));
+
+      for (var objectCol : objectCols)
+      {
+        objectCol.find(and(in("_id", batch), versionFilter))
+          .projection(projection)
+          .forEach(document -> data.getElements().add(document));
+      }
+    }
+
+    // the references are also resolved in the collections of the chain
+    data.setObjectCollections(objectCols, versionFilter);
+    data.prefetchBatchSize = prefetchBatchSize;
+    data.prefetchReferences();
+
+    return data;
+  }
+
+  @Override
+  public void execute(String query, String language, int skip, int limit,
+    Writer writer) throws IOException
   {
     var chrono = new Chronometer();
 
@@ -384,16 +630,31 @@ public class MongoIfcConnection implements IfcdbConnection
       .map(bson -> bson.asDocument())
       .collect(Collectors.toList());
 
-    MongoCursor<Document> cursor =
-      db.getCollection(OBJECT_COL).aggregate(aggregate).cursor();
+    MongoCollection<Document> queryCol = getQueryCollection(aggregate);
 
-    List<Document> results = new ArrayList<>();
-    cursor.forEachRemaining(document -> results.add(document));
+    // paging is done by the server
+    if (skip > 0) aggregate.add(Aggregates.skip(skip));
+    if (limit > 0) aggregate.add(Aggregates.limit(limit));
 
-    LOGGER.log(Level.INFO, "Query execution: {0} seconds", chrono.seconds());
-    chrono.mark();
+    // the cursor fetches the results in batches while they are written
+    try (MongoCursor<Document> cursor = queryCol.aggregate(aggregate)
+         .batchSize(loadBatchSize).cursor())
+    {
+      LOGGER.log(Level.INFO, "Query execution: {0} seconds", chrono.seconds());
+      chrono.mark();
 
-    exportToJson(results, outputFile);
+      writer.write("[");
+      int count = 0;
+      while (cursor.hasNext())
+      {
+        Document document = cursor.next();
+        if (count > 0) writer.write(",\n");
+        writer.write(document.toJson());
+        count++;
+      }
+      writer.write("]");
+      writer.flush();
+    }
 
     LOGGER.log(Level.INFO, "Data export: {0} seconds", chrono.seconds());
     LOGGER.log(Level.INFO,"Total time: {0} seconds", chrono.totalSeconds());
@@ -437,19 +698,307 @@ public class MongoIfcConnection implements IfcdbConnection
     return securityService.getCurrentUser().getRoleIds();
   }
 
-  private void exportToJson(List<Document> results, File file)
-    throws IOException
+  /**
+   * Returns the collection that contains the objects of a model version
+   * in the current layout.
+   *
+   * @param modelId the model id.
+   * @param version the model version.
+   * @return the object collection.
+   */
+  protected MongoCollection<Document> getObjectCollection(String modelId,
+    int version)
+  {
+    return db.getCollection(getObjectCollectionName(layout, modelId, version));
+  }
+
+  static String getObjectCollectionName(String layout, String modelId,
+    int version)
+  {
+    if (MODEL_LAYOUT.equals(layout)) return OBJECT_COL + "_" + modelId;
+
+    if (VERSION_LAYOUT.equals(layout))
+      return OBJECT_COL + "_" + modelId + "_" + version;
+
+    return OBJECT_COL;
+  }
+
+  /**
+   * Returns the distinct collections that contain the objects of the given
+   * versions of a model.
+   *
+   * @param modelId the model id.
+   * @param versions the model versions.
+   * @return the object collections.
+   */
+  protected List<MongoCollection<Document>> getObjectCollections(
+    String modelId, List<Integer> versions)
+  {
+    Set<String> names = new LinkedHashSet<>();
+    for (int version : versions)
+    {
+      names.add(getObjectCollectionName(layout, modelId, version));
+    }
+    return names.stream().map(name -> db.getCollection(name)).toList();
+  }
+
+  /**
+   * Creates the indexes of an object collection. The indexes start with
+   * the fields that select the model version, so the queries on the
+   * objects of a version by type or GlobalId use a single index.
+   *
+   * @param objectCol the object collection.
+   */
+  protected void createObjectIndexes(MongoCollection<Document> objectCol)
+  {
+    IndexOptions options = new IndexOptions().unique(false);
+
+    if (SHARED_LAYOUT.equals(layout))
+    {
+      objectCol.createIndex(
+        Indexes.ascending("_modelId", "_version", "_class"), options);
+      objectCol.createIndex(
+        Indexes.ascending("_modelId", "_version", "GlobalId"), options);
+      objectCol.createIndex(
+        Indexes.ascending("_modelId", "_removedVersion"), options);
+    }
+    else if (VERSION_LAYOUT.equals(layout))
+    {
+      objectCol.createIndex(Indexes.ascending("_class"), options);
+      objectCol.createIndex(Indexes.ascending("GlobalId"), options);
+      objectCol.createIndex(Indexes.ascending("_removedVersion"), options);
+    }
+    else
+    {
+      objectCol.createIndex(
+        Indexes.ascending("_version", "_class"), options);
+      objectCol.createIndex(
+        Indexes.ascending("_version", "GlobalId"), options);
+      objectCol.createIndex(
+        Indexes.ascending("_removedVersion"), options);
+    }
+  }
+
+  /**
+   * Returns the collection an aggregation query runs on. When the objects
+   * are not in a shared collection, the query must start with a $match
+   * stage that selects the model with _modelId, and also the version with
+   * _version in the version layout.
+   *
+   * @param aggregate the aggregation pipeline.
+   * @return the object collection.
+   */
+  protected MongoCollection<Document> getQueryCollection(List<Bson> aggregate)
+  {
+    if (SHARED_LAYOUT.equals(layout)) return db.getCollection(OBJECT_COL);
+
+    if (!aggregate.isEmpty() &&
+        aggregate.get(0) instanceof BsonDocument stage &&
+        stage.get("$match") instanceof BsonDocument match &&
+        match.get("_modelId") instanceof BsonString modelId)
+    {
+      if (!VERSION_LAYOUT.equals(layout))
+        return getObjectCollection(modelId.getValue(), 0);
+
+      if (match.get("_version") instanceof BsonNumber version)
+        return getObjectCollection(modelId.getValue(), version.intValue());
+    }
+    throw new InvalidRequestException(QUERY_MODEL_REQUIRED);
+  }
+
+  /**
+   * Returns a cursor over the objects of a model version that reads them
+   * in batches of loadBatchSize documents. The fields that identify the
+   * model version are not read.
+   *
+   * @param modelId the model id.
+   * @param version the model version.
+   * @return the cursor.
+   */
+  protected MongoCursor<Document> findObjects(String modelId, int version)
+  {
+    MongoCollection<Document> objectCol = getObjectCollection(modelId, version);
+
+    List<Integer> versionChain = getVersionChain(modelId, version);
+
+    Bson projection = Projections.exclude("_modelId", "_version",
+      "_removedVersion");
+
+    if (VERSION_LAYOUT.equals(layout))
+    {
+      if (versionChain.size() == 1)
+      {
+        // the whole collection is read sequentially
+        return objectCol.find().projection(projection)
+          .batchSize(loadBatchSize).cursor();
+      }
+
+      // the objects of the base versions are in other collections
+      Bson match = Aggregates.match(nin("_removedVersion", versionChain));
+      List<Bson> pipeline = new ArrayList<>();
+      pipeline.add(match);
+      for (int baseVersion : versionChain.subList(1, versionChain.size()))
+      {
+        pipeline.add(Aggregates.unionWith(
+          getObjectCollectionName(layout, modelId, baseVersion),
+          List.of(match)));
+      }
+      pipeline.add(Aggregates.project(projection));
+
+      return objectCol.aggregate(pipeline).batchSize(loadBatchSize).cursor();
+    }
+
+    Bson filter;
+    if (versionChain.size() == 1)
+    {
+      filter = and(eq("_modelId", modelId), eq("_version", version));
+    }
+    else
+    {
+      filter = and(eq("_modelId", modelId),
+        in("_version", versionChain),
+        nin("_removedVersion", versionChain));
+    }
+
+    return objectCol.find(filter)
+      .projection(projection)
+      .batchSize(loadBatchSize)
+      .cursor();
+  }
+
+  /**
+   * Inserts the objects of a model version in batches of insertBatchSize
+   * documents. The batches are inserted unordered by insertThreads
+   * parallel writers, so the server does not have to apply them one after
+   * another.
+   *
+   * @param objects the objects to insert.
+   * @param modelId the model id.
+   * @param version the model version.
+   */
+  protected void insertObjects(List<Document> objects, String modelId,
+    int version)
+  {
+    int total = objects.size();
+    if (total == 0) return;
+
+    MongoCollection<Document> objectCol = getObjectCollection(modelId, version);
+    InsertManyOptions options = new InsertManyOptions().ordered(false);
+    AtomicInteger insertCount = new AtomicInteger();
+    int logInterval = Math.max(insertBatchSize, total / 10);
+
+    List<Runnable> batches = new ArrayList<>();
+    for (int i = 0; i < total; i += insertBatchSize)
+    {
+      List<Document> batch =
+        objects.subList(i, Math.min(i + insertBatchSize, total));
+      batches.add(() ->
+      {
+        for (Document object : batch)
+        {
+          object.put("_modelId", modelId);
+          object.put("_version", version);
+        }
+        objectCol.insertMany(batch, options);
+
+        int count = insertCount.addAndGet(batch.size());
+        if (count / logInterval != (count - batch.size()) / logInterval)
+        {
+          LOGGER.log(Level.INFO, "{0} of {1} objects saved.",
+            new Object[]{ count, total });
+        }
+      });
+    }
+
+    int threads = Math.min(insertThreads, batches.size());
+    if (threads <= 1 || insertExecutor == null)
+    {
+      batches.forEach(Runnable::run);
+      return;
+    }
+
+    List<Future<?>> futures = new ArrayList<>();
+    try
+    {
+      for (Runnable batch : batches)
+      {
+        futures.add(insertExecutor.submit(batch));
+      }
+      for (Future<?> future : futures)
+      {
+        future.get();
+      }
+    }
+    catch (ExecutionException ex)
+    {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException runtimeException)
+        throw runtimeException;
+      throw new RuntimeException(cause);
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while saving objects");
+    }
+    finally
+    {
+      // do not leave batches running after a failure
+      futures.forEach(future -> future.cancel(true));
+    }
+  }
+
+  /**
+   * Returns the versions whose objects form the given version: the version
+   * itself followed by its base versions.
+   *
+   * @param modelId the model id.
+   * @param version the model version.
+   * @return the list of versions.
+   */
+  protected List<Integer> getVersionChain(String modelId, int version)
   {
-    try (PrintWriter writer = new PrintWriter(file, "UTF-8"))
+    MongoCollection<Document> versionCol = db.getCollection(VERSION_COL);
+
+    List<Integer> versionChain = new ArrayList<>();
+    versionChain.add(version);
+
+    Document document = versionCol.find(
+      and(eq("modelId", modelId), eq("version", version))).first();
+    int baseVersion = document == null ? 0 : document.getInteger("baseVersion", 0);
+    while (baseVersion > 0 && !versionChain.contains(baseVersion))
+    {
+      versionChain.add(baseVersion);
+      document = versionCol.find(
+        and(eq("modelId", modelId), eq("version", baseVersion))).first();
+      baseVersion = document == null ? 0 : document.getInteger("baseVersion", 0);
+    }
+    return versionChain;
+  }
+
+  private Object replaceSharedIds(Object value, Map<ObjectId, ObjectId> sharedIds)
+  {
+    if (value instanceof ObjectId objectId)
+    {
+      ObjectId sharedId = sharedIds.get(objectId);
+      return sharedId == null ? value : sharedId;
+    }
+    else if (value instanceof Document document)
+    {
+      for (Map.Entry<String, Object> entry : document.entrySet())
+      {
+        entry.setValue(replaceSharedIds(entry.getValue(), sharedIds));
+      }
+    }
+    else if (value instanceof List<?> list)
     {
-      writer.print("[");
-      for (int i = 0; i < results.size(); i++)
+      @SuppressWarnings("unchecked")
+      List<Object> items = (List<Object>)list;
+      for (int i = 0; i < items.size(); i++)
       {
-        Document document = results.get(i);
-        if (i > 0) writer.println(",");
-        writer.print(document.toJson());
+        items.set(i, replaceSharedIds(items.get(i), sharedIds));
       }
-      writer.print("]");
     }
+    return value;
   }
 }
@@ -31,9 +31,12 @@
 package org.bimrocket.service.ifcdb.store.mongo;
 
 import com.mongodb.client.MongoCollection;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.bimrocket.exception.NotFoundException;
 import org.bimrocket.express.ExpressConstant;
 import org.bimrocket.express.data.AbstractListData;
@@ -47,7 +50,11 @@ import org.bimrocket.express.ExpressType;
 import org.bimrocket.express.data.ExpressCursor;
 import org.bimrocket.service.ifcdb.store.IfcData;
 import org.bson.Document;
+import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.in;
 
 /**
  *
@@ -55,23 +62,58 @@ import org.bson.types.ObjectId;
  */
 public class MongoIfcData extends AbstractListData<Document> implements IfcData
 {
+  // entity type given to the references to objects not loaded when streaming
+  static final String REFERENCE_CLASS = "IfcRoot";
+
   MongoCollection<Document> collection;
+  List<MongoCollection<Document>> objectCollections;
+  Bson objectFilter;
   Document ifcProject;
   Map<ObjectId, Document> cache = new HashMap<>();
+  int prefetchBatchSize = 1000;
+  boolean streaming;
 
   public MongoIfcData(ExpressSchema schema, MongoCollection<Document> collection)
   {
     super(schema);
     this.collection = collection;
+    this.objectCollections = List.of(collection);
     definedTypeValueName = "_value";
   }
 
+  /**
+   * Sets the collections where the referenced objects are read from and the
+   * filter they must match. The objects of a delta version may reference
+   * objects of its base versions, that are stored in other collections in
+   * the version layout.
+   *
+   * @param objectCollections the object collections.
+   * @param objectFilter the filter of the objects of the version, or null.
+   */
+  public void setObjectCollections(
+    List<MongoCollection<Document>> objectCollections, Bson objectFilter)
+  {
+    this.objectCollections = objectCollections;
+    this.objectFilter = objectFilter;
+  }
+
   @Override
   public ExpressCursor getIfcProject()
   {
     return new Cursor(ifcProject){};
   }
 
+  /**
+   * Returns a cursor positioned on the given object document.
+   *
+   * @param document the object document.
+   * @return the cursor.
+   */
+  public ExpressCursor getCursor(Document document)
+  {
+    return new Cursor(document){};
+  }
+
   public void updateCache()
   {
     cache.clear();
@@ -84,6 +126,78 @@ public class MongoIfcData extends AbstractListData<Document> implements IfcData
     }
   }
 
+  /**
+   * Loads into the cache all the objects referenced directly or indirectly
+   * by the elements. The references are resolved level by level with $in
+   * queries of prefetchBatchSize ids, instead of one query per reference.
+   */
+  public void prefetchReferences()
+  {
+    updateCache();
+
+    Set<ObjectId> pending = new LinkedHashSet<>();
+    for (Document element : elements)
+    {
+      collectReferences(element, pending);
+    }
+
+    while (!pending.isEmpty())
+    {
+      List<ObjectId> objectIds = new ArrayList<>(pending);
+      pending = new LinkedHashSet<>();
+
+      for (int i = 0; i < objectIds.size(); i += prefetchBatchSize)
+      {
+        List<ObjectId> batch = objectIds.subList(i,
+          Math.min(i + prefetchBatchSize, objectIds.size()));
+
+        for (MongoCollection<Document> objectCol : objectCollections)
+        {
+          for (Document document :
+               objectCol.find(getObjectFilter(in("_id", batch))))
+          {
+            cache.put(document.get("_id", ObjectId.class), document);
+            pending.remove(document.get("_id", ObjectId.class));
+            collectReferences(document, pending);
+          }
+        }
+      }
+    }
+  }
+
+  protected Bson getObjectFilter(Bson idFilter)
+  {
+    return objectFilter == null ? idFilter : and(idFilter, objectFilter);
+  }
+
+  protected void collectReferences(Object value, Set<ObjectId> references)
+  {
+    if (value instanceof ObjectId objectId)
+    {
+      if (!cache.containsKey(objectId))
+      {
+        references.add(objectId);
+      }
+    }
+    else if (value instanceof Document document)
+    {
+      for (Map.Entry<String, Object> entry : document.entrySet())
+      {
+        if (!"_id".equals(entry.getKey()))
+        {
+          collectReferences(entry.getValue(), references);
+        }
+      }
+    }
+    else if (value instanceof List<?> list)
+    {
+      for (Object item : list)
+      {
+        collectReferences(item, references);
+      }
+    }
+  }
+
   @Override
   protected Document getElement(Object value)
   {
@@ -233,9 +347,20 @@ public class MongoIfcData extends AbstractListData<Document> implements IfcData
     if (value instanceof ObjectId objectId)
     {
       Document document = cache.get(objectId);
-      if (document == null) // not found in cache
+      if (document == null && streaming)
+      {
+        // the referenced object is not loaded, only its id is exported
+        document = new Document("_id", objectId);
+        document.put("_class", REFERENCE_CLASS);
+      }
+      else if (document == null) // not found in cache
       {
-        document = collection.find(new Document("_id", objectId)).first();
+        for (MongoCollection<Document> objectCol : objectCollections)
+        {
+          document = objectCol.find(getObjectFilter(eq("_id", objectId)))
+            .first();
+          if (document != null) break;
+        }
         if (document == null)
           throw new NotFoundException("Invalid object reference");
         cache.put(objectId, document);
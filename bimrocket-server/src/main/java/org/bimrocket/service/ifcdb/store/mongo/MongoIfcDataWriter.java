@@ -0,0 +1,97 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.service.ifcdb.store.mongo;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Updates.set;
+import java.util.List;
+import java.util.logging.Level;
+import org.bimrocket.service.ifcdb.store.IfcDataWriter;
+import static org.bimrocket.service.ifcdb.store.mongo.MongoIfcConnection.VERSION_COL;
+import static org.bimrocket.service.ifcdb.store.mongo.MongoIfcStore.LOGGER;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * Inserts the documents of a MongoIfcData while it is being loaded.
+ *
+ * Once a document is taken, it is replaced in the data by a document that
+ * only contains its _id and _class, that is all the loader needs to
+ * reference it. That way the memory used by the loader is bounded.
+ *
+ * @author realor
+ */
+public class MongoIfcDataWriter extends IfcDataWriter<Document>
+{
+  final MongoIfcConnection connection;
+  final MongoIfcData data;
+
+  public MongoIfcDataWriter(MongoIfcConnection connection, String modelId,
+    int version, MongoIfcData data, int batchSize, int queueSize)
+  {
+    super(modelId, version, batchSize, queueSize);
+    this.connection = connection;
+    this.data = data;
+  }
+
+  @Override
+  protected Document takeElement(int index)
+  {
+    Document document = data.getElements().get(index);
+    ObjectId objectId = document.get("_id", ObjectId.class);
+
+    Document reference = new Document("_id", objectId);
+    reference.put("_class", document.get("_class"));
+    data.getElements().set(index, reference);
+    data.cache.put(objectId, reference);
+
+    return document;
+  }
+
+  @Override
+  protected void write(List<Document> documents)
+  {
+    connection.insertObjects(documents, modelId, version);
+
+    LOGGER.log(Level.FINE, "{0} objects saved.", documents.size());
+  }
+
+  @Override
+  protected void complete(int elementCount)
+  {
+    connection.db.getCollection(VERSION_COL).updateOne(
+      and(eq("modelId", modelId), eq("version", version)),
+      set("elementCount", elementCount));
+
+    LOGGER.log(Level.INFO, "Total objects saved: {0}", elementCount);
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.service.ifcdb.store.mongo;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Aggregates;
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import static org.bimrocket.service.ifcdb.store.mongo.MongoIfcConnection.MODEL_COL;
+import static org.bimrocket.service.ifcdb.store.mongo.MongoIfcConnection.MODEL_LAYOUT;
+import static org.bimrocket.service.ifcdb.store.mongo.MongoIfcConnection.OBJECT_COL;
+import static org.bimrocket.service.ifcdb.store.mongo.MongoIfcConnection.SHARED_LAYOUT;
+import static org.bimrocket.service.ifcdb.store.mongo.MongoIfcConnection.VERSION_COL;
+import static org.bimrocket.service.ifcdb.store.mongo.MongoIfcConnection.VERSION_LAYOUT;
+import static org.bimrocket.service.ifcdb.store.mongo.MongoIfcConnection.getObjectCollectionName;
+import static org.bimrocket.service.ifcdb.store.mongo.MongoIfcStore.LOGGER;
+import org.bson.Document;
+
+/**
+ * Moves the objects of an IFC database to another storage layout and
+ * creates the indexes of the new layout. Migrating from the shared layout
+ * to itself replaces the indexes of previous releases.
+ *
+ * The layouts are shared (all the objects in IfcdbObject), model (a
+ * collection per model) and version (a collection per model version).
+ *
+ * The objects of each version are copied server side with a $merge stage
+ * before they are removed from the source, so an interrupted migration can
+ * be run again.
+ *
+ * @author realor
+ */
+public class MongoIfcMigration
+{
+  // indexes created by previous releases
+  static final List<String> OBSOLETE_INDEXES =
+    List.of("_modelId_1__version_1", "_class_1", "GlobalId_1");
+
+  static final List<String> LAYOUTS =
+    List.of(SHARED_LAYOUT, MODEL_LAYOUT, VERSION_LAYOUT);
+
+  final MongoClient mongoClient;
+  final MongoDatabase db;
+
+  public MongoIfcMigration(MongoClient mongoClient, MongoDatabase db)
+  {
+    this.mongoClient = mongoClient;
+    this.db = db;
+  }
+
+  public void migrate(String sourceLayout, String targetLayout)
+  {
+    if (!LAYOUTS.contains(sourceLayout))
+      throw new IllegalArgumentException("Unknown layout: " + sourceLayout);
+
+    if (!LAYOUTS.contains(targetLayout))
+      throw new IllegalArgumentException("Unknown layout: " + targetLayout);
+
+    try (MongoIfcConnection conn =
+         new MongoIfcConnection(mongoClient, db, null))
+    {
+      conn.layout = targetLayout;
+      conn.createSchema();
+
+      for (Document model : db.getCollection(MODEL_COL).find())
+      {
+        String modelId = model.getString("_id");
+        Set<String> sourceCols = new LinkedHashSet<>();
+
+        for (Document version :
+             db.getCollection(VERSION_COL).find(eq("modelId", modelId)))
+        {
+          int versionNum = version.getInteger("version");
+          String sourceCol =
+            getObjectCollectionName(sourceLayout, modelId, versionNum);
+          String targetCol =
+            getObjectCollectionName(targetLayout, modelId, versionNum);
+
+          if (!sourceCol.equals(targetCol))
+          {
+            db.getCollection(sourceCol).aggregate(List.of(
+              Aggregates.match(and(eq("_modelId", modelId),
+                eq("_version", versionNum))),
+              Aggregates.merge(targetCol))).toCollection();
+            sourceCols.add(sourceCol);
+          }
+
+          if (!SHARED_LAYOUT.equals(targetLayout))
+          {
+            conn.createObjectIndexes(db.getCollection(targetCol));
+          }
+        }
+
+        for (String sourceCol : sourceCols)
+        {
+          if (sourceCol.equals(OBJECT_COL))
+          {
+            db.getCollection(sourceCol).deleteMany(eq("_modelId", modelId));
+          }
+          else
+          {
+            db.getCollection(sourceCol).drop();
+          }
+        }
+        LOGGER.log(Level.INFO, "Model {0} migrated.", modelId);
+      }
+    }
+
+    if (SHARED_LAYOUT.equals(targetLayout))
+    {
+      for (String indexName : OBSOLETE_INDEXES)
+      {
+        try
+        {
+          db.getCollection(OBJECT_COL).dropIndex(indexName);
+        }
+        catch (MongoCommandException ex)
+        {
+          // index not found
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args)
+  {
+    if (args.length < 4)
+    {
+      System.out.println("Arguments: url database sourceLayout targetLayout");
+      System.out.println("Layouts: " + String.join(", ", LAYOUTS));
+    }
+    else
+    {
+      try (MongoClient mongoClient = MongoClients.create(args[0]))
+      {
+        MongoDatabase db = mongoClient.getDatabase(args[1]);
+        new MongoIfcMigration(mongoClient, db).migrate(args[2], args[3]);
+      }
+    }
+  }
+}
@@ -34,10 +34,13 @@ import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoDatabase;
 import jakarta.inject.Inject;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 import org.bimrocket.dao.mongo.MongoClientManager;
 import org.bimrocket.express.ExpressSchema;
 import org.bimrocket.service.ifcdb.store.IfcdbConnection;
+import static org.bimrocket.service.ifcdb.store.mongo.MongoIfcConnection.SHARED_LAYOUT;
 import org.eclipse.microprofile.config.Config;
 import org.bimrocket.service.ifcdb.store.IfcdbStore;
 
@@ -48,6 +51,7 @@ import org.bimrocket.service.ifcdb.store.IfcdbStore;
 public class MongoIfcStore implements IfcdbStore
 {
   static final String BASE = "databases.";
+  static final String STORE_BASE = "services.ifcdb.store.mongo.";
 
   static final Logger LOGGER =
     Logger.getLogger(MongoIfcStore.class.getName());
@@ -60,6 +64,9 @@ public class MongoIfcStore implements IfcdbStore
   @Inject
   Config config;
 
+  // shared by all the connections of this store
+  ExecutorService insertExecutor;
+
   @Override
   public List<String> getSupportedQueryLanguages()
   {
@@ -73,7 +80,24 @@ public class MongoIfcStore implements IfcdbStore
     MongoClient mongoClient = getMongoClient(dbAlias);
     MongoDatabase db = mongoClient.getDatabase(dbAlias);
 
-    return new MongoIfcConnection(mongoClient, db, schema);
+    MongoIfcConnection connection =
+      new MongoIfcConnection(mongoClient, db, schema);
+    connection.insertBatchSize = config.getOptionalValue(
+      STORE_BASE + "insertBatchSize", Integer.class).orElse(5000);
+    connection.insertThreads = config.getOptionalValue(
+      STORE_BASE + "insertThreads", Integer.class).orElse(1);
+    if (connection.insertThreads > 1)
+    {
+      connection.insertExecutor = getInsertExecutor(connection.insertThreads);
+    }
+    connection.prefetchBatchSize = config.getOptionalValue(
+      STORE_BASE + "prefetchBatchSize", Integer.class).orElse(1000);
+    connection.loadBatchSize = config.getOptionalValue(
+      STORE_BASE + "loadBatchSize", Integer.class).orElse(5000);
+    connection.layout = config.getOptionalValue(
+      STORE_BASE + "layout", String.class).orElse(SHARED_LAYOUT);
+
+    return connection;
   }
 
   @Override
@@ -83,8 +107,13 @@ public class MongoIfcStore implements IfcdbStore
   }
 
   @Override
-  public void close()
+  public synchronized void close()
   {
+    if (insertExecutor != null)
+    {
+      insertExecutor.shutdownNow();
+      insertExecutor = null;
+    }
   }
 
   public MongoClient getMongoClient(String dbAlias)
@@ -94,6 +123,18 @@ public class MongoIfcStore implements IfcdbStore
     if (url == null)
       throw new RuntimeException("Missing server url for " + dbAlias);
 
-    return clientManager.getMongoClient(url);
+    List<String> compressors = config.getOptionalValues(
+      BASE + dbAlias + ".compressors", String.class).orElse(List.of());
+
+    return clientManager.getMongoClient(url, compressors);
+  }
+
+  synchronized ExecutorService getInsertExecutor(int insertThreads)
+  {
+    if (insertExecutor == null)
+    {
+      insertExecutor = Executors.newFixedThreadPool(insertThreads);
+    }
+    return insertExecutor;
   }
 }
@@ -31,35 +31,53 @@
 package org.bimrocket.service.ifcdb.store.orient;
 
 import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
+import com.orientechnologies.orient.core.db.record.OIdentifiable;
+import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.metadata.schema.OClass;
 import com.orientechnologies.orient.core.metadata.schema.OType;
+import com.orientechnologies.orient.core.id.ORecordId;
 import com.orientechnologies.orient.core.record.OEdge;
 import com.orientechnologies.orient.core.record.OElement;
 import com.orientechnologies.orient.core.record.OVertex;
 import com.orientechnologies.orient.core.record.impl.ODocument;
 import com.orientechnologies.orient.core.sql.executor.OResult;
 import com.orientechnologies.orient.core.sql.executor.OResultSet;
-import java.io.File;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
-import java.util.stream.Collectors;
 import org.bimrocket.api.ifcdb.IfcdbModel;
 import org.bimrocket.api.ifcdb.IfcdbVersion;
 import org.bimrocket.dao.expression.Expression;
 import org.bimrocket.dao.expression.OrderByExpression;
 import org.bimrocket.dao.orient.OrientDecoder;
 import org.bimrocket.dao.orient.OrientExpressionPrinter;
+import org.bimrocket.dao.orient.OrientPoolManager;
+import org.bimrocket.exception.InvalidRequestException;
 import org.bimrocket.exception.NotFoundException;
 import org.bimrocket.express.ExpressEntity;
 import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.data.ExpressCursor;
+import org.bimrocket.express.diff.ExpressDiff;
 import static org.bimrocket.service.ifcdb.IfcdbService.MODEL_NOT_FOUND;
+import static org.bimrocket.service.ifcdb.IfcdbService.VERSION_HAS_DEPENDENTS;
 import org.bimrocket.service.ifcdb.store.IfcData;
+import org.bimrocket.service.ifcdb.store.IfcDataStream;
+import org.bimrocket.service.ifcdb.store.IfcDataWriter;
 import static org.bimrocket.service.ifcdb.store.orient.OrientIfcStore.LOGGER;
 import static org.bimrocket.service.ifcdb.store.orient.OrientIfcStore.bsplineSurfaceClasses;
 import static org.bimrocket.service.security.SecurityConstants.ADMIN_ROLE;
@@ -72,10 +90,15 @@ import org.bimrocket.service.ifcdb.store.IfcdbConnection;
  */
 public class OrientIfcConnection implements IfcdbConnection
 {
+  static final String GLOBAL_ID_INDEX = "IfcRootGlobalIdIdx";
+
   ODatabaseDocument db;
   ExpressSchema schema;
   int saveBlockSize = 10000;
   int deleteBlockSize = 5000;
+  int loadThreads = 1;
+  OrientPoolManager poolManager;
+  Set<String> classNames = ConcurrentHashMap.newKeySet();
 
   public OrientIfcConnection(ODatabaseDocument db, ExpressSchema schema)
   {
@@ -86,7 +109,9 @@ public class OrientIfcConnection implements IfcdbConnection
   @Override
   public void createSchema()
   {
-    createClasses(new OrientIfcSetup(db));
+    OrientIfcSetup setup = createSetup();
+    createClasses(setup);
+    setup.loadClassNames();
   }
 
   @Override
@@ -146,7 +171,8 @@ public class OrientIfcConnection implements IfcdbConnection
     List<IfcdbVersion> versions = new ArrayList<>();
 
     OResultSet rs = db.query(
-      "select version, creationAuthor, creationDate, elementCount " +
+      "select version, creationAuthor, creationDate, elementCount, " +
+      "baseVersion " +
       "from IfcdbVersion where model.id = ? order by version", modelId);
     while (rs.hasNext())
     {
@@ -156,6 +182,8 @@ public class OrientIfcConnection implements IfcdbConnection
       version.setCreationAuthor(result.getProperty("creationAuthor"));
       version.setCreationDate(result.getProperty("creationDate"));
       version.setElementCount(result.getProperty("elementCount"));
+      Integer baseVersion = result.getProperty("baseVersion");
+      version.setBaseVersion(baseVersion == null ? 0 : baseVersion);
       versions.add(version);
     }
     return versions;
@@ -200,6 +228,7 @@ public class OrientIfcConnection implements IfcdbConnection
           oversion.setProperty("creationDate", ifcdbVersion.getCreationDate());
           oversion.setProperty("creationAuthor", ifcdbVersion.getCreationAuthor());
           oversion.setProperty("elementCount", 0);
+          oversion.setProperty("baseVersion", ifcdbVersion.getBaseVersion());
           db.save(oversion);
 
           return ifcdbVersion;
@@ -247,46 +276,26 @@ public class OrientIfcConnection implements IfcdbConnection
   @Override
   public boolean deleteModel(String modelId, int version)
   {
-    db.begin();
-
-    String versionFilter = version == 0 ? "" : " and version = " + version;
-
-    // Remove recursivelly all instances of IfcBSplineSurface.
-    // The property ControlPointsList of this class has references to
-    // IfcCartesianPoints that can not be deleted with the traverse command.
-
-    String classListString = bsplineSurfaceClasses.stream()
-      .map(s -> "'" + s + "E'")
-      .collect(Collectors.joining(","));
-
-    String query = "select expand(out(" + classListString + ")) " +
-      " from IfcdbVersion where model.id = ? " + versionFilter;
-
-    var orientIfcDeleter = new OrientIfcDeleter(db);
-    try (OResultSet rs = db.query(query, modelId))
+    if (version != 0)
     {
-      rs.elementStream().forEach(element -> orientIfcDeleter.delete(element));
+      if (count(db.query("select count(*) as count from IfcdbVersion " +
+          "where model.id = ? and baseVersion = ?", modelId, version)) > 0)
+        throw new InvalidRequestException(VERSION_HAS_DEPENDENTS);
+
+      int baseVersion = getBaseVersion(modelId, version);
+      if (baseVersion > 0)
+      {
+        return deleteDeltaVersion(modelId, version, baseVersion);
+      }
     }
 
-    int totalCount = orientIfcDeleter.getTotalCount();
+    String versionFilter = version == 0 ? "" : " and version = " + version;
 
-    query = "delete vertex from " +
-      "(traverse * from " +
-      " (select expand(*) from " +
-      "  (select out('IfcE') from IfcdbVersion " +
-      "   where model.id = ? " + versionFilter + ") " +
-      "  limit " + deleteBlockSize + ") " +
-      " while @this instanceof IfcV)";
+    OrientRidSet rids = collectObjectIds(modelId, versionFilter, null);
 
-    int deleteCount = count(db.command(query, modelId));
-    while (deleteCount > 0)
-    {
-      LOGGER.log(Level.INFO, "{0} objects deleted.", deleteCount);
-      totalCount += deleteCount;
-      db.commit();
+    db.begin();
 
-      deleteCount = count(db.command(query, modelId));
-    }
+    int totalCount = deleteObjects(rids);
 
     LOGGER.log(Level.INFO, "Total objects deleted: {0}.", totalCount);
 
@@ -324,38 +333,157 @@ public class OrientIfcConnection implements IfcdbConnection
     return totalCount > 0;
   }
 
+  /**
+   * Collects the ids of all the objects reachable from the roots of the
+   * given versions. Every object is read once and only its id is kept.
+   * The excluded objects, and the objects only reachable through them,
+   * are not collected.
+   *
+   * @param modelId the model id.
+   * @param versionFilter the condition to select the versions.
+   * @param excludedIds the ids of the objects to exclude, or null.
+   * @return the set of object ids.
+   */
+  protected OrientRidSet collectObjectIds(String modelId, String versionFilter,
+    OrientRidSet excludedIds)
+  {
+    OrientRidSet rids = new OrientRidSet();
+    var collector = new OrientIfcTraverser(db, schema)
+    {
+      @Override
+      protected boolean isProcessable(OElement oelement)
+      {
+        ORID rid = oelement.getIdentity();
+        return (excludedIds == null || !excludedIds.contains(rid)) &&
+          rids.add(rid);
+      }
+
+      @Override
+      protected void process(OElement oelement)
+      {
+      }
+    };
+
+    String query = "select expand(out('IfcE')) from IfcdbVersion " +
+      "where model.id = ? " + versionFilter;
+
+    int lastCount = 0;
+    try (OResultSet rs = db.query(query, modelId))
+    {
+      while (rs.hasNext())
+      {
+        rs.next().getElement().ifPresent(collector::traverse);
+        if (rids.size() - lastCount >= deleteBlockSize)
+        {
+          LOGGER.log(Level.INFO, "{0} objects found.", rids.size());
+          lastCount = rids.size();
+          db.getLocalCache().clear();
+        }
+      }
+    }
+    db.getLocalCache().clear();
+    LOGGER.log(Level.INFO, "Objects found: {0}.", rids.size());
+
+    return rids;
+  }
+
+  /**
+   * Deletes the given objects committing the active transaction every
+   * deleteBlockSize objects.
+   *
+   * @param rids the ids of the objects to delete.
+   * @return the number of objects deleted.
+   */
+  protected int deleteObjects(OrientRidSet rids)
+  {
+    int deleteCount = 0;
+    int blockCount = 0;
+    for (ORID rid : rids)
+    {
+      db.delete(rid);
+      deleteCount++;
+      if (++blockCount >= deleteBlockSize)
+      {
+        db.commit();
+        db.getLocalCache().clear();
+        db.begin();
+        LOGGER.log(Level.INFO, "{0} of {1} objects deleted.",
+          new Object[]{ deleteCount, rids.size() });
+        blockCount = 0;
+      }
+    }
+    return deleteCount;
+  }
+
+  /**
+   * Deletes a version stored as the changes of baseVersion. Only the
+   * objects that are not shared with baseVersion are deleted.
+   *
+   * @param modelId the model id.
+   * @param version the version to delete.
+   * @param baseVersion the base version of version.
+   * @return true if the version was deleted.
+   */
+  protected boolean deleteDeltaVersion(String modelId, int version,
+    int baseVersion)
+  {
+    // the objects shared with baseVersion are not collected
+    OrientRidSet sharedIds =
+      collectObjectIds(modelId, " and version = " + baseVersion, null);
+    OrientRidSet rids =
+      collectObjectIds(modelId, " and version = " + version, sharedIds);
+
+    db.begin();
+
+    int totalCount = deleteObjects(rids);
+
+    LOGGER.log(Level.INFO, "Total objects deleted: {0}.", totalCount);
+
+    db.command("delete vertex from IfcdbVersion " +
+      "where model.id = ? and version = ?", modelId, version);
+
+    try (OResultSet rs = db.query("select max(version) as lastVersion " +
+         "from IfcdbVersion where model.id = ?", modelId))
+    {
+      int lastVersion = rs.next().getProperty("lastVersion");
+      db.command("update IfcdbModel set lastVersion = ? " +
+       "where id = ?", lastVersion, modelId);
+    }
+
+    db.commit();
+
+    return true;
+  }
+
+  protected OrientIfcSetup createSetup()
+  {
+    return new OrientIfcSetup(db, classNames);
+  }
+
   @Override
   public IfcData createData()
   {
-    return new OrientIfcData(schema, new OrientIfcSetup(db),
+    return new OrientIfcData(schema, createSetup(),
       bsplineSurfaceClasses);
   }
 
   @Override
   public IfcData loadData(String modelId, int version)
   {
-    var data = new OrientIfcData(schema, new OrientIfcSetup(db),
+    var data = new OrientIfcData(schema, createSetup(),
       bsplineSurfaceClasses);
 
-    OResultSet rs;
-    if (version == 0) // get last model version
+    if (loadThreads > 1)
     {
-      rs = db.query(
-        "traverse * from " +
-        "(select expand(out('IfcE')) from IfcdbVersion " +
-        "where model.id = ? and model.lastVersion = version) " +
-        "while @this instanceof IfcV", modelId);
-    }
-    else
-    {
-      rs = db.query(
-        "traverse * from " +
-        "(select expand(out('IfcE')) from IfcdbVersion " +
-         "where model.id = ? and version = ?) " +
-         "while @this instanceof IfcV", modelId, version);
+      loadElementsInParallel(data, modelId, version);
+
+      if (data.getElements().isEmpty())
+        throw new NotFoundException(MODEL_NOT_FOUND);
+
+      return data;
     }
 
-    try (rs)
+    try (OResultSet rs = traverseVersion(modelId, version))
     {
       rs.elementStream().forEach(element ->
       {
@@ -364,7 +492,7 @@ public class OrientIfcConnection implements IfcdbConnection
         db.getLocalCache().updateRecord(element);
 
         if (data.ifcProject == null &&
-            "IfcProject".equals(element.getSchemaType().get().getName()))
+            "IfcProject".equals(OrientIfcData.getClassName(element)))
         {
           data.ifcProject = element;
         }
@@ -377,6 +505,166 @@ public class OrientIfcConnection implements IfcdbConnection
     return data;
   }
 
+  /**
+   * Traverses all the elements of a model version, starting from its root
+   * elements.
+   *
+   * @param modelId the model id.
+   * @param version the model version or 0 for the last version.
+   * @return the result set of the traversal.
+   */
+  protected OResultSet traverseVersion(String modelId, int version)
+  {
+    if (version == 0) // get last model version
+    {
+      return db.query(
+        "traverse * from " +
+        "(select expand(out('IfcE')) from IfcdbVersion " +
+        "where model.id = ? and model.lastVersion = version) " +
+        "while @this instanceof IfcV", modelId);
+    }
+    return db.query(
+      "traverse * from " +
+      "(select expand(out('IfcE')) from IfcdbVersion " +
+      "where model.id = ? and version = ?) " +
+      "while @this instanceof IfcV", modelId, version);
+  }
+
+  /**
+   * Loads the elements of a model version with loadThreads sessions.
+   * The root elements of the version are split in chunks that the sessions
+   * traverse concurrently. The sessions only return the ids of the elements
+   * they reach, that are then read by this session in identity order, so
+   * the elements do not depend on the sessions that found them, which are
+   * closed, and their order does not depend on the timing of the threads.
+   *
+   * @param data the data where the elements are added.
+   * @param modelId the model id.
+   * @param version the model version, 0 for the last one.
+   */
+  protected void loadElementsInParallel(OrientIfcData data, String modelId,
+    int version)
+  {
+    List<ORID> rootIds = new ArrayList<>();
+
+    OResultSet rs;
+    if (version == 0) // get last model version
+    {
+      rs = db.query(
+        "select out('IfcE') as roots from IfcdbVersion " +
+        "where model.id = ? and model.lastVersion = version", modelId);
+    }
+    else
+    {
+      rs = db.query(
+        "select out('IfcE') as roots from IfcdbVersion " +
+        "where model.id = ? and version = ?", modelId, version);
+    }
+
+    try (rs)
+    {
+      while (rs.hasNext())
+      {
+        Collection<OIdentifiable> roots = rs.next().getProperty("roots");
+        if (roots != null)
+        {
+          roots.forEach(root -> rootIds.add(root.getIdentity()));
+        }
+      }
+    }
+
+    if (rootIds.isEmpty()) return;
+
+    // more chunks than threads to balance the load
+    int chunkSize = Math.max(1,
+      (rootIds.size() + 4 * loadThreads - 1) / (4 * loadThreads));
+    Queue<List<ORID>> chunks = new ConcurrentLinkedQueue<>();
+    for (int i = 0; i < rootIds.size(); i += chunkSize)
+    {
+      chunks.add(rootIds.subList(i, Math.min(i + chunkSize, rootIds.size())));
+    }
+
+    OrientRidSet elementIds = new OrientRidSet();
+    int threads = Math.min(loadThreads, chunks.size());
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try
+    {
+      List<Future<OrientRidSet>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++)
+      {
+        futures.add(executor.submit(() -> traverseChunks(chunks)));
+      }
+
+      for (Future<OrientRidSet> future : futures)
+      {
+        elementIds.addAll(future.get());
+      }
+    }
+    catch (ExecutionException ex)
+    {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException runtimeException)
+        throw runtimeException;
+      throw new RuntimeException(cause);
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while loading elements");
+    }
+    finally
+    {
+      executor.shutdownNow();
+      db.activateOnCurrentThread();
+    }
+
+    for (ORID elementId : elementIds)
+    {
+      // the loaded element is kept in the local cache
+      ODocument element = db.load(elementId);
+      data.getElements().add(element);
+
+      if (data.ifcProject == null &&
+          "IfcProject".equals(OrientIfcData.getClassName(element)))
+      {
+        data.ifcProject = element;
+      }
+    }
+
+    LOGGER.log(Level.INFO, "{0} elements loaded by {1} threads.",
+      new Object[]{ data.getElements().size(), threads });
+  }
+
+  private OrientRidSet traverseChunks(Queue<List<ORID>> chunks)
+  {
+    OrientRidSet elementIds = new OrientRidSet();
+    try (ODatabaseDocument session = openSession())
+    {
+      List<ORID> chunk;
+      while ((chunk = chunks.poll()) != null)
+      {
+        try (OResultSet rs = session.query("traverse * from " + chunk +
+             " while @this instanceof IfcV"))
+        {
+          rs.elementStream().forEach(element ->
+            elementIds.add(element.getIdentity()));
+        }
+      }
+    }
+    return elementIds;
+  }
+
+  /**
+   * Opens a new session on the database of the schema, to be used in
+   * another thread.
+   *
+   * @return the session.
+   */
+  protected ODatabaseDocument openSession()
+  {
+    return poolManager.getDocumentConnection(schema.getName());
+  }
+
   @Override
   public void saveData(String modelId, int version, IfcData data)
   {
@@ -386,15 +674,22 @@ public class OrientIfcConnection implements IfcdbConnection
 
     var orientSetup = orientData.getOrientSetup();
 
-    List<OElement> elements = orientData.getElements();
-    Set<OElement> rootElements = orientData.getRootElements();
-    for (OElement oelement : rootElements)
+    for (OElement oelement : orientData.getRootElements())
     {
-      String className = oelement.getSchemaType().get().getName() + "E";
-      orientSetup.createClassIfNotExists(className, "IfcE");
+      String className = OrientIfcData.getClassName(oelement) + "E";
+      orientSetup.ensureClass(className, "IfcE");
     }
 
     db.begin();
+    saveElements(modelId, version, orientData);
+    db.commit();
+  }
+
+  protected void saveElements(String modelId, int version,
+    OrientIfcData orientData)
+  {
+    List<OElement> elements = orientData.getElements();
+    Set<OElement> rootElements = orientData.getRootElements();
 
     OVertex oversion = null;
     OResultSet rs = db.query(
@@ -406,33 +701,123 @@ public class OrientIfcConnection implements IfcdbConnection
     }
     else throw new RuntimeException("Model version not found.");
 
-    var orientIfcSaver = new OrientIfcSaver(db);
+    var orientIfcSaver = new OrientIfcSaver(db, schema);
+    orientIfcSaver.setCommitInterval(saveBlockSize);
 
     LOGGER.log(Level.INFO, "Total elements: {0}", elements.size());
     LOGGER.log(Level.INFO, "Root elements: {0}", rootElements.size());
 
     // save root elements and link them to the model version
-    int saveCount = 0;
     for (OElement oelement : rootElements)
     {
-      saveCount += orientIfcSaver.save(oelement);
+      orientIfcSaver.save(oelement);
 
-      String className = oelement.getSchemaType().get().getName() + "E";
+      String className = OrientIfcData.getClassName(oelement) + "E";
       OEdge oedge = db.newEdge(oversion, oelement.asVertex().get(), className);
 
       db.save(oedge);
+    }
 
-      if (saveCount > saveBlockSize)
+    // update the number of elements saved
+    oversion.setProperty("elementCount", orientIfcSaver.getTotalCount());
+    db.save(oversion);
+
+    LOGGER.log(Level.INFO, "Total objects saved: {0}",
+      orientIfcSaver.getTotalCount());
+  }
+
+  @Override
+  public void saveDeltaData(String modelId, int version, int baseVersion,
+    IfcData data)
+  {
+    OrientIfcData baseData = (OrientIfcData)loadData(modelId, baseVersion);
+    OrientIfcData orientData = (OrientIfcData)data;
+
+    Map<String, OElement> baseElements = baseData.getElementMap();
+    Map<String, OElement> elements = orientData.getElementMap();
+
+    // the unchanged elements are replaced by the elements of baseVersion
+
+    Map<OElement, OElement> sharedElements = new IdentityHashMap<>();
+    List<OElement> newElements = new ArrayList<>();
+
+    ExpressDiff diff = new ExpressDiff(baseData, orientData);
+    diff.setHashRootReferences(true);
+    diff.setReportUnchanged(true);
+    diff.compare(change ->
+    {
+      ExpressCursor newCursor = change.getNewCursor();
+      if (change.isUnchanged())
       {
-        LOGGER.log(Level.INFO, "{0} objects saved.", saveCount);
-        db.commit();
-        db.begin();
-        saveCount = 0;
+        sharedElements.put(elements.get(newCursor.getId()),
+          baseElements.get(change.getOldCursor().getId()));
+      }
+      else if (newCursor != null) // added or modified
+      {
+        newElements.add(elements.get(newCursor.getId()));
+      }
+    });
+
+    LOGGER.log(Level.INFO, "Changes from version {0}: " +
+      "{1} added, {2} modified, {3} deleted, {4} unchanged.",
+      new Object[]{ baseVersion, diff.getAddCount(), diff.getModifyCount(),
+        diff.getDeleteCount(), sharedElements.size() });
+
+    for (OElement oelement : newElements)
+    {
+      for (String propertyName : oelement.getPropertyNames())
+      {
+        Object value = oelement.getProperty(propertyName);
+        Object sharedValue = replaceSharedElements(value, sharedElements);
+        if (sharedValue != value)
+        {
+          oelement.setProperty(propertyName, sharedValue);
+        }
       }
     }
 
-    // update the number of elements saved
-    oversion.setProperty("elementCount", orientIfcSaver.getTotalCount());
+    // the new version links to the shared root elements and to the new ones
+
+    var orientSetup = orientData.getOrientSetup();
+    Set<OElement> rootElements = orientData.getRootElements();
+    for (OElement oelement : rootElements)
+    {
+      String className = OrientIfcData.getClassName(oelement) + "E";
+      orientSetup.ensureClass(className, "IfcE");
+    }
+
+    db.begin();
+
+    OVertex oversion;
+    try (OResultSet rs = db.query(
+      "select from IfcdbVersion where model.id = ? and version = ?",
+      modelId, version))
+    {
+      if (!rs.hasNext()) throw new RuntimeException("Model version not found.");
+      oversion = rs.next().getVertex().get();
+    }
+
+    var orientIfcSaver = new OrientIfcSaver(db, schema);
+    orientIfcSaver.setCommitInterval(saveBlockSize);
+
+    for (OElement oelement : rootElements)
+    {
+      OElement sharedElement = sharedElements.get(oelement);
+      if (sharedElement == null)
+      {
+        orientIfcSaver.save(oelement);
+      }
+      else
+      {
+        oelement = sharedElement;
+      }
+
+      String className = OrientIfcData.getClassName(oelement) + "E";
+      OEdge oedge = db.newEdge(oversion, oelement.asVertex().get(), className);
+      db.save(oedge);
+    }
+
+    oversion.setProperty("elementCount", orientData.getElements().size());
     db.save(oversion);
 
     LOGGER.log(Level.INFO, "Total objects saved: {0}",
@@ -441,10 +826,63 @@ public class OrientIfcConnection implements IfcdbConnection
     db.commit();
   }
 
+  @Override
+  public IfcDataWriter<?> createDataWriter(String modelId, int version,
+    IfcData data, int batchSize, int queueSize)
+  {
+    // the elements are saved by the session that created them
+    return new OrientIfcDataWriter(db, modelId, version,
+      (OrientIfcData)data, batchSize);
+  }
+
+  @Override
+  public IfcDataStream streamData(String modelId, int version)
+  {
+    var data = new OrientIfcData(schema, createSetup(),
+      bsplineSurfaceClasses);
+
+    // the traversal reads the elements as they are requested
+    OResultSet rs = traverseVersion(modelId, version);
+    Iterator<OElement> elements = rs.elementStream().iterator();
+
+    return new IfcDataStream()
+    {
+      @Override
+      public IfcData getData()
+      {
+        return data;
+      }
+
+      @Override
+      public boolean hasNext()
+      {
+        return elements.hasNext();
+      }
+
+      @Override
+      public ExpressCursor next()
+      {
+        OElement element = elements.next();
+        if (data.ifcProject == null &&
+            "IfcProject".equals(OrientIfcData.getClassName(element)))
+        {
+          data.ifcProject = element;
+        }
+        return data.getCursor(element);
+      }
+
+      @Override
+      public void close()
+      {
+        rs.close();
+      }
+    };
+  }
+
   @Override
   public IfcData queryData(String query, String language)
   {
-    var data = new OrientIfcData(schema, new OrientIfcSetup(db),
+    var data = new OrientIfcData(schema, createSetup(),
       bsplineSurfaceClasses);
 
     try (OResultSet rs = db.query(query))
@@ -456,7 +894,7 @@ public class OrientIfcConnection implements IfcdbConnection
         db.getLocalCache().updateRecord(element);
 
         if (data.ifcProject == null &&
-            "IfcProject".equals(element.getSchemaType().get().getName()))
+            "IfcProject".equals(OrientIfcData.getClassName(element)))
         {
           data.ifcProject = element;
         }
@@ -466,18 +904,64 @@ public class OrientIfcConnection implements IfcdbConnection
   }
 
   @Override
-  public void execute(String query, String language, File outputFile)
-    throws IOException
+  public IfcData queryData(String modelId, int version,
+    Collection<String> elementIds)
+  {
+    var data = new OrientIfcData(schema, createSetup(),
+      bsplineSurfaceClasses);
+
+    // the malformed ids are ignored like the unknown ones
+    List<ORID> rids = new ArrayList<>();
+    for (String elementId : elementIds)
+    {
+      if (ORecordId.isA(elementId))
+      {
+        ORID rid = new ORecordId(elementId);
+        if (rid.isPersistent()) rids.add(rid);
+      }
+    }
+    if (rids.isEmpty()) return data;
+
+    // only the elements of the version are selected, the references are
+    // loaded on demand while data is traversed
+    String versionFilter = version == 0 ?
+      "model.lastVersion = version" : "version = " + version;
+    try (OResultSet rs = db.query(
+      "select from (traverse * from " +
+      "(select expand(out('IfcE')) from IfcdbVersion " +
+      "where model.id = ? and " + versionFilter + ") " +
+      "while @this instanceof IfcV) where @rid in ?", modelId, rids))
+    {
+      rs.elementStream().forEach(element -> data.getElements().add(element));
+    }
+    return data;
+  }
+
+  @Override
+  public void execute(String query, String language, int skip, int limit,
+    Writer writer) throws IOException
   {
     db.begin();
 
-    ArrayList<OResult> results = new ArrayList<>();
     try (OResultSet rs = db.command(query))
     {
-      rs.stream().forEach(result -> results.add(result));
-    }
+      for (int i = 0; i < skip && rs.hasNext(); i++)
+      {
+        rs.next();
+      }
 
-    exportToJson(results, outputFile);
+      writer.write("[");
+      int count = 0;
+      while ((limit <= 0 || count < limit) && rs.hasNext())
+      {
+        OResult result = rs.next();
+        if (count > 0) writer.write(",\n");
+        writer.write(result.toJSON());
+        count++;
+      }
+      writer.write("]");
+      writer.flush();
+    }
 
     db.commit();
   }
@@ -506,6 +990,42 @@ public class OrientIfcConnection implements IfcdbConnection
     db.close();
   }
 
+  private int getBaseVersion(String modelId, int version)
+  {
+    try (OResultSet rs = db.query("select baseVersion from IfcdbVersion " +
+         "where model.id = ? and version = ?", modelId, version))
+    {
+      if (rs.hasNext())
+      {
+        Integer baseVersion = rs.next().getProperty("baseVersion");
+        return baseVersion == null ? 0 : baseVersion;
+      }
+      return 0;
+    }
+  }
+
+  private Object replaceSharedElements(Object value,
+    Map<OElement, OElement> sharedElements)
+  {
+    if (value instanceof OElement oelement)
+    {
+      OElement sharedElement = sharedElements.get(oelement);
+      return sharedElement == null ? value : sharedElement;
+    }
+    else if (value instanceof List<?> list)
+    {
+      @SuppressWarnings("unchecked")
+      List<Object> items = (List<Object>)list;
+      for (int i = 0; i < items.size(); i++)
+      {
+        Object item = items.get(i);
+        Object sharedItem = replaceSharedElements(item, sharedElements);
+        if (sharedItem != item) items.set(i, sharedItem);
+      }
+    }
+    return value;
+  }
+
   private int count(OResultSet rs)
   {
     try (rs)
@@ -546,6 +1066,10 @@ public class OrientIfcConnection implements IfcdbConnection
       versionClass.createProperty("creationAuthor", OType.STRING);
       versionClass.createProperty("elementCount", OType.INTEGER);
     }
+    if (versionClass.getProperty("baseVersion") == null)
+    {
+      versionClass.createProperty("baseVersion", OType.INTEGER);
+    }
 
     OClass ifcVClass = setup.getClass("IfcV");
     if (ifcVClass == null)
@@ -560,12 +1084,7 @@ public class OrientIfcConnection implements IfcdbConnection
       setup.createEdgeClass("IfcE");
     }
 
-    ExpressEntity ifcRootEntity = (ExpressEntity)schema.getNamedType("IfcRoot");
-
-    OClass ifcRootClass = setup.createClass(ifcRootEntity);
-
-    setup.createIndex(ifcRootClass, "IfcRootGlobalIdIdx",
-      OClass.INDEX_TYPE.NOTUNIQUE_HASH_INDEX, "GlobalId");
+    createGlobalIdIndex(setup);
 
     setup.createFunction("getIfcV", "sql",
       "traverse * from (select expand(out('IfcE')) from IfcdbVersion " +
@@ -575,18 +1094,13 @@ public class OrientIfcConnection implements IfcdbConnection
       "id_name", "version");
   }
 
-  private void exportToJson(List<OResult> results, File file) throws IOException
+  private void createGlobalIdIndex(OrientIfcSetup setup)
   {
-    try (PrintWriter writer = new PrintWriter(file, "UTF-8"))
-    {
-      writer.print("[");
-      for (int i = 0; i < results.size(); i++)
-      {
-        OResult result = results.get(i);
-        if (i > 0) writer.println(",");
-        writer.print(result.toJSON());
-      }
-      writer.print("]");
-    }
+    ExpressEntity ifcRootEntity = (ExpressEntity)schema.getNamedType("IfcRoot");
+
+    OClass ifcRootClass = setup.createClass(ifcRootEntity);
+
+    setup.createIndex(ifcRootClass, GLOBAL_ID_INDEX,
+      OClass.INDEX_TYPE.NOTUNIQUE_HASH_INDEX, "GlobalId");
   }
 }
@@ -30,15 +30,20 @@
  */
 package org.bimrocket.service.ifcdb.store.orient;
 
+import com.orientechnologies.orient.core.id.ORID;
 import com.orientechnologies.orient.core.record.OElement;
 import com.orientechnologies.orient.core.record.impl.ODocument;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import org.bimrocket.express.ExpressConstant;
 import org.bimrocket.express.ExpressDefinedType;
 import org.bimrocket.express.ExpressEntity;
 import org.bimrocket.express.ExpressEnumeration;
+import org.bimrocket.express.ExpressNamedType;
 import org.bimrocket.express.ExpressPrimitive;
 import static org.bimrocket.express.ExpressPrimitive.BOOLEAN_TYPE;
 import static org.bimrocket.express.ExpressPrimitive.INTEGER_TYPE;
@@ -57,8 +62,12 @@ public class OrientIfcData extends AbstractListData<OElement> implements IfcData
 {
   OrientIfcSetup orientSetup;
   Set<String> forcedRootClasses;
-  Set<OElement> rootElements = new HashSet<>();
+  // by identity: the hash code of an element changes when it is saved
+  Set<OElement> rootElements =
+    Collections.newSetFromMap(new IdentityHashMap<>());
+  Map<OElement, String> temporaryIds = new IdentityHashMap<>();
   OElement ifcProject;
+  final Map<String, ExpressNamedType> elementTypes = new HashMap<>();
 
   public OrientIfcData(ExpressSchema schema, OrientIfcSetup orientSetup,
     Set<String> forcedRootClasses)
@@ -73,6 +82,19 @@ public class OrientIfcData extends AbstractListData<OElement> implements IfcData
     return rootElements;
   }
 
+  /**
+   * @return a map with the elements of this data by element id.
+   */
+  public Map<String, OElement> getElementMap()
+  {
+    Map<String, OElement> elementMap = new HashMap<>();
+    for (OElement oelement : elements)
+    {
+      elementMap.put(getElementId(oelement), oelement);
+    }
+    return elementMap;
+  }
+
   public OrientIfcSetup getOrientSetup()
   {
     return orientSetup;
@@ -85,14 +107,22 @@ public class OrientIfcData extends AbstractListData<OElement> implements IfcData
     return new Cursor(ifcProject){};
   }
 
+  /**
+   * Returns a cursor positioned on the given element.
+   *
+   * @param oelement the element.
+   * @return the cursor.
+   */
+  public ExpressCursor getCursor(OElement oelement)
+  {
+    return new Cursor(oelement){};
+  }
+
   @Override
   protected OElement createEntity(ExpressEntity entity)
   {
     String typeName = entity.getTypeName();
-    if (orientSetup.getClass(typeName) == null)
-    {
-      orientSetup.createClass(entity);
-    }
+    orientSetup.ensureClass(entity);
     ODocument oelement = new ODocument(typeName);
     oelement.setTrackingChanges(false);
     rootElements.add(oelement);
@@ -108,11 +138,7 @@ public class OrientIfcData extends AbstractListData<OElement> implements IfcData
   protected OElement createDefinedType(ExpressDefinedType definedType)
   {
     String typeName = definedType.getTypeName();
-    if (orientSetup.getClass(typeName) == null)
-    {
-      orientSetup.createClass(definedType);
-    }
-    orientSetup.createClassIfNotExists(typeName, "IfcV");
+    orientSetup.ensureClass(definedType);
     ODocument oelement = new ODocument(typeName);
     oelement.setTrackingChanges(false);
     return oelement;
@@ -131,13 +157,48 @@ public class OrientIfcData extends AbstractListData<OElement> implements IfcData
   @Override
   protected String getElementTypeName(OElement oelement)
   {
+    return getClassName(oelement);
+  }
+
+  @Override
+  protected ExpressNamedType getElementType(OElement oelement)
+  {
+    String className = getClassName(oelement);
+    ExpressNamedType type = elementTypes.get(className);
+    if (type == null)
+    {
+      type = getSchema().getNamedType(className);
+      elementTypes.put(className, type);
+    }
+    return type;
+  }
+
+  /**
+   * Returns the class name of an element. The name of a document is read
+   * from its own field instead of looking up its class in the schema.
+   *
+   * @param oelement the element.
+   * @return the class name.
+   */
+  public static String getClassName(OElement oelement)
+  {
+    if (oelement instanceof ODocument odocument)
+    {
+      String className = odocument.getClassName();
+      if (className != null) return className;
+    }
     return oelement.getSchemaType().get().getName();
   }
 
   @Override
   protected String getElementId(OElement oelement)
   {
-    return oelement.getIdentity().toString();
+    ORID identity = oelement.getIdentity();
+    if (identity.isValid()) return identity.toString();
+
+    // not saved yet: all new elements share the same invalid identity
+    return temporaryIds.computeIfAbsent(oelement,
+      element -> "#new:" + temporaryIds.size());
   }
 
   @Override
@@ -0,0 +1,155 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.service.ifcdb.store.orient;
+
+import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
+import com.orientechnologies.orient.core.record.OEdge;
+import com.orientechnologies.orient.core.record.OElement;
+import com.orientechnologies.orient.core.record.OVertex;
+import com.orientechnologies.orient.core.sql.executor.OResultSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import org.bimrocket.service.ifcdb.store.IfcDataWriter;
+import static org.bimrocket.service.ifcdb.store.orient.OrientIfcStore.LOGGER;
+
+/**
+ * Saves the elements of an OrientIfcData while it is being loaded.
+ *
+ * The elements are created by the session of the connection, so they are
+ * saved by that session in the loading thread (the writer is synchronous),
+ * committing a transaction per batch. Once saved, the elements are
+ * unloaded: they keep their identity and class name, that is all the
+ * loader needs to reference them, and their fields are released. That way
+ * the memory used by the loader is bounded. The edges from the version to
+ * the root elements are created at the end, when the root elements are
+ * known.
+ *
+ * @author realor
+ */
+public class OrientIfcDataWriter extends IfcDataWriter<Integer>
+{
+  final ODatabaseDocument db;
+  final OrientIfcData data;
+  OrientIfcSaver orientIfcSaver;
+
+  public OrientIfcDataWriter(ODatabaseDocument db, String modelId,
+    int version, OrientIfcData data, int batchSize)
+  {
+    super(modelId, version, batchSize, 0);
+    this.db = db;
+    this.data = data;
+  }
+
+  @Override
+  protected Integer takeElement(int index)
+  {
+    return index;
+  }
+
+  @Override
+  protected void open()
+  {
+    orientIfcSaver = new OrientIfcSaver(db, data.getSchema());
+  }
+
+  @Override
+  protected void write(List<Integer> indices)
+  {
+    List<OElement> elements = data.getElements();
+
+    db.begin();
+    int saveCount = 0;
+    for (int index : indices)
+    {
+      saveCount += orientIfcSaver.save(elements.get(index));
+    }
+    db.commit();
+
+    for (int index : indices)
+    {
+      elements.get(index).unload();
+    }
+
+    LOGGER.log(Level.FINE, "{0} objects saved.", saveCount);
+  }
+
+  @Override
+  protected void complete(int elementCount)
+  {
+    // create IFC classes for relationships in orientdb schema
+
+    var orientSetup = data.getOrientSetup();
+
+    Set<OElement> rootElements = data.getRootElements();
+    for (OElement oelement : rootElements)
+    {
+      String className = OrientIfcData.getClassName(oelement) + "E";
+      orientSetup.ensureClass(className, "IfcE");
+    }
+
+    db.begin();
+
+    OVertex oversion;
+    try (OResultSet rs = db.query(
+      "select from IfcdbVersion where model.id = ? and version = ?",
+      modelId, version))
+    {
+      if (!rs.hasNext()) throw new RuntimeException("Model version not found.");
+      oversion = rs.next().getVertex().get();
+    }
+
+    LOGGER.log(Level.INFO, "Root elements: {0}", rootElements.size());
+
+    // link the root elements to the model version
+    for (OElement oelement : rootElements)
+    {
+      String className = OrientIfcData.getClassName(oelement) + "E";
+      OEdge oedge = db.newEdge(oversion, oelement.asVertex().get(), className);
+      db.save(oedge);
+    }
+
+    // update the number of elements saved
+    oversion.setProperty("elementCount", orientIfcSaver.getTotalCount());
+    db.save(oversion);
+
+    db.commit();
+
+    LOGGER.log(Level.INFO, "Total objects saved: {0}",
+      orientIfcSaver.getTotalCount());
+  }
+
+  @Override
+  protected void release()
+  {
+    if (db.getTransaction().isActive()) db.rollback();
+  }
+}
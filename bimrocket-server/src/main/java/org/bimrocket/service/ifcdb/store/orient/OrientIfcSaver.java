@@ -32,6 +32,9 @@ package org.bimrocket.service.ifcdb.store.orient;
 
 import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
 import com.orientechnologies.orient.core.record.OElement;
+import java.util.logging.Level;
+import org.bimrocket.express.ExpressSchema;
+import static org.bimrocket.service.ifcdb.store.orient.OrientIfcStore.LOGGER;
 
 /**
  *
@@ -39,11 +42,36 @@ import com.orientechnologies.orient.core.record.OElement;
  */
 public class OrientIfcSaver extends OrientIfcTraverser
 {
+  int commitInterval;
+  int pendingCount;
+
   public OrientIfcSaver(ODatabaseDocument db)
   {
     super(db);
   }
 
+  public OrientIfcSaver(ODatabaseDocument db, ExpressSchema schema)
+  {
+    super(db, schema);
+  }
+
+  public int getCommitInterval()
+  {
+    return commitInterval;
+  }
+
+  /**
+   * Sets the number of objects saved in each transaction. When it is
+   * reached, the active transaction is committed and a new one is started,
+   * also in the middle of the traversal of an element. 0 disables it.
+   *
+   * @param commitInterval the number of objects saved per transaction.
+   */
+  public void setCommitInterval(int commitInterval)
+  {
+    this.commitInterval = commitInterval;
+  }
+
   public int save(OElement oelement)
   {
     return traverse(oelement);
@@ -59,5 +87,14 @@ public class OrientIfcSaver extends OrientIfcTraverser
   protected void process(OElement oelement)
   {
     db.save(oelement);
+
+    if (commitInterval > 0 && ++pendingCount >= commitInterval &&
+        db.getTransaction().isActive())
+    {
+      db.commit();
+      db.begin();
+      LOGGER.log(Level.INFO, "{0} objects saved.", pendingCount);
+      pendingCount = 0;
+    }
   }
 }
@@ -36,6 +36,8 @@ import com.orientechnologies.orient.core.metadata.schema.OProperty;
 import com.orientechnologies.orient.core.metadata.schema.OSchema;
 import com.orientechnologies.orient.core.metadata.schema.OType;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import org.bimrocket.dao.orient.OrientSetup;
 import org.bimrocket.express.ExpressAttribute;
@@ -43,6 +45,7 @@ import org.bimrocket.express.ExpressCollection;
 import org.bimrocket.express.ExpressDefinedType;
 import org.bimrocket.express.ExpressEntity;
 import org.bimrocket.express.ExpressEnumeration;
+import org.bimrocket.express.ExpressNamedType;
 import org.bimrocket.express.ExpressPrimitive;
 import org.bimrocket.express.ExpressType;
 
@@ -52,9 +55,63 @@ import org.bimrocket.express.ExpressType;
  */
 public class OrientIfcSetup extends OrientSetup
 {
+  final Set<String> classNames;
+
   public OrientIfcSetup(ODatabaseDocument db)
+  {
+    this(db, ConcurrentHashMap.newKeySet());
+  }
+
+  /**
+   * Creates a setup that shares with other setups of the same database the
+   * names of the classes known to exist, so that they do not have to be
+   * looked up in the OrientDB schema again.
+   *
+   * @param db the database.
+   * @param classNames the names of the existing classes.
+   */
+  public OrientIfcSetup(ODatabaseDocument db, Set<String> classNames)
   {
     super(db);
+    this.classNames = classNames;
+  }
+
+  public void loadClassNames()
+  {
+    for (OClass oclass : getSchema().getClasses())
+    {
+      classNames.add(oclass.getName());
+    }
+  }
+
+  /**
+   * Creates the class for the given entity or defined type if it is not
+   * known to exist.
+   *
+   * @param namedType the entity or defined type.
+   */
+  public void ensureClass(ExpressNamedType namedType)
+  {
+    String typeName = namedType.getTypeName();
+    if (classNames.contains(typeName)) return;
+
+    if (namedType instanceof ExpressEntity entity)
+    {
+      createClass(entity);
+    }
+    else if (namedType instanceof ExpressDefinedType definedType)
+    {
+      createClass(definedType);
+    }
+    classNames.add(typeName);
+  }
+
+  public void ensureClass(String className, String superClassName)
+  {
+    if (classNames.contains(className)) return;
+
+    createClassIfNotExists(className, superClassName);
+    classNames.add(className);
   }
 
   public OClass createClass(ExpressDefinedType definedType)
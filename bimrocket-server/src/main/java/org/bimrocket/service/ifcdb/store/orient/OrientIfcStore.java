@@ -33,12 +33,15 @@ package org.bimrocket.service.ifcdb.store.orient;
 import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
 import jakarta.inject.Inject;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import org.bimrocket.dao.orient.OrientPoolManager;
 import org.bimrocket.express.ExpressSchema;
 import org.bimrocket.service.ifcdb.store.IfcdbStore;
 import org.bimrocket.service.ifcdb.store.IfcdbConnection;
+import org.eclipse.microprofile.config.Config;
 
 /**
  *
@@ -55,9 +58,17 @@ public class OrientIfcStore implements IfcdbStore
     "IfcBSplineSurfaceWithKnots",
     "IfcRationalBSplineSurfaceWithKnots");
 
+  static final String BASE = "services.ifcdb.store.orient.";
+
   @Inject
   OrientPoolManager poolManager;
 
+  @Inject
+  Config config;
+
+  // names of the classes that exist in each database
+  final Map<String, Set<String>> classNames = new ConcurrentHashMap<>();
+
   @Override
   public List<String> getSupportedQueryLanguages()
   {
@@ -70,7 +81,14 @@ public class OrientIfcStore implements IfcdbStore
     String dbAlias = schema.getName();
     ODatabaseDocument db = poolManager.getDocumentConnection(dbAlias);
 
-    return new OrientIfcConnection(db, schema);
+    OrientIfcConnection connection = new OrientIfcConnection(db, schema);
+    connection.poolManager = poolManager;
+    connection.classNames = classNames.computeIfAbsent(dbAlias,
+      alias -> ConcurrentHashMap.newKeySet());
+    connection.loadThreads = config.getOptionalValue(
+      BASE + "loadThreads", Integer.class).orElse(1);
+
+    return connection;
   }
 
   @Override
@@ -31,29 +31,102 @@
 package org.bimrocket.service.ifcdb.store.orient;
 
 import com.orientechnologies.orient.core.db.document.ODatabaseDocument;
+import com.orientechnologies.orient.core.metadata.schema.OClass;
 import com.orientechnologies.orient.core.record.OElement;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import org.bimrocket.express.ExpressAttribute;
+import org.bimrocket.express.ExpressCollection;
+import org.bimrocket.express.ExpressDefinedType;
+import org.bimrocket.express.ExpressEntity;
+import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.ExpressSelect;
+import org.bimrocket.express.ExpressType;
 
 /**
+ * Visits an element and all the elements it references, directly or
+ * indirectly, processing each element after the elements it references
+ * (in a reference cycle, the element where the cycle is entered is
+ * processed last).
+ *
+ * The traversal uses an explicit stack, so deep graphs do not overflow the
+ * thread stack. When the schema is known, only the attributes whose type may
+ * contain references are read from the entities.
  *
  * @author realor
  */
 public abstract class OrientIfcTraverser
 {
+  static final List<String> UNKNOWN_ATTRIBUTES = List.of();
+
   final ODatabaseDocument db;
+  final ExpressSchema schema;
+  final Map<String, List<String>> referenceAttributes = new HashMap<>();
   int count;
   int totalCount;
 
   public OrientIfcTraverser(ODatabaseDocument db)
+  {
+    this(db, null);
+  }
+
+  public OrientIfcTraverser(ODatabaseDocument db, ExpressSchema schema)
   {
     this.db = db;
+    this.schema = schema;
   }
 
   public int traverse(OElement oelement)
   {
     count = 0;
-    traverseElement(oelement);
+    if (!isProcessable(oelement)) return 0;
+
+    // the elements already expanded
+    Set<OElement> visited =
+      Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // an element is pushed to expand it, maybe several times if it is
+    // referenced by several elements, and once expanded, it is pushed again
+    // under its references to process it after them
+    ArrayDeque<Object> stack = new ArrayDeque<>();
+    stack.push(oelement);
+    List<OElement> references = new ArrayList<>();
+
+    while (!stack.isEmpty())
+    {
+      Object item = stack.pop();
+      if (item instanceof Expanded expanded)
+      {
+        process(expanded.element);
+        count++;
+        totalCount++;
+      }
+      else
+      {
+        OElement element = (OElement)item;
+        if (!visited.add(element)) continue;
+
+        stack.push(new Expanded(element));
+
+        references.clear();
+        collectReferences(element, references);
+        for (OElement reference : references)
+        {
+          if (!visited.contains(reference) && isProcessable(reference))
+          {
+            stack.push(reference);
+          }
+        }
+      }
+    }
     return count;
   }
 
@@ -67,47 +140,94 @@ public abstract class OrientIfcTraverser
     totalCount = 0;
   }
 
-  void traverseElement(OElement oelement)
+  protected void collectReferences(OElement oelement,
+    List<OElement> references)
   {
-    if (isProcessable(oelement))
+    for (String propertyName : getReferenceProperties(oelement))
+    {
+      Object value = oelement.getProperty(propertyName);
+      collectValueReferences(value, references);
+    }
+  }
+
+  void collectValueReferences(Object object, List<OElement> references)
+  {
+    if (object instanceof OElement osubElement)
+    {
+      references.add(osubElement);
+    }
+    else if (object instanceof Collection<?> col)
     {
-      Set<String> propertyNames = oelement.getPropertyNames();
-      for (String propertyName : propertyNames)
+      for (Object item : col)
       {
-        Object object = oelement.getProperty(propertyName);
-        if (object instanceof OElement osubElement)
-        {
-          traverseElement(osubElement);
-        }
-        else if (object instanceof Collection<?> col)
-        {
-          traverseCollection(col);
-        }
+        collectValueReferences(item, references);
       }
-
-      process(oelement);
-
-      count++;
-      totalCount++;
     }
   }
 
-  void traverseCollection(Collection<?> col)
+  /**
+   * Returns the names of the properties of an element that may contain
+   * references to other elements.
+   *
+   * @param oelement the element.
+   * @return the property names.
+   */
+  protected Collection<String> getReferenceProperties(OElement oelement)
   {
-    for (Object item : col)
+    String className = oelement instanceof ODocument odocument ?
+      odocument.getClassName() :
+      oelement.getSchemaType().map(OClass::getName).orElse(null);
+
+    if (schema != null && className != null)
     {
-      if (item instanceof OElement osubElement)
+      List<String> attributeNames = referenceAttributes.get(className);
+      if (attributeNames == null)
       {
-        traverseElement(osubElement);
+        attributeNames = findReferenceAttributes(className);
+        referenceAttributes.put(className, attributeNames);
       }
-      else if (item instanceof Collection<?> subCol)
+      if (attributeNames != UNKNOWN_ATTRIBUTES) return attributeNames;
+    }
+    // defined types and unknown classes
+    return oelement.getPropertyNames();
+  }
+
+  List<String> findReferenceAttributes(String className)
+  {
+    if (schema.getNamedType(className) instanceof ExpressEntity entity)
+    {
+      List<String> attributeNames = new ArrayList<>();
+      for (ExpressAttribute attribute : entity.getAllAttributes())
       {
-        traverseCollection(subCol);
+        if (mayContainReferences(attribute.getType()))
+        {
+          attributeNames.add(attribute.getName());
+        }
       }
+      return attributeNames;
     }
+    return UNKNOWN_ATTRIBUTES;
+  }
+
+  static boolean mayContainReferences(ExpressType type)
+  {
+    if (type instanceof ExpressEntity || type instanceof ExpressSelect)
+      return true;
+
+    if (type instanceof ExpressCollection collection)
+      return mayContainReferences(collection.getItemType());
+
+    if (type instanceof ExpressDefinedType definedType)
+      return mayContainReferences(definedType.getRootType());
+
+    return false;
   }
 
   protected abstract boolean isProcessable(OElement olement);
 
   protected abstract void process(OElement oelement);
+
+  record Expanded(OElement element)
+  {
+  }
 }
@@ -0,0 +1,148 @@
+/*
+ * BIMROCKET
+ *
+ * Copyright (C) 2021-2025, Ajuntament de Sant Feliu de Llobregat
+ *
+ * This program is licensed and may be used, modified and redistributed under
+ * the terms of the European Public License (EUPL), either version 1.1 or (at
+ * your option) any later version as soon as they are approved by the European
+ * Commission.
+ *
+ * Alternatively, you may redistribute and/or modify this program under the
+ * terms of the GNU Lesser General Public License as published by the Free
+ * Software Foundation; either  version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the licenses for the specific language governing permissions, limitations
+ * and more details.
+ *
+ * You should have received a copy of the EUPL1.1 and the LGPLv3 licenses along
+ * with this program; if not, you may find them at:
+ *
+ * https://joinup.ec.europa.eu/software/page/eupl/licence-eupl
+ * http://www.gnu.org/licenses/
+ * and
+ * https://www.gnu.org/licenses/lgpl.txt
+ */
+package org.bimrocket.service.ifcdb.store.orient;
+
+import com.orientechnologies.orient.core.id.ORID;
+import com.orientechnologies.orient.core.id.ORecordId;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * A set of record ids stored as a bit set per cluster. Cluster positions
+ * are dense, so the set takes about one bit per record of the clusters it
+ * refers to, whatever the number of ids it contains.
+ *
+ * @author realor
+ */
+public class OrientRidSet implements Iterable<ORID>
+{
+  final Map<Integer, BitSet> clusters = new TreeMap<>();
+  int size;
+
+  public boolean add(ORID rid)
+  {
+    long position = rid.getClusterPosition();
+    if (position < 0 || position > Integer.MAX_VALUE)
+      throw new IllegalArgumentException("Unsupported rid: " + rid);
+
+    BitSet positions = clusters.computeIfAbsent(rid.getClusterId(),
+      clusterId -> new BitSet());
+
+    if (positions.get((int)position)) return false;
+
+    positions.set((int)position);
+    size++;
+    return true;
+  }
+
+  /**
+   * Adds all the ids of another set to this set.
+   *
+   * @param other the other set.
+   */
+  public void addAll(OrientRidSet other)
+  {
+    for (Map.Entry<Integer, BitSet> entry : other.clusters.entrySet())
+    {
+      BitSet positions = clusters.computeIfAbsent(entry.getKey(),
+        clusterId -> new BitSet());
+      size -= positions.cardinality();
+      positions.or(entry.getValue());
+      size += positions.cardinality();
+    }
+  }
+
+  public boolean contains(ORID rid)
+  {
+    long position = rid.getClusterPosition();
+    if (position < 0 || position > Integer.MAX_VALUE) return false;
+
+    BitSet positions = clusters.get(rid.getClusterId());
+    return positions != null && positions.get((int)position);
+  }
+
+  public int size()
+  {
+    return size;
+  }
+
+  public boolean isEmpty()
+  {
+    return size == 0;
+  }
+
+  /**
+   * Returns the ids ordered by cluster and position.
+   *
+   * @return an iterator over the ids of this set.
+   */
+  @Override
+  public Iterator<ORID> iterator()
+  {
+    Iterator<Map.Entry<Integer, BitSet>> clusterIterator =
+      clusters.entrySet().iterator();
+
+    return new Iterator<>()
+    {
+      int clusterId;
+      BitSet positions;
+      int position = -1; // next position in positions, -1 if none
+
+      @Override
+      public boolean hasNext()
+      {
+        while (position < 0)
+        {
+          if (!clusterIterator.hasNext()) return false;
+
+          Map.Entry<Integer, BitSet> entry = clusterIterator.next();
+          clusterId = entry.getKey();
+          positions = entry.getValue();
+          position = positions.nextSetBit(0);
+        }
+        return true;
+      }
+
+      @Override
+      public ORID next()
+      {
+        if (!hasNext()) throw new NoSuchElementException();
+
+        ORID rid = new ORecordId(clusterId, position);
+        position = positions.nextSetBit(position + 1);
+        return rid;
+      }
+    };
+  }
+}
@@ -148,6 +148,57 @@ public class IfcdbApiClient
     }
   }
 
+  public ApiResponse uploadModelAsync(String schema, File model) throws IOException
+  {
+    String endpoint = baseUrl + "/models/" + schema + "/uploads";
+
+    HttpRequest request = HttpRequest.newBuilder()
+      .uri(URI.create(endpoint))
+      .header("Accept", "application/json")
+      .header("Authorization", authorizationHeader)
+      .header("Content-Type", "application/x-step")
+      .POST(HttpRequest.BodyPublishers.ofFile(model.toPath()))
+      .build();
+
+    try
+    {
+      HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+      int responseCode = response.statusCode();
+      String body = response.body() != null ? response.body() : "";
+      return new ApiResponse(responseCode, body);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new IOException("Request interrupted", e);
+    }
+  }
+
+  public ApiResponse getUploadJob(String schema, String jobId) throws IOException
+  {
+    String endpoint = baseUrl + "/models/" + schema + "/uploads/" + jobId;
+
+    HttpRequest request = HttpRequest.newBuilder()
+      .uri(URI.create(endpoint))
+      .header("Accept", "application/json")
+      .header("Authorization", authorizationHeader)
+      .GET()
+      .build();
+
+    try
+    {
+      HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+      int responseCode = response.statusCode();
+      String body = response.body() != null ? response.body() : "";
+      return new ApiResponse(responseCode, body);
+    }
+    catch (InterruptedException e)
+    {
+      Thread.currentThread().interrupt();
+      throw new IOException("Request interrupted", e);
+    }
+  }
+
   // Auxiliary class to give formatted response
   public static class ApiResponse
   {
@@ -0,0 +1,185 @@
+package org.bimrocket.service.ifcdb;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.data.ExpressCursor;
+import org.bimrocket.express.data.GenericData;
+import org.bimrocket.express.io.ExpressLoader;
+import org.bimrocket.step.io.StepExporter;
+import org.bimrocket.step.io.StepLoader;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+public class IfcdbExtractorTest
+{
+  static final String STEP = """
+    ISO-10303-21;
+    HEADER;
+    FILE_DESCRIPTION((''),'2;1');
+    FILE_NAME('test.ifc','',(''),(''),'','','');
+    FILE_SCHEMA(('IFC4'));
+    ENDSEC;
+    DATA;
+    #1=IFCSIUNIT(*,.LENGTHUNIT.,$,.METRE.);
+    #2=IFCUNITASSIGNMENT((#1));
+    #3=IFCCARTESIANPOINT((0.,0.,0.));
+    #4=IFCAXIS2PLACEMENT3D(#3,$,$);
+    #5=IFCGEOMETRICREPRESENTATIONCONTEXT($,'Model',3,1.E-05,#4,$);
+    #6=IFCPROJECT('0000000000000000000001',$,'Project',$,$,$,$,(#5),#2);
+    #7=IFCBUILDING('0000000000000000000002',$,'Building',$,$,$,$,$,$,$,$,$);
+    #8=IFCBUILDINGSTOREY('0000000000000000000003',$,'Level 1',$,$,$,$,$,$,$);
+    #9=IFCBUILDINGSTOREY('0000000000000000000004',$,'Level 2',$,$,$,$,$,$,$);
+    #10=IFCRELAGGREGATES('0000000000000000000005',$,$,$,#6,(#7));
+    #11=IFCRELAGGREGATES('0000000000000000000006',$,$,$,#7,(#8,#9));
+    #12=IFCLOCALPLACEMENT($,#4);
+    #13=IFCWALL('0000000000000000000007',$,'Wall 1',$,$,#12,$,$,$);
+    #14=IFCOPENINGELEMENT('0000000000000000000008',$,$,$,$,#12,$,$,$);
+    #15=IFCRELVOIDSELEMENT('0000000000000000000009',$,$,$,#13,#14);
+    #16=IFCSLAB('000000000000000000000A',$,'Slab 2',$,$,#12,$,$,$);
+    #17=IFCRELCONTAINEDINSPATIALSTRUCTURE('000000000000000000000B',$,$,$,(#13),#8);
+    #18=IFCRELCONTAINEDINSPATIALSTRUCTURE('000000000000000000000C',$,$,$,(#16),#9);
+    #19=IFCPROPERTYSINGLEVALUE('IsExternal',$,IFCBOOLEAN(.T.),$);
+    #20=IFCPROPERTYSET('000000000000000000000D',$,'Pset_WallCommon',$,(#19));
+    #21=IFCRELDEFINESBYPROPERTIES('000000000000000000000E',$,$,$,(#13),#20);
+    #22=IFCRELDEFINESBYPROPERTIES('000000000000000000000F',$,$,$,(#13,#16),#20);
+    ENDSEC;
+    END-ISO-10303-21;
+    """;
+
+  static ExpressSchema schema;
+  static GenericData data;
+
+  @BeforeAll
+  public static void loadModel() throws IOException
+  {
+    schema = new ExpressLoader().load("schema:IFC4");
+    data = new GenericData(schema);
+    new StepLoader(data).load(new StringReader(STEP));
+  }
+
+  @Test
+  public void testStoreyExtraction() throws IOException
+  {
+    IfcdbExtractor extractor = new IfcdbExtractor(schema);
+    extractor.getStoreys().add("Level 1");
+
+    String ifc = extract(extractor);
+
+    assertEquals(1, extractor.getSeedCount());
+    assertTrue(ifc.contains("IFCWALL("));
+    assertTrue(ifc.contains("IFCOPENINGELEMENT("));
+    assertTrue(ifc.contains("IFCRELVOIDSELEMENT("));
+    assertTrue(ifc.contains("'000000000000000000000B'"));
+    assertTrue(ifc.contains("IFCPROJECT("));
+    assertTrue(ifc.contains("IFCUNITASSIGNMENT("));
+    assertTrue(ifc.contains("IFCGEOMETRICREPRESENTATIONCONTEXT("));
+    assertTrue(ifc.contains("'000000000000000000000E'"));
+
+    // the aggregation chain up to the project
+    assertTrue(ifc.contains("IFCBUILDING("));
+    assertTrue(ifc.contains("'0000000000000000000005'"));
+    assertTrue(ifc.contains("'0000000000000000000006'"));
+
+    // the shared relationships, with the selected objects only
+    assertEquals(1, getRelatedCount(ifc, "'0000000000000000000006'"));
+    assertEquals(1, getRelatedCount(ifc, "'000000000000000000000F'"));
+
+    // the other storey and its objects
+    assertFalse(ifc.contains("IFCSLAB("));
+    assertFalse(ifc.contains("'Level 2'"));
+    assertFalse(ifc.contains("'000000000000000000000C'"));
+    assertReferenceClosed(extractor, ifc);
+  }
+
+  @Test
+  public void testTypeExtraction() throws IOException
+  {
+    IfcdbExtractor extractor = new IfcdbExtractor(schema);
+    assertTrue(extractor.addType("ifcslab"));
+    assertFalse(extractor.addType("IfcUnknown"));
+
+    String ifc = extract(extractor);
+
+    assertTrue(ifc.contains("IFCSLAB("));
+    assertTrue(ifc.contains("IFCPROJECT("));
+    // the containers of the slab
+    assertTrue(ifc.contains("'Level 2'"));
+    assertTrue(ifc.contains("IFCBUILDING("));
+    assertFalse(ifc.contains("'Level 1'"));
+    assertFalse(ifc.contains("IFCWALL("));
+    assertReferenceClosed(extractor, ifc);
+  }
+
+  @Test
+  public void testNoSeedFound()
+  {
+    IfcdbExtractor extractor = new IfcdbExtractor(schema);
+    extractor.getStoreys().add("Level 3");
+
+    extract(extractor);
+
+    assertEquals(0, extractor.getSeedCount());
+    assertEquals(0, extractor.getSelectedCount());
+  }
+
+  @Test
+  public void testGlobalIdExtraction() throws IOException
+  {
+    IfcdbExtractor extractor = new IfcdbExtractor(schema);
+    extractor.getGlobalIds().add("0000000000000000000007");
+    extractor.getGlobalIds().add("000000000000000000000A");
+
+    String ifc = extract(extractor);
+
+    assertEquals(2, extractor.getSeedCount());
+    assertEquals(2, getRelatedCount(ifc, "'000000000000000000000F'"));
+    assertReferenceClosed(extractor, ifc);
+  }
+
+  private void assertReferenceClosed(IfcdbExtractor extractor, String ifc)
+    throws IOException
+  {
+    GenericData extracted = new GenericData(schema);
+    new StepLoader(extracted).load(new StringReader(ifc));
+    assertEquals(extractor.getSelectedCount(), extracted.getRoot().size());
+  }
+
+  // the number of related objects of the relationship with a GlobalId
+  private int getRelatedCount(String ifc, String globalId)
+  {
+    String line = ifc.lines().filter(text -> text.contains(globalId))
+      .findFirst().get();
+    int start = line.lastIndexOf("(");
+    String related = line.substring(start + 1, line.indexOf(")", start));
+    return related.split(",").length;
+  }
+
+  private String extract(IfcdbExtractor extractor)
+  {
+    extractor.scan(getEntities());
+    StringWriter writer = new StringWriter();
+    extractor.export(new StepExporter(data), writer, getEntities());
+    return writer.toString();
+  }
+
+  private Iterator<ExpressCursor> getEntities()
+  {
+    ExpressCursor root = data.getRoot();
+    List<ExpressCursor> entities = new ArrayList<>();
+    for (int i = 0; i < root.size(); i++)
+    {
+      root.enter(i);
+      entities.add(root.copy());
+      root.exit();
+    }
+    return entities.iterator();
+  }
+}
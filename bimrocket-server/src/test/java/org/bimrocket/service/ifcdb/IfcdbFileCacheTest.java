@@ -0,0 +1,160 @@
+package org.bimrocket.service.ifcdb;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class IfcdbFileCacheTest
+{
+  @TempDir
+  File directory;
+
+  @Test
+  public void testCachedExport() throws IOException
+  {
+    IfcdbFileCache cache = new IfcdbFileCache(directory, 1000, false);
+    cache.init();
+    AtomicInteger exports = new AtomicInteger();
+
+    IfcdbFileCache.Entry entry1 = cache.get("IFC4", "model", 1,
+      file -> write(file, "data", exports));
+    IfcdbFileCache.Entry entry2 = cache.get("IFC4", "model", 1,
+      file -> write(file, "data", exports));
+
+    assertSame(entry1, entry2);
+    assertEquals(1, exports.get());
+    assertFalse(entry1.isTemporary());
+    assertEquals("data", Files.readString(entry1.getFile().toPath()));
+  }
+
+  @Test
+  public void testEviction() throws IOException
+  {
+    IfcdbFileCache cache = new IfcdbFileCache(directory, 10, false);
+    cache.init();
+    AtomicInteger exports = new AtomicInteger();
+
+    IfcdbFileCache.Entry entry1 = cache.get("IFC4", "a", 1,
+      file -> write(file, "12345", exports));
+    cache.get("IFC4", "b", 1, file -> write(file, "12345", exports));
+    cache.get("IFC4", "a", 1, file -> write(file, "12345", exports));
+    cache.get("IFC4", "c", 1, file -> write(file, "12345", exports));
+
+    assertEquals(3, exports.get());
+    assertEquals(2, cache.size());
+    assertEquals(10, cache.getTotalSize());
+    assertTrue(entry1.getFile().exists());
+
+    // b was evicted
+    cache.get("IFC4", "b", 1, file -> write(file, "12345", exports));
+    assertEquals(4, exports.get());
+  }
+
+  @Test
+  public void testLargeFileIsNotCached() throws IOException
+  {
+    IfcdbFileCache cache = new IfcdbFileCache(directory, 4, false);
+    cache.init();
+    AtomicInteger exports = new AtomicInteger();
+
+    IfcdbFileCache.Entry entry = cache.get("IFC4", "a", 1,
+      file -> write(file, "12345", exports));
+
+    assertTrue(entry.isTemporary());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testInvalidate() throws IOException
+  {
+    IfcdbFileCache cache = new IfcdbFileCache(directory, 1000, false);
+    cache.init();
+    AtomicInteger exports = new AtomicInteger();
+
+    cache.get("IFC4", "a", 1, file -> write(file, "a1", exports));
+    cache.get("IFC4", "a", 12, file -> write(file, "a12", exports));
+    cache.get("IFC4", "b", 1, file -> write(file, "b1", exports));
+    IfcdbFileCache.Entry entry = cache.get("IFC2X3", "a", 1,
+      file -> write(file, "a1", exports));
+
+    cache.invalidate("IFC4", "a", 1);
+    assertEquals(3, cache.size());
+
+    cache.invalidate("IFC4", "a", 0);
+    assertEquals(2, cache.size());
+
+    cache.invalidate("IFC4", null, 0);
+    assertEquals(1, cache.size());
+    assertTrue(entry.getFile().exists());
+  }
+
+  @Test
+  public void testCompressed() throws IOException
+  {
+    IfcdbFileCache cache = new IfcdbFileCache(directory, 1000, true);
+    cache.init();
+    AtomicInteger exports = new AtomicInteger();
+
+    IfcdbFileCache.Entry entry = cache.get("IFC4", "a", 1,
+      file -> write(file, "compressed data", exports));
+
+    assertTrue(entry.isCompressed());
+    try (InputStream input =
+         new GZIPInputStream(new FileInputStream(entry.getFile())))
+    {
+      assertEquals("compressed data",
+        new String(input.readAllBytes(), StandardCharsets.UTF_8));
+    }
+  }
+
+  @Test
+  public void testEtagOfContent() throws IOException
+  {
+    IfcdbFileCache cache = new IfcdbFileCache(directory, 1000, false);
+    IfcdbFileCache gzipCache = new IfcdbFileCache(
+      new File(directory, "gzip"), 1000, true);
+    cache.init();
+    gzipCache.init();
+    AtomicInteger exports = new AtomicInteger();
+
+    IfcdbFileCache.Entry entry1 = cache.get("IFC4", "a", 1,
+      file -> write(file, "data", exports));
+    IfcdbFileCache.Entry entry2 = cache.get("IFC4", "a", 2,
+      file -> write(file, "other data", exports));
+    IfcdbFileCache.Entry entry3 = gzipCache.get("IFC4", "a", 1,
+      file -> write(file, "data", exports));
+
+    assertNotEquals(entry1.getEtag(), entry2.getEtag());
+    // the tag does not depend on the compression
+    assertEquals(entry1.getEtag(), entry3.getEtag());
+    assertEquals(entry1.getEtag(),
+      IfcdbFileCache.getEtag(entry1.getFile()));
+  }
+
+  @Test
+  public void testCaseSensitiveModelIds() throws IOException
+  {
+    assertNotEquals(
+      IfcdbFileCache.getKey("IFC4", "abc", 1).toLowerCase(),
+      IfcdbFileCache.getKey("IFC4", "ABC", 1).toLowerCase());
+  }
+
+  private void write(File file, String text, AtomicInteger exports)
+    throws IOException
+  {
+    exports.incrementAndGet();
+    Files.writeString(file.toPath(), text);
+  }
+}
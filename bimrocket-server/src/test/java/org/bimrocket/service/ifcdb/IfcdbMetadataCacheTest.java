@@ -0,0 +1,80 @@
+package org.bimrocket.service.ifcdb;
+
+import java.util.List;
+import static org.bimrocket.service.ifcdb.IfcdbMetadataCache.MODEL;
+import static org.bimrocket.service.ifcdb.IfcdbMetadataCache.MODELS;
+import static org.bimrocket.service.ifcdb.IfcdbMetadataCache.VERSIONS;
+import static org.bimrocket.service.ifcdb.IfcdbMetadataCache.getKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+public class IfcdbMetadataCacheTest
+{
+  @Test
+  public void testPutAndGet()
+  {
+    IfcdbMetadataCache cache = new IfcdbMetadataCache(10, 60000);
+    String key = getKey("IFC4", VERSIONS, "m1");
+    cache.put(key, List.of(1, 2), cache.getGeneration());
+
+    assertEquals(List.of(1, 2), cache.get(key));
+  }
+
+  @Test
+  public void testInvalidateModel()
+  {
+    IfcdbMetadataCache cache = new IfcdbMetadataCache(10, 60000);
+    long generation = cache.getGeneration();
+    cache.put(getKey("IFC4", MODEL, "m1"), "model1", generation);
+    cache.put(getKey("IFC4", MODEL, "m2"), "model2", generation);
+    cache.put(getKey("IFC4", MODELS, "[admin]"), "list", generation);
+    cache.put(getKey("IFC2X3", MODELS, "[admin]"), "list", generation);
+
+    cache.invalidate("IFC4", "m1");
+
+    assertNull(cache.get(getKey("IFC4", MODEL, "m1")));
+    assertNull(cache.get(getKey("IFC4", MODELS, "[admin]")));
+    assertEquals("model2", cache.get(getKey("IFC4", MODEL, "m2")));
+    assertEquals("list", cache.get(getKey("IFC2X3", MODELS, "[admin]")));
+  }
+
+  @Test
+  public void testStaleLoadIsNotStored()
+  {
+    IfcdbMetadataCache cache = new IfcdbMetadataCache(10, 60000);
+    String key = getKey("IFC4", MODEL, "m1");
+    long generation = cache.getGeneration();
+
+    // the model changes while it is being read
+    cache.invalidate("IFC4", "m1");
+    cache.put(key, "old", generation);
+
+    assertNull(cache.get(key));
+  }
+
+  @Test
+  public void testEviction()
+  {
+    IfcdbMetadataCache cache = new IfcdbMetadataCache(2, 60000);
+    long generation = cache.getGeneration();
+    cache.put("a", "1", generation);
+    cache.put("b", "2", generation);
+    cache.get("a"); // b becomes the least recently used
+    cache.put("c", "3", generation);
+
+    assertEquals(2, cache.size());
+    assertEquals("1", cache.get("a"));
+    assertNull(cache.get("b"));
+  }
+
+  @Test
+  public void testExpiration() throws InterruptedException
+  {
+    IfcdbMetadataCache cache = new IfcdbMetadataCache(10, 50);
+    cache.put("a", "1", cache.getGeneration());
+    Thread.sleep(100);
+
+    assertNull(cache.get("a"));
+  }
+}
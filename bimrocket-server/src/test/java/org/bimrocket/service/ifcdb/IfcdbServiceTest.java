@@ -190,6 +190,47 @@ public class IfcdbServiceTest
         }
       ]
       """)));
+
+    stubFor(post(urlEqualTo("/bimrocket-server/api/ifcdb/1.0/models/IFC4/uploads"))
+      .withHeader("Content-Type", containing("application/x-step"))
+      .willReturn(aResponse()
+      .withStatus(200)
+      .withHeader("Content-Type", "application/json")
+      .withBody("""
+        {
+          "id": "5b1f7a52-3c1e-4d8a-9a57-0f6c1e2d9b31",
+          "schema": "IFC4",
+          "status": "queued",
+          "progress": 0,
+          "version": 0,
+          "creation_time": 1762860517000,
+          "invoker": "admin"
+        }
+        """)));
+
+    stubFor(get(urlEqualTo("/bimrocket-server/api/ifcdb/1.0/models/IFC4/uploads/5b1f7a52-3c1e-4d8a-9a57-0f6c1e2d9b31"))
+      .willReturn(aResponse()
+      .withStatus(200)
+      .withHeader("Content-Type", "application/json")
+      .withBody("""
+        {
+          "id": "5b1f7a52-3c1e-4d8a-9a57-0f6c1e2d9b31",
+          "schema": "IFC4",
+          "status": "running",
+          "phase": "parse",
+          "progress": 35,
+          "version": 0,
+          "creation_time": 1762860517000,
+          "start_time": 1762860517200,
+          "invoker": "admin"
+        }
+        """)));
+
+    stubFor(get(urlEqualTo("/bimrocket-server/api/ifcdb/1.0/models/IFC4/uploads/unknown"))
+      .willReturn(aResponse()
+      .withStatus(500)
+      .withHeader("Content-Type", "application/json")
+      .withBody("{\"code\": 500, \"message\": \"IFC009: Upload job not found.\"}")));
   }
 
   @AfterEach
@@ -399,4 +440,41 @@ public class IfcdbServiceTest
     assertEquals(200, response.getStatusCode());
     assertTrue(response.getBody().contains("project"));
   }
+
+  @Test
+  @Order(11)
+  public void testUploadModelAsync() throws Exception
+  {
+    client = new IfcdbApiClient(
+      baseURL,
+      username,
+      password);
+
+    File tempIfc = File.createTempFile("test", ".ifc");
+    Files.writeString(tempIfc.toPath(), "ISO-10303-21; FILE_SCHEMA(('IFC4')); END-ISO-10303-21;");
+    IfcdbApiClient.ApiResponse response = client.uploadModelAsync("IFC4", tempIfc);
+    assertEquals(200, response.getStatusCode());
+    assertTrue(response.getBody().contains("\"status\": \"queued\""));
+    assertTrue(response.getBody().contains("\"id\": \"5b1f7a52-3c1e-4d8a-9a57-0f6c1e2d9b31\""));
+  }
+
+  @Test
+  @Order(12)
+  public void testGetUploadJob() throws Exception
+  {
+    client = new IfcdbApiClient(
+      baseURL,
+      username,
+      password);
+
+    IfcdbApiClient.ApiResponse response =
+      client.getUploadJob("IFC4", "5b1f7a52-3c1e-4d8a-9a57-0f6c1e2d9b31");
+    assertEquals(200, response.getStatusCode());
+    assertTrue(response.getBody().contains("\"phase\": \"parse\""));
+    assertTrue(response.getBody().contains("\"progress\": 35"));
+
+    response = client.getUploadJob("IFC4", "unknown");
+    assertEquals(500, response.getStatusCode());
+    assertTrue(response.getBody().contains("IFC009: Upload job not found."));
+  }
 }
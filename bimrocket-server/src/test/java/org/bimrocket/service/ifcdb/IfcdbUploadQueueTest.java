@@ -0,0 +1,110 @@
+package org.bimrocket.service.ifcdb;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.bimrocket.api.ifcdb.IfcdbModel;
+import org.bimrocket.api.ifcdb.IfcdbUploadJob;
+import static org.bimrocket.api.ifcdb.IfcdbUploadJob.COMPLETED_STATUS;
+import static org.bimrocket.api.ifcdb.IfcdbUploadJob.RUNNING_STATUS;
+import org.bimrocket.exception.NotFoundException;
+import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.service.security.SecurityService;
+import org.bimrocket.util.ExpiringCache;
+import org.eclipse.microprofile.config.Config;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+
+public class IfcdbUploadQueueTest
+{
+  static final long JOB_TIMEOUT = 100;
+
+  TestIfcdbService service;
+  File ifcFile;
+
+  @BeforeEach
+  public void setUp() throws IOException
+  {
+    service = new TestIfcdbService();
+    service.config = mock(Config.class);
+    service.securityService = mock(SecurityService.class);
+    service.schemas.put("IFC4", mock(ExpressSchema.class));
+    service.uploadsPerSchema = 1;
+    service.maxQueuedUploads = 10;
+    service.uploadExecutor = Executors.newFixedThreadPool(1);
+    service.uploadJobs = new ExpiringCache<>(JOB_TIMEOUT, 0);
+    ifcFile = File.createTempFile("upload", ".ifc");
+  }
+
+  @AfterEach
+  public void tearDown()
+  {
+    service.release.countDown();
+    service.uploadExecutor.shutdownNow();
+    ifcFile.delete();
+  }
+
+  @Test
+  public void testRunningJobDoesNotExpire() throws Exception
+  {
+    IfcdbUploadJob job = service.uploadModelAsync("IFC4", ifcFile);
+    assertTrue(service.started.await(5, TimeUnit.SECONDS));
+
+    // the upload runs longer than the job timeout
+    Thread.sleep(JOB_TIMEOUT * 3);
+
+    IfcdbUploadJob running = service.getUploadJob(job.getId());
+    assertSame(job, running);
+    assertEquals(RUNNING_STATUS, running.getStatus());
+  }
+
+  @Test
+  public void testFinishedJobExpires() throws Exception
+  {
+    IfcdbUploadJob job = service.uploadModelAsync("IFC4", ifcFile);
+    assertTrue(service.started.await(5, TimeUnit.SECONDS));
+    Thread.sleep(JOB_TIMEOUT * 3);
+    service.release.countDown();
+    service.uploadExecutor.shutdown();
+    assertTrue(service.uploadExecutor.awaitTermination(5, TimeUnit.SECONDS));
+
+    // kept after the upload ends
+    assertEquals(COMPLETED_STATUS,
+      service.getUploadJob(job.getId()).getStatus());
+
+    Thread.sleep(JOB_TIMEOUT * 3);
+
+    assertThrows(NotFoundException.class,
+      () -> service.getUploadJob(job.getId()));
+  }
+
+  static class TestIfcdbService extends IfcdbService
+  {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    IfcdbModel uploadModel(ExpressSchema schema, File ifcFile,
+      IfcdbUploadJob job) throws IOException
+    {
+      started.countDown();
+      try
+      {
+        release.await();
+      }
+      catch (InterruptedException ex)
+      {
+        Thread.currentThread().interrupt();
+      }
+      return null;
+    }
+  }
+}
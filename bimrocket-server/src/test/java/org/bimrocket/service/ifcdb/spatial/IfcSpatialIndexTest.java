@@ -0,0 +1,180 @@
+package org.bimrocket.service.ifcdb.spatial;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.data.GenericData;
+import org.bimrocket.express.io.ExpressLoader;
+import org.bimrocket.service.ifcdb.spatial.IfcBoundsCalculator.ElementBounds;
+import org.bimrocket.step.io.StepLoader;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class IfcSpatialIndexTest
+{
+  @TempDir
+  File directory;
+
+  @Test
+  public void testQuery()
+  {
+    List<ElementBounds> elements = createElements(1000);
+    IfcSpatialIndex index = IfcSpatialIndex.create(elements);
+
+    assertEquals(1000, index.size());
+
+    double[] box = { 20, 30, 0, 60, 50, 5 };
+    List<ElementBounds> found = index.query(box);
+
+    assertEquals(bruteForce(elements, box), ids(found));
+    assertTrue(found.size() > 0);
+  }
+
+  @Test
+  public void testEmptyIndex()
+  {
+    IfcSpatialIndex index = IfcSpatialIndex.create(List.of());
+
+    assertEquals(0, index.size());
+    assertNull(index.getBounds());
+    assertTrue(index.query(new double[]{ 0, 0, 0, 1, 1, 1 }).isEmpty());
+  }
+
+  @Test
+  public void testReadWrite() throws IOException
+  {
+    List<ElementBounds> elements = createElements(100);
+    IfcSpatialIndex index = IfcSpatialIndex.create(elements);
+
+    File file = new File(directory, "index.idx");
+    index.write(file);
+    IfcSpatialIndex readIndex = IfcSpatialIndex.read(file);
+
+    double[] box = { 0, 0, 0, 50, 50, 10 };
+    assertEquals(ids(index.query(box)), ids(readIndex.query(box)));
+    assertArrayEquals(index.getBounds(), readIndex.getBounds());
+  }
+
+  @Test
+  public void testIndexCache() throws IOException
+  {
+    IfcSpatialIndexCache cache = new IfcSpatialIndexCache(directory, 1);
+    cache.init();
+    int[] builds = new int[1];
+    IfcSpatialIndexCache.Builder builder = () ->
+    {
+      builds[0]++;
+      return IfcSpatialIndex.create(createElements(10));
+    };
+
+    cache.get("IFC4", "model", 1, builder);
+    cache.get("IFC4", "model", 1, builder);
+    assertEquals(1, builds[0]);
+
+    // evicted from memory, read from disk
+    cache.get("IFC4", "model", 2, builder);
+    cache.get("IFC4", "model", 1, builder);
+    assertEquals(2, builds[0]);
+
+    cache.invalidate("IFC4", "model", 1);
+    cache.get("IFC4", "model", 1, builder);
+    assertEquals(3, builds[0]);
+  }
+
+  @Test
+  public void testBoundsCalculator() throws IOException
+  {
+    String step = """
+      ISO-10303-21;
+      HEADER;
+      FILE_DESCRIPTION((''),'2;1');
+      FILE_NAME('test.ifc','',(''),(''),'','','');
+      FILE_SCHEMA(('IFC4'));
+      ENDSEC;
+      DATA;
+      #1=IFCCARTESIANPOINT((10.,20.,0.));
+      #2=IFCAXIS2PLACEMENT3D(#1,$,$);
+      #3=IFCLOCALPLACEMENT($,#2);
+      #4=IFCCARTESIANPOINT((1.,0.,3.));
+      #5=IFCDIRECTION((0.,1.,0.));
+      #6=IFCAXIS2PLACEMENT3D(#4,$,#5);
+      #7=IFCLOCALPLACEMENT(#3,#6);
+      #8=IFCRECTANGLEPROFILEDEF(.AREA.,$,$,4.,2.);
+      #9=IFCDIRECTION((0.,0.,1.));
+      #10=IFCEXTRUDEDAREASOLID(#8,$,#9,5.);
+      #11=IFCSHAPEREPRESENTATION($,'Body','SweptSolid',(#10));
+      #12=IFCPRODUCTDEFINITIONSHAPE($,$,(#11));
+      #13=IFCWALL('0000000000000000000001',$,$,$,$,#7,#12,$,$);
+      #14=IFCBUILDINGSTOREY('0000000000000000000002',$,$,$,$,#3,$,$,$,$);
+      ENDSEC;
+      END-ISO-10303-21;
+      """;
+
+    ExpressSchema schema = new ExpressLoader().load("schema:IFC4");
+    GenericData data = new GenericData(schema);
+    new StepLoader(data).load(new StringReader(step));
+
+    List<ElementBounds> elements = new IfcBoundsCalculator(data).calculate();
+    assertEquals(2, elements.size());
+
+    ElementBounds wall = elements.get(0);
+    assertEquals("IfcWall", wall.getTypeName());
+    assertEquals("0000000000000000000001", wall.getGlobalId());
+    // 4x2 profile rotated 90 degrees around z, at (11, 20, 3)
+    assertArrayEquals(new double[]{ 10, 18, 3, 12, 22, 8 },
+      wall.getBounds(), 1e-9);
+
+    // no representation: the placement origin
+    ElementBounds storey = elements.get(1);
+    assertArrayEquals(new double[]{ 10, 20, 0, 10, 20, 0 },
+      storey.getBounds(), 1e-9);
+  }
+
+  private List<ElementBounds> createElements(int count)
+  {
+    Random random = new Random(1);
+    List<ElementBounds> elements = new ArrayList<>();
+    for (int i = 0; i < count; i++)
+    {
+      double x = random.nextDouble() * 100;
+      double y = random.nextDouble() * 100;
+      double z = random.nextDouble() * 10;
+      double size = random.nextDouble() * 5;
+      elements.add(new ElementBounds("#" + i, "G" + i, "IfcWall",
+        new double[]{ x, y, z, x + size, y + size, z + size }));
+    }
+    return elements;
+  }
+
+  private List<String> bruteForce(List<ElementBounds> elements, double[] box)
+  {
+    List<String> ids = new ArrayList<>();
+    for (ElementBounds element : elements)
+    {
+      double[] b = element.getBounds();
+      if (b[0] <= box[3] && b[3] >= box[0] && b[1] <= box[4] &&
+          b[4] >= box[1] && b[2] <= box[5] && b[5] >= box[2])
+      {
+        ids.add(element.getElementId());
+      }
+    }
+    ids.sort(null);
+    return ids;
+  }
+
+  private List<String> ids(List<ElementBounds> elements)
+  {
+    List<String> ids = new ArrayList<>(elements.stream()
+      .map(ElementBounds::getElementId).toList());
+    ids.sort(null);
+    return ids;
+  }
+}
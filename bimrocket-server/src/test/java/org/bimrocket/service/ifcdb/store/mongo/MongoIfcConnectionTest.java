@@ -0,0 +1,195 @@
+package org.bimrocket.service.ifcdb.store.mongo;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.connection.ClusterConnectionMode;
+import com.mongodb.connection.ClusterDescription;
+import com.mongodb.connection.ClusterType;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.io.ExpressLoader;
+import org.bimrocket.step.io.StepExporter;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MongoIfcConnectionTest
+{
+  final ObjectId placementId = new ObjectId();
+  final ObjectId wall1Id = new ObjectId();
+  final ObjectId wall2Id = new ObjectId();
+  final ObjectId wall3Id = new ObjectId();
+
+  Map<String, List<Document>> collections = new HashMap<>();
+  MongoIfcConnection conn;
+
+  @BeforeEach
+  public void setUp() throws IOException
+  {
+    // version 2 is a delta of version 1 in the version layout:
+    // 'Wall 1' is deleted and 'Wall 3' is added, the placement is shared
+    addDocument(MongoIfcConnection.VERSION_COL, new Document("modelId", "m")
+      .append("version", 1).append("baseVersion", 0));
+    addDocument(MongoIfcConnection.VERSION_COL, new Document("modelId", "m")
+      .append("version", 2).append("baseVersion", 1));
+
+    addDocument("IfcdbObject_m_1", new Document("_id", placementId)
+      .append("_class", "IfcLocalPlacement"));
+    addDocument("IfcdbObject_m_1", wall(wall1Id, "Wall 1")
+      .append("_removedVersion", 2));
+    addDocument("IfcdbObject_m_1", wall(wall2Id, "Wall 2"));
+    addDocument("IfcdbObject_m_2", wall(wall3Id, "Wall 3"));
+
+    MongoClient mongoClient = mock(MongoClient.class);
+    when(mongoClient.getClusterDescription()).thenReturn(
+      new ClusterDescription(ClusterConnectionMode.SINGLE,
+        ClusterType.STANDALONE, List.of()));
+    MongoDatabase db = mock(MongoDatabase.class);
+    when(db.getCollection(anyString())).thenAnswer(invocation ->
+      collection(invocation.getArgument(0)));
+
+    ExpressSchema schema = new ExpressLoader().load("schema:IFC4");
+    conn = new MongoIfcConnection(mongoClient, db, schema);
+    conn.layout = MongoIfcConnection.VERSION_LAYOUT;
+  }
+
+  @Test
+  public void testQueryDeltaVersion()
+  {
+    List<String> elementIds = List.of(wall1Id.toString(),
+      wall2Id.toString(), wall3Id.toString());
+
+    MongoIfcData data = (MongoIfcData)conn.queryData("m", 2, elementIds);
+
+    // the deleted wall is not returned
+    assertEquals(List.of("Wall 3", "Wall 2"), data.getElements().stream()
+      .map(document -> document.getString("Name")).toList());
+
+    // the placement is prefetched from the collection of version 1
+    assertTrue(data.cache.containsKey(placementId));
+    assertTrue(export(data).contains("IFCLOCALPLACEMENT"));
+
+    // and also read from it when it is not prefetched
+    data.cache.remove(placementId);
+    assertTrue(export(data).contains("IFCLOCALPLACEMENT"));
+  }
+
+  private String export(MongoIfcData data)
+  {
+    StringWriter writer = new StringWriter();
+    new StepExporter(data).export(writer);
+    return writer.toString();
+  }
+
+  private Document wall(ObjectId objectId, String name)
+  {
+    return new Document("_id", objectId).append("_class", "IfcWall")
+      .append("GlobalId", objectId.toString().substring(0, 22))
+      .append("Name", name).append("ObjectPlacement", placementId);
+  }
+
+  private void addDocument(String collectionName, Document document)
+  {
+    collections.computeIfAbsent(collectionName, name -> new ArrayList<>())
+      .add(document);
+  }
+
+  @SuppressWarnings("unchecked")
+  private MongoCollection<Document> collection(String collectionName)
+  {
+    List<Document> documents =
+      collections.getOrDefault(collectionName, List.of());
+
+    MongoCollection<Document> collection = mock(MongoCollection.class);
+    when(collection.find(any(Bson.class))).thenAnswer(invocation ->
+    {
+      BsonDocument filter =
+        invocation.<Bson>getArgument(0).toBsonDocument();
+      return findIterable(documents.stream()
+        .filter(document -> matches(document.toBsonDocument(), filter))
+        .toList());
+    });
+    return collection;
+  }
+
+  @SuppressWarnings("unchecked")
+  private FindIterable<Document> findIterable(List<Document> documents)
+  {
+    FindIterable<Document> iterable = mock(FindIterable.class);
+    when(iterable.projection(any())).thenReturn(iterable);
+    when(iterable.first()).thenAnswer(invocation ->
+      documents.isEmpty() ? null : documents.get(0));
+    when(iterable.iterator()).thenAnswer(invocation ->
+    {
+      Iterator<Document> iterator = documents.iterator();
+      MongoCursor<Document> cursor = mock(MongoCursor.class);
+      when(cursor.hasNext()).thenAnswer(i -> iterator.hasNext());
+      when(cursor.next()).thenAnswer(i -> iterator.next());
+      return cursor;
+    });
+    doAnswer(invocation ->
+    {
+      documents.forEach(invocation.<Consumer<Document>>getArgument(0));
+      return null;
+    }).when(iterable).forEach(any());
+    return iterable;
+  }
+
+  // evaluates the $and, $in, $nin and equality filters used by the store
+  private boolean matches(BsonDocument document, BsonDocument filter)
+  {
+    for (String name : filter.keySet())
+    {
+      BsonValue condition = filter.get(name);
+      if (name.equals("$and"))
+      {
+        for (BsonValue item : condition.asArray())
+        {
+          if (!matches(document, item.asDocument())) return false;
+        }
+        continue;
+      }
+
+      BsonValue value = document.get(name);
+      if (condition instanceof BsonDocument operator &&
+          operator.containsKey("$in"))
+      {
+        if (!contains(operator.getArray("$in"), value)) return false;
+      }
+      else if (condition instanceof BsonDocument operator &&
+          operator.containsKey("$nin"))
+      {
+        if (contains(operator.getArray("$nin"), value)) return false;
+      }
+      else if (!condition.equals(value)) return false;
+    }
+    return true;
+  }
+
+  private boolean contains(BsonArray array, BsonValue value)
+  {
+    return value != null && array.contains(value);
+  }
+}
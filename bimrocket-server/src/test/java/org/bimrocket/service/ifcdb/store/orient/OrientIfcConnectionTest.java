@@ -0,0 +1,218 @@
+package org.bimrocket.service.ifcdb.store.orient;
+
+import com.orientechnologies.orient.core.db.ODatabasePool;
+import com.orientechnologies.orient.core.db.OrientDB;
+import com.orientechnologies.orient.core.db.OrientDBConfig;
+import com.orientechnologies.orient.core.record.OElement;
+import com.orientechnologies.orient.core.sql.executor.OResultSet;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.bimrocket.api.ifcdb.IfcdbModel;
+import org.bimrocket.api.ifcdb.IfcdbVersion;
+import org.bimrocket.dao.orient.OrientPoolManager;
+import org.bimrocket.express.ExpressSchema;
+import org.bimrocket.express.io.ExpressLoader;
+import org.bimrocket.step.io.StepExporter;
+import org.bimrocket.step.io.StepLoader;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class OrientIfcConnectionTest
+{
+  static final String STEP = """
+    ISO-10303-21;
+    HEADER;
+    FILE_DESCRIPTION((''),'2;1');
+    FILE_NAME('test.ifc','',(''),(''),'','','');
+    FILE_SCHEMA(('IFC4'));
+    ENDSEC;
+    DATA;
+    #1=IFCSIUNIT(*,.LENGTHUNIT.,$,.METRE.);
+    #2=IFCUNITASSIGNMENT((#1));
+    #3=IFCCARTESIANPOINT((0.,0.,0.));
+    #4=IFCAXIS2PLACEMENT3D(#3,$,$);
+    #5=IFCGEOMETRICREPRESENTATIONCONTEXT($,'Model',3,1.E-05,#4,$);
+    #6=IFCPROJECT('0000000000000000000001',$,'Project',$,$,$,$,(#5),#2);
+    #7=IFCBUILDING('0000000000000000000002',$,'Building',$,$,$,$,$,$,$,$,$);
+    #8=IFCBUILDINGSTOREY('0000000000000000000003',$,'Level 1',$,$,$,$,$,$,$);
+    #9=IFCBUILDINGSTOREY('0000000000000000000004',$,'Level 2',$,$,$,$,$,$,$);
+    #10=IFCRELAGGREGATES('0000000000000000000005',$,$,$,#6,(#7));
+    #11=IFCRELAGGREGATES('0000000000000000000006',$,$,$,#7,(#8,#9));
+    #12=IFCLOCALPLACEMENT($,#4);
+    #13=IFCWALL('0000000000000000000007',$,'Wall 1',$,$,#12,$,$,$);
+    #14=IFCWALL('0000000000000000000008',$,'Wall 2',$,$,#12,$,$,$);
+    #15=IFCSLAB('0000000000000000000009',$,'Slab 1',$,$,#12,$,$,$);
+    #16=IFCSLAB('000000000000000000000A',$,'Slab 2',$,$,#12,$,$,$);
+    #17=IFCRELCONTAINEDINSPATIALSTRUCTURE('000000000000000000000B',$,$,$,(#13,#15),#8);
+    #18=IFCRELCONTAINEDINSPATIALSTRUCTURE('000000000000000000000C',$,$,$,(#14,#16),#9);
+    #19=IFCPROPERTYSINGLEVALUE('IsExternal',$,IFCBOOLEAN(.T.),$);
+    #20=IFCPROPERTYSET('000000000000000000000D',$,'Pset_WallCommon',$,(#19));
+    #21=IFCRELDEFINESBYPROPERTIES('000000000000000000000E',$,$,$,(#13,#14),#20);
+    ENDSEC;
+    END-ISO-10303-21;
+    """;
+
+  static OrientDB orientDB;
+  static ODatabasePool pool;
+  static OrientIfcConnection conn;
+  static int version;
+
+  @BeforeAll
+  public static void saveModel() throws IOException
+  {
+    orientDB = new OrientDB("embedded:", OrientDBConfig.defaultConfig());
+    orientDB.execute("create database ifctest memory users " +
+      "(admin identified by 'admin' role admin)").close();
+    pool = new ODatabasePool(orientDB, "ifctest", "admin", "admin");
+
+    ExpressSchema schema = new ExpressLoader().load("schema:IFC4");
+    conn = new OrientIfcConnection(pool.acquire(), schema);
+    conn.poolManager = mock(OrientPoolManager.class);
+    when(conn.poolManager.getDocumentConnection("IFC4"))
+      .thenAnswer(invocation -> pool.acquire());
+    conn.createSchema();
+
+    IfcdbModel model = new IfcdbModel();
+    model.setId("0000000000000000000001");
+    model.setName("Project");
+    conn.createModel(model);
+    version = conn.createModelVersion(model.getId(), new IfcdbVersion())
+      .getVersion();
+
+    OrientIfcData data = (OrientIfcData)conn.createData();
+    new StepLoader(data).load(new StringReader(STEP));
+    conn.saveData(model.getId(), version, data);
+  }
+
+  @AfterAll
+  public static void close()
+  {
+    conn.close();
+    pool.close();
+    orientDB.close();
+  }
+
+  @Test
+  public void testParallelLoad()
+  {
+    String sequential = export(1);
+    String parallel = export(4);
+
+    // the elements do not depend on the closed sessions that read them
+    assertEquals(normalize(sequential), normalize(parallel));
+
+    // and their order does not depend on the threads
+    assertEquals(parallel, export(4));
+  }
+
+  @Test
+  public void testQueryData()
+  {
+    conn.loadThreads = 1;
+    OrientIfcData data =
+      (OrientIfcData)conn.loadData("0000000000000000000001", version);
+    String wallId = data.getElements().stream()
+      .filter(element -> "IfcWall".equals(OrientIfcData.getClassName(element)))
+      .findFirst().get().getIdentity().toString();
+
+    // malformed and unknown ids are ignored
+    List<String> elementIds = List.of(wallId, "#1:x", "wall", "#999:0");
+
+    OrientIfcData queried = (OrientIfcData)conn.queryData(
+      "0000000000000000000001", version, elementIds);
+    assertEquals(List.of(wallId), ids(queried.getElements()));
+
+    queried = (OrientIfcData)conn.queryData(
+      "0000000000000000000001", 0, elementIds);
+    assertEquals(List.of(wallId), ids(queried.getElements()));
+
+    // the elements of other versions and models are not returned
+    queried = (OrientIfcData)conn.queryData(
+      "0000000000000000000001", version + 1, elementIds);
+    assertTrue(queried.getElements().isEmpty());
+    queried = (OrientIfcData)conn.queryData("other", version, elementIds);
+    assertTrue(queried.getElements().isEmpty());
+  }
+
+  @Test
+  public void testDeleteDeltaVersion() throws IOException
+  {
+    conn.loadThreads = 1;
+    IfcdbModel model = new IfcdbModel();
+    model.setId("delta");
+    model.setName("Delta");
+    conn.createModel(model);
+    int baseVersion = conn.createModelVersion("delta", new IfcdbVersion())
+      .getVersion();
+    conn.saveData("delta", baseVersion, load(STEP));
+    String baseExport = export("delta", baseVersion);
+    long wallCount = countWalls();
+
+    IfcdbVersion deltaVersion = new IfcdbVersion();
+    deltaVersion.setBaseVersion(baseVersion);
+    int version = conn.createModelVersion("delta", deltaVersion).getVersion();
+    conn.saveDeltaData("delta", version, baseVersion,
+      load(STEP.replace("'Wall 2'", "'Wall 3'")));
+    assertEquals(wallCount + 1, countWalls());
+
+    assertTrue(conn.deleteModel("delta", version));
+
+    // only the objects of the delta version are deleted
+    assertEquals(wallCount, countWalls());
+    assertEquals(List.of(baseVersion), conn.getModelVersions("delta")
+      .stream().map(IfcdbVersion::getVersion).toList());
+    assertEquals(baseExport, export("delta", baseVersion));
+  }
+
+  private OrientIfcData load(String step) throws IOException
+  {
+    OrientIfcData data = (OrientIfcData)conn.createData();
+    new StepLoader(data).load(new StringReader(step));
+    return data;
+  }
+
+  private long countWalls()
+  {
+    try (OResultSet rs = conn.db.query("select count(*) as count from IfcWall"))
+    {
+      return rs.next().<Long>getProperty("count");
+    }
+  }
+
+  private List<String> ids(List<OElement> elements)
+  {
+    return elements.stream()
+      .map(element -> element.getIdentity().toString()).toList();
+  }
+
+  private String export(int loadThreads)
+  {
+    conn.loadThreads = loadThreads;
+    return export("0000000000000000000001", version);
+  }
+
+  private String export(String modelId, int version)
+  {
+    conn.db.getLocalCache().clear();
+    OrientIfcData data = (OrientIfcData)conn.loadData(modelId, version);
+    StringWriter writer = new StringWriter();
+    new StepExporter(data).export(writer);
+    return writer.toString().lines()
+      .filter(line -> !line.startsWith("FILE_NAME"))
+      .collect(Collectors.joining("\n"));
+  }
+
+  private List<String> normalize(String ifc)
+  {
+    return ifc.lines().map(line -> line.replaceAll("#[0-9]+", "#"))
+      .sorted().toList();
+  }
+}
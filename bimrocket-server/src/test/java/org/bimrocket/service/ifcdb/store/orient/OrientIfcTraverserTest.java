@@ -0,0 +1,63 @@
+package org.bimrocket.service.ifcdb.store.orient;
+
+import com.orientechnologies.orient.core.record.OElement;
+import com.orientechnologies.orient.core.record.impl.ODocument;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+
+public class OrientIfcTraverserTest
+{
+  @Test
+  public void testSharedReference()
+  {
+    // a -> b, a -> c, c -> b
+    ODocument a = new ODocument();
+    ODocument b = new ODocument();
+    ODocument c = new ODocument();
+    b.field("name", "b");
+    c.field("name", "c");
+    c.field("ref", b);
+    a.field("name", "a");
+    a.field("refs", List.of(b, c));
+
+    assertEquals(List.of("b", "c", "a"), traverse(a));
+  }
+
+  @Test
+  public void testCycle()
+  {
+    // a -> b -> a
+    ODocument a = new ODocument();
+    ODocument b = new ODocument();
+    a.field("name", "a");
+    b.field("name", "b");
+    a.field("ref", b);
+    b.field("ref", a);
+
+    assertEquals(List.of("b", "a"), traverse(a));
+  }
+
+  private List<String> traverse(OElement oelement)
+  {
+    List<String> processed = new ArrayList<>();
+    OrientIfcTraverser traverser = new OrientIfcTraverser(null)
+    {
+      @Override
+      protected boolean isProcessable(OElement oelement)
+      {
+        return true;
+      }
+
+      @Override
+      protected void process(OElement oelement)
+      {
+        processed.add(oelement.getProperty("name"));
+      }
+    };
+    int count = traverser.traverse(oelement);
+    assertEquals(processed.size(), count);
+    return processed;
+  }
+}